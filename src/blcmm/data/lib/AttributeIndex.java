@@ -0,0 +1,574 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package blcmm.data.lib;
+
+import blcmm.utilities.GlobalLogger;
+import blcmm.utilities.Utilities;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * An on-disk index of where each attribute lives inside the object dumps,
+ * used to speed up `getall <class> <attribute>` queries in Object Explorer.
+ *
+ * A getall without an index has to read every line of every datafile for
+ * the class (and its subclasses), looking for the one attribute we care
+ * about.  This class maintains one segment file per datafile which records,
+ * for every attribute of every object in the file, the byte range inside the
+ * datafile where that attribute's lines live (for arrays, that's the whole
+ * run of `Attr(n)=` lines).  Given that, a getall only has to read the few
+ * bytes it needs for each object, via the extracted datafiles that
+ * DumpReader provides random access to.
+ *
+ * As with SearchIndex, segments are built lazily: the first getall which
+ * touches a datafile scans it the old-fashioned way (using a SegmentBuilder,
+ * which hands back the requested attribute as it goes), and writes the
+ * segment out afterwards.  Segments live in a directory named for the
+ * current dump version, and segments for other versions are cleaned up.
+ *
+ * Dumps are ISO-8859-1, so byte offsets and character offsets are the same
+ * thing, which keeps the bookkeeping here simple.
+ *
+ * @author apocalyptech
+ */
+public class AttributeIndex {
+
+    /**
+     * Magic number at the start of each segment file.
+     */
+    private static final int MAGIC = 0x424C4149;
+
+    /**
+     * Version of the segment file format.  Bump this if the format (or the
+     * attribute-parsing rules) ever change, and existing segments will get
+     * rebuilt.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private final File indexDir;
+    private final String dumpVersion;
+    private final HashMap<String, SoftReference<Segment>> segmentCache = new HashMap<>();
+
+    /**
+     * Creates a new AttributeIndex object for the given dump version.  Any
+     * segments stored for other dump versions will be removed.
+     *
+     * @param baseDir The base directory in which to store indexes
+     * @param dumpVersion The dump version of the data we're indexing
+     */
+    public AttributeIndex(File baseDir, String dumpVersion) {
+        this.dumpVersion = dumpVersion;
+        this.indexDir = DataFileUtilities.getVersionDir(baseDir, dumpVersion, "attribute index");
+    }
+
+    /**
+     * The lines for a single attribute in a single object.  If the object
+     * doesn't have the attribute at all, `lines` will be empty.
+     */
+    public static class AttributeLines {
+
+        public final String objectName;
+        public final List<String> lines;
+
+        public AttributeLines(String objectName, List<String> lines) {
+            this.objectName = objectName;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * The locations of a single attribute across every object in a datafile.
+     * `objectNames` contains every object in the datafile, in file order.
+     * For each object, `starts` contains the byte position of the attribute
+     * inside the datafile and `lengths` contains its length, or -1 for both
+     * if the object doesn't have the attribute.
+     */
+    public static class AttributeRanges {
+
+        public final String[] objectNames;
+        public final int[] starts;
+        public final int[] lengths;
+
+        private AttributeRanges(String[] objectNames) {
+            this.objectNames = objectNames;
+            this.starts = new int[objectNames.length];
+            this.lengths = new int[objectNames.length];
+            Arrays.fill(this.starts, -1);
+            Arrays.fill(this.lengths, -1);
+        }
+    }
+
+    /**
+     * Returns the name of the datafile for the given class and index, which
+     * is used both as the segment's filename and its cache key.
+     *
+     * @param ueClass The class
+     * @param fileIndex The datafile index (starting at 1)
+     * @return The datafile name
+     */
+    private static String getDatafileName(UEClass ueClass, int fileIndex) {
+        return ueClass.getName() + ".dump." + fileIndex;
+    }
+
+    /**
+     * Returns the file which stores the segment for the given datafile.
+     *
+     * @param ueClass The class
+     * @param fileIndex The datafile index (starting at 1)
+     * @return The segment File
+     */
+    private File getSegmentFile(UEClass ueClass, int fileIndex) {
+        return new File(this.indexDir, getDatafileName(ueClass, fileIndex) + ".attr");
+    }
+
+    /**
+     * Returns a new SegmentBuilder for the given datafile.
+     *
+     * @param ueClass The class which is about to be scanned
+     * @param fileIndex The datafile index (starting at 1)
+     * @return A new SegmentBuilder
+     */
+    public SegmentBuilder getSegmentBuilder(UEClass ueClass, int fileIndex) {
+        return new SegmentBuilder(ueClass, fileIndex);
+    }
+
+    /**
+     * Loads (or retrieves from our cache) the segment for the given datafile.
+     * Returns null if the segment doesn't exist or can't be read.  Segments
+     * which are unreadable or which belong to some other dump version will
+     * be deleted so that they get rebuilt on the next scan.
+     *
+     * @param ueClass The class to load
+     * @param fileIndex The datafile index (starting at 1)
+     * @return The Segment, or null
+     */
+    private synchronized Segment getSegment(UEClass ueClass, int fileIndex) {
+        String datafileName = getDatafileName(ueClass, fileIndex);
+        SoftReference<Segment> ref = this.segmentCache.get(datafileName);
+        if (ref != null) {
+            Segment segment = ref.get();
+            if (segment != null) {
+                return segment;
+            }
+        }
+        File segmentFile = this.getSegmentFile(ueClass, fileIndex);
+        if (!segmentFile.isFile()) {
+            return null;
+        }
+        try {
+            Segment segment = Segment.load(segmentFile, this.dumpVersion, datafileName);
+            if (segment == null) {
+                GlobalLogger.log("Discarding mismatched attribute index segment for " + datafileName);
+                segmentFile.delete();
+                return null;
+            }
+            this.segmentCache.put(datafileName, new SoftReference<>(segment));
+            return segment;
+        } catch (IOException e) {
+            GlobalLogger.log("Error reading attribute index segment for " + datafileName + ": " + e.toString());
+            segmentFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the locations of the given attribute for every object in the
+     * given datafile, or null if the datafile hasn't been indexed yet.
+     *
+     * @param ueClass The class to look up
+     * @param fileIndex The datafile index (starting at 1)
+     * @param attrName The attribute name (case-insensitive)
+     * @return The attribute locations, or null
+     */
+    public AttributeRanges getRanges(UEClass ueClass, int fileIndex, String attrName) {
+        Segment segment = this.getSegment(ueClass, fileIndex);
+        if (segment == null) {
+            return null;
+        }
+        return segment.getRanges(attrName.toLowerCase());
+    }
+
+    /**
+     * Splits a chunk of dump data into lines.
+     *
+     * @param data The data to split
+     * @return The individual lines, without line endings
+     */
+    public static List<String> splitLines(byte[] data) {
+        ArrayList<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= data.length; i++) {
+            if (i == data.length || data[i] == '\n') {
+                int end = i;
+                if (end > start && data[end-1] == '\r') {
+                    end--;
+                }
+                if (i < data.length || end > start) {
+                    lines.add(new String(data, start, end - start, StandardCharsets.ISO_8859_1));
+                }
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the lowercased attribute name at the start of the given dump
+     * line, or null if the line doesn't start with an attribute.  An
+     * attribute line consists of the attribute name followed immediately by
+     * either `=` or (for array elements) `(`.
+     *
+     * @param line The dump line
+     * @return The lowercased attribute name, or null
+     */
+    private static String getAttributeName(String line) {
+        int i = 0;
+        while (i < line.length() && (Character.isLetterOrDigit(line.charAt(i)) || line.charAt(i) == '_')) {
+            i++;
+        }
+        if (i == 0 || i == line.length()) {
+            return null;
+        }
+        char c = line.charAt(i);
+        if (c != '=' && c != '(') {
+            return null;
+        }
+        return line.substring(0, i).toLowerCase();
+    }
+
+    /**
+     * A loaded index segment for a single datafile.  As with SearchIndex, the
+     * whole segment is held in memory, but we only keep SoftReferences to
+     * these.
+     */
+    private static class Segment {
+
+        private final String[] objectNames;
+        private final HashMap<String, int[]> attrs;
+        private final byte[] entries;
+
+        private Segment(String[] objectNames, HashMap<String, int[]> attrs, byte[] entries) {
+            this.objectNames = objectNames;
+            this.attrs = attrs;
+            this.entries = entries;
+        }
+
+        /**
+         * Loads a segment from disk.  Returns null if the segment was written
+         * for a different dump version, datafile, or file format.
+         *
+         * @param segmentFile The file to load
+         * @param dumpVersion The dump version we expect
+         * @param datafileName The datafile name we expect
+         * @return The loaded Segment, or null
+         * @throws IOException
+         */
+        private static Segment load(File segmentFile, String dumpVersion, String datafileName) throws IOException {
+            byte[] data = Files.readAllBytes(segmentFile.toPath());
+            ByteArrayInputStream bais = new ByteArrayInputStream(data);
+            DataInputStream in = new DataInputStream(bais);
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!in.readUTF().equals(dumpVersion) || !in.readUTF().equals(datafileName)) {
+                return null;
+            }
+            String[] objectNames = new String[in.readInt()];
+            for (int i = 0; i < objectNames.length; i++) {
+                objectNames[i] = in.readUTF();
+            }
+            int numAttrs = in.readInt();
+            HashMap<String, int[]> attrs = new HashMap<>(numAttrs * 2);
+            int offset = 0;
+            for (int i = 0; i < numAttrs; i++) {
+                String name = in.readUTF();
+                int count = in.readInt();
+                attrs.put(name, new int[] {offset, count});
+                offset += in.readInt();
+            }
+            int entriesStart = data.length - bais.available();
+            if (entriesStart + offset != data.length) {
+                throw new IOException("Attribute index segment is truncated: " + segmentFile.getName());
+            }
+            byte[] entries = Arrays.copyOfRange(data, entriesStart, data.length);
+            return new Segment(objectNames, attrs, entries);
+        }
+
+        /**
+         * Decodes the locations for the given attribute.
+         *
+         * @param attrName The lowercased attribute name
+         * @return The attribute locations
+         */
+        private AttributeRanges getRanges(String attrName) {
+            AttributeRanges ranges = new AttributeRanges(this.objectNames);
+            int[] attr = this.attrs.get(attrName);
+            if (attr == null) {
+                return ranges;
+            }
+            int[] pos = new int[] {attr[0]};
+            int obj = 0;
+            int start = 0;
+            for (int i = 0; i < attr[1]; i++) {
+                obj += this.readVarInt(pos);
+                start += this.readVarInt(pos);
+                ranges.starts[obj] = start;
+                ranges.lengths[obj] = this.readVarInt(pos);
+            }
+            return ranges;
+        }
+
+        private int readVarInt(int[] pos) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = this.entries[pos[0]++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    /**
+     * Reads through a single datafile, recording attribute locations, and
+     * writes out the segment once the scan is complete.  A builder should
+     * only ever be used from a single thread.  If the scan gets interrupted,
+     * just don't call commit(), and nothing will be written.
+     */
+    public class SegmentBuilder {
+
+        private final UEClass ueClass;
+        private final int fileIndex;
+        private final ArrayList<String> objectNames = new ArrayList<>();
+        private final HashMap<String, ByteArrayOutputStream> entries = new HashMap<>();
+        private final HashMap<String, int[]> lastEntry = new HashMap<>();
+
+        // Scanning state
+        private String wanted;
+        private ArrayList<AttributeLines> results;
+        private List<String> wantedLines;
+        private final HashSet<String> seenAttrs = new HashSet<>();
+        private String curAttr = null;
+        private boolean curIsArray = false;
+        private boolean curIsWanted = false;
+        private int curStart = 0;
+        private int curEnd = 0;
+
+        private SegmentBuilder(UEClass ueClass, int fileIndex) {
+            this.ueClass = ueClass;
+            this.fileIndex = fileIndex;
+        }
+
+        /**
+         * Scans the whole datafile from the given stream, indexing every
+         * attribute of every object, and returns the lines for the specified
+         * attribute for each object along the way.
+         *
+         * @param stream The datafile stream
+         * @param attrName The attribute to return lines for (case-insensitive)
+         * @return The attribute lines for every object in the datafile
+         * @throws IOException
+         */
+        public List<AttributeLines> scan(InputStream stream, String attrName) throws IOException {
+            this.wanted = attrName.toLowerCase();
+            this.results = new ArrayList<>();
+
+            // We do our own line-splitting so that we know exactly where in
+            // the file each line starts.
+            byte[] buf = new byte[65536];
+            ByteArrayOutputStream lineBuf = new ByteArrayOutputStream(256);
+            int pos = 0;
+            int lineStart = 0;
+            int read;
+            while ((read = stream.read(buf)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (buf[i] == '\n') {
+                        this.processLine(lineBuf, lineStart);
+                        lineStart = pos + 1;
+                    } else {
+                        lineBuf.write(buf[i]);
+                    }
+                    pos++;
+                }
+            }
+            if (lineBuf.size() > 0) {
+                this.processLine(lineBuf, lineStart);
+            }
+            this.finishAttr();
+            return this.results;
+        }
+
+        /**
+         * Processes a single line of the datafile.
+         *
+         * @param lineBuf The line data, which will be reset once processed
+         * @param lineStart The position of the line inside the datafile
+         */
+        private void processLine(ByteArrayOutputStream lineBuf, int lineStart) {
+            byte[] lineBytes = lineBuf.toByteArray();
+            lineBuf.reset();
+            int lineLen = lineBytes.length;
+            if (lineLen > 0 && lineBytes[lineLen-1] == '\r') {
+                lineLen--;
+            }
+            String line = new String(lineBytes, 0, lineLen, StandardCharsets.ISO_8859_1);
+            int lineEnd = lineStart + lineLen;
+
+            // Figure out what this line is
+            boolean isHeader = line.startsWith("***");
+            String name = null;
+            if (!isHeader && !this.objectNames.isEmpty()) {
+                name = getAttributeName(line);
+            }
+            boolean isArray = name != null && line.charAt(name.length()) == '(';
+
+            // Continuing an array run?
+            if (this.curAttr != null && this.curIsArray && isArray && name.equals(this.curAttr)) {
+                this.curEnd = lineEnd;
+                if (this.curIsWanted) {
+                    this.wantedLines.add(line);
+                }
+                return;
+            }
+
+            this.finishAttr();
+            if (isHeader) {
+                String objectName = DataFileUtilities.objectNameFromDumpHeader(line);
+                if (objectName != null) {
+                    this.objectNames.add(objectName);
+                    this.wantedLines = new ArrayList<>();
+                    this.results.add(new AttributeLines(objectName, this.wantedLines));
+                    this.seenAttrs.clear();
+                }
+            } else if (name != null && this.seenAttrs.add(name)) {
+                // We only record the first occurrence of any given attribute
+                // in an object.
+                this.curAttr = name;
+                this.curIsArray = isArray;
+                this.curStart = lineStart;
+                this.curEnd = lineEnd;
+                this.curIsWanted = name.equals(this.wanted);
+                if (this.curIsWanted) {
+                    this.wantedLines.add(line);
+                }
+            }
+        }
+
+        /**
+         * Records the attribute we're currently in the middle of, if any.
+         */
+        private void finishAttr() {
+            if (this.curAttr != null) {
+                this.addEntry(this.curAttr, this.curStart, this.curEnd - this.curStart);
+                this.curAttr = null;
+            }
+        }
+
+        /**
+         * Records the location of an attribute in the current object.
+         *
+         * @param name The lowercased attribute name
+         * @param start The start position of the attribute in the datafile
+         * @param length The length of the attribute data
+         */
+        private void addEntry(String name, int start, int length) {
+            ByteArrayOutputStream out = this.entries.get(name);
+            int[] last = this.lastEntry.get(name);
+            if (out == null) {
+                out = new ByteArrayOutputStream();
+                this.entries.put(name, out);
+                last = new int[] {0, 0, 0};
+                this.lastEntry.put(name, last);
+            }
+            int obj = this.objectNames.size() - 1;
+            DataFileUtilities.writeVarInt(out, obj - last[0]);
+            DataFileUtilities.writeVarInt(out, start - last[1]);
+            DataFileUtilities.writeVarInt(out, length);
+            last[0] = obj;
+            last[1] = start;
+            last[2]++;
+        }
+
+        /**
+         * Writes the segment out to disk.  The data is written to a temporary
+         * file first and then moved into place, so a partially-written
+         * segment will never be picked up.
+         */
+        public void commit() {
+            if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+                GlobalLogger.log("Unable to create attribute index directory: " + Utilities.hideUserName(indexDir.toString()));
+                return;
+            }
+            String[] names = this.entries.keySet().toArray(new String[0]);
+            Arrays.sort(names);
+            String datafileName = getDatafileName(this.ueClass, this.fileIndex);
+            File target = getSegmentFile(this.ueClass, this.fileIndex);
+            File temp = new File(indexDir, datafileName + ".attr.tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeUTF(dumpVersion);
+                    out.writeUTF(datafileName);
+                    out.writeInt(this.objectNames.size());
+                    for (String name : this.objectNames) {
+                        out.writeUTF(name);
+                    }
+                    out.writeInt(names.length);
+                    for (String name : names) {
+                        out.writeUTF(name);
+                        out.writeInt(this.lastEntry.get(name)[2]);
+                        out.writeInt(this.entries.get(name).size());
+                    }
+                    for (String name : names) {
+                        this.entries.get(name).writeTo(out);
+                    }
+                }
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                synchronized (AttributeIndex.this) {
+                    segmentCache.remove(datafileName);
+                }
+            } catch (IOException e) {
+                GlobalLogger.log("Error writing attribute index segment for " + datafileName + ": " + e.toString());
+                temp.delete();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.data.lib;
+
+import blcmm.utilities.GlobalLogger;
+import blcmm.utilities.Utilities;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+/**
+ * A few helpers shared by the classes which keep their own files on disk
+ * alongside the main data (SearchIndex, AttributeIndex, and DumpReader).
+ *
+ * @author apocalyptech
+ */
+final class DataFileUtilities {
+
+    private DataFileUtilities() {
+    }
+
+    /**
+     * Returns the directory inside baseDir which should be used to store
+     * files for the given dump version.  Any directories in there for other
+     * dump versions are stale, and get removed.
+     *
+     * @param baseDir The base directory
+     * @param dumpVersion The dump version of the current data
+     * @param description What's stored in these directories, for logging
+     * @return The directory to use for the current dump version
+     */
+    static File getVersionDir(File baseDir, String dumpVersion, String description) {
+        String dirName = dumpVersion.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (baseDir.isDirectory()) {
+            File[] existing = baseDir.listFiles();
+            if (existing != null) {
+                for (File f : existing) {
+                    if (f.isDirectory() && !f.getName().equals(dirName)) {
+                        GlobalLogger.log("Removing stale " + description + ": " + f.getName());
+                        Utilities.deepDelete(f);
+                    }
+                }
+            }
+        }
+        return new File(baseDir, dirName);
+    }
+
+    /**
+     * Converts a dump header line into the ClassName'ObjectName' format used
+     * by the rest of Object Explorer.
+     *
+     * @param header The dump header line (starting with "***")
+     * @return The object name, or null if the header couldn't be parsed
+     */
+    static String objectNameFromDumpHeader(String header) {
+        int index = header.indexOf("'") + 1;
+        int index2 = header.indexOf(" ", index);
+        if (index == 0 || index2 < 0) {
+            return null;
+        }
+        int index3 = header.indexOf("'", index2);
+        if (index3 < 0) {
+            return null;
+        }
+        return header.substring(index, index2) + "'" + header.substring(index2 + 1, index3) + "'";
+    }
+
+    /**
+     * Writes an unsigned variable-length int to the given stream.
+     *
+     * @param out The stream to write to
+     * @param value The value to write
+     */
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+}
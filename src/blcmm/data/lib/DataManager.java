@@ -47,12 +47,15 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.jar.JarEntry;
@@ -127,6 +130,31 @@ public class DataManager {
     private HashMap<OESearch, TreeSet<UEClass>> categoryToClass = new HashMap<> ();
     private TreeSet<UEClass> curClassesByEnabledCategory = new TreeSet<> ();
 
+    // On-disk token index used to speed up fulltext/refs searches
+    private SearchIndex searchIndex;
+
+    // Random-access reader for object dumps
+    private DumpReader dumpReader;
+
+    // On-disk attribute location index used to speed up getall queries
+    private AttributeIndex attributeIndex;
+
+    // In-memory index of object names, used for deep autocompletes.  This
+    // gets built in the background the first time it's needed; until then
+    // we fall back to querying the database.
+    private volatile ObjectNameIndex objectNameIndex = null;
+    private boolean objectNameIndexStarted = false;
+    private final HashMap<UEClass, BitSet> objectNameIndexClasses = new HashMap<>();
+
+    /**
+     * The maximum number of deep autocomplete results we'll return.
+     */
+    public static final int DEEP_AUTOCOMPLETE_MAX_RESULTS = 200;
+
+    // Cache of recently-viewed dumps.  The real size gets set from Options
+    // by DataManagerManager once we're initialized.
+    private final DumpCache dumpCache = new DumpCache(0);
+
     // We may as well hold on to our PreparedStatements so we can reuse them
     // easily without having to rebuild all the time.  In practice, rebuilding
     // all the time isn't really noticeable, but whatever.
@@ -140,6 +168,28 @@ public class DataManager {
     private PreparedStatement autocompleteFieldWithClassStmt;
     private PreparedStatement autocompleteEnumStmt;
 
+    // The same goes for our more general object queries, which get hit a lot
+    // harder than the autocomplete ones do (OE tree browsing, searches, etc).
+    // Since OE searches may run these from multiple threads at once, each
+    // statement is synchronized on while it's being used.
+    private PreparedStatement subclassIdsStmt;
+    private PreparedStatement objectsInSpecificClassStmt;
+    private PreparedStatement objectsInSpecificClassOrderedStmt;
+    private PreparedStatement objectsInClassTreeStmt;
+    private PreparedStatement objectsInClassTreeOrderedStmt;
+    private PreparedStatement treeObjectsRootStmt;
+    private PreparedStatement treeObjectsWithParentStmt;
+    private PreparedStatement objectByNameStmt;
+    private PreparedStatement objectsByNameBatchStmt;
+
+    /**
+     * How many object names we'll look up in a single query, for our batched
+     * lookups.  Batches smaller than this get padded out with duplicate names
+     * so that we can always reuse the same statement.  This needs to stay
+     * below SQLite's maximum number of query parameters.
+     */
+    private static final int OBJECT_BATCH_SIZE = 250;
+
     /**
      * Custom Exception we can throw when our data isn't found, or is in a
      * state we don't expect.  Lets the main application know that data for
@@ -322,10 +372,47 @@ public class DataManager {
                     + " order by e.name"
             );
 
+            // And then the rest of our object queries
+            this.subclassIdsStmt = this.dbConn.prepareStatement(
+                    "select * from class_subclass where class=?"
+            );
+            String specificClassQuery = "select o.* from object o, class c where o.class=c.id and c.id=?";
+            this.objectsInSpecificClassStmt = this.dbConn.prepareStatement(specificClassQuery);
+            this.objectsInSpecificClassOrderedStmt = this.dbConn.prepareStatement(specificClassQuery + " order by o.name");
+            String classTreeQuery = "select o.*, c.id class_id from object o, object_show_class_ids i, class c where o.id=i.id and o.class=c.id and i.class=?";
+            this.objectsInClassTreeStmt = this.dbConn.prepareStatement(classTreeQuery);
+            this.objectsInClassTreeOrderedStmt = this.dbConn.prepareStatement(classTreeQuery + " order by o.name");
+            this.treeObjectsRootStmt = this.dbConn.prepareStatement(
+                    "select o.*, i.has_children from object o, object_show_class_ids i where o.id=i.id and i.class=? and parent is null;"
+            );
+            this.treeObjectsWithParentStmt = this.dbConn.prepareStatement(
+                    "select o.*, i.has_children from object o, object_show_class_ids i where o.id=i.id and i.class=? and parent=?;"
+            );
+            this.objectByNameStmt = this.dbConn.prepareStatement(
+                    "select o.*, c.name class_name from object o, class c where o.class=c.id and o.name=?"
+            );
+            StringBuilder batchQuery = new StringBuilder(
+                    "select o.*, c.name class_name from object o, class c where o.class=c.id and o.name in (?");
+            for (int i = 1; i < OBJECT_BATCH_SIZE; i++) {
+                batchQuery.append(",?");
+            }
+            batchQuery.append(")");
+            this.objectsByNameBatchStmt = this.dbConn.prepareStatement(batchQuery.toString());
+
         } catch (SQLException e) {
             throw new NoDataException("Unable to load database: " + e.toString(), e);
         }
 
+        // Set up our search index.  This lives right next to the extracted
+        // database, and doesn't do any real work until searches start
+        // happening.
+        this.searchIndex = new SearchIndex(Paths.get(this.dataBaseDir, "search-index").toFile(), this.dumpVersion);
+
+        // Likewise, datafiles get extracted here as they're needed, so that
+        // object dumps can be read without inflating the whole datafile.
+        this.dumpReader = new DumpReader(Paths.get(this.dataBaseDir, "dumps").toFile(), this.dumpVersion, this.jarFile, this.dataPathDumps);
+        this.attributeIndex = new AttributeIndex(Paths.get(this.dataBaseDir, "attr-index").toFile(), this.dumpVersion);
+
     }
 
     /**
@@ -693,6 +780,25 @@ public class DataManager {
         }
     }
 
+    /**
+     * Returns the on-disk search index used to speed up fulltext and refs
+     * searches in Object Explorer.
+     *
+     * @return The SearchIndex for this data
+     */
+    public SearchIndex getSearchIndex() {
+        return this.searchIndex;
+    }
+
+    /**
+     * Sets the maximum size of our recently-viewed dump cache.
+     *
+     * @param megabytes The new size, in megabytes.  Zero disables the cache.
+     */
+    public void setDumpCacheSize(int megabytes) {
+        this.dumpCache.setMaxBytes(Math.max(megabytes, 0) * 1024L * 1024L);
+    }
+
     /**
      * Returns a collection of all UEClasses we know about
      *
@@ -785,16 +891,14 @@ public class DataManager {
     public Set<Integer> getSubclassIDs(UEClass ueClass) {
         HashSet<Integer> map = new HashSet<>();
         try {
-            PreparedStatement stmt = this.dbConn.prepareStatement(
-                    "select * from class_subclass where class=?"
-            );
-            stmt.setInt(1, ueClass.getId());
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                map.add(rs.getInt("subclass"));
+            synchronized (this.subclassIdsStmt) {
+                this.subclassIdsStmt.setInt(1, ueClass.getId());
+                ResultSet rs = this.subclassIdsStmt.executeQuery();
+                while (rs.next()) {
+                    map.add(rs.getInt("subclass"));
+                }
+                rs.close();
             }
-            rs.close();
-            stmt.close();
         } catch (SQLException e) {
             GlobalLogger.log(e);
         }
@@ -868,24 +972,24 @@ public class DataManager {
      */
     public List<UEObject> getAllObjectsInSpecificClass(UEClass ueClass, boolean ordered) {
         ArrayList<UEObject> list = new ArrayList<>();
+        PreparedStatement stmt;
+        if (ordered) {
+            stmt = this.objectsInSpecificClassOrderedStmt;
+        } else {
+            stmt = this.objectsInSpecificClassStmt;
+        }
         try {
-            String suffix = "";
-            if (ordered) {
-                suffix = " order by o.name";
-            }
-            PreparedStatement stmt = this.dbConn.prepareStatement(
-                    "select o.* from object o, class c where o.class=c.id and c.id=?" + suffix
-            );
-            stmt.setInt(1, ueClass.getId());
-            ResultSet rs = stmt.executeQuery();
-            UEObject ueObject;
-            while (rs.next()) {
-                ueObject = UEObject.getFromDbRow(rs);
-                ueObject.setUeClass(ueClass);
-                list.add(ueObject);
+            synchronized (stmt) {
+                stmt.setInt(1, ueClass.getId());
+                ResultSet rs = stmt.executeQuery();
+                UEObject ueObject;
+                while (rs.next()) {
+                    ueObject = UEObject.getFromDbRow(rs);
+                    ueObject.setUeClass(ueClass);
+                    list.add(ueObject);
+                }
+                rs.close();
             }
-            rs.close();
-            stmt.close();
         } catch (SQLException e) {
             GlobalLogger.log(e);
         }
@@ -918,30 +1022,30 @@ public class DataManager {
     public List<UEObject> getAllObjectsInClassTree(UEClass ueClass, boolean ordered) {
         ArrayList<UEObject> list = new ArrayList<>();
         Set<Integer> validClasses = this.getSubclassIDs(ueClass);
+        PreparedStatement stmt;
+        if (ordered) {
+            stmt = this.objectsInClassTreeOrderedStmt;
+        } else {
+            stmt = this.objectsInClassTreeStmt;
+        }
         try {
-            String suffix = "";
-            if (ordered) {
-                suffix = " order by o.name";
-            }
-            PreparedStatement stmt = this.dbConn.prepareStatement(
-                    "select o.*, c.id class_id from object o, object_show_class_ids i, class c where o.id=i.id and o.class=c.id and i.class=?" + suffix
-            );
-            stmt.setInt(1, ueClass.getId());
-            ResultSet rs = stmt.executeQuery();
-            UEObject ueObject;
-            int classId;
-            while (rs.next()) {
-                classId = rs.getInt("class_id");
-                if (validClasses.contains(classId)) {
-                    ueObject = UEObject.getFromDbRow(rs);
-                    if (this.classIdToClass.containsKey(classId)) {
-                        ueObject.setUeClass(this.classIdToClass.get(classId));
+            synchronized (stmt) {
+                stmt.setInt(1, ueClass.getId());
+                ResultSet rs = stmt.executeQuery();
+                UEObject ueObject;
+                int classId;
+                while (rs.next()) {
+                    classId = rs.getInt("class_id");
+                    if (validClasses.contains(classId)) {
+                        ueObject = UEObject.getFromDbRow(rs);
+                        if (this.classIdToClass.containsKey(classId)) {
+                            ueObject.setUeClass(this.classIdToClass.get(classId));
+                        }
+                        list.add(ueObject);
                     }
-                    list.add(ueObject);
                 }
+                rs.close();
             }
-            rs.close();
-            stmt.close();
         } catch (SQLException e) {
             GlobalLogger.log("Error getting objects from class: " + e.toString());
         }
@@ -973,29 +1077,27 @@ public class DataManager {
      */
     public List<UEObject> getTreeObjectsFromClass(UEClass ueClass, UEObject parentObject) {
         ArrayList<UEObject> list = new ArrayList<>();
+        PreparedStatement stmt;
+        if (parentObject == null) {
+            stmt = this.treeObjectsRootStmt;
+        } else {
+            stmt = this.treeObjectsWithParentStmt;
+        }
         try {
-            PreparedStatement stmt;
-            if (parentObject == null) {
-                stmt = this.dbConn.prepareStatement(
-                        "select o.*, i.has_children from object o, object_show_class_ids i where o.id=i.id and i.class=? and parent is null;"
-                );
-                stmt.setInt(1, ueClass.getId());
-            } else {
-                stmt = this.dbConn.prepareStatement(
-                        "select o.*, i.has_children from object o, object_show_class_ids i where o.id=i.id and i.class=? and parent=?;"
-                );
+            synchronized (stmt) {
                 stmt.setInt(1, ueClass.getId());
-                stmt.setInt(2, parentObject.getId());
-            }
-            ResultSet rs = stmt.executeQuery();
-            UEObject ueObject;
-            while (rs.next()) {
-                ueObject = UEObject.getFromDbRow(rs);
-                ueObject.setHasChildrenForClass(rs.getBoolean("has_children"));
-                list.add(ueObject);
+                if (parentObject != null) {
+                    stmt.setInt(2, parentObject.getId());
+                }
+                ResultSet rs = stmt.executeQuery();
+                UEObject ueObject;
+                while (rs.next()) {
+                    ueObject = UEObject.getFromDbRow(rs);
+                    ueObject.setHasChildrenForClass(rs.getBoolean("has_children"));
+                    list.add(ueObject);
+                }
+                rs.close();
             }
-            rs.close();
-            stmt.close();
         } catch (SQLException e) {
             GlobalLogger.log("Error getting objects from class: " + e.toString());
         }
@@ -1022,21 +1124,16 @@ public class DataManager {
 
         // Now load
         try {
-            PreparedStatement stmt = this.dbConn.prepareStatement(
-                    "select o.*, c.name class_name from object o, class c where o.class=c.id and o.name=?");
-            stmt.setString(1, objectName);
-            ResultSet rs = stmt.executeQuery();
-            if (!rs.next()) {
-                return null;
-            }
-            UEObject ueObject = UEObject.getFromDbRow(rs);
-            int classId = rs.getInt("class");
-            if (this.classIdToClass.containsKey(classId)) {
-                ueObject.setUeClass(this.classIdToClass.get(classId));
+            synchronized (this.objectByNameStmt) {
+                this.objectByNameStmt.setString(1, objectName);
+                ResultSet rs = this.objectByNameStmt.executeQuery();
+                UEObject ueObject = null;
+                if (rs.next()) {
+                    ueObject = this.getObjectFromNameRow(rs);
+                }
+                rs.close();
+                return ueObject;
             }
-            rs.close();
-            stmt.close();
-            return ueObject;
         } catch (SQLException e) {
             GlobalLogger.log(e);
             return null;
@@ -1056,6 +1153,21 @@ public class DataManager {
      * @return A Dump object, containing the relevant UEObject and the String dump.
      */
     public Dump getDump(String objectName) {
+        return this.getDump(objectName, true);
+    }
+
+    /**
+     * Given an object name, returns a Dump of the object, if possible.
+     * Dumps which have been viewed recently will be returned from our
+     * dump cache.  Bulk operations (such as searches) which pull in lots
+     * of dumps the user isn't going to look at should pass false for
+     * cacheResult, so that they don't push everything else out of the cache.
+     *
+     * @param objectName The name of the object to dump
+     * @param cacheResult Whether to store the dump in our cache
+     * @return A Dump object, containing the relevant UEObject and the String dump.
+     */
+    public Dump getDump(String objectName, boolean cacheResult) {
 
         // When clicking on in-app links, the objectName will be: ClassType'GD_Class.Path'
         if (objectName.contains("'")) {
@@ -1066,62 +1178,222 @@ public class DataManager {
             objectName = parts[1];
         }
 
+        Dump cached = this.dumpCache.get(objectName, cacheResult);
+        if (cached != null) {
+            return cached;
+        }
+
         // Now load
+        UEObject ueObject;
         try {
-            PreparedStatement stmt = this.dbConn.prepareStatement(
-                    "select o.*, c.name class_name from object o, class c where o.class=c.id and o.name=?");
-            stmt.setString(1, objectName);
-            ResultSet rs = stmt.executeQuery();
-            UEObject ueObject = UEObject.getFromDbRow(rs);
-            if (ueObject.getFileIndex() == 0) {
-                return new Dump(null, "Object not found in database: " + objectName);
+            synchronized (this.objectByNameStmt) {
+                this.objectByNameStmt.setString(1, objectName);
+                ResultSet rs = this.objectByNameStmt.executeQuery();
+                ueObject = null;
+                if (rs.next()) {
+                    ueObject = this.getObjectFromNameRow(rs);
+                }
+                rs.close();
             }
-            int classId = rs.getInt("class");
-            if (this.classIdToClass.containsKey(classId)) {
-                ueObject.setUeClass(this.classIdToClass.get(classId));
+        } catch (SQLException e) {
+            GlobalLogger.log(e);
+            return new Dump(null, "Error getting object from database: " + e.getMessage());
+        }
+        Dump dump = this.readDump(objectName, ueObject);
+        if (cacheResult && dump.ueObject != null) {
+            this.dumpCache.put(objectName, dump);
+        }
+        return dump;
+    }
+
+    /**
+     * Given a collection of object names, returns UEObjects for all of them
+     * which exist in the database, using as few queries as possible.  This is
+     * much faster than calling getObjectByName() in a loop, when there's a lot
+     * of objects to look up.  Names may be in either the plain or the
+     * ClassType'GD_Class.Path' form.
+     *
+     * @param objectNames The names of the objects to look up
+     * @return A map of object names (without class types) to UEObjects, in
+     *  the order they were passed in.  Objects which couldn't be found will
+     *  not be present in the map.
+     */
+    public Map<String, UEObject> getObjectsByName(Collection<String> objectNames) {
+        List<String> names = new ArrayList<>(objectNames.size());
+        for (String objectName : objectNames) {
+            String name = this.stripClassFromObjectName(objectName);
+            if (name != null) {
+                names.add(name);
             }
-            String dataFileName = rs.getString("class_name") + ".dump." + ueObject.getFileIndex();
-            InputStream stream = this.getJarStreamDumps(dataFileName);
-            byte[] data = new byte[ueObject.getBytes()];
-
-            // Skip to the correct spot.  This might be a little overkill, but it
-            // turns out that we *do* have to do this for the calls to stream.read()
-            // down below, so I figure let's make sure this works too.
-            long pos = ueObject.getFilePosition();
-            long totalSkipped = 0;
-            long thisSkipped = 0;
-            thisSkipped = stream.skip(pos-totalSkipped);
-            totalSkipped += thisSkipped;
-            while (totalSkipped != pos && thisSkipped != 0) {
-                thisSkipped = stream.skip(pos-totalSkipped);
-                totalSkipped += thisSkipped;
+        }
+        HashMap<String, UEObject> found = new HashMap<>();
+        try {
+            synchronized (this.objectsByNameBatchStmt) {
+                for (int start = 0; start < names.size(); start += OBJECT_BATCH_SIZE) {
+                    int end = Math.min(start + OBJECT_BATCH_SIZE, names.size());
+                    for (int i = 0; i < OBJECT_BATCH_SIZE; i++) {
+                        // Pad out short batches by repeating the last name
+                        this.objectsByNameBatchStmt.setString(i + 1, names.get(Math.min(start + i, end - 1)));
+                    }
+                    ResultSet rs = this.objectsByNameBatchStmt.executeQuery();
+                    while (rs.next()) {
+                        UEObject ueObject = this.getObjectFromNameRow(rs);
+                        found.put(ueObject.getName().toLowerCase(), ueObject);
+                    }
+                    rs.close();
+                }
             }
-            if (totalSkipped != pos) {
-                return new Dump(null, "Error reading dump: tried to seek to " + pos + " but only got to " + totalSkipped);
+        } catch (SQLException e) {
+            GlobalLogger.log(e);
+        }
+        LinkedHashMap<String, UEObject> results = new LinkedHashMap<>();
+        for (String name : names) {
+            UEObject ueObject = found.get(name.toLowerCase());
+            if (ueObject != null) {
+                results.put(name, ueObject);
             }
+        }
+        return results;
+    }
 
-            // Read the data.  It seems that when reading from a Jarfile, we may
-            // not get all the data at once always, so we're doing this stupid
-            // little loop.  Ah well.
-            int size = ueObject.getBytes();
-            int totalRead = 0;
-            int thisRead = 0;
-            thisRead = stream.read(data, 0, size);
-            totalRead += thisRead;
-            while (totalRead != size && thisRead != -1) {
-                thisRead = stream.read(data, totalRead, size-totalRead);
-                totalRead += thisRead;
+    /**
+     * Given a collection of object names, returns Dumps for all of them.  The
+     * database lookups are batched (see getObjectsByName()), and the object
+     * data is read in datafile order rather than in the order given, which
+     * is friendlier to the disk when there's a lot of them.  As with the
+     * single-object getDump(), objects which couldn't be found or read will
+     * have a Dump with a null UEObject and an error message as its text.
+     *
+     * @param objectNames The names of the objects to dump
+     * @param cacheResult Whether to store the dumps in our cache
+     * @return A map of object names (as passed in) to Dumps, in the order
+     *  they were passed in.
+     */
+    public Map<String, Dump> getDumps(Collection<String> objectNames, boolean cacheResult) {
+        LinkedHashMap<String, Dump> results = new LinkedHashMap<>();
+        HashMap<String, String> toLoad = new HashMap<>();
+        for (String objectName : objectNames) {
+            String name = this.stripClassFromObjectName(objectName);
+            if (name == null) {
+                results.put(objectName, new Dump(null, "Unknown object name format: " + objectName));
+                continue;
             }
-            if (totalRead != size) {
-                return new Dump(null, "Error reading dump: tried to read " + size + " bytes, but only got " + totalRead);
+            Dump cached = this.dumpCache.get(name, cacheResult);
+            results.put(objectName, cached);
+            if (cached == null) {
+                toLoad.put(objectName, name);
+            }
+        }
+        if (toLoad.isEmpty()) {
+            return results;
+        }
+
+        Map<String, UEObject> found = this.getObjectsByName(toLoad.values());
+        List<String> loadOrder = new ArrayList<>(toLoad.keySet());
+        loadOrder.sort((a, b) -> {
+            UEObject objA = found.get(toLoad.get(a));
+            UEObject objB = found.get(toLoad.get(b));
+            int cmp = Integer.compare(getDatafileSortKey(objA), getDatafileSortKey(objB));
+            if (cmp == 0) {
+                cmp = Integer.compare(objA == null ? 0 : objA.getFileIndex(), objB == null ? 0 : objB.getFileIndex());
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(objA == null ? 0 : objA.getFilePosition(), objB == null ? 0 : objB.getFilePosition());
+            }
+            return cmp;
+        });
+        for (String objectName : loadOrder) {
+            String name = toLoad.get(objectName);
+            Dump dump = this.readDump(name, found.get(name));
+            if (cacheResult && dump.ueObject != null) {
+                this.dumpCache.put(name, dump);
+            }
+            results.put(objectName, dump);
+        }
+        return results;
+    }
+
+    /**
+     * Returns a key to group objects by class when sorting them for
+     * getDumps().  Objects we don't have a class for sort at the end.
+     *
+     * @param ueObject The object, which may be null
+     * @return The sort key
+     */
+    private static int getDatafileSortKey(UEObject ueObject) {
+        if (ueObject == null || ueObject.getUeClass() == null) {
+            return Integer.MAX_VALUE;
+        }
+        return ueObject.getUeClass().getId();
+    }
+
+    /**
+     * Strips the class type from an object name in the form
+     * ClassType'GD_Class.Path', if it's present.
+     *
+     * @param objectName The object name
+     * @return The object name without a class type, or null if the name
+     *  couldn't be parsed
+     */
+    private String stripClassFromObjectName(String objectName) {
+        if (objectName.contains("'")) {
+            String[] parts = objectName.split("'");
+            if (parts.length != 2) {
+                return null;
+            }
+            return parts[1];
+        }
+        return objectName;
+    }
+
+    /**
+     * Constructs a UEObject from a result row of one of our object-by-name
+     * queries, linking it up with its UEClass if possible.
+     *
+     * @param rs The ResultSet, already positioned on the row to read
+     * @return The UEObject
+     * @throws SQLException
+     */
+    private UEObject getObjectFromNameRow(ResultSet rs) throws SQLException {
+        UEObject ueObject = UEObject.getFromDbRow(rs);
+        int classId = rs.getInt("class");
+        if (this.classIdToClass.containsKey(classId)) {
+            ueObject.setUeClass(this.classIdToClass.get(classId));
+        }
+        return ueObject;
+    }
+
+    /**
+     * Reads the dump for an object which has already been looked up in the
+     * database.
+     *
+     * @param objectName The name of the object, for error reporting
+     * @param ueObject The object to read, or null if it wasn't found
+     * @return A Dump object, containing the relevant UEObject and the String dump.
+     */
+    private Dump readDump(String objectName, UEObject ueObject) {
+        if (ueObject == null || ueObject.getFileIndex() == 0) {
+            return new Dump(null, "Object not found in database: " + objectName);
+        }
+        if (ueObject.getUeClass() == null) {
+            return new Dump(null, "Unknown class for object: " + objectName);
+        }
+        try {
+            String dataFileName = ueObject.getUeClass().getName() + ".dump." + ueObject.getFileIndex();
+
+            // Read via our extracted/memory-mapped datafiles if we can, and
+            // fall back to reading from the jar directly otherwise.
+            byte[] data;
+            try {
+                data = this.dumpReader.read(dataFileName, ueObject.getFilePosition(), ueObject.getBytes());
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                GlobalLogger.log("Unable to read dump via extracted datafile, falling back to jar: " + e.getMessage());
+                data = this.readDumpFromJar(dataFileName, ueObject);
             }
 
-            rs.close();
-            stmt.close();
             return new Dump(ueObject, new String(data, StandardCharsets.ISO_8859_1));
-        } catch (SQLException e) {
-            GlobalLogger.log(e);
-            return new Dump(null, "Error getting object from database: " + e.getMessage());
         } catch (FileNotFoundException e) {
             return new Dump(null, "Object not found in database: " + objectName);
         } catch (IOException|IndexOutOfBoundsException e) {
@@ -1133,6 +1405,110 @@ public class DataManager {
         }
     }
 
+    /**
+     * Reads an object's dump data straight out of the data jar, by skipping
+     * through the datafile's input stream up to the object's position.  This
+     * is slow for objects near the end of big datafiles, so it's only used as
+     * a fallback when the DumpReader can't extract the datafile.
+     *
+     * @param dataFileName The datafile name
+     * @param ueObject The object to read
+     * @return The object's dump data
+     * @throws IOException
+     */
+    private byte[] readDumpFromJar(String dataFileName, UEObject ueObject) throws IOException {
+        InputStream stream = this.getJarStreamDumps(dataFileName);
+        if (stream == null) {
+            throw new FileNotFoundException("Datafile not found in data jar: " + dataFileName);
+        }
+        byte[] data = new byte[ueObject.getBytes()];
+
+        // Skip to the correct spot.  This might be a little overkill, but it
+        // turns out that we *do* have to do this for the calls to stream.read()
+        // down below, so I figure let's make sure this works too.
+        long pos = ueObject.getFilePosition();
+        long totalSkipped = 0;
+        long thisSkipped = 0;
+        thisSkipped = stream.skip(pos-totalSkipped);
+        totalSkipped += thisSkipped;
+        while (totalSkipped != pos && thisSkipped != 0) {
+            thisSkipped = stream.skip(pos-totalSkipped);
+            totalSkipped += thisSkipped;
+        }
+        if (totalSkipped != pos) {
+            stream.close();
+            throw new IOException("tried to seek to " + pos + " but only got to " + totalSkipped);
+        }
+
+        // Read the data.  It seems that when reading from a Jarfile, we may
+        // not get all the data at once always, so we're doing this stupid
+        // little loop.  Ah well.
+        int size = ueObject.getBytes();
+        int totalRead = 0;
+        int thisRead = 0;
+        thisRead = stream.read(data, 0, size);
+        totalRead += thisRead;
+        while (totalRead != size && thisRead != -1) {
+            thisRead = stream.read(data, totalRead, size-totalRead);
+            totalRead += thisRead;
+        }
+        stream.close();
+        if (totalRead != size) {
+            throw new IOException("tried to read " + size + " bytes, but only got " + totalRead);
+        }
+        return data;
+    }
+
+    /**
+     * Returns the specified attribute for every object in a single datafile,
+     * in the order the objects appear in the datafile.  This is what powers
+     * `getall <class> <attribute>` in Object Explorer.  If the datafile has
+     * already been indexed by our AttributeIndex, only the bytes for the
+     * attribute itself will be read for each object.  Otherwise, the whole
+     * datafile is scanned (and indexed along the way).
+     *
+     * @param ueClass The class whose datafile we're reading
+     * @param fileIndex The datafile index (starting at 1)
+     * @param attrName The attribute name (case-insensitive)
+     * @return The attribute lines for every object in the datafile
+     * @throws IOException
+     */
+    public List<AttributeIndex.AttributeLines> getAttributeLines(UEClass ueClass, int fileIndex, String attrName) throws IOException {
+        String dataFileName = ueClass.getName() + ".dump." + fileIndex;
+        AttributeIndex.AttributeRanges ranges = this.attributeIndex.getRanges(ueClass, fileIndex, attrName);
+        if (ranges != null) {
+            try {
+                ArrayList<AttributeIndex.AttributeLines> results = new ArrayList<>(ranges.objectNames.length);
+                for (int i = 0; i < ranges.objectNames.length; i++) {
+                    List<String> lines;
+                    if (ranges.starts[i] < 0) {
+                        lines = new ArrayList<>();
+                    } else {
+                        lines = AttributeIndex.splitLines(this.dumpReader.read(dataFileName, ranges.starts[i], ranges.lengths[i]));
+                    }
+                    results.add(new AttributeIndex.AttributeLines(ranges.objectNames[i], lines));
+                }
+                return results;
+            } catch (IOException e) {
+                GlobalLogger.log("Unable to read attributes via extracted datafile, falling back to full scan: " + e.getMessage());
+            }
+        }
+
+        AttributeIndex.SegmentBuilder builder = this.attributeIndex.getSegmentBuilder(ueClass, fileIndex);
+        InputStream stream = this.getJarStreamDumps(dataFileName);
+        if (stream == null) {
+            throw new FileNotFoundException("Datafile not found in data jar: " + dataFileName);
+        }
+        List<AttributeIndex.AttributeLines> results;
+        try {
+            results = builder.scan(stream, attrName);
+        } finally {
+            stream.close();
+        }
+        builder.commit();
+        return results;
+    }
+
     /**
      * Return all list of all datafiles containing dumps for the specified
      * UEClass.
@@ -1335,11 +1711,37 @@ public class DataManager {
      * components "smartly."  The given suggestions will replace the entire
      * given query, if chosen.
      *
+     * Once our in-memory ObjectNameIndex is available, results come from
+     * that, and are ranked by how good of a match they are (see that class
+     * for details).  Until then, they come straight from the database, in
+     * alphabetical order.  Either way, only the first
+     * DEEP_AUTOCOMPLETE_MAX_RESULTS are returned.
+     *
      * @param query The currently-typed-in string
      * @param inClass The class to restrict suggestions to
      * @return A list of suggestions
      */
     public List<String> getDeepAutocompleteResults(String query, UEClass inClass) {
+
+        // Use our in-memory index, if it's ready
+        ObjectNameIndex index = this.getObjectNameIndex();
+        if (index != null) {
+            BitSet classes = null;
+            if (inClass != null) {
+                synchronized (this.objectNameIndexClasses) {
+                    classes = this.objectNameIndexClasses.get(inClass);
+                    if (classes == null) {
+                        classes = new BitSet();
+                        for (int id : this.getSubclassIDs(inClass)) {
+                            classes.set(id);
+                        }
+                        this.objectNameIndexClasses.put(inClass, classes);
+                    }
+                }
+            }
+            return index.search(query, classes, DEEP_AUTOCOMPLETE_MAX_RESULTS);
+        }
+
         ArrayList<String> options = new ArrayList<>();
         try {
             // Choose the statement to run and then assign params.  As I mention
@@ -1359,7 +1761,7 @@ public class DataManager {
 
             //GlobalLogger.log("Executing: " + stmt.toString());
             ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
+            while (rs.next() && options.size() < DEEP_AUTOCOMPLETE_MAX_RESULTS) {
                 options.add(rs.getString("name"));
             }
             rs.close();
@@ -1369,6 +1771,53 @@ public class DataManager {
         return options;
     }
 
+    /**
+     * Returns our in-memory object name index, if it's been built.  If it
+     * hasn't, this kicks off building it in the background (if that's not
+     * already happening) and returns null.
+     *
+     * @return The index, or null if it's not ready yet
+     */
+    private ObjectNameIndex getObjectNameIndex() {
+        if (this.objectNameIndex == null) {
+            synchronized (this) {
+                if (!this.objectNameIndexStarted) {
+                    this.objectNameIndexStarted = true;
+                    Thread thread = new Thread(() -> this.buildObjectNameIndex(),
+                            "ObjectNameIndex-" + this.patchType.name());
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            }
+        }
+        return this.objectNameIndex;
+    }
+
+    /**
+     * Reads all our object names out of the database and builds our
+     * in-memory index out of them.
+     */
+    private void buildObjectNameIndex() {
+        long start = System.currentTimeMillis();
+        ObjectNameIndex.Builder builder = new ObjectNameIndex.Builder();
+        try {
+            Statement stmt = this.dbConn.createStatement();
+            ResultSet rs = stmt.executeQuery("select name, class from object order by name");
+            while (rs.next()) {
+                builder.add(rs.getString("name"), rs.getInt("class"));
+            }
+            rs.close();
+            stmt.close();
+        } catch (SQLException e) {
+            GlobalLogger.log("Unable to build object name index for " + this.patchType.name() + ": " + e.toString());
+            return;
+        }
+        this.objectNameIndex = builder.build();
+        GlobalLogger.log("Built object name index for " + this.patchType.name()
+                + " (" + this.objectNameIndex.size() + " objects) in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
     /**
      * Returns autocomplete suggestion for field/attribute names without respect
      * to what class is being chosen -- ie: it'll be a list of all possible
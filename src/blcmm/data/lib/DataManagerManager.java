@@ -95,6 +95,7 @@ public class DataManagerManager {
             }
         }
         this.updateDataManagersSelectedClasses();
+        this.updateDataManagersDumpCacheSize();
         this.setPatchType(currentPatchType);
         dataStatusNotifier.finish();
     }
@@ -147,6 +148,19 @@ public class DataManagerManager {
         }
     }
 
+    /**
+     * Updates all our DataManager objects to use the user-chosen size for
+     * their recently-viewed dump caches.  As with the selected classes above,
+     * calling this on the MainGUI's DMM will also apply to the OE window.
+     */
+    public final void updateDataManagersDumpCacheSize() {
+        for (DataManager dm : this.dataManagers.values()) {
+            if (dm != null) {
+                dm.setDumpCacheSize(Options.INSTANCE.getOEDumpCacheSize());
+            }
+        }
+    }
+
     /**
      * Returns the current PatchType we're using
      *
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package blcmm.data.lib;
+
+import blcmm.data.lib.DataManager.Dump;
+import blcmm.utilities.GlobalLogger;
+import blcmm.utilities.Utilities;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small least-recently-used cache of object dumps, so that bouncing around
+ * between a handful of objects in Object Explorer (via history, bookmarks,
+ * refs results, hyperlinks, etc) doesn't have to go back out to the database
+ * and datafiles every time.
+ *
+ * The cache is bounded by an approximate byte size rather than an entry
+ * count, since dumps vary wildly in size -- most are a few KB, but some
+ * (big levels, mostly) are many MB.  Dumps which are larger than the whole
+ * budget are simply never cached.  A budget of zero disables caching.
+ *
+ * All methods are synchronized, since OE searches may be pulling dumps from
+ * multiple threads at once.
+ *
+ * @author apocalyptech
+ */
+public class DumpCache {
+
+    /**
+     * Rough per-entry overhead beyond the dump text itself, to account for
+     * the key, the Dump and UEObject objects, and the map entry.
+     */
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private final LinkedHashMap<String, Dump> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long curBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a new DumpCache
+     *
+     * @param maxBytes The approximate maximum number of bytes to store
+     */
+    public DumpCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached dump for the given object name, or null if it's not
+     * in the cache.  Only lookups which are actually meant to go through the
+     * cache should be counted in our hit/miss stats -- bulk lookups for
+     * searches, which never store their results here, shouldn't be.
+     *
+     * @param objectName The object name
+     * @param countLookup Whether to count this lookup as a hit or miss
+     * @return The cached dump, or null
+     */
+    public synchronized Dump get(String objectName, boolean countLookup) {
+        Dump dump = this.cache.get(objectName);
+        if (countLookup) {
+            if (dump == null) {
+                this.misses++;
+            } else {
+                this.hits++;
+            }
+        }
+        return dump;
+    }
+
+    /**
+     * Stores a dump in the cache, evicting older entries as needed to stay
+     * within our size budget.
+     *
+     * @param objectName The object name
+     * @param dump The dump to store
+     */
+    public synchronized void put(String objectName, Dump dump) {
+        long size = sizeOf(objectName, dump);
+        if (size > this.maxBytes) {
+            return;
+        }
+        Dump previous = this.cache.put(objectName, dump);
+        if (previous != null) {
+            this.curBytes -= sizeOf(objectName, previous);
+        }
+        this.curBytes += size;
+        this.evict();
+    }
+
+    /**
+     * Sets a new size budget for the cache, evicting entries immediately if
+     * the cache is now too large.
+     *
+     * @param maxBytes The approximate maximum number of bytes to store
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes != this.maxBytes) {
+            this.logStats("resized to " + Utilities.humanReadableByteCount(maxBytes));
+        }
+        this.maxBytes = maxBytes;
+        this.evict();
+    }
+
+    /**
+     * Logs how well the cache has been doing so far, when something's about
+     * to change it.  Nothing is logged if the cache has never been used.
+     *
+     * @param event What's happening to the cache
+     */
+    private void logStats(String event) {
+        if (this.hits + this.misses > 0) {
+            GlobalLogger.log("OE dump cache " + event + " after "
+                    + this.hits + " hits, " + this.misses + " misses ("
+                    + this.cache.size() + " dumps, "
+                    + Utilities.humanReadableByteCount(this.curBytes) + " cached)");
+        }
+    }
+
+    /**
+     * Evicts least-recently-used entries until we're inside our budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Dump>> iter = this.cache.entrySet().iterator();
+        while (this.curBytes > this.maxBytes && iter.hasNext()) {
+            Map.Entry<String, Dump> entry = iter.next();
+            this.curBytes -= sizeOf(entry.getKey(), entry.getValue());
+            iter.remove();
+        }
+    }
+
+    /**
+     * Returns the approximate in-memory size of a cache entry.
+     *
+     * @param objectName The object name
+     * @param dump The dump
+     * @return The approximate size, in bytes
+     */
+    private static long sizeOf(String objectName, Dump dump) {
+        return ENTRY_OVERHEAD + 2L * (objectName.length() + dump.text.length());
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package blcmm.data.lib;
+
+import blcmm.utilities.Utilities;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Random-access reader for object dumps.
+ *
+ * The dump files are stored compressed inside the data jar, and the only way
+ * to get at an object in the middle of one of them via the jar is to open an
+ * input stream and skip() up to the object's position, which means inflating
+ * everything in the file before it.  For objects towards the end of a big
+ * datafile, that's a noticeable delay on every single dump.
+ *
+ * Instead, this class extracts each datafile out of the jar the first time
+ * it's needed (into a directory next to the extracted SQLite database, keyed
+ * by dump version), and then serves object data straight out of a
+ * memory-mapped view of the extracted file.  Lookups after that point are
+ * constant-time regardless of where the object lives in the file.  We only
+ * keep a limited number of files mapped at once; the OS takes care of
+ * paging the actual data in and out.
+ *
+ * If anything goes wrong with extraction (out of disk space, etc), read()
+ * will throw an IOException and DataManager falls back to reading from the
+ * jar directly.
+ *
+ * @author apocalyptech
+ */
+public class DumpReader {
+
+    /**
+     * How many datafiles we'll keep mapped at once.
+     */
+    private static final int MAX_MAPPED_FILES = 64;
+
+    /**
+     * Extra space we'll require to be free on the disk beyond the size of
+     * the datafile we're extracting, same as with the database.
+     */
+    private static final long REQUIRED_FREE_SPACE = 50000000;
+
+    private final JarFile jarFile;
+    private final String dataPathDumps;
+    private final File dumpDir;
+
+    /**
+     * Currently-mapped datafiles, in least-recently-used order.  The buffers
+     * themselves never get their position changed; readers always work on a
+     * duplicate, so this is safe to share between threads.
+     */
+    private final LinkedHashMap<String, ByteBuffer> mappedFiles = new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ByteBuffer> eldest) {
+            return this.size() > MAX_MAPPED_FILES;
+        }
+    };
+
+    /**
+     * Creates a new DumpReader.  Any extracted datafiles for other dump
+     * versions will be removed.
+     *
+     * @param baseDir The base directory in which to extract datafiles
+     * @param dumpVersion The dump version of the data we're reading
+     * @param jarFile The data jar to extract datafiles from
+     * @param dataPathDumps The path inside the jar where datafiles live
+     */
+    public DumpReader(File baseDir, String dumpVersion, JarFile jarFile, String dataPathDumps) {
+        this.jarFile = jarFile;
+        this.dataPathDumps = dataPathDumps;
+        this.dumpDir = DataFileUtilities.getVersionDir(baseDir, dumpVersion, "extracted dumps");
+    }
+
+    /**
+     * Reads the given range of bytes out of the specified datafile,
+     * extracting the datafile from the jar first if required.
+     *
+     * @param dataFileName The datafile name, such as "ItemPoolDefinition.dump.1"
+     * @param position The byte position of the data inside the datafile
+     * @param bytes The number of bytes to read
+     * @return The data
+     * @throws FileNotFoundException If the datafile doesn't exist in the jar
+     * @throws IOException If the data could not be read
+     */
+    public byte[] read(String dataFileName, long position, int bytes) throws IOException {
+        ByteBuffer buffer = this.getBuffer(dataFileName);
+        if (position < 0 || position + bytes > buffer.capacity()) {
+            throw new IOException("Tried to read " + bytes + " bytes at " + position
+                    + " from " + dataFileName + ", which is only " + buffer.capacity() + " bytes");
+        }
+        byte[] data = new byte[bytes];
+        ByteBuffer view = buffer.duplicate();
+        view.position((int)position);
+        view.get(data);
+        return data;
+    }
+
+    /**
+     * Returns a buffer for the given datafile, mapping (and extracting) it
+     * if need be.
+     *
+     * @param dataFileName The datafile name
+     * @return A buffer containing the whole datafile
+     * @throws IOException
+     */
+    private synchronized ByteBuffer getBuffer(String dataFileName) throws IOException {
+        ByteBuffer buffer = this.mappedFiles.get(dataFileName);
+        if (buffer != null) {
+            return buffer;
+        }
+        File dumpFile = this.ensureExtracted(dataFileName);
+        try (FileChannel channel = FileChannel.open(dumpFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Datafile is too large to map: " + dataFileName);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.mappedFiles.put(dataFileName, mapped);
+            return mapped;
+        }
+    }
+
+    /**
+     * Makes sure that the given datafile has been extracted from the jar,
+     * and returns the extracted File.  The file is extracted to a temporary
+     * name and then moved into place, and we compare its size to the jar's
+     * entry to catch any previous partial or corrupt extractions.
+     *
+     * @param dataFileName The datafile name
+     * @return The extracted File
+     * @throws IOException
+     */
+    private File ensureExtracted(String dataFileName) throws IOException {
+        JarEntry entry = this.jarFile.getJarEntry(this.dataPathDumps + "/" + dataFileName);
+        if (entry == null) {
+            throw new FileNotFoundException("Datafile not found in data jar: " + dataFileName);
+        }
+        File dumpFile = new File(this.dumpDir, dataFileName);
+        if (dumpFile.isFile() && (entry.getSize() < 0 || dumpFile.length() == entry.getSize())) {
+            return dumpFile;
+        }
+
+        if (!this.dumpDir.isDirectory() && !this.dumpDir.mkdirs()) {
+            throw new IOException("Could not create dump extraction directory");
+        }
+        long available = this.dumpDir.getFreeSpace();
+        long required = Math.max(entry.getSize(), 0) + REQUIRED_FREE_SPACE;
+        if (required > available) {
+            throw new IOException("Not enough hard drive space to extract " + dataFileName
+                    + ", need " + Utilities.humanReadableByteCount(required)
+                    + " but only have " + Utilities.humanReadableByteCount(available));
+        }
+
+        File tempFile = new File(this.dumpDir, dataFileName + ".tmp");
+        try (InputStream fromJar = this.jarFile.getInputStream(entry);
+                OutputStream toDisk = new FileOutputStream(tempFile)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = fromJar.read(buffer)) != -1) {
+                toDisk.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        Files.move(tempFile.toPath(), dumpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return dumpFile;
+    }
+
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package blcmm.data.lib;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An in-memory index of all the object names in a DataManager's database,
+ * used for "deep" autocompletes.  Those are substring matches against the
+ * full object name, and running them through SQLite means a
+ * `name like '%foo%'` query, which has to scan the entire object table on
+ * every keystroke.
+ *
+ * This is a trigram index: each object name gets broken up into all its
+ * three-character sequences, and for each distinct trigram we keep a list of
+ * the names which contain it.  A query then only has to look at names which
+ * contain all the query's trigrams, which is usually a tiny fraction of
+ * the whole set, and those get checked for a real substring match.  Queries
+ * shorter than three characters can't use the trigrams and just check every
+ * name, which is still reasonably quick since it's all in memory.
+ *
+ * Since there can be a million or so objects in a game's data, this tries
+ * to be careful about memory usage.  Names are stored as UTF-8 bytes in one
+ * big array (rather than as a million String objects), characters are
+ * folded down into a small alphabet so that there's a fixed, fairly small
+ * number of possible trigrams, and each trigram's list of names is stored
+ * as delta-encoded varints.  Matching is case-insensitive for ASCII
+ * characters only, which is the same as SQLite's LIKE.
+ *
+ * Results are ranked rather than just being sorted by name: an exact match
+ * comes first, then names which start with the query, then names where the
+ * query starts one of the name's path components (just after a period or
+ * colon), and then everything else.  Within each of those, shorter names
+ * come first, and then it's alphabetical.  Only the top few results are
+ * returned; anything more than that isn't much use in an autocomplete popup
+ * anyway.
+ *
+ * Once built, an index is read-only, so it's safe to query from multiple
+ * threads at once.
+ *
+ * @author apocalyptech
+ */
+public class ObjectNameIndex {
+
+    /**
+     * Size of the alphabet we fold characters into for trigrams: the 26
+     * letters, ten digits, underscore, period, colon, and "everything else."
+     */
+    private static final int ALPHABET = 40;
+
+    private static final int NUM_TRIGRAMS = ALPHABET * ALPHABET * ALPHABET;
+
+    /**
+     * The alphabet code for each possible byte.
+     */
+    private static final byte[] CODES = new byte[256];
+
+    static {
+        Arrays.fill(CODES, (byte) (ALPHABET - 1));
+        for (int c = 'a'; c <= 'z'; c++) {
+            CODES[c] = (byte) (c - 'a');
+            CODES[c - 'a' + 'A'] = (byte) (c - 'a');
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            CODES[c] = (byte) (26 + c - '0');
+        }
+        CODES['_'] = 36;
+        CODES['.'] = 37;
+        CODES[':'] = 38;
+    }
+
+    private static final int RANK_EXACT = 0;
+    private static final int RANK_PREFIX = 1;
+    private static final int RANK_COMPONENT = 2;
+    private static final int RANK_OTHER = 3;
+
+    /**
+     * All our names, as UTF-8, concatenated together.
+     */
+    private final byte[] nameData;
+
+    /**
+     * The start of each name in nameData.  Has one extra entry at the end, so
+     * that the length of name i is always starts[i+1]-starts[i].
+     */
+    private final int[] starts;
+
+    /**
+     * The class ID of each name's object.
+     */
+    private final int[] classIds;
+
+    /**
+     * For each trigram, the delta-encoded list of names which contain it,
+     * or null if no names do.
+     */
+    private final byte[][] postings;
+
+    /**
+     * For each trigram, how many names contain it.
+     */
+    private final int[] postingCounts;
+
+    private ObjectNameIndex(byte[] nameData, int[] starts, int[] classIds,
+            byte[][] postings, int[] postingCounts) {
+        this.nameData = nameData;
+        this.starts = starts;
+        this.classIds = classIds;
+        this.postings = postings;
+        this.postingCounts = postingCounts;
+    }
+
+    /**
+     * Returns the number of names in the index.
+     *
+     * @return The number of names
+     */
+    public int size() {
+        return this.classIds.length;
+    }
+
+    /**
+     * Returns the best matches for the given query.
+     *
+     * @param query The text to search for, which can appear anywhere in the
+     * object names
+     * @param inClasses If not null, only objects whose class IDs are set in
+     * this BitSet will be returned
+     * @param maxResults The maximum number of results to return
+     * @return The matching object names, best matches first
+     */
+    public List<String> search(String query, BitSet inClasses, int maxResults) {
+        byte[] q = query.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < q.length; i++) {
+            q[i] = lower(q[i]);
+        }
+
+        // Top results so far, as a max-heap of sort keys, so the worst one is
+        // always on top and can be easily replaced.
+        long[] heap = new long[Math.max(maxResults, 1)];
+        int heapSize = 0;
+
+        int[] candidates = this.getCandidates(q);
+        int numCandidates = candidates == null ? this.size() : candidates.length;
+        for (int c = 0; c < numCandidates; c++) {
+            int i = candidates == null ? c : candidates[c];
+            if (inClasses != null && !inClasses.get(this.classIds[i])) {
+                continue;
+            }
+            int rank = this.rank(i, q);
+            if (rank < 0) {
+                continue;
+            }
+            long length = this.starts[i + 1] - this.starts[i];
+            long key = ((long) rank << 60) | (Math.min(length, 0xFFFFFFFL) << 32) | i;
+            if (heapSize < maxResults) {
+                heap[heapSize++] = key;
+                siftUp(heap, heapSize - 1);
+            } else if (maxResults > 0 && key < heap[0]) {
+                heap[0] = key;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        long[] keys = Arrays.copyOf(heap, heapSize);
+        Arrays.sort(keys);
+        List<String> results = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            int i = (int) key;
+            results.add(new String(this.nameData, this.starts[i], this.starts[i + 1] - this.starts[i], StandardCharsets.UTF_8));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the names which contain every trigram in the query, in order,
+     * or null if the query's too short to have any trigrams (in which case
+     * every name is a candidate).
+     *
+     * @param q The lowercased query
+     * @return The candidate name indexes, or null
+     */
+    private int[] getCandidates(byte[] q) {
+        if (q.length < 3) {
+            return null;
+        }
+
+        // Gather up the distinct trigrams, rarest first
+        int[] trigrams = new int[q.length - 2];
+        int numTrigrams = 0;
+        for (int i = 0; i < q.length - 2; i++) {
+            int trigram = trigram(q, i);
+            boolean seen = false;
+            for (int j = 0; j < numTrigrams; j++) {
+                if (trigrams[j] == trigram) {
+                    seen = true;
+                    break;
+                }
+            }
+            if (!seen) {
+                if (this.postings[trigram] == null) {
+                    return new int[0];
+                }
+                trigrams[numTrigrams++] = trigram;
+            }
+        }
+        Integer[] order = new Integer[numTrigrams];
+        for (int i = 0; i < numTrigrams; i++) {
+            order[i] = trigrams[i];
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(this.postingCounts[a], this.postingCounts[b]));
+
+        // Start with the rarest, and then narrow it down with the rest.  Once
+        // we're down to a handful of candidates it's quicker to just check
+        // them directly than to keep decoding the bigger lists.
+        int[] candidates = this.decode(order[0]);
+        for (int t = 1; t < numTrigrams && candidates.length > 64; t++) {
+            candidates = this.intersect(candidates, order[t]);
+        }
+        return candidates;
+    }
+
+    /**
+     * Decodes the full list of names containing the given trigram.
+     */
+    private int[] decode(int trigram) {
+        byte[] data = this.postings[trigram];
+        int[] result = new int[this.postingCounts[trigram]];
+        int pos = 0;
+        int value = -1;
+        for (int i = 0; i < result.length; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value += delta;
+            result[i] = value;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the entries in the given candidate list which also appear in
+     * the list of names containing the given trigram.
+     */
+    private int[] intersect(int[] candidates, int trigram) {
+        byte[] data = this.postings[trigram];
+        int count = this.postingCounts[trigram];
+        int[] result = new int[candidates.length];
+        int found = 0;
+        int c = 0;
+        int pos = 0;
+        int value = -1;
+        for (int i = 0; i < count && c < candidates.length; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value += delta;
+            while (c < candidates.length && candidates[c] < value) {
+                c++;
+            }
+            if (c < candidates.length && candidates[c] == value) {
+                result[found++] = value;
+                c++;
+            }
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    /**
+     * Checks to see if the given name contains the query, and if so, how
+     * good of a match it is.
+     *
+     * @param i The name index
+     * @param q The lowercased query
+     * @return The rank of the match (lower is better), or -1 if the name
+     * doesn't contain the query at all
+     */
+    private int rank(int i, byte[] q) {
+        int start = this.starts[i];
+        int length = this.starts[i + 1] - start;
+        int rank = -1;
+        for (int pos = 0; pos <= length - q.length; pos++) {
+            int j = 0;
+            while (j < q.length && lower(this.nameData[start + pos + j]) == q[j]) {
+                j++;
+            }
+            if (j < q.length) {
+                continue;
+            }
+            if (pos == 0) {
+                return length == q.length ? RANK_EXACT : RANK_PREFIX;
+            }
+            byte prev = this.nameData[start + pos - 1];
+            if (prev == '.' || prev == ':') {
+                return RANK_COMPONENT;
+            }
+            rank = RANK_OTHER;
+        }
+        return rank;
+    }
+
+    private static byte lower(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static int trigram(byte[] data, int pos) {
+        return (CODES[data[pos] & 0xFF] * ALPHABET + CODES[data[pos + 1] & 0xFF]) * ALPHABET
+                + CODES[data[pos + 2] & 0xFF];
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent] >= heap[i]) {
+                break;
+            }
+            long tmp = heap[parent];
+            heap[parent] = heap[i];
+            heap[i] = tmp;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int child = i * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (heap[i] >= heap[child]) {
+                break;
+            }
+            long tmp = heap[child];
+            heap[child] = heap[i];
+            heap[i] = tmp;
+            i = child;
+        }
+    }
+
+    /**
+     * Used to put together an ObjectNameIndex, one name at a time.  Names
+     * should be added in alphabetical order, since that's what's used to
+     * break ties between otherwise-equal results.
+     */
+    public static class Builder {
+
+        private byte[] nameData = new byte[1024 * 1024];
+        private int dataLength = 0;
+        private int[] starts = new int[1024];
+        private int[] classIds = new int[1024];
+        private int count = 0;
+        private final byte[][] postings = new byte[NUM_TRIGRAMS][];
+        private final int[] postingLengths = new int[NUM_TRIGRAMS];
+        private final int[] postingCounts = new int[NUM_TRIGRAMS];
+        private final int[] lastName = new int[NUM_TRIGRAMS];
+
+        public Builder() {
+            Arrays.fill(this.lastName, -1);
+        }
+
+        /**
+         * Adds a name to the index.
+         *
+         * @param name The object name
+         * @param classId The ID of the object's class
+         */
+        public void add(String name, int classId) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (this.dataLength + bytes.length > this.nameData.length) {
+                this.nameData = Arrays.copyOf(this.nameData,
+                        Math.max(this.nameData.length * 2, this.dataLength + bytes.length));
+            }
+            if (this.count + 1 >= this.starts.length) {
+                this.starts = Arrays.copyOf(this.starts, this.starts.length * 2);
+                this.classIds = Arrays.copyOf(this.classIds, this.classIds.length * 2);
+            }
+            System.arraycopy(bytes, 0, this.nameData, this.dataLength, bytes.length);
+            this.starts[this.count] = this.dataLength;
+            this.classIds[this.count] = classId;
+            this.dataLength += bytes.length;
+
+            for (int i = 0; i < bytes.length - 2; i++) {
+                int trigram = trigram(bytes, i);
+                if (this.lastName[trigram] != this.count) {
+                    this.addPosting(trigram, this.count - this.lastName[trigram]);
+                    this.lastName[trigram] = this.count;
+                }
+            }
+            this.count++;
+        }
+
+        private void addPosting(int trigram, int delta) {
+            byte[] data = this.postings[trigram];
+            if (data == null) {
+                data = new byte[16];
+                this.postings[trigram] = data;
+            } else if (this.postingLengths[trigram] + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+                this.postings[trigram] = data;
+            }
+            int pos = this.postingLengths[trigram];
+            while (delta >= 0x80) {
+                data[pos++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[pos++] = (byte) delta;
+            this.postingLengths[trigram] = pos;
+            this.postingCounts[trigram]++;
+        }
+
+        /**
+         * Finishes up and returns the index.  The builder shouldn't be used
+         * after this.
+         *
+         * @return The new index
+         */
+        public ObjectNameIndex build() {
+            int[] finalStarts = Arrays.copyOf(this.starts, this.count + 1);
+            finalStarts[this.count] = this.dataLength;
+            for (int t = 0; t < NUM_TRIGRAMS; t++) {
+                if (this.postings[t] != null) {
+                    this.postings[t] = Arrays.copyOf(this.postings[t], this.postingLengths[t]);
+                }
+            }
+            return new ObjectNameIndex(
+                    Arrays.copyOf(this.nameData, this.dataLength),
+                    finalStarts,
+                    Arrays.copyOf(this.classIds, this.count),
+                    this.postings,
+                    this.postingCounts);
+        }
+
+    }
+
+}
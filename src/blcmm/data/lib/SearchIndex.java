@@ -0,0 +1,551 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package blcmm.data.lib;
+
+import blcmm.utilities.GlobalLogger;
+import blcmm.utilities.Utilities;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An on-disk inverted token index over the object dumps, used to speed up
+ * Object Explorer fulltext searches and refs.
+ *
+ * Without an index, every search has to stream every dump file for every
+ * enabled class out of the data jar and check it line-by-line.  This class
+ * maintains one "segment" file per datafile (so a big class which is split
+ * across several datafiles has several segments, which can be scanned and
+ * indexed independently of each other).  Segments are stored alongside the
+ * extracted SQLite database, under a directory named for the current dump
+ * version, and map lowercased tokens to the objects whose dumps contain them.
+ * A search can then ask for the list of "candidate" objects in a datafile, and
+ * only needs to pull those specific dumps back out via DataManager.getDump()
+ * to do the real (exact) matching.
+ *
+ * Tokens are maximal runs of letters, digits and underscores.  Any run of
+ * those characters inside a search term must show up inside a single token
+ * of a matching line, so a lookup checks the segment's dictionary for tokens
+ * which *contain* each run from the term.  That means the candidate list is
+ * always a superset of the real results, so substring semantics are kept
+ * intact -- we just skip reading objects which can't possibly match.  Terms
+ * with no token characters at all can't be answered by the index, and
+ * regex searches aren't indexed either; those fall back to a full scan.
+ *
+ * Segments aren't built in one big up-front pass (which would take as long as
+ * a search across every category).  Instead, whenever a datafile gets
+ * scanned the old-fashioned way, the scanning code can wrap its reader with a
+ * SegmentBuilder, and the segment gets written out once the whole file has
+ * been read.  So the first search through a category costs the same as it
+ * used to, and subsequent ones use the index.
+ *
+ * @author apocalyptech
+ */
+public class SearchIndex {
+
+    /**
+     * Magic number at the start of each segment file.
+     */
+    private static final int MAGIC = 0x424C4958;
+
+    /**
+     * Version of the segment file format.  Bump this if the format (or the
+     * tokenization rules) ever change, and existing segments will get
+     * rebuilt.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Search-term fragments shorter than this will be ignored if the term
+     * has any longer fragments, since they'd match a huge chunk of the
+     * dictionary without narrowing things down much.
+     */
+    private static final int MIN_FRAGMENT_LENGTH = 3;
+
+    private final File indexDir;
+    private final String dumpVersion;
+    private final HashMap<String, SoftReference<Segment>> segmentCache = new HashMap<>();
+
+    /**
+     * Creates a new SearchIndex object for the given dump version.  Any
+     * segments stored for other dump versions will be removed.
+     *
+     * @param baseDir The base directory in which to store indexes
+     * @param dumpVersion The dump version of the data we're indexing
+     */
+    public SearchIndex(File baseDir, String dumpVersion) {
+        this.dumpVersion = dumpVersion;
+        this.indexDir = DataFileUtilities.getVersionDir(baseDir, dumpVersion, "search index");
+    }
+
+    /**
+     * Returns the name of the datafile for the given class and index, which
+     * is used both as the segment's filename and its cache key.
+     *
+     * @param ueClass The class
+     * @param fileIndex The datafile index (starting at 1)
+     * @return The datafile name
+     */
+    private static String getDatafileName(UEClass ueClass, int fileIndex) {
+        return ueClass.getName() + ".dump." + fileIndex;
+    }
+
+    /**
+     * Returns the file which stores the segment for the given datafile.
+     *
+     * @param ueClass The class
+     * @param fileIndex The datafile index (starting at 1)
+     * @return The segment File
+     */
+    private File getSegmentFile(UEClass ueClass, int fileIndex) {
+        return new File(this.indexDir, getDatafileName(ueClass, fileIndex) + ".idx");
+    }
+
+    /**
+     * Returns whether or not we have an index segment for the given datafile.
+     *
+     * @param ueClass The class to check
+     * @param fileIndex The datafile index (starting at 1)
+     * @return True if the datafile has been indexed
+     */
+    public boolean hasSegment(UEClass ueClass, int fileIndex) {
+        return this.getSegmentFile(ueClass, fileIndex).isFile();
+    }
+
+    /**
+     * Returns a SegmentBuilder which can be used to index the given datafile
+     * while it's being scanned, or null if it has already been indexed.
+     *
+     * @param ueClass The class which is about to be scanned
+     * @param fileIndex The datafile index (starting at 1)
+     * @return A new SegmentBuilder, or null
+     */
+    public SegmentBuilder getSegmentBuilder(UEClass ueClass, int fileIndex) {
+        if (this.hasSegment(ueClass, fileIndex)) {
+            return null;
+        }
+        return new SegmentBuilder(ueClass, fileIndex);
+    }
+
+    /**
+     * Loads (or retrieves from our cache) the segment for the given datafile.
+     * Returns null if the segment doesn't exist or can't be read.  Segments
+     * which are unreadable or which belong to some other dump version will
+     * be deleted so that they get rebuilt on the next scan.
+     *
+     * @param ueClass The class to load
+     * @param fileIndex The datafile index (starting at 1)
+     * @return The Segment, or null
+     */
+    private synchronized Segment getSegment(UEClass ueClass, int fileIndex) {
+        String datafileName = getDatafileName(ueClass, fileIndex);
+        SoftReference<Segment> ref = this.segmentCache.get(datafileName);
+        if (ref != null) {
+            Segment segment = ref.get();
+            if (segment != null) {
+                return segment;
+            }
+        }
+        File segmentFile = this.getSegmentFile(ueClass, fileIndex);
+        if (!segmentFile.isFile()) {
+            return null;
+        }
+        try {
+            Segment segment = Segment.load(segmentFile, this.dumpVersion, datafileName);
+            if (segment == null) {
+                GlobalLogger.log("Discarding mismatched search index segment for " + datafileName);
+                segmentFile.delete();
+                return null;
+            }
+            this.segmentCache.put(datafileName, new SoftReference<>(segment));
+            return segment;
+        } catch (IOException e) {
+            GlobalLogger.log("Error reading search index segment for " + datafileName + ": " + e.toString());
+            segmentFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Given a datafile and a collection of lowercased search terms, all of
+     * which must appear (as substrings) in an object's dump for it to match,
+     * returns the names of objects in the datafile which could possibly match,
+     * in the order they're found in the dump files.  The names will be in the
+     * form ClassName'ObjectName' suitable for passing to DataManager.getDump().
+     *
+     * Returns null if the datafile hasn't been indexed yet, or if any of the
+     * terms can't be resolved via the index.  In that case the caller should
+     * fall back to scanning the datafile directly.
+     *
+     * @param ueClass The class to search
+     * @param fileIndex The datafile index (starting at 1)
+     * @param terms The lowercased terms which must all match
+     * @return A list of candidate object names, or null
+     */
+    public List<String> getCandidates(UEClass ueClass, int fileIndex, Collection<String> terms) {
+        List<List<String>> termFragments = new ArrayList<>();
+        for (String term : terms) {
+            List<String> fragments = getFragments(term);
+            if (fragments.isEmpty()) {
+                return null;
+            }
+            termFragments.add(fragments);
+        }
+        if (termFragments.isEmpty()) {
+            return null;
+        }
+        Segment segment = this.getSegment(ueClass, fileIndex);
+        if (segment == null) {
+            return null;
+        }
+        BitSet result = null;
+        for (List<String> fragments : termFragments) {
+            for (String fragment : fragments) {
+                BitSet docs = segment.getDocsContaining(fragment);
+                if (result == null) {
+                    result = docs;
+                } else {
+                    result.and(docs);
+                }
+                if (result.isEmpty()) {
+                    return new ArrayList<>();
+                }
+            }
+        }
+        ArrayList<String> names = new ArrayList<>(result.cardinality());
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i+1)) {
+            names.add(segment.docNames[i]);
+        }
+        return names;
+    }
+
+    /**
+     * Whether or not the given character counts as part of a token.
+     *
+     * @param c The character to check
+     * @return True if the character is part of a token
+     */
+    private static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * Splits a (lowercased) search term into the token fragments which must
+     * each be found inside some indexed token.  Very short fragments are
+     * dropped if the term has any longer ones.
+     *
+     * @param term The lowercased search term
+     * @return The fragments to look up; empty if the term can't be indexed
+     */
+    static List<String> getFragments(String term) {
+        ArrayList<String> all = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= term.length(); i++) {
+            if (i < term.length() && isTokenChar(term.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                all.add(term.substring(start, i));
+                start = -1;
+            }
+        }
+        ArrayList<String> fragments = new ArrayList<>();
+        String longest = null;
+        for (String fragment : all) {
+            if (fragment.length() >= MIN_FRAGMENT_LENGTH) {
+                fragments.add(fragment);
+            }
+            if (longest == null || fragment.length() > longest.length()) {
+                longest = fragment;
+            }
+        }
+        if (fragments.isEmpty() && longest != null) {
+            fragments.add(longest);
+        }
+        return fragments;
+    }
+
+    /**
+     * A loaded index segment for a single datafile.  The whole segment is held
+     * in memory, though the SearchIndex only keeps SoftReferences to these,
+     * so they can be dropped if memory gets tight.
+     */
+    private static class Segment {
+
+        private final String[] docNames;
+        private final String[] tokens;
+        private final int[] postingCounts;
+        private final int[] postingOffsets;
+        private final byte[] postings;
+
+        private Segment(String[] docNames, String[] tokens, int[] postingCounts, int[] postingOffsets, byte[] postings) {
+            this.docNames = docNames;
+            this.tokens = tokens;
+            this.postingCounts = postingCounts;
+            this.postingOffsets = postingOffsets;
+            this.postings = postings;
+        }
+
+        /**
+         * Loads a segment from disk.  Returns null if the segment was written
+         * for a different dump version, datafile, or file format.
+         *
+         * @param segmentFile The file to load
+         * @param dumpVersion The dump version we expect
+         * @param datafileName The datafile name we expect
+         * @return The loaded Segment, or null
+         * @throws IOException
+         */
+        private static Segment load(File segmentFile, String dumpVersion, String datafileName) throws IOException {
+            byte[] data = Files.readAllBytes(segmentFile.toPath());
+            ByteArrayInputStream bais = new ByteArrayInputStream(data);
+            DataInputStream in = new DataInputStream(bais);
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!in.readUTF().equals(dumpVersion) || !in.readUTF().equals(datafileName)) {
+                return null;
+            }
+            String[] docNames = new String[in.readInt()];
+            for (int i = 0; i < docNames.length; i++) {
+                docNames[i] = in.readUTF();
+            }
+            int numTokens = in.readInt();
+            String[] tokens = new String[numTokens];
+            int[] postingCounts = new int[numTokens];
+            int[] postingOffsets = new int[numTokens];
+            int offset = 0;
+            for (int i = 0; i < numTokens; i++) {
+                tokens[i] = in.readUTF();
+                postingCounts[i] = in.readInt();
+                postingOffsets[i] = offset;
+                offset += in.readInt();
+            }
+            int postingsStart = data.length - bais.available();
+            if (postingsStart + offset != data.length) {
+                throw new IOException("Search index segment is truncated: " + segmentFile.getName());
+            }
+            byte[] postings = Arrays.copyOfRange(data, postingsStart, data.length);
+            return new Segment(docNames, tokens, postingCounts, postingOffsets, postings);
+        }
+
+        /**
+         * Returns the set of documents (by ordinal) which contain any token
+         * which itself contains the given fragment.
+         *
+         * @param fragment The fragment to search for
+         * @return A BitSet of matching document ordinals
+         */
+        private BitSet getDocsContaining(String fragment) {
+            BitSet docs = new BitSet(this.docNames.length);
+            for (int i = 0; i < this.tokens.length; i++) {
+                if (this.tokens[i].contains(fragment)) {
+                    int pos = this.postingOffsets[i];
+                    int doc = 0;
+                    for (int j = 0; j < this.postingCounts[i]; j++) {
+                        int delta = 0;
+                        int shift = 0;
+                        byte b;
+                        do {
+                            b = this.postings[pos++];
+                            delta |= (b & 0x7F) << shift;
+                            shift += 7;
+                        } while ((b & 0x80) != 0);
+                        doc += delta;
+                        docs.set(doc);
+                    }
+                }
+            }
+            return docs;
+        }
+    }
+
+    /**
+     * Collects tokens for a single datafile while it's being scanned, and
+     * writes out the segment once the scan is complete.  A builder should
+     * only ever be used from a single thread.  If the scan gets interrupted,
+     * just don't call commit(), and nothing will be written.
+     */
+    public class SegmentBuilder {
+
+        private final UEClass ueClass;
+        private final int fileIndex;
+        private final ArrayList<String> docNames = new ArrayList<>();
+        private final HashMap<String, IntList> postings = new HashMap<>();
+        private int curDoc = -1;
+
+        private SegmentBuilder(UEClass ueClass, int fileIndex) {
+            this.ueClass = ueClass;
+            this.fileIndex = fileIndex;
+        }
+
+        /**
+         * Wraps the given reader so that every line read through it gets
+         * added to this segment.
+         *
+         * @param reader The reader to wrap
+         * @return A new reader which indexes as it reads
+         */
+        public BufferedReader wrap(BufferedReader reader) {
+            return new BufferedReader(reader) {
+                @Override
+                public String readLine() throws IOException {
+                    String line = super.readLine();
+                    if (line != null) {
+                        addLine(line);
+                    }
+                    return line;
+                }
+            };
+        }
+
+        /**
+         * Adds a single line of dump data to the segment.
+         *
+         * @param line The line to add
+         */
+        public void addLine(String line) {
+            if (line.startsWith("***")) {
+                String name = DataFileUtilities.objectNameFromDumpHeader(line);
+                if (name != null) {
+                    this.docNames.add(name);
+                    this.curDoc = this.docNames.size() - 1;
+                }
+            }
+            if (this.curDoc < 0) {
+                return;
+            }
+            String lower = line.toLowerCase();
+            int start = -1;
+            for (int i = 0; i <= lower.length(); i++) {
+                if (i < lower.length() && isTokenChar(lower.charAt(i))) {
+                    if (start < 0) {
+                        start = i;
+                    }
+                } else if (start >= 0) {
+                    String token = lower.substring(start, i);
+                    IntList list = this.postings.get(token);
+                    if (list == null) {
+                        list = new IntList();
+                        this.postings.put(token, list);
+                    }
+                    list.addIfNew(this.curDoc);
+                    start = -1;
+                }
+            }
+        }
+
+        /**
+         * Writes the segment out to disk.  The data is written to a temporary
+         * file first and then moved into place, so a partially-written
+         * segment will never be picked up.
+         */
+        public void commit() {
+            if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+                GlobalLogger.log("Unable to create search index directory: " + Utilities.hideUserName(indexDir.toString()));
+                return;
+            }
+            String[] tokens = this.postings.keySet().toArray(new String[0]);
+            Arrays.sort(tokens);
+            String datafileName = getDatafileName(this.ueClass, this.fileIndex);
+            File target = getSegmentFile(this.ueClass, this.fileIndex);
+            File temp = new File(indexDir, datafileName + ".idx.tmp");
+            try {
+                ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeUTF(dumpVersion);
+                    out.writeUTF(datafileName);
+                    out.writeInt(this.docNames.size());
+                    for (String name : this.docNames) {
+                        out.writeUTF(name);
+                    }
+                    out.writeInt(tokens.length);
+                    for (String token : tokens) {
+                        IntList list = this.postings.get(token);
+                        int before = postingBytes.size();
+                        int prev = 0;
+                        for (int i = 0; i < list.size; i++) {
+                            DataFileUtilities.writeVarInt(postingBytes, list.values[i] - prev);
+                            prev = list.values[i];
+                        }
+                        out.writeUTF(token);
+                        out.writeInt(list.size);
+                        out.writeInt(postingBytes.size() - before);
+                    }
+                    postingBytes.writeTo(out);
+                }
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                synchronized (SearchIndex.this) {
+                    segmentCache.remove(datafileName);
+                }
+            } catch (IOException e) {
+                GlobalLogger.log("Error writing search index segment for " + datafileName + ": " + e.toString());
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Tiny growable list of ascending ints, used for posting lists while
+     * building a segment, so we don't have to box every document ordinal.
+     */
+    private static class IntList {
+
+        private int[] values = new int[4];
+        private int size = 0;
+
+        /**
+         * Appends the value, unless it's the same as the last value added.
+         * Since document ordinals are only ever increasing while building,
+         * that's enough to keep the list free of duplicates.
+         *
+         * @param value The value to add
+         */
+        private void addIfNew(int value) {
+            if (this.size > 0 && this.values[this.size-1] == value) {
+                return;
+            }
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+    }
+
+}
@@ -23,16 +23,24 @@ import blcmm.gui.theme.ThemeManager;
 import blcmm.model.Category;
 import blcmm.model.CompletePatch;
 import blcmm.model.ModelElement;
+import blcmm.model.PatchCache;
 import blcmm.model.PatchIO;
 import blcmm.model.properties.GlobalListOfProperties;
 import blcmm.utilities.GlobalLogger;
 import blcmm.utilities.ImportAnomalyLog;
+import blcmm.utilities.Options;
+import blcmm.utilities.Utilities;
 import java.io.File;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.SwingWorker;
@@ -47,6 +55,7 @@ public class GUI_IO_Handler {
     public static MainGUI MASTER_UI;
     public static ProgressDialog progressMeter = null;
     public static FontInfo fontInfo;
+    private static PatchCache patchCache = null;
 
     /**
      * Given a "modname" read from the mod itself, and the mod's filename,
@@ -103,9 +112,26 @@ public class GUI_IO_Handler {
     }
 
     static CompletePatch parseFile(File f) {
+        return parseFile(f, false);
+    }
+
+    /**
+     * Parses the given file, reporting any errors to the user.
+     *
+     * @param f The file to parse
+     * @param useCache Whether to use the patch cache (if the user hasn't
+     * disabled it).  This is meant for opening patch files; imports always
+     * parse the file directly.
+     * @return The parsed patch, or null if there was an error
+     */
+    static CompletePatch parseFile(File f, boolean useCache) {
         CompletePatch newpatch = null;
         try {
-            newpatch = PatchIO.parse(f);
+            if (useCache && Options.INSTANCE.getUsePatchCache()) {
+                newpatch = getPatchCache().parse(f);
+            } else {
+                newpatch = PatchIO.parse(f);
+            }
         } catch (Exception ex) {
             GlobalLogger.log(ex);
             String message = ex.getMessage();
@@ -127,6 +153,13 @@ public class GUI_IO_Handler {
         return newpatch;
     }
 
+    private static PatchCache getPatchCache() {
+        if (patchCache == null) {
+            patchCache = new PatchCache(Paths.get(Utilities.getBLCMMDataDir(), "patchcache").toFile());
+        }
+        return patchCache;
+    }
+
     private static CompletePatch parseString(String string) {
         CompletePatch newpatch = null;
         try {
@@ -221,6 +254,12 @@ public class GUI_IO_Handler {
      * set up a progress bar to show to the user, and then call out to the
      * private addModsLoop() to actually run the imports.
      *
+     * Parsing the files is the slow part of an import, and each file can be
+     * parsed independently, so we kick off parsing for all of them at once
+     * on a thread pool, and addModsLoop() then waits for each file's results
+     * in turn as it adds them to the patch.  Adding mods to the patch still
+     * happens one at a time, in the same order as before.
+     *
      * @param mods List of files to import
      * @param patch The patch in which the imported mods should go
      * @param parentOfMods What category inside the patch to put the mods
@@ -268,7 +307,15 @@ public class GUI_IO_Handler {
             SwingWorker worker = new SwingWorker() {
                 @Override
                 protected Integer doInBackground() {
-                    return addModsLoop(mods, patch, parentOfMods, insertIndex, deselectAll);
+                    int threads = Math.max(1, Math.min(fileCount, Runtime.getRuntime().availableProcessors()));
+                    ExecutorService pool = Executors.newFixedThreadPool(threads);
+                    try {
+                        Map<File, Future<CompletePatch>> parses = new HashMap<>();
+                        startParsing(mods, pool, parses);
+                        return addModsLoop(mods, patch, parentOfMods, insertIndex, deselectAll, parses);
+                    } finally {
+                        pool.shutdownNow();
+                    }
                 }
 
                 @Override
@@ -348,6 +395,50 @@ public class GUI_IO_Handler {
         return count;
     }
 
+    /**
+     * Sorts the given files into the order in which we import them.
+     *
+     * @param mods The files to sort
+     */
+    private static void sortForImport(File[] mods) {
+        // For some reason we have to sort these backwards?
+        Arrays.sort(mods, (f1, f2) -> f2.getName().compareToIgnoreCase(f1.getName()));
+    }
+
+    /**
+     * Returns whether we should attempt to parse the given (non-directory)
+     * file as a mod.
+     *
+     * @param f The file to check
+     * @return True if we should try to parse it
+     */
+    private static boolean isParseable(File f) {
+        String name = f.getName();
+        return !name.endsWith(".py")
+                && !name.endsWith(".rar") && !name.endsWith(".jar")
+                && !name.endsWith(".exe") && !name.endsWith(".pdf");
+    }
+
+    /**
+     * Submits all the mod files we're going to import to the given executor
+     * for parsing, recursing into directories.  Files are submitted in the
+     * same order that addModsLoop() will want them.
+     *
+     * @param mods A list of File objects to import (could be files and/or dirs)
+     * @param pool The executor to parse the files with
+     * @param parses A map to store the parse results in
+     */
+    private static void startParsing(File[] mods, ExecutorService pool, Map<File, Future<CompletePatch>> parses) {
+        sortForImport(mods);
+        for (File f : mods) {
+            if (f.isDirectory()) {
+                startParsing(f.listFiles(), pool, parses);
+            } else if (isParseable(f)) {
+                parses.put(f, pool.submit(() -> parseFile(f)));
+            }
+        }
+    }
+
     /**
      * Main file-based mod import procedure. Will loop back on itself to
      * recursively loop through directories as they're detected.
@@ -357,13 +448,14 @@ public class GUI_IO_Handler {
      * @param parentOfMods The Category in which to put all the mods
      * @param insertIndex The index in the category to place the mods
      * @param deselectAll Whether or not to deselect the mods when importing
+     * @param parses The in-progress parses of our files, from startParsing()
      * @return
      */
     private static int addModsLoop(File[] mods, CompletePatch patch,
-            Category parentOfMods, int insertIndex, boolean deselectAll) {
+            Category parentOfMods, int insertIndex, boolean deselectAll,
+            Map<File, Future<CompletePatch>> parses) {
         int count = 0;
-        // For some reason we have to sort these backwards?
-        Arrays.sort(mods, (f1, f2) -> f2.getName().compareToIgnoreCase(f1.getName()));
+        sortForImport(mods);
         for (File f : mods) {
             if (f.isDirectory()) {
                 Category newLocation = null;
@@ -377,7 +469,7 @@ public class GUI_IO_Handler {
                     newLocation = new Category(f.getName());
                     patch.insertElementInto(newLocation, parentOfMods);
                 }
-                count += addModsLoop(f.listFiles(), patch, newLocation, newLocation.sizeIncludingHotfixes(), deselectAll);
+                count += addModsLoop(f.listFiles(), patch, newLocation, newLocation.sizeIncludingHotfixes(), deselectAll, parses);
             } else {
                 String name = f.getName();
                 if (name.endsWith(".py")) {
@@ -386,11 +478,9 @@ public class GUI_IO_Handler {
                             name + " is a Python script (possibly an SDK mod), and not managed via BLCMM",
                             null
                     ));
-                } else {
-                    if (!name.endsWith(".rar") && !name.endsWith(".jar") && !name.endsWith(".exe") && !name.endsWith(".pdf")) {
-                        int newCount = addSingleMod(f, patch, parentOfMods, insertIndex, deselectAll);
-                        count += newCount;
-                    }
+                } else if (isParseable(f)) {
+                    int newCount = addSingleMod(f, parses.get(f), patch, parentOfMods, insertIndex, deselectAll);
+                    count += newCount;
                 }
             }
         }
@@ -427,16 +517,26 @@ public class GUI_IO_Handler {
      * subcategories individually, or continue with nesting a new "mods" folder.
      *
      * @param file The file to load from
+     * @param parse The in-progress parse of the file, or null to parse it now
      * @param containingPatch
      * @param whereToPutMod The Category where the imported mod should go
      * @return The number of mods successfully imported (generally zero or one,
      * though if a multi-mod mod file is detected, it could be more)
      */
-    private static int addSingleMod(File file, CompletePatch containingPatch, Category whereToPutMod, int insertIndex, boolean deselectAll) {
+    private static int addSingleMod(File file, Future<CompletePatch> parse, CompletePatch containingPatch, Category whereToPutMod, int insertIndex, boolean deselectAll) {
         if (progressMeter != null) {
             progressMeter.incrementProgress("<html><tt>" + file.getName() + "</tt>");
         }
-        CompletePatch mod = parseFile(file);
+        CompletePatch mod = null;
+        if (parse == null) {
+            mod = parseFile(file);
+        } else {
+            try {
+                mod = parse.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                GlobalLogger.log(ex);
+            }
+        }
         return addModInternal(mod, containingPatch, whereToPutMod, file.getName(), insertIndex, deselectAll);
     }
 
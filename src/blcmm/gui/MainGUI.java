@@ -40,6 +40,8 @@ import blcmm.gui.panels.SetupGameFilesPanel;
 import blcmm.gui.theme.Theme;
 import blcmm.gui.theme.ThemeManager;
 import blcmm.gui.tree.CheckBoxTree;
+import blcmm.gui.tree.TreeQuery;
+import blcmm.gui.tree.TreeQueryDialog;
 import blcmm.gui.tree.rightmouse.RightMouseButtonAction;
 import blcmm.model.Category;
 import blcmm.model.CompletePatch;
@@ -71,19 +73,25 @@ import java.awt.event.MouseEvent;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.AbstractAction;
@@ -134,11 +142,14 @@ public final class MainGUI extends ForceClosingJFrame {
     private CompletePatch patch;
     private SwingWorker backupThread;
     private SwingWorker versionCheckThread;
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+    private final List<SaveWorker> pendingSaves = new ArrayList<>();
     private boolean disposed = false;
     private boolean startedMaximized = false;
     private PatchType openedType;
     private JMenu fileHistoryMenu;
     private JTextField searchField;
+    private TreeQueryDialog treeQueryDialog = null;
     private String newVersion = null;
 
     private boolean editWindowOpen = false;
@@ -326,7 +337,10 @@ public final class MainGUI extends ForceClosingJFrame {
         searchField = new DefaultTextTextField("Search", MainGUI.fontInfo);
         searchField.setColumns(10);
         searchField.setBorder(new BevelBorder(BevelBorder.RAISED));
-        searchField.setToolTipText("Hold shift/ctrl while pressing enter to also search code, not just categories");
+        searchField.setToolTipText("<html>Hold shift/ctrl while pressing enter to also search code, not just categories<br/>"
+                + "Hold alt while pressing enter to go back to the previous result<br/><br/>"
+                + "For a more detailed search, use /regex/ or object:, field:, value: and hotfix:<br/>"
+                + "(patch, level, ondemand, any or none), which will show all results in a new window");
         cs.insets.right = 5;
         cs.gridx--;
 
@@ -336,13 +350,26 @@ public final class MainGUI extends ForceClosingJFrame {
             public void keyReleased(KeyEvent e) {
                 if (e.getKeyCode() == KeyEvent.VK_ENTER) {
                     String st = searchField.getText();
-                    if (st.length() > 2) {
+                    if (st.length() > 2 && TreeQuery.isQuery(st)) {
+                        TreeQuery query;
+                        try {
+                            query = new TreeQuery(st);
+                        } catch (IllegalArgumentException ex) {
+                            getTimedLabel().showTemporary("Invalid search: " + ex.getMessage());
+                            return;
+                        }
+                        if (treeQueryDialog == null) {
+                            treeQueryDialog = new TreeQueryDialog(MainGUI.this, getTree());
+                        }
+                        treeQueryDialog.search(st, query);
+                    } else if (st.length() > 2) {
                         CheckBoxTree tree = getTree();
                         int modifiers = e.getModifiersEx();
                         int[] res = tree.search(st, (
                                 ((modifiers & InputEvent.CTRL_DOWN_MASK) == InputEvent.CTRL_DOWN_MASK)
                                 || ((modifiers & InputEvent.SHIFT_DOWN_MASK) == InputEvent.SHIFT_DOWN_MASK)
-                        )); // idx 0 = current, idx 1 = total
+                        ), (modifiers & InputEvent.ALT_DOWN_MASK) == InputEvent.ALT_DOWN_MASK
+                        ); // idx 0 = current, idx 1 = total
                         getTimedLabel().showTemporary("result " + res[0] + " of " + res[1]);
                     }
                 }
@@ -404,10 +431,10 @@ public final class MainGUI extends ForceClosingJFrame {
                         }
                     }
                     final File f = currentFile == null ? new File("New File") : currentFile;
-                    AutoBackupper.backup(f, new AutoBackupper.Backupable() {
+                    Future<File> backup = AutoBackupper.backup(f, new AutoBackupper.Backupable() {
                         @Override
                         public void write(BufferedWriter writer) throws IOException {
-                            PatchIO.writeToFile(patch, writer, false);
+                            PatchIO.writeToFile(snapshotPatch(), writer, false);
                         }
 
                         @Override
@@ -415,7 +442,14 @@ public final class MainGUI extends ForceClosingJFrame {
                             return getTree().isChanged();
                         }
                     });
-                    ((TimedLabel) timedLabel).showTemporary("Made backup of mod");
+                    try {
+                        if (backup.get() != null) {
+                            ((TimedLabel) timedLabel).showTemporary("Made backup of mod");
+                        }
+                    } catch (ExecutionException e) {
+                        GlobalLogger.log("Unable to make backup of mod:");
+                        GlobalLogger.log(e.getCause());
+                    }
                 }
                 return null;
             }
@@ -424,6 +458,27 @@ public final class MainGUI extends ForceClosingJFrame {
         return thread;
     }
 
+    /**
+     * Takes a snapshot of the patch we're editing, which can then be safely
+     * written out from another thread.  The snapshot itself is always taken
+     * on the Swing event thread, since that's where the patch gets edited.
+     *
+     * @return A snapshot of our patch
+     * @throws IOException If we were unable to take the snapshot
+     */
+    private CompletePatch snapshotPatch() throws IOException {
+        if (SwingUtilities.isEventDispatchThread()) {
+            return patch.snapshot();
+        }
+        CompletePatch[] snapshot = new CompletePatch[1];
+        try {
+            SwingUtilities.invokeAndWait(() -> snapshot[0] = patch.snapshot());
+        } catch (InterruptedException | InvocationTargetException ex) {
+            throw new IOException("Unable to take snapshot of mod", ex);
+        }
+        return snapshot[0];
+    }
+
     /**
      * Starts up a new thread to check for a new version in the background.
      * There are plenty of opportunities here for an incorrectly-formatted
@@ -564,7 +619,6 @@ public final class MainGUI extends ForceClosingJFrame {
                             AdHocDialog.ButtonSet.YES_NO);
                     if (confirm == AdHocDialog.Button.YES) {
                         opened = openPatch(backupFile);
-                        currentFile = backupFile;
                     }
                 }
             }
@@ -1351,6 +1405,8 @@ public final class MainGUI extends ForceClosingJFrame {
         if (INSTANCE.versionCheckThread != null) {
             INSTANCE.versionCheckThread.cancel(true);
         }
+        INSTANCE.waitForPendingSaves();
+        INSTANCE.saveExecutor.shutdown();
         disposed = true;
         super.dispose();//Will delete log
     }
@@ -1395,6 +1451,8 @@ public final class MainGUI extends ForceClosingJFrame {
      * @return True if we have permission to proceed, False otherwise.
      */
     public boolean promptUnsavedContinue() {
+        // If a save is still going, see how it turned out first.
+        this.waitForPendingSaves();
         if (((CheckBoxTree) jTree1).isChanged()) {
             AdHocDialog.Button x = AdHocDialog.run(this,
                     MainGUI.fontInfo,
@@ -1407,7 +1465,7 @@ public final class MainGUI extends ForceClosingJFrame {
                 case NO:
                     return true;
                 case YES:
-                    return this.saveAction();
+                    return this.saveAction(true);
                 case CANCEL:
                 default:
                     return false;
@@ -1508,9 +1566,26 @@ public final class MainGUI extends ForceClosingJFrame {
         if (f == null || !f.exists()) {
             return false;
         }
+        if (AutoBackupper.isBackup(f)) {
+            // Backups are compressed, so write it back out as a regular
+            // patch and open that instead.
+            try {
+                f = AutoBackupper.restore(f);
+            } catch (IOException e) {
+                GlobalLogger.log("Unable to restore backup " + f.getName() + ": " + e.getMessage());
+                GlobalLogger.log(e);
+                AdHocDialog.run(this,
+                        MainGUI.fontInfo,
+                        AdHocDialog.IconType.ERROR,
+                        "Unable to restore backup",
+                        "<html>The backup " + f.getName() + " could not be restored:<br/><br/>"
+                        + e.getMessage());
+                return false;
+            }
+        }
         ImportAnomalyLog.INSTANCE.clear();
         long start = System.currentTimeMillis();
-        CompletePatch newpatch = GUI_IO_Handler.parseFile(f);
+        CompletePatch newpatch = GUI_IO_Handler.parseFile(f, true);
         if (newpatch == null) {
             return false;
         }
@@ -1585,24 +1660,49 @@ public final class MainGUI extends ForceClosingJFrame {
     }
 
     /**
-     * Function to save our patch.
+     * Function to save our patch.  The save happens in the background.
      *
-     * @return True if the patch was successfully saved, False otherwise.
+     * @return True if the patch save was started, False otherwise.
      */
     private boolean saveAction() {
+        return this.saveAction(false);
+    }
+
+    /**
+     * Function to save our patch.
+     *
+     * @param wait Whether to wait for the save to finish, rather than letting
+     * it happen in the background
+     * @return True if the patch was successfully saved (or, if not waiting,
+     * if the save was started), False otherwise.
+     */
+    private boolean saveAction(boolean wait) {
         if (currentFile != null && currentFile.exists()) {
-            return savePatch(patch, currentFile, false);
+            return savePatch(patch, currentFile, false, wait);
         } else {
-            return saveToFileAction();
+            return saveToFileAction(wait);
         }
     }
 
     /**
-     * Function to save to a specific filename ("save as").
+     * Function to save to a specific filename ("save as").  The save happens
+     * in the background.
      *
-     * @return True if the patch was successfully saved, False otherwise.
+     * @return True if the patch save was started, False otherwise.
      */
     private boolean saveToFileAction() {
+        return this.saveToFileAction(false);
+    }
+
+    /**
+     * Function to save to a specific filename ("save as").
+     *
+     * @param wait Whether to wait for the save to finish, rather than letting
+     * it happen in the background
+     * @return True if the patch was successfully saved (or, if not waiting,
+     * if the save was started), False otherwise.
+     */
+    private boolean saveToFileAction(boolean wait) {
         BLCMM_FileChooser fc;
         if (currentFile != null && currentFile.exists()) {
             fc = new BLCMM_FileChooser(MainGUI.fontInfo, this.getOpenDialogPath(), currentFile.getName(), true, true);
@@ -1615,7 +1715,7 @@ public final class MainGUI extends ForceClosingJFrame {
         if (returnVal == JFileChooser.APPROVE_OPTION) {
             File file = fc.getSelectedFile();
             currentFile = file;
-            boolean result = savePatch(patch, file, false);
+            boolean result = savePatch(patch, file, false, wait);
             if (result) {
                 addCurrentFileToFrontOfPreviousFiles();
             }
@@ -1626,17 +1726,37 @@ public final class MainGUI extends ForceClosingJFrame {
     }
 
     /**
-     * Saves a patch file out to the specified file.  Runs various sanity checks
-     * given the current state of the patch in the GUI, and handles the work
-     * of opening the file for writing.  The actual file contents are all handled
-     * in PatchIO via the writeToFile method.
+     * Saves a patch file out to the specified file, in the background.  See
+     * the other savePatch for details.
      *
      * @param patch The patchset to save
      * @param file The file to save to
      * @param exporting Whether or not we're exporting a mod
-     * @return Whether or not the file was actually saved
+     * @return Whether or not the file save was started
      */
     public boolean savePatch(CompletePatch patch, File file, boolean exporting) {
+        return this.savePatch(patch, file, exporting, false);
+    }
+
+    /**
+     * Saves a patch file out to the specified file.  Runs various sanity checks
+     * given the current state of the patch in the GUI, and then takes a
+     * snapshot of the patch which gets written out on our save thread, so
+     * the user can keep on editing while a large mod is saved.  The actual
+     * file contents are all handled in PatchIO via the writeToFile method.
+     *
+     * Unless `wait` is set, this returns as soon as the save has been
+     * started, and any problems are reported to the user once the save
+     * finishes.
+     *
+     * @param patch The patchset to save
+     * @param file The file to save to
+     * @param exporting Whether or not we're exporting a mod
+     * @param wait Whether to wait for the save to finish before returning
+     * @return Whether or not the file was actually saved (or, if not waiting,
+     * whether the save was started)
+     */
+    public boolean savePatch(CompletePatch patch, File file, boolean exporting, boolean wait) {
         if (patch != null && openedType != null) {
             if (patch.getType() != openedType) {
                 AdHocDialog.Button choice = AdHocDialog.run(this,
@@ -1668,14 +1788,10 @@ public final class MainGUI extends ForceClosingJFrame {
         }
         if (exporting) {
             exportPath = file;
-            this.getTimedLabel().showTemporary(
-                    "<html>Exported to <tt>" + file.getName() + "</tt>");
         } else {//saving
             currentFile = file;
             String filename2 = truncateFileName(file, Options.INSTANCE.getFilenameTruncationLength());
             this.updateTitle(filename2);
-            getTimedLabel().putString("saveStatus", createNewDynamicString(true), 3);
-            getTimedLabel().showTemporary("Mod saved", ThemeManager.getColor(ThemeManager.ColorType.UIText));
             addCurrentFileToFrontOfPreviousFiles();
         }
         if (file.exists() && !file.canWrite()) {
@@ -1690,10 +1806,89 @@ public final class MainGUI extends ForceClosingJFrame {
                 file.setWritable(true, true);
             }
         }
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-            List<String> res = PatchIO.writeToFile(patch, bw, exporting);
-            bw.close();
-            ((CheckBoxTree) jTree1).setChanged(false);
+
+        // Any changes made from here on out will be after our snapshot, and
+        // will mark the tree as changed again.  If the save fails, we'll put
+        // the changed flag back.
+        SaveWorker worker = new SaveWorker(patch.snapshot(), file, exporting);
+        ((CheckBoxTree) jTree1).setChanged(false);
+        pendingSaves.add(worker);
+        if (!exporting) {
+            getTimedLabel().putString("saveStatus", createNewDynamicString(true), 3);
+        }
+        saveExecutor.execute(worker);
+        if (wait) {
+            return this.waitForPendingSaves();
+        }
+        return true;
+    }
+
+    /**
+     * Background task which writes out a patch snapshot on our save thread.
+     * Once it's done, the results get reported back to the user via
+     * reportSaveResult, unless someone's already waited on it with
+     * waitForPendingSaves.
+     */
+    private class SaveWorker extends SwingWorker<List<String>, Object> {
+
+        private final CompletePatch snapshot;
+        private final File file;
+        private final boolean exporting;
+        private final CompletePatch livePatch;
+
+        SaveWorker(CompletePatch snapshot, File file, boolean exporting) {
+            this.snapshot = snapshot;
+            this.file = file;
+            this.exporting = exporting;
+            this.livePatch = MainGUI.this.patch;
+        }
+
+        @Override
+        protected List<String> doInBackground() throws Exception {
+            return PatchIO.writeToFile(snapshot, file, exporting);
+        }
+
+        @Override
+        protected void done() {
+            if (pendingSaves.remove(this)) {
+                reportSaveResult(this);
+            }
+        }
+
+    }
+
+    /**
+     * Waits for any saves which are still in progress, and reports their
+     * results to the user.  Called before we do anything which needs the
+     * file to actually be written, like quitting.
+     *
+     * @return True if all the saves succeeded, False otherwise
+     */
+    private boolean waitForPendingSaves() {
+        boolean result = true;
+        while (!pendingSaves.isEmpty()) {
+            result &= reportSaveResult(pendingSaves.remove(0));
+        }
+        return result;
+    }
+
+    /**
+     * Reports the result of a save to the user, waiting for it to finish
+     * first if need be.  A failed save will mark the tree as changed again,
+     * so long as it's still showing the patch we tried to save.
+     *
+     * @param worker The save to report on
+     * @return True if the save succeeded, False otherwise
+     */
+    private boolean reportSaveResult(SaveWorker worker) {
+        try {
+            List<String> res = worker.get();
+            if (worker.exporting) {
+                this.getTimedLabel().showTemporary(
+                        "<html>Exported to <tt>" + worker.file.getName() + "</tt>");
+            } else {
+                getTimedLabel().showTemporary("Mod saved", ThemeManager.getColor(ThemeManager.ColorType.UIText));
+            }
             if (res.size() > 0) {
                 StringBuilder sb = new StringBuilder();
                 sb.append("<html>The following warnings occurred while writing:</br>");
@@ -1710,13 +1905,17 @@ public final class MainGUI extends ForceClosingJFrame {
                         "Warning",
                         sb.toString());
             }
-        } catch (IOException ex) {
-            GlobalLogger.log(ex);
+        } catch (InterruptedException | ExecutionException ex) {
+            Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+            GlobalLogger.log(cause);
+            if (worker.livePatch == this.patch) {
+                ((CheckBoxTree) jTree1).setChanged(true, Collections.emptyList());
+            }
             AdHocDialog.run(this,
                     MainGUI.fontInfo,
                     AdHocDialog.IconType.ERROR,
                     "Save Error",
-                    "<html>An error was encountered while saving the file:<br/><br/>" + ex.getMessage());
+                    "<html>An error was encountered while saving the file:<br/><br/>" + cause.getMessage());
             return false;
         }
         return true;
@@ -2006,6 +2205,9 @@ public final class MainGUI extends ForceClosingJFrame {
             if (ObjectExplorer.INSTANCE != null) {
                 ObjectExplorer.INSTANCE.updateFontsizes();
             }
+            if (treeQueryDialog != null) {
+                treeQueryDialog.updateFont();
+            }
         }
     }
 
@@ -2256,6 +2458,9 @@ public final class MainGUI extends ForceClosingJFrame {
 
             @Override
             public String toString() {
+                if (!pendingSaves.isEmpty()) {
+                    return "Saving " + (currentFile == null ? "new file" : Utilities.hideUserName(currentFile.getName())) + "...";
+                }
                 if (!((CheckBoxTree) jTree1).isChanged()) {
                     return "No changes since " + (save ? "last save" : "opening file");
                 }
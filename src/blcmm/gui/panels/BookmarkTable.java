@@ -19,7 +19,7 @@
 package blcmm.gui.panels;
 
 import blcmm.data.lib.DataManager;
-import blcmm.data.lib.DataManager.Dump;
+import blcmm.data.lib.UEObject;
 import blcmm.gui.FontInfo;
 import blcmm.gui.ObjectExplorer;
 import blcmm.gui.theme.ThemeManager;
@@ -36,6 +36,7 @@ import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.IntStream;
 import javax.swing.AbstractAction;
 import javax.swing.DefaultRowSorter;
@@ -201,6 +202,17 @@ public class BookmarkTable extends JTable {
         clearSelection();
         final String[] header = new String[]{"Class", "Object", ""};
         String[][] data = new String[bookmarks.length][2];
+
+        // Bookmarks without a class type need a database lookup to find the
+        // class; do all of those at once.
+        List<String> needsClass = new ArrayList<>();
+        for (String bookmark : bookmarks) {
+            if (bookmark.indexOf("'") == -1 && bookmark.contains(".")) {
+                needsClass.add(bookmark);
+            }
+        }
+        Map<String, UEObject> bookmarkObjects = this.dm.getObjectsByName(needsClass);
+
         for (int i = 0; i < bookmarks.length; i++) {
             int idx = bookmarks[i].indexOf("'");
             if (idx != -1) {
@@ -208,9 +220,9 @@ public class BookmarkTable extends JTable {
                 data[i][1] = bookmarks[i].substring(idx + 1, bookmarks[i].indexOf("'", idx + 1));
             } else if (bookmarks[i].contains(".")) {
                 data[i][1] = bookmarks[i];
-                Dump dump = this.dm.getDump(bookmarks[i]);
-                if (dump.ueObject != null && dump.ueObject.getUeClass() != null) {
-                    data[i][0] = dump.ueObject.getUeClass().getName();
+                UEObject ueObject = bookmarkObjects.get(bookmarks[i]);
+                if (ueObject != null && ueObject.getUeClass() != null) {
+                    data[i][0] = ueObject.getUeClass().getName();
                 } else {
                     data[i][0] = "";
                 }
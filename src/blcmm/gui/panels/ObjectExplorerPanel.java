@@ -19,9 +19,11 @@
 package blcmm.gui.panels;
 
 import blcmm.Meta;
+import blcmm.data.lib.AttributeIndex;
 import blcmm.data.lib.DataManager;
 import blcmm.data.lib.DataManager.Dump;
 import blcmm.data.lib.DataManagerManager;
+import blcmm.data.lib.SearchIndex;
 import blcmm.data.lib.UEClass;
 import blcmm.data.lib.UEObject;
 import blcmm.gui.FontInfo;
@@ -57,6 +59,7 @@ import java.awt.event.MouseEvent;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -69,6 +72,10 @@ import java.util.StringJoiner;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -91,7 +98,6 @@ import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
 
 /**
  *
@@ -107,9 +113,11 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
         public Dump dump;
         private int caret;
         private Point viewport;
+        private String resultsHeader;
+        private List<String> results;
 
         HistoryEntry(String query, String text) {
-            this(query, text, null);
+            this(query, text, (Dump) null);
         }
 
         HistoryEntry(String query, String text, Dump dump) {
@@ -117,6 +125,20 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
             this.text = text;
             this.dump = dump;
         }
+
+        /**
+         * A history entry for a finished search, whose results are shown in
+         * our results list rather than in the main text area.
+         *
+         * @param query The query which was run
+         * @param resultsHeader The header text to show above the results
+         * @param results The results
+         */
+        HistoryEntry(String query, String resultsHeader, List<String> results) {
+            this(query, "", (Dump) null);
+            this.resultsHeader = resultsHeader;
+            this.results = results;
+        }
     }
 
     private static final Color BUTTONCOLOR = new JButton().getBackground();
@@ -124,6 +146,7 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
     private static final String STAR_FILLED = "★";
 
     private final HighlightedTextArea textElement;
+    private final SearchResultsList resultsList;
     private String previousQuery;
     int historyIndex = -1;
     private final LinkedList<HistoryEntry> history = new LinkedList<>();
@@ -150,6 +173,7 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
         textElement.setEditable(true);
         jPanel1.setLayout(new BorderLayout());
         jPanel1.add(textElement);
+        resultsList = new SearchResultsList(textElement.getFont());
         jScrollPane1.getVerticalScrollBar().setUnitIncrement(16);
         jScrollPane1.getHorizontalScrollBar().setUnitIncrement(16);
         attachAutoComplete();
@@ -386,7 +410,55 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
 
     public void reloadTabHistory() {
         if (historyIndex > -1) {
-            history.set(historyIndex, new HistoryEntry(queryTextField.getText().trim(), getDocumentText(), currentDump));
+            HistoryEntry oldEntry = history.get(historyIndex);
+            if (oldEntry.results == null) {
+                history.set(historyIndex, new HistoryEntry(queryTextField.getText().trim(), getDocumentText(), currentDump));
+            } else {
+                history.set(historyIndex, new HistoryEntry(queryTextField.getText().trim(), oldEntry.resultsHeader, oldEntry.results));
+            }
+        }
+    }
+
+    /**
+     * Swaps our main text area out for the incremental search results list,
+     * for use while a search or refs is running.  The list stays in place once
+     * the search has finished, until something else gets shown in the text
+     * area (which will call hideResultsList()).
+     *
+     * @param headerPrefix The results header text to show before the count
+     * @param headerSuffix The results header text to show after the count
+     * @param sorted Whether the results should be kept sorted
+     */
+    private void showResultsList(String headerPrefix, String headerSuffix, boolean sorted) {
+        resultsList.updateFont(textElement.getFont());
+        resultsList.reset(headerPrefix, headerSuffix, sorted);
+        jScrollPane1.setColumnHeaderView(resultsList.getHeader());
+        jScrollPane1.setViewportView(resultsList);
+    }
+
+    /**
+     * Swaps our main text area out for the results list, showing an already
+     * finished set of results, such as from a search in our history.
+     *
+     * @param resultsHeader The header text to show above the results
+     * @param results The results to show
+     */
+    private void showFinishedResults(String resultsHeader, List<String> results) {
+        resultsList.updateFont(textElement.getFont());
+        resultsList.showResults(resultsHeader, results);
+        jScrollPane1.setColumnHeaderView(resultsList.getHeader());
+        jScrollPane1.setViewportView(resultsList);
+    }
+
+    /**
+     * Swaps our main text area back in, if the search results list is
+     * currently being shown.
+     */
+    private void hideResultsList() {
+        if (jScrollPane1.getViewport().getView() == resultsList) {
+            jScrollPane1.setColumnHeaderView(null);
+            jScrollPane1.setViewportView(jPanel1);
+            resultsList.reset("", "", true);
         }
     }
 
@@ -911,6 +983,11 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
             worker.stop();
         }
         queryTextField.setText(history.get(historyIndex).query);
+        if (history.get(historyIndex).results == null) {
+            hideResultsList();
+        } else {
+            showFinishedResults(history.get(historyIndex).resultsHeader, history.get(historyIndex).results);
+        }
         textElement.setText(history.get(historyIndex).text);
         textElement.setCaretPosition(Math.min(textElement.getText().length(), history.get(historyIndex).caret));
         currentDump = history.get(historyIndex).dump;
@@ -927,6 +1004,7 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
             worker.stop();
         }
         if (dm == null) {
+            hideResultsList();
             textElement.setText("Data for " + this.dmm.getCurrentPatchType().name() + " is not available.  Aborting dump!");
             currentDump = null;
             return false;
@@ -1027,16 +1105,44 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
             history.get(historyIndex).caret = textElement.getCaretPosition();
             history.get(historyIndex).viewport = jScrollPane1.getViewport().getViewPosition();
         }
+        hideResultsList();
         textElement.setText(text.replace("\r", ""));
         textElement.setCaretPosition(0);
         textElement.discardAllUndoData();
         textElement.setProcessUndo(true);
 
         queryTextField.setText(query);
+        return addHistory(new HistoryEntry(query, text, currentDump));
+    }
+
+    /**
+     * Shows the results of a finished search in our results list, and adds
+     * them to our history.  The main text area is left empty.
+     *
+     * @param query The query which was run
+     * @param resultsHeader The header text to show above the results
+     * @param results The results
+     * @return The new history entry
+     */
+    private HistoryEntry setQueryAndResults(String query, String resultsHeader, List<String> results) {
+        if (historyIndex > -1) {
+            history.get(historyIndex).caret = textElement.getCaretPosition();
+            history.get(historyIndex).viewport = jScrollPane1.getViewport().getViewPosition();
+        }
+        showFinishedResults(resultsHeader, results);
+        textElement.setText("");
+        textElement.discardAllUndoData();
+        textElement.setProcessUndo(true);
+
+        queryTextField.setText(query);
+        return addHistory(new HistoryEntry(query, resultsHeader, results));
+    }
+
+    private HistoryEntry addHistory(HistoryEntry entry) {
         while (historyIndex < history.size() - 1) {
             history.removeLast();
         }
-        history.add(new HistoryEntry(query, text, currentDump));
+        history.add(entry);
         while (history.size() > 10) {
             history.removeFirst();
         }
@@ -1057,6 +1163,11 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
             public void loop(BufferedReader br, TreeMap<String, Boolean> matches) throws IOException {
                 refsLoop(br, matches, query);
             }
+
+            @Override
+            protected List<String> getIndexTerms() {
+                return Arrays.asList(query.toLowerCase() + "'");
+            }
         };
         worker.execute();
     }
@@ -1140,6 +1251,15 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
                 public void loop(BufferedReader br, TreeMap<String, Boolean> matches) throws IOException {
                     basicSearchLoop(br, matches, positives.toArray(new String[0]), negatives.toArray(new String[0]));
                 }
+
+                @Override
+                protected List<String> getIndexTerms() {
+                    // Negative terms can only be checked against the real dumps
+                    if (positives.isEmpty()) {
+                        return null;
+                    }
+                    return positives;
+                }
             };
         }
         // Run worker
@@ -1309,20 +1429,12 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
     }
 
     /**
-     * Simulates a console `getall classname attribute`.  I would really like
-     * to do this via the Worker background-processing loop, but it turns out
-     * that the markup-processing code is *way* too slow when dynamically
-     * updated that way.  We can get all the text into the text area pretty
-     * quickly (at least for the tests I was doing), but even altering the
-     * population code to dump it all in one big chunk, it would process for
-     * over a minute compared to 12 seconds in BLCMM classic.  (That was with
-     * `getall itempooldefinition balanceditems`)
-     *
-     * So, we're continuing to handle it this way, alas.  Note that we're
-     * duplicating the looping code from the worker-handlers below.  Ah, well.
-     * Perhaps there's improvements to the markup-processing code which could
-     * allow us to make use of that whole framework instead, but that's for
-     * another day.
+     * Simulates a console `getall classname attribute`.  This used to be done
+     * inline on the EDT (with its own copy of the datafile-scanning loop),
+     * since the markup processing was too slow to update the text area
+     * incrementally.  Now that results stream into the results list while
+     * running, it's handled by a GetallWorker in the background like
+     * search/refs are, and can be cancelled the same way.
      *
      * @param ueClass The class to look up
      * @param property The property to display
@@ -1331,137 +1443,10 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
         property = property.trim();
         GlobalLogger.log("Trying to getall on class: \"" + ueClass.getName() + "\" and property of: \"" + property + "\"");
         currentDump = null;
-
-        // I'd *like* to do this but it seems to only sometimes work?  No idea
-        // why it doesn't work all the time.  However, even when it does work,
-        // it only shows the spinner while we're in this loop, and for the
-        // query I'm primarily testing on (`getall itempooldefinition balanceditems`)
-        // the majority of the time is the textarea updating its markup.  So
-        // the spinner turns off far too early anyway.  Presumably there *is*
-        // an event we could hook into which would trigger once the thing's
-        // done with its work, but I don't care enough to dig more, at the
-        // moment.
-        //
-        // (Coming back to this later with more experience, I'm sure that the
-        // trick would be to do the work in a SwingWorker so that the GUI had
-        // an opportunity to update -- basically what we do for the search/refs
-        // stuff.  Refactoring this would probably be nice.
-        //
-        //ObjectExplorer.INSTANCE.cursorWait();
-
-        String startPatternStandard = property.toLowerCase() + "=";
-        String startPatternArray = property.toLowerCase() + "(";
-        int startPatternLen = startPatternStandard.length();
-        String normalizedProperty = null;
-        StringBuilder output = new StringBuilder();
-        int objectCount = 0;
-
-        // Delimiter between attribute name and value
-        String attrValSeparator;
-        if (Options.INSTANCE.getOEColonInGetall()) {
-            attrValSeparator = ": ";
-        } else {
-            attrValSeparator = " ";
-        }
-
-        for (UEClass loopClass : this.dm.getSubclassesSet(ueClass)) {
-
-            for (JarEntry dataFile : this.dm.getAllDatafilesForClass(loopClass)) {
-
-                try {
-                    BufferedReader br = new BufferedReader(new InputStreamReader(this.dm.getStreamFromJarEntry(dataFile)));
-
-                    String toMatch;
-                    String current = null;
-                    StringBuilder curAttr = new StringBuilder();
-                    boolean match = false;
-                    boolean found = false;
-                    boolean isArray = false;
-                    boolean arrayIsFinished = false;
-                    int dataIndex;
-
-                    String line = br.readLine();
-                    while (line != null) {
-                        if (line.startsWith("***")) {
-                            if (match) {
-                                objectCount++;
-                                output.append(current);
-                                if (curAttr.length() > 0) {
-                                    output.append(" ");
-                                    output.append(curAttr);
-                                    if (isArray) {
-                                        output.append(")");
-                                    }
-                                }
-                                output.append("\n");
-                            }
-                            // We assume that every object we see during this loop should be
-                            // reported on, whether or not we see the relevant attr.
-                            match = true;
-                            found = false;
-                            isArray = false;
-                            arrayIsFinished = false;
-                            current = this.objectNameFromDumpHeader(line);
-                            curAttr = new StringBuilder();
-                        }
-                        if ((!found || (isArray && !arrayIsFinished)) && line.length() >= startPatternLen) {
-                            dataIndex = 0;
-                            toMatch = line.substring(0, startPatternLen).toLowerCase();
-                            if (toMatch.startsWith(startPatternStandard)) {
-                                found = true;
-                                dataIndex = startPatternLen;
-                            } else if (toMatch.startsWith(startPatternArray)) {
-                                found = true;
-                                isArray = true;
-                                dataIndex = line.indexOf(")") + 2;
-                            } else if (isArray) {
-                                // If we get here, we had previously detected an array but we're
-                                // on to a new prop.
-                                arrayIsFinished = true;
-                            }
-                            if (found && !arrayIsFinished) {
-                                if (normalizedProperty == null) {
-                                    normalizedProperty = line.substring(0, startPatternLen-1);
-                                }
-                                if (curAttr.length() == 0) {
-                                    curAttr.append(normalizedProperty);
-                                    curAttr.append(attrValSeparator);
-                                    if (isArray) {
-                                        curAttr.append("(");
-                                    }
-                                } else if (isArray) {
-                                    curAttr.append(",");
-                                }
-                                curAttr.append(line.substring(dataIndex));
-                            }
-                        }
-                        line = br.readLine();
-                    }
-                    if (match) {
-                        objectCount++;
-                        output.append(current);
-                        if (curAttr.length() > 0) {
-                            output.append(" ");
-                            output.append(curAttr);
-                            if (isArray) {
-                                output.append(")");
-                            }
-                        }
-                        output.append("\n");
-                    }
-
-                } catch (IOException ex) {
-                    Logger.getLogger(ObjectExplorer.class.getName()).log(Level.SEVERE, null, ex);
-                }
-            }
-        }
-
-        output.insert(0, "Found " + objectCount + " of class \"" + ueClass.getName() + "\" with property \"" + property
-                + "\" in " + this.dmm.getCurrentPatchType().name() + " data\n");
-        setQueryAndText("getall " + ueClass.getName() + " " + property, output.toString());
-        GlobalLogger.log("Obtained all objects of Class: \"" + ueClass.getName() + "\" and property of: \"" + property + "\"");
-        //ObjectExplorer.INSTANCE.cursorNormal();
-
+        refsButton.setText("Cancel");
+        refsButton.setBackground(ThemeManager.getColor(ThemeManager.ColorType.UICancelButtonBackground));
+        worker = new GetallWorker(this.dmm.getCurrentDataManager(), ueClass, property);
+        worker.execute();
     }
 
     /**
@@ -1564,16 +1549,23 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
         }
     }
 
-    private abstract class Worker extends SwingWorker {
+    private abstract class Worker extends SwingWorker<Object, String> {
+
+        /**
+         * How many search index candidates we'll dump at once.
+         */
+        private static final int CANDIDATE_CHUNK_SIZE = 100;
 
         Exception e;
-        boolean stop = false;
+        volatile boolean stop = false;
         protected final DataManager dm;
         final String query;
         private boolean showCategoriesOnNotFound = false;
         private Set<Options.OESearch> _activeCategories;
         private Set<Options.OESearch> _inactiveCategories;
         private TreeSet<UEClass> _availableClasses;
+        private final TreeSet<String> found = new TreeSet<>();
+        protected boolean complete = false;
 
         /**
          * A new Worker, using the specified DataManager and with the given
@@ -1639,6 +1631,164 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
 
         public abstract void loop(BufferedReader br, TreeMap<String, Boolean> matches) throws IOException;
 
+        /**
+         * Returns the lowercased terms which must all be found in an object's
+         * dump for it to match this query, for use with the search index.
+         * Returns null if this query can't make use of the index, which is
+         * the default.
+         *
+         * @return The list of required terms, or null
+         */
+        protected List<String> getIndexTerms() {
+            return null;
+        }
+
+        /**
+         * Returns the results which this worker has found so far, in the order
+         * they should be shown.  This should only be called once the
+         * background work is done.
+         *
+         * @return The results
+         */
+        protected List<String> getResults() {
+            return new ArrayList<>(found);
+        }
+
+        /**
+         * Builds the text to show in the main text area when a search didn't
+         * find anything.  If the search didn't complete, we'll just leave the
+         * text area empty.
+         *
+         * @param complete Whether the search ran to completion
+         * @return The text to show
+         */
+        protected String buildNoResultsText(boolean complete) {
+            if (!complete) {
+                return "";
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append("No results found for the specified query in " + dm.getPatchType().name() + " data.\n");
+            if (this.showCategoriesOnNotFound) {
+                sb.append("\n");
+                sb.append("Active search categories:\n");
+                sb.append("\n");
+                Set<Options.OESearch> activeCats = this.getActiveCategories();
+                for (Options.OESearch searchType : Options.OESearch.values()) {
+                    sb.append("\t");
+                    sb.append(activeCats.contains(searchType) ? "YES" : " NO");
+                    sb.append(" - ");
+                    sb.append(searchType.name());
+                    sb.append("\n");
+                }
+                sb.append("\n");
+                sb.append("You can try adding to the list of categories to search in the Settings menu via\n");
+                sb.append("the main " + Meta.NAME + " window, in case the objects you're looking for are\n");
+                sb.append("excluded by the current settings.  The app does not have to be restarted when the\n");
+                sb.append("categories have changed -- just click some checkboxes and try again!\n");
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Builds the final header text to show above our results in the
+         * results list, once the search is done.  If the search didn't
+         * complete, we'll leave off the report of which categories were
+         * searched.
+         *
+         * @param complete Whether the search ran to completion
+         * @return The header text
+         */
+        protected String buildResultsHeader(boolean complete) {
+            StringBuilder sb = new StringBuilder();
+            if (complete) {
+                Set<Options.OESearch> activeCats = this.getActiveCategories();
+                Set<Options.OESearch> inactiveCats = this.getInactiveCategories();
+                if (inactiveCats.isEmpty()) {
+                    sb.append("All available categories were searched!\n");
+                } else {
+                    List<String> list = new ArrayList<> ();
+                    if (!activeCats.isEmpty()) {
+                        sb.append("Categories searched: ");
+                        for (Options.OESearch search : activeCats) {
+                            list.add(search.name());
+                        }
+                        Collections.sort(list);
+                        sb.append(String.join(", ", list));
+                        sb.append("\n");
+                    }
+                    if (!inactiveCats.isEmpty()) {
+                        list.clear();
+                        sb.append("Categories skipped: ");
+                        for (Options.OESearch search : inactiveCats) {
+                            list.add(search.name());
+                        }
+                        Collections.sort(list);
+                        sb.append(String.join(", ", list));
+                        sb.append("\n");
+                    }
+                }
+            }
+            sb.append("Found your query (" + query + ") in the following (" + found.size() + ") objects in " + dm.getPatchType().name() + " data:");
+            return sb.toString();
+        }
+
+        /**
+         * Scans a single datafile for matches, returning the matches found in
+         * that datafile.  This is called from our scanning thread pool, so it
+         * must not touch any UI elements.  If the search index has already
+         * indexed this datafile, only the candidate objects from the index
+         * will be dumped and checked; otherwise the whole datafile is read
+         * (and indexed as we go, if the index is enabled).
+         *
+         * @param ueClass The class whose datafile we're scanning
+         * @param fileIndex The datafile index (starting at 1)
+         * @param dataFile The datafile to scan
+         * @param searchIndex The search index to use, or null
+         * @param indexTerms The terms to look up in the index, or null
+         * @return The matches found in this datafile
+         * @throws IOException
+         */
+        private TreeMap<String, Boolean> scanDatafile(UEClass ueClass, int fileIndex, JarEntry dataFile,
+                SearchIndex searchIndex, List<String> indexTerms) throws IOException {
+            TreeMap<String, Boolean> partial = new TreeMap<>();
+            if (stop) {
+                return partial;
+            }
+
+            if (searchIndex != null && indexTerms != null) {
+                List<String> candidates = searchIndex.getCandidates(ueClass, fileIndex, indexTerms);
+                if (candidates != null) {
+                    // Pull the candidates in a chunk at a time, so that
+                    // we can still bail out reasonably quickly when stopped
+                    for (int start = 0; start < candidates.size() && !stop; start += CANDIDATE_CHUNK_SIZE) {
+                        List<String> chunk = candidates.subList(start, Math.min(start + CANDIDATE_CHUNK_SIZE, candidates.size()));
+                        for (Dump dump : this.dm.getDumps(chunk, false).values()) {
+                            if (dump.ueObject != null) {
+                                loop(new BufferedReader(new StringReader(dump.text)), partial);
+                            }
+                        }
+                    }
+                    return partial;
+                }
+            }
+
+            SearchIndex.SegmentBuilder segmentBuilder = null;
+            if (searchIndex != null) {
+                segmentBuilder = searchIndex.getSegmentBuilder(ueClass, fileIndex);
+            }
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(this.dm.getStreamFromJarEntry(dataFile)))) {
+                if (segmentBuilder == null) {
+                    loop(br, partial);
+                } else {
+                    loop(segmentBuilder.wrap(br), partial);
+                }
+            }
+            if (segmentBuilder != null && !stop) {
+                segmentBuilder.commit();
+            }
+            return partial;
+        }
+
         @Override
         protected Object doInBackground() throws Exception {
 
@@ -1650,7 +1800,16 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
             }
             mainProgressBar.setMaximum(totalDatafiles);
 
-            TreeMap<String, Boolean> matches = new TreeMap<>();
+            // Results get streamed into our results list while the search
+            // runs, via publish()/process(), and stay there once we're done.
+            final String headerPrefix = "Found your query (" + query + ") in the following (";
+            final String headerSuffix = ") objects in " + dm.getPatchType().name() + " data:";
+            SwingUtilities.invokeLater(() -> {
+                if (!stop) {
+                    showResultsList(headerPrefix, headerSuffix, true);
+                }
+            });
+
             textElement.setEditable(false);
             textElement.discardAllUndoData();
             textElement.setProcessUndo(false);
@@ -1658,173 +1817,74 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
                 int counter = 0;
                 mainProgressBar.setValue(0);
                 textElement.setText("");
-                boolean news = false;
-
-                for (UEClass ueClass : this.getAvailableClasses()) {
-
-                    for (JarEntry dataFile : this.dm.getAllDatafilesForClass(ueClass)) {
-
-                        if (stop) {
-                            return null;
-                        }
-                        int old = matches.size();
-
-                        try {
-                            BufferedReader br = new BufferedReader(new InputStreamReader(this.dm.getStreamFromJarEntry(dataFile)));
-                            loop(br, matches);
-                            news = old != matches.size();
 
-                        } catch (IOException ex) {
-                            Logger.getLogger(ObjectExplorer.class.getName()).log(Level.SEVERE, null, ex);
+                // If we've got a search index available, and this query can
+                // make use of it, we'll use it for any datafile which has
+                // already been indexed, and build the index for any datafile
+                // which hasn't been.
+                SearchIndex searchIndex = null;
+                List<String> indexTerms = null;
+                if (Options.INSTANCE.getOEUseSearchIndex()) {
+                    searchIndex = this.dm.getSearchIndex();
+                    indexTerms = this.getIndexTerms();
+                }
+                final SearchIndex finalSearchIndex = searchIndex;
+                final List<String> finalIndexTerms = indexTerms;
+
+                // Each datafile gets scanned as its own task, spread out over
+                // all available cores.  Each task collects its own set of
+                // matches, and we merge them into the main set from this
+                // thread as they complete, publishing any new ones to the
+                // results list.
+                ExecutorService executor = Executors.newFixedThreadPool(
+                        Runtime.getRuntime().availableProcessors(),
+                        (Runnable r) -> {
+                            Thread t = new Thread(r, "OE Search");
+                            t.setDaemon(true);
+                            return t;
+                        });
+                try {
+                    ExecutorCompletionService<TreeMap<String, Boolean>> completion = new ExecutorCompletionService<>(executor);
+                    int numTasks = 0;
+                    for (UEClass ueClass : this.getAvailableClasses()) {
+                        List<JarEntry> dataFiles = this.dm.getAllDatafilesForClass(ueClass);
+                        for (int i = 0; i < dataFiles.size(); i++) {
+                            final JarEntry dataFile = dataFiles.get(i);
+                            final int fileIndex = i + 1;
+                            completion.submit(() -> this.scanDatafile(ueClass, fileIndex, dataFile, finalSearchIndex, finalIndexTerms));
+                            numTasks++;
                         }
+                    }
 
+                    for (int i = 0; i < numTasks; i++) {
+                        Future<TreeMap<String, Boolean>> future = completion.take();
                         if (stop) {
                             return null;
                         }
-
-                        if (news) {
-                            if (textElement.getText().isEmpty()) {
-                                textElement.setText("Found your query (" + query + ") in the following () objects in " + dmm.getCurrentPatchType().name() + " data:\n");
-                            }
-
-                            Document doc = textElement.getStyledDocument();
-                            int idx0 = textElement.getText().indexOf("\n");
-                            int idx1 = textElement.getText().lastIndexOf("(", idx0 + 1);
-                            int idx2 = textElement.getText().indexOf(")", idx1);
-
-                            doc.remove(idx1, idx2 - idx1 + 1);
-                            doc.insertString(idx1, "(" + matches.size() + ")", null);
-
-                            // Converted this next bit when I was trying to get getall-with-property to
-                            // go through this framework.  The vast majority of the time was being spent
-                            // processing markup, and I thought maybe if all the text was injected into
-                            // the document at once, we'd get the performance back.  In the end, that
-                            // didn't really help much.  (Or, well, maybe it helped, but it was still way
-                            // slower than the previous method.)  Anyway, I like this method better
-                            // anyway, so I'm keeping it, but the previous method remains commented
-                            // below, in case this turns out to have any weird side-effects I haven't
-                            // noticed yet.
-                            StringBuilder sb = new StringBuilder();
-                            for (String key : matches.keySet()) {
-                                boolean processed = matches.get(key);
-                                if (!processed) {
-                                    if (stop) {
-                                        return null;
-                                    }
-                                    sb.append(key);
-                                    sb.append("\n");
-                                    matches.put(key, true);
+                        try {
+                            TreeMap<String, Boolean> partial = future.get();
+                            List<String> newMatches = new ArrayList<>();
+                            for (String key : partial.keySet()) {
+                                if (found.add(key)) {
+                                    newMatches.add(key);
                                 }
                             }
-
-                            doc.insertString(doc.getEndPosition().getOffset()-1, sb.toString(), null);
-
-                            /*
-                            int st = textElement.getText().indexOf("\n") + 1;
-                            for (String key : matches.keySet()) {
-                                boolean ne = matches.get(key);
-                                if (!ne) {
-
-                                    if (stop) {
-                                        return null;
-                                    }
-                                    if (extras.containsKey(key)) {
-                                        doc.insertString(st, key + " " + extras.get(key) + "\n", null);
-                                    } else {
-                                        doc.insertString(st, key + "\n", null);
-                                    }
-                                    matches.put(key, true);
-                                }
-                                st += key.length() + 1;
-                                if (extras.containsKey(key)) {
-                                    st += extras.get(key).length() + 1;
-                                }
+                            if (!newMatches.isEmpty()) {
+                                publish(newMatches.toArray(new String[0]));
                             }
-                            */
-                            news = false;
+                        } catch (ExecutionException ex) {
+                            Logger.getLogger(ObjectExplorer.class.getName()).log(Level.SEVERE, null, ex.getCause());
                         }
 
                         counter += 1;
                         mainProgressBar.setValue(counter);
                         mainProgressBar.repaint();
                     }
+                } finally {
+                    executor.shutdownNow();
                 }
-                if (textElement.getText().length() == 0) {
-                    StringBuilder sb = new StringBuilder();
-                    sb.append("No results found for the specified query in " + dm.getPatchType().name() + " data.\n");
-                    if (this.showCategoriesOnNotFound) {
-                        sb.append("\n");
-                        sb.append("Active search categories:\n");
-                        sb.append("\n");
-                        Set<Options.OESearch> activeCats = this.getActiveCategories();
-                        for (Options.OESearch searchType : Options.OESearch.values()) {
-                            sb.append("\t");
-                            sb.append(activeCats.contains(searchType) ? "YES" : " NO");
-                            sb.append(" - ");
-                            sb.append(searchType.name());
-                            sb.append("\n");
-                        }
-                        sb.append("\n");
-                        sb.append("You can try adding to the list of categories to search in the Settings menu via\n");
-                        sb.append("the main " + Meta.NAME + " window, in case the objects you're looking for are\n");
-                        sb.append("excluded by the current settings.  The app does not have to be restarted when the\n");
-                        sb.append("categories have changed -- just click some checkboxes and try again!\n");
-                    }
-                    textElement.setText(sb.toString());
-                } else {
-                    Set<Options.OESearch> activeCats = this.getActiveCategories();
-                    Set<Options.OESearch> inactiveCats = this.getInactiveCategories();
-                    StringBuilder sb = new StringBuilder();
-                    if (inactiveCats.isEmpty()) {
-                        sb.append("All available categories were searched!\n");
-                    } else {
-                        List<String> list = new ArrayList<> ();
-                        if (!activeCats.isEmpty()) {
-                            sb.append("Categories searched: ");
-                            for (Options.OESearch search : activeCats) {
-                                list.add(search.name());
-                            }
-                            Collections.sort(list);
-                            sb.append(String.join(", ", list));
-                            sb.append("\n");
-                        }
-                        if (!inactiveCats.isEmpty()) {
-                            list.clear();
-                            sb.append("Categories skipped: ");
-                            for (Options.OESearch search : inactiveCats) {
-                                list.add(search.name());
-                            }
-                            Collections.sort(list);
-                            sb.append(String.join(", ", list));
-                            sb.append("\n");
-                        }
-                    }
-                    Document doc = textElement.getStyledDocument();
-                    doc.insertString(0, sb.toString(), null);
-                }
-                return null;
-            } catch (BadLocationException e2) {
-                // This one's... weird.  To trigger it, do a search or refs or whatever, and while the
-                // query is processing, click near the beginning of the first line and hit Enter.  A
-                // newline will be inserted, and then when the results next update, this should pop.
-                // I have no idea why the user's allowed to do this.  We call `textElement.setEditable(false)`
-                // before running the query, and `textElement.isEditable()` continues to report `false`
-                // throughout the whole process, so theoretically we should be all good.  That setting
-                // *does* seem to mostly work.  You can't click-and-drag segments of text, and you can't
-                // type arbitrary things, but Enter for some reason continues to work!  In the end I just
-                // gave up looking around for that and am handling it all custom-like, in here.
-                GlobalLogger.log("Error while formatting results textarea -- likely mid-query textarea edit!");
-                GlobalLogger.log(e2);
-                Document doc = textElement.getStyledDocument();
-                doc.insertString(doc.getEndPosition().getOffset()-1,
-                        "\n\n"
-                        + "Error attempting to display results: " + e2.toString() + "\n"
-                        + "\n"
-                        + "This is generally because something managed to edit the textarea before the\n"
-                        + "processing had finished, and interrupted some of the update routines.  Please\n"
-                        + "give it another go, and if it still causes problems, report this problem\n"
-                        + "to the developers along with your most recent logfile.\n",
-                        null);
+
+                this.complete = true;
                 return null;
             } catch (Exception e2) {
                 e = e2;
@@ -1833,6 +1893,13 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
 
         }
 
+        @Override
+        protected void process(List<String> chunks) {
+            if (!stop) {
+                resultsList.addResults(chunks);
+            }
+        }
+
         @Override
         protected void done() {
             if (stop) {
@@ -1844,13 +1911,21 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
         private void done2() {
             stop = true;
             if (e != null) {
+                hideResultsList();
                 GlobalLogger.log("Error during worker");
                 GlobalLogger.log(e);
                 throw new RuntimeException(e);
             }
             GlobalLogger.log("Worker done");
             mainProgressBar.setValue(mainProgressBar.getMaximum());
-            setQueryAndText(query, textElement.getText());
+            List<String> results = this.getResults();
+            if (results.isEmpty()) {
+                setQueryAndText(query, this.buildNoResultsText(this.complete));
+            } else {
+                // The results stay in our results list, rather than getting
+                // written out into the main text area.
+                setQueryAndResults(query, this.buildResultsHeader(this.complete), results);
+            }
             textElement.setEditable(true);
             textElement.discardAllUndoData();
             textElement.setProcessUndo(true);
@@ -1872,4 +1947,147 @@ public class ObjectExplorerPanel extends javax.swing.JPanel {
         }
     }
 
+
+    /**
+     * Worker which handles `getall classname attribute` in the background.
+     * Rather than scanning datafiles line-by-line, this asks the DataManager
+     * for just the requested attribute of each object, which uses the
+     * attribute index once a datafile has been seen once.  Results for each
+     * datafile are streamed to the results list as they come in, and the
+     * worker checks for cancellation inbetween datafiles.
+     */
+    private class GetallWorker extends Worker {
+
+        private final UEClass ueClass;
+        private final String property;
+        private final List<String> output = new ArrayList<>();
+
+        public GetallWorker(DataManager dm, UEClass ueClass, String property) {
+            super(dm, "getall " + ueClass.getName() + " " + property);
+            this.ueClass = ueClass;
+            this.property = property;
+        }
+
+        @Override
+        public void loop(BufferedReader br, TreeMap<String, Boolean> matches) throws IOException {
+            // Not used; we don't scan raw datafiles.
+        }
+
+        /**
+         * Formats a single object's result line, in the same way that the
+         * old inline getall did.
+         *
+         * @param object The object and its attribute lines
+         * @param attrValSeparator Delimiter between attribute name and value
+         * @return The formatted output line
+         */
+        private String formatLine(AttributeIndex.AttributeLines object, String attrValSeparator) {
+            StringBuilder sb = new StringBuilder(object.objectName);
+            if (!object.lines.isEmpty()) {
+                String first = object.lines.get(0);
+                int nameLen = this.property.length();
+                boolean isArray = first.charAt(nameLen) == '(';
+                sb.append(" ");
+                sb.append(first.substring(0, nameLen));
+                sb.append(attrValSeparator);
+                if (isArray) {
+                    sb.append("(");
+                    for (int i = 0; i < object.lines.size(); i++) {
+                        if (i > 0) {
+                            sb.append(",");
+                        }
+                        String line = object.lines.get(i);
+                        sb.append(line.substring(line.indexOf(")") + 2));
+                    }
+                    sb.append(")");
+                } else {
+                    sb.append(first.substring(nameLen + 1));
+                }
+            }
+            return sb.toString();
+        }
+
+        @Override
+        protected Object doInBackground() throws Exception {
+
+            TreeSet<UEClass> classes = this.dm.getSubclassesSet(this.ueClass);
+            int totalDatafiles = 0;
+            for (UEClass loopClass : classes) {
+                totalDatafiles += loopClass.getNumDatafiles();
+            }
+            mainProgressBar.setMaximum(totalDatafiles);
+
+            final String headerPrefix = "Found ";
+            final String headerSuffix = " of class \"" + this.ueClass.getName() + "\" with property \"" + this.property
+                    + "\" in " + dm.getPatchType().name() + " data";
+            SwingUtilities.invokeLater(() -> {
+                if (!stop) {
+                    showResultsList(headerPrefix, headerSuffix, false);
+                }
+            });
+
+            textElement.setEditable(false);
+            textElement.discardAllUndoData();
+            textElement.setProcessUndo(false);
+            try {
+                int counter = 0;
+                mainProgressBar.setValue(0);
+
+                // Delimiter between attribute name and value
+                String attrValSeparator;
+                if (Options.INSTANCE.getOEColonInGetall()) {
+                    attrValSeparator = ": ";
+                } else {
+                    attrValSeparator = " ";
+                }
+
+                for (UEClass loopClass : classes) {
+                    for (int fileIndex = 1; fileIndex <= loopClass.getNumDatafiles(); fileIndex++) {
+                        if (stop) {
+                            return null;
+                        }
+                        try {
+                            List<String> newLines = new ArrayList<>();
+                            for (AttributeIndex.AttributeLines object : this.dm.getAttributeLines(loopClass, fileIndex, this.property)) {
+                                newLines.add(this.formatLine(object, attrValSeparator));
+                            }
+                            this.output.addAll(newLines);
+                            if (!newLines.isEmpty()) {
+                                publish(newLines.toArray(new String[0]));
+                            }
+                        } catch (IOException ex) {
+                            Logger.getLogger(ObjectExplorer.class.getName()).log(Level.SEVERE, null, ex);
+                        }
+                        counter += 1;
+                        mainProgressBar.setValue(counter);
+                        mainProgressBar.repaint();
+                    }
+                }
+
+                this.complete = true;
+                GlobalLogger.log("Obtained all objects of Class: \"" + this.ueClass.getName() + "\" and property of: \"" + this.property + "\"");
+                return null;
+            } catch (Exception e2) {
+                e = e2;
+                return null;
+            }
+        }
+
+        @Override
+        protected List<String> getResults() {
+            return this.output;
+        }
+
+        @Override
+        protected String buildNoResultsText(boolean complete) {
+            return this.buildResultsHeader(complete) + "\n";
+        }
+
+        @Override
+        protected String buildResultsHeader(boolean complete) {
+            return "Found " + this.output.size() + " of class \"" + this.ueClass.getName() + "\" with property \"" + this.property
+                    + "\" in " + dm.getPatchType().name() + " data";
+        }
+    }
+
 }
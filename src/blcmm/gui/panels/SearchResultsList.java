@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.panels;
+
+import blcmm.gui.ObjectExplorer;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import javax.swing.AbstractAction;
+import javax.swing.AbstractListModel;
+import javax.swing.JList;
+import javax.swing.JTextArea;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.border.EmptyBorder;
+
+/**
+ * A list of search/refs results which can be added to incrementally while
+ * a search is running in Object Explorer.
+ *
+ * Previously, results were appended straight into OE's main text area as
+ * they came in, which meant re-reading the whole document text to update
+ * the match count and re-highlighting everything on every update -- fine
+ * for a few dozen results, but painfully slow once you get into the
+ * thousands.  This list only ever renders the rows which are actually
+ * visible (we give it fixed cell sizes so that JList doesn't have to measure
+ * every row), new results are merged into the already-sorted model, and the
+ * match count lives in its own header label.
+ *
+ * Once the search is finished, the list just stays in place with its final
+ * header text, rather than having the whole result set written out into the
+ * main text area (which would put us right back into the slow document
+ * handling we're trying to avoid).  ObjectExplorerPanel keeps the finished
+ * results in its history, so going back/forward to a search will show them
+ * in here again.  Double-clicking a result (or hitting Enter) will dump it.
+ *
+ * @author apocalyptech
+ */
+@SuppressWarnings("serial")
+public class SearchResultsList extends JList<String> {
+
+    private final ResultsModel model;
+    private final JTextArea header;
+    private String headerPrefix = "";
+    private String headerSuffix = "";
+    private int maxWidth = 0;
+    private boolean sorted = true;
+
+    /**
+     * Creates a new, empty results list.
+     *
+     * @param font The font to use for the list and its header
+     */
+    public SearchResultsList(Font font) {
+        super();
+        this.model = new ResultsModel();
+        this.setModel(this.model);
+        this.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        this.header = new JTextArea();
+        this.header.setEditable(false);
+        this.header.setFocusable(false);
+        this.header.setBorder(new EmptyBorder(2, 3, 2, 3));
+        this.updateFont(font);
+
+        this.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e) && e.getClickCount() == 2) {
+                    SearchResultsList.this.dumpSelected();
+                }
+            }
+        });
+        this.getInputMap(WHEN_FOCUSED).put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "dump");
+        this.getActionMap().put("dump", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                SearchResultsList.this.dumpSelected();
+            }
+        });
+    }
+
+    /**
+     * Sets the font of the list and header, and updates our fixed cell sizes
+     * to match.
+     *
+     * @param font The new font
+     */
+    public final void updateFont(Font font) {
+        this.setFont(font);
+        this.header.setFont(font);
+        FontMetrics metrics = this.getFontMetrics(font);
+        this.setFixedCellHeight(metrics.getHeight() + 2);
+        this.maxWidth = 0;
+        for (int i = 0; i < this.model.getSize(); i++) {
+            this.maxWidth = Math.max(this.maxWidth, metrics.stringWidth(this.model.getElementAt(i)));
+        }
+        this.setFixedCellWidth(this.maxWidth + 10);
+    }
+
+    /**
+     * Returns the header which shows the current result count (or the final
+     * header text, once the search is finished).  This is intended to be used
+     * as the column header of the enclosing scroll pane.
+     *
+     * @return The header
+     */
+    public JTextArea getHeader() {
+        return this.header;
+    }
+
+    /**
+     * Clears out all results, and sets up the text which will be shown around
+     * the result count in our header.  Results can either be kept sorted
+     * (for search/refs) or just shown in the order they're added (for
+     * getall, which reports objects in datafile order).
+     *
+     * @param headerPrefix The header text to show before the result count
+     * @param headerSuffix The header text to show after the result count
+     * @param sorted Whether to keep results sorted
+     */
+    public void reset(String headerPrefix, String headerSuffix, boolean sorted) {
+        this.headerPrefix = headerPrefix;
+        this.headerSuffix = headerSuffix;
+        this.sorted = sorted;
+        this.model.clear();
+        this.maxWidth = 0;
+        this.setFixedCellWidth(10);
+        this.updateHeader();
+    }
+
+    /**
+     * Adds a batch of new results to the list.  If we're sorted, results
+     * which are already present are ignored.
+     *
+     * @param results The results to add
+     */
+    public void addResults(Collection<String> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        FontMetrics metrics = this.getFontMetrics(this.getFont());
+        int oldMax = this.maxWidth;
+        for (String result : results) {
+            this.maxWidth = Math.max(this.maxWidth, metrics.stringWidth(result));
+        }
+        if (this.maxWidth != oldMax) {
+            this.setFixedCellWidth(this.maxWidth + 10);
+        }
+        if (this.sorted) {
+            this.model.merge(results);
+        } else {
+            this.model.append(results);
+        }
+        this.updateHeader();
+    }
+
+    /**
+     * Marks the current search as finished, replacing our running result
+     * count with the given header text.  The header may contain more than one
+     * line.
+     *
+     * @param headerText The final header text
+     */
+    public void finish(String headerText) {
+        this.headerPrefix = null;
+        this.headerSuffix = null;
+        this.header.setText(headerText);
+    }
+
+    /**
+     * Shows a previously-finished set of results, such as from history.
+     *
+     * @param headerText The header text to show
+     * @param results The results to show, which must already be in the
+     * order they should be displayed
+     */
+    public void showResults(String headerText, List<String> results) {
+        this.model.replace(results);
+        this.updateFont(this.getFont());
+        this.finish(headerText);
+    }
+
+    /**
+     * Returns the results currently in the list.  The returned list can't be
+     * modified, and since resetting this list swaps in a fresh model list,
+     * it's safe to hang on to once the search is finished.
+     *
+     * @return The current results
+     */
+    public List<String> getResults() {
+        return this.model.getItems();
+    }
+
+    /**
+     * Returns the number of results currently in the list.
+     *
+     * @return The result count
+     */
+    public int getResultCount() {
+        return this.model.getSize();
+    }
+
+    private void updateHeader() {
+        if (this.headerPrefix == null) {
+            return;
+        }
+        this.header.setText(this.headerPrefix + this.model.getSize() + this.headerSuffix);
+    }
+
+    private void dumpSelected() {
+        String objectName = this.getSelectedValue();
+        if (objectName != null) {
+            // getall results have the attribute value after the object name
+            int space = objectName.indexOf(' ');
+            if (space > 0) {
+                objectName = objectName.substring(0, space);
+            }
+            ObjectExplorer.INSTANCE.dump(new ObjectExplorer.DumpOptions(objectName, false));
+        }
+    }
+
+    /**
+     * List model which keeps its contents sorted, and which can merge in new
+     * batches of results without having to re-sort everything.
+     */
+    @SuppressWarnings("serial")
+    private static class ResultsModel extends AbstractListModel<String> {
+
+        private ArrayList<String> items = new ArrayList<>();
+
+        @Override
+        public int getSize() {
+            return this.items.size();
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return this.items.get(index);
+        }
+
+        public void clear() {
+            this.replace(new ArrayList<>());
+        }
+
+        /**
+         * Replaces our entire contents with the given items, which are
+         * assumed to already be in the order they should be shown.
+         *
+         * @param newItems The new contents
+         */
+        public void replace(List<String> newItems) {
+            int oldSize = this.items.size();
+            this.items = new ArrayList<>(newItems);
+            if (oldSize > 0) {
+                this.fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+            if (!this.items.isEmpty()) {
+                this.fireIntervalAdded(this, 0, this.items.size() - 1);
+            }
+        }
+
+        /**
+         * Returns an unmodifiable view of our current contents.  Since
+         * clear() and replace() swap in a brand new list rather than emptying
+         * out the old one, this will stay valid after a reset, so long as
+         * nothing gets merged or appended in the meantime.
+         *
+         * @return Our current contents
+         */
+        public List<String> getItems() {
+            return Collections.unmodifiableList(this.items);
+        }
+
+        /**
+         * Adds new items to the end of our list.
+         *
+         * @param newItems The items to add
+         */
+        public void append(Collection<String> newItems) {
+            int oldSize = this.items.size();
+            this.items.addAll(newItems);
+            if (this.items.size() > oldSize) {
+                this.fireIntervalAdded(this, oldSize, this.items.size() - 1);
+            }
+        }
+
+        /**
+         * Merges new items into our sorted list.  Each new item is inserted at
+         * the position found by a binary search, so we only ever touch the
+         * spots where something new shows up, rather than rebuilding the
+         * whole list for every batch.  Since the new items are handled in
+         * sorted order, runs of items which end up next to each other get
+         * reported as a single added interval.
+         *
+         * @param newItems The items to add
+         */
+        public void merge(Collection<String> newItems) {
+            int runStart = -1;
+            int runEnd = -1;
+            int from = 0;
+            for (String item : new TreeSet<>(newItems)) {
+                int index = Collections.binarySearch(this.items.subList(from, this.items.size()), item);
+                if (index >= 0) {
+                    from += index;
+                    continue;
+                }
+                index = from - index - 1;
+                if (runStart < 0 || index != runEnd + 1) {
+                    if (runStart >= 0) {
+                        this.fireIntervalAdded(this, runStart, runEnd);
+                    }
+                    runStart = index;
+                }
+                this.items.add(index, item);
+                runEnd = index;
+                from = index + 1;
+            }
+            if (runStart >= 0) {
+                this.fireIntervalAdded(this, runStart, runEnd);
+            }
+        }
+
+    }
+
+}
@@ -332,6 +332,10 @@ public class ToolSettingsPanel extends JPanel {
         this.settings.updateOESearchCategories();
     }
 
+    private void updateOEDumpCacheSize(Option option, JComponent component) {
+        MainGUI.INSTANCE.getDMM().updateDataManagersDumpCacheSize();
+    }
+
     /**
      * Extra steps when toggling our check-for-new-versions checkbox.  This
      * is so that we can disable active version check notices on the main
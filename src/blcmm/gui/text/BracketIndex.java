@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+
+/**
+ * Keeps track of where all the parentheses are in a Document, so that we
+ * can find the partner of any given bracket without having to go through
+ * the document text.  HighlightedTextArea uses this for highlighting the
+ * matching bracket whenever the caret moves, which previously meant copying
+ * out the entire document (and then scanning through it) on every single
+ * caret movement.  That got pretty slow when looking at big dumps.
+ *
+ * The bracket offsets are stored in a sorted array, and get updated as
+ * DocumentEvents come in: inserts only need to have their new text scanned,
+ * and everything after an edit just gets shifted over.  The actual
+ * matching-up of brackets happens lazily, the first time it's needed after
+ * a change, so after that, looking up a match is just a binary search.
+ *
+ * Note that this doesn't know anything about quoted strings, so brackets
+ * inside quotes get matched up like any other.  That's how the
+ * highlighting has always worked, so we're leaving it that way.
+ *
+ * Since this is a DocumentListener, it should be added to the Document
+ * *after* the text component's caret has been set up.  Listeners get
+ * notified in reverse order, so that way we'll be up-to-date by the time
+ * the caret reports that it's moved.
+ *
+ * DocumentEvents are delivered while the document's write lock is held, so
+ * lookups go through Document.render() to make sure they can't run halfway
+ * through an update made from some other thread.
+ *
+ * @author apocalyptech
+ */
+final class BracketIndex implements DocumentListener {
+
+    private final Document doc;
+
+    /**
+     * Offsets of every bracket in the document, in order.
+     */
+    private int[] offsets = new int[64];
+
+    /**
+     * Whether the bracket at the same index in `offsets` is an opening one.
+     */
+    private boolean[] opening = new boolean[64];
+
+    /**
+     * How many brackets we're currently storing.
+     */
+    private int count = 0;
+
+    /**
+     * For each bracket, the index of its partner, or -1 if it doesn't have
+     * one.  Only valid when `matchesValid` is true.
+     */
+    private int[] matches = null;
+
+    /**
+     * For each bracket, how many other pairs of brackets it's nested inside.
+     * Only valid when `matchesValid` is true.
+     */
+    private int[] depths = null;
+
+    private boolean matchesValid = false;
+
+    /**
+     * Creates a new index for the given Document, reading in whatever
+     * brackets it's already got.
+     *
+     * @param doc The document to index
+     */
+    BracketIndex(Document doc) {
+        this.doc = doc;
+        this.insert(0, 0, doc.getLength());
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        int start = this.lowerBound(e.getOffset());
+        for (int i = start; i < this.count; i++) {
+            this.offsets[i] += e.getLength();
+        }
+        this.insert(start, e.getOffset(), e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        int start = this.lowerBound(e.getOffset());
+        int end = this.lowerBound(e.getOffset() + e.getLength());
+        int removed = end - start;
+        if (removed > 0) {
+            System.arraycopy(this.offsets, end, this.offsets, start, this.count - end);
+            System.arraycopy(this.opening, end, this.opening, start, this.count - end);
+            this.count -= removed;
+        }
+        for (int i = start; i < this.count; i++) {
+            this.offsets[i] -= e.getLength();
+        }
+        this.matchesValid = false;
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Attribute changes don't concern us.
+    }
+
+    /**
+     * Scans the given range of the document for brackets, and inserts them
+     * into our arrays at the given index.
+     *
+     * @param index The index at which the new brackets should be stored
+     * @param offset The document offset to start scanning at
+     * @param length The number of characters to scan
+     */
+    private void insert(int index, int offset, int length) {
+        int[] newOffsets = new int[16];
+        boolean[] newOpening = new boolean[16];
+        int found = 0;
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        int pos = offset;
+        int end = offset + length;
+        try {
+            while (pos < end) {
+                this.doc.getText(pos, end - pos, segment);
+                for (int i = 0; i < segment.count; i++) {
+                    char c = segment.array[segment.offset + i];
+                    if (c == '(' || c == ')') {
+                        if (found == newOffsets.length) {
+                            newOffsets = Arrays.copyOf(newOffsets, found * 2);
+                            newOpening = Arrays.copyOf(newOpening, found * 2);
+                        }
+                        newOffsets[found] = pos + i;
+                        newOpening[found] = c == '(';
+                        found++;
+                    }
+                }
+                pos += segment.count;
+            }
+        } catch (BadLocationException e) {
+            // Shouldn't happen, since the range came from a DocumentEvent.
+            // We'll just be missing some brackets.
+        }
+        if (found > 0) {
+            if (this.count + found > this.offsets.length) {
+                int newLength = Math.max(this.offsets.length * 2, this.count + found);
+                this.offsets = Arrays.copyOf(this.offsets, newLength);
+                this.opening = Arrays.copyOf(this.opening, newLength);
+            }
+            System.arraycopy(this.offsets, index, this.offsets, index + found, this.count - index);
+            System.arraycopy(this.opening, index, this.opening, index + found, this.count - index);
+            System.arraycopy(newOffsets, 0, this.offsets, index, found);
+            System.arraycopy(newOpening, 0, this.opening, index, found);
+            this.count += found;
+        }
+        this.matchesValid = false;
+    }
+
+    /**
+     * Returns the index of the first bracket at or after the given offset.
+     *
+     * @param offset The document offset
+     * @return The bracket index, which will be `count` if there are no
+     * brackets at or after the offset.
+     */
+    private int lowerBound(int offset) {
+        int low = 0;
+        int high = this.count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.offsets[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Pairs up all our brackets, if anything's changed since we last did so.
+     * Several readers can hold the document's read lock at once, so this is
+     * synchronized to stop them from pairing things up at the same time.
+     */
+    private synchronized void ensureMatches() {
+        if (this.matchesValid) {
+            return;
+        }
+        if (this.matches == null || this.matches.length < this.count) {
+            this.matches = new int[this.offsets.length];
+            this.depths = new int[this.offsets.length];
+        }
+        int[] stack = new int[16];
+        int stackSize = 0;
+        for (int i = 0; i < this.count; i++) {
+            this.matches[i] = -1;
+            if (this.opening[i]) {
+                if (stackSize == stack.length) {
+                    stack = Arrays.copyOf(stack, stackSize * 2);
+                }
+                this.depths[i] = stackSize;
+                stack[stackSize++] = i;
+            } else if (stackSize > 0) {
+                int partner = stack[--stackSize];
+                this.matches[i] = partner;
+                this.matches[partner] = i;
+                this.depths[i] = stackSize;
+            } else {
+                this.depths[i] = 0;
+            }
+        }
+        this.matchesValid = true;
+    }
+
+    /**
+     * Returns the number of brackets in the document.
+     *
+     * @return The number of brackets
+     */
+    int size() {
+        int[] result = new int[1];
+        this.doc.render(() -> result[0] = this.count);
+        return result[0];
+    }
+
+    /**
+     * Finds the partner of the bracket at the given offset.
+     *
+     * @param offset The document offset of a bracket
+     * @return The offset of its partner, or -1 if there's no bracket at the
+     * given offset, or if it doesn't have a partner.
+     */
+    int findMatch(int offset) {
+        int[] result = {-1};
+        this.doc.render(() -> {
+            int index = this.lowerBound(offset);
+            if (index == this.count || this.offsets[index] != offset) {
+                return;
+            }
+            this.ensureMatches();
+            int partner = this.matches[index];
+            if (partner != -1) {
+                result[0] = this.offsets[partner];
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * Returns all the matched pairs of brackets which span more than one line
+     * of the document, ordered by their opening bracket.  These are the
+     * nested struct/array values in a formatted dump, which would be the
+     * candidates for folding.
+     *
+     * @return The list of regions
+     */
+    List<Region> getFoldRegions() {
+        List<Region> regions = new ArrayList<>();
+        this.doc.render(() -> {
+            this.ensureMatches();
+            Element root = this.doc.getDefaultRootElement();
+            for (int i = 0; i < this.count; i++) {
+                if (this.opening[i] && this.matches[i] != -1) {
+                    int start = this.offsets[i];
+                    int end = this.offsets[this.matches[i]];
+                    if (root.getElementIndex(start) != root.getElementIndex(end)) {
+                        regions.add(new Region(start, end, this.depths[i]));
+                    }
+                }
+            }
+        });
+        return regions;
+    }
+
+    /**
+     * A matched pair of brackets.
+     */
+    static final class Region {
+
+        /**
+         * The offset of the opening bracket.
+         */
+        final int start;
+
+        /**
+         * The offset of the closing bracket.
+         */
+        final int end;
+
+        /**
+         * How many other pairs of brackets this one is nested inside.
+         */
+        final int depth;
+
+        Region(int start, int end, int depth) {
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+        }
+
+    }
+
+}
@@ -30,6 +30,8 @@ import blcmm.utilities.Options.MouseLinkAction;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Font;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
@@ -42,9 +44,14 @@ import java.util.logging.Logger;
 import javax.swing.AbstractAction;
 import javax.swing.JLabel;
 import javax.swing.JTextPane;
+import javax.swing.JViewport;
 import javax.swing.KeyStroke;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.event.CaretEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultHighlighter;
@@ -74,6 +81,18 @@ public final class HighlightedTextArea extends JTextPane {
     private final ObjectExplorerPanel panel;
     private final FontInfo fontInfo;
 
+    /**
+     * How long to wait (in milliseconds) after an edit or a scroll before
+     * highlighting whatever's on-screen, so that bursts of those get
+     * coalesced into a single highlighting pass.
+     */
+    private static final int HIGHLIGHT_DELAY = 50;
+
+    private final Timer highlightTimer;
+    private final BracketIndex brackets;
+    private final ChangeListener viewportListener;
+    private JViewport viewport = null;
+
     public HighlightedTextArea(DataManagerManager dmm, FontInfo fontInfo) {
         this(dmm, fontInfo, true);
     }
@@ -88,10 +107,39 @@ public final class HighlightedTextArea extends JTextPane {
         this.fontInfo = fontInfo;
         this.panel = panel;
         //link = false;
-        setDocument(new myStylizedDocument());//Syntax highlighting
+        myStylizedDocument doc = new myStylizedDocument();
+        doc.setDeferredHighlighting(true);
+        setDocument(doc);//Syntax highlighting
+        this.highlightTimer = new Timer(HIGHLIGHT_DELAY, e -> highlightVisible());
+        this.highlightTimer.setRepeats(false);
+        this.viewportListener = e -> {
+            if (!this.highlightTimer.isRunning()) {
+                this.highlightTimer.start();
+            }
+        };
+        doc.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                highlightTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                highlightTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
         setFont(new Font(MainGUI.CODE_FONT_NAME, Font.PLAIN, fontInfo.getFont().getSize()));
         setCaretColor(UIManager.getColor("text"));
 
+        // This needs to be added after the caret's own DocumentListener, so
+        // that the index is up to date by the time caretMoved() gets called.
+        this.brackets = new BracketIndex(doc);
+        doc.addDocumentListener(this.brackets);
+
         if (allowEdit) {
             this.undoManager = addUndoRedo(HighlightedTextArea.this);
             addCaretListener(e -> {
@@ -169,6 +217,62 @@ public final class HighlightedTextArea extends JTextPane {
         }
     }
 
+    /**
+     * Keep an eye on our viewport, if we're in one, so that we can highlight
+     * text as it scrolls into view.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport) {
+            this.viewport = (JViewport) getParent();
+            this.viewport.addChangeListener(this.viewportListener);
+        }
+        this.highlightTimer.restart();
+    }
+
+    @Override
+    public void removeNotify() {
+        if (this.viewport != null) {
+            this.viewport.removeChangeListener(this.viewportListener);
+            this.viewport = null;
+        }
+        this.highlightTimer.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Syntax-highlights any changed text which is currently visible, plus a
+     * screenful above and below, so that scrolling a little way doesn't show
+     * unhighlighted text.  Changes elsewhere in the document get left until
+     * they scroll into view.  If we're not in a viewport at all, everything
+     * gets highlighted.
+     *
+     * See the comments in mouseMoved() about viewToModel().
+     */
+    @SuppressWarnings("deprecation")
+    private void highlightVisible() {
+        Document d = this.getDocument();
+        if (!(d instanceof myStylizedDocument)) {
+            return;
+        }
+        myStylizedDocument doc = (myStylizedDocument) d;
+        if (!doc.isHighlightPending()) {
+            return;
+        }
+        if (this.viewport == null) {
+            doc.highlight(0, doc.getLength());
+            return;
+        }
+        Rectangle visible = this.getVisibleRect();
+        if (visible.isEmpty()) {
+            return;
+        }
+        int start = this.viewToModel(new Point(0, visible.y - visible.height));
+        int end = this.viewToModel(new Point(visible.x + visible.width, visible.y + visible.height * 2));
+        doc.highlight(start, end);
+    }
+
     @Override
     public String getText() {
         try {
@@ -191,46 +295,16 @@ public final class HighlightedTextArea extends JTextPane {
         highlights.clear();
 
         int index = e.getDot() - 1;
-        String text = getText();
         if (index == -1) {
             return;
         }
 
-        if (text.charAt(index) == ')') {
-            int depth = 0;
-            int i = 1;
-            while (depth != -1 && index - i >= 0) {
-                if (text.charAt(index - i) == '(') {
-                    depth--;
-                } else if (text.charAt(index - i) == ')') {
-                    depth++;
-                }
-                i++;
-            }
-            if (depth == -1) {
-                Object o1 = hl.addHighlight(index, index + 1, painter);
-                Object o2 = hl.addHighlight(index - i + 1, index - i + 2, painter);
-                highlights.add(o1);
-                highlights.add(o2);
-            }
-
-        } else if (text.charAt(index) == '(') {
-            int depth = 0;
-            int i = 1;
-            while (depth != -1 && index + i < text.length()) {
-                if (text.charAt(index + i) == '(') {
-                    depth++;
-                } else if (text.charAt(index + i) == ')') {
-                    depth--;
-                }
-                i++;
-            }
-            if (depth == -1) {
-                Object o1 = hl.addHighlight(index, index + 1, painter);
-                Object o2 = hl.addHighlight(index + i - 1, index + i, painter);
-                highlights.add(o1);
-                highlights.add(o2);
-            }
+        int match = this.brackets.findMatch(index);
+        if (match != -1) {
+            Object o1 = hl.addHighlight(index, index + 1, painter);
+            Object o2 = hl.addHighlight(match, match + 1, painter);
+            highlights.add(o1);
+            highlights.add(o2);
         }
     }
 
@@ -18,16 +18,25 @@
 package blcmm.gui.text;
 
 import blcmm.gui.theme.ThemeManager;
+import blcmm.utilities.GlobalLogger;
 import java.awt.Color;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+import javax.swing.event.UndoableEditEvent;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultEditorKit;
 import javax.swing.text.DefaultStyledDocument;
 import javax.swing.text.Element;
 import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
+import javax.swing.undo.CompoundEdit;
 
 /**
  *
@@ -36,6 +45,10 @@ import javax.swing.text.StyleConstants;
 @SuppressWarnings("serial")
 public class myStylizedDocument extends DefaultStyledDocument {
 
+    //for simplicity we won't allow trailing spaces in the </font> tag.
+    private static final Pattern CUSTOM_COLOR_PATTERN = Pattern.compile(
+            "<font[ ]+color[ ]*=[ ]*\"#[0-9a-fA-F]{6}[ ]*\">.*</font>.*");
+
     private final DefaultStyledDocument doc;
     private final Element rootElement;
     private final MutableAttributeSet normal;
@@ -46,6 +59,10 @@ public class myStylizedDocument extends DefaultStyledDocument {
     private final MutableAttributeSet quotedouble;
     private final MutableAttributeSet quote;
     private final HashSet<String> keywords;
+    private final List<DirtyRange> dirty = new ArrayList<>();
+    private final Object dirtyLock = new Object();
+    private boolean deferHighlighting = false;
+    private HighlightEdit highlightEdit = null;
 
     public myStylizedDocument() {
         doc = this;
@@ -92,13 +109,43 @@ public class myStylizedDocument extends DefaultStyledDocument {
         keywords.add("exec");
     }
 
+    /**
+     * Tells us whether highlighting should be left for our owner to trigger
+     * via highlight(), rather than happening as soon as the text changes.
+     * HighlightedTextArea turns this on so that it can restrict highlighting
+     * to the lines which are actually on-screen, and so that a burst of
+     * edits (such as loading a big object dump, which comes in as a whole
+     * series of inserts) only gets highlighted once.
+     *
+     * @param deferHighlighting True to defer highlighting, false to
+     * highlight immediately after each edit.
+     */
+    public void setDeferredHighlighting(boolean deferHighlighting) {
+        this.deferHighlighting = deferHighlighting;
+    }
+
+    /**
+     * Returns whether we've got any changed text which hasn't been
+     * highlighted yet.
+     *
+     * @return True if there is text waiting to be highlighted
+     */
+    public boolean isHighlightPending() {
+        synchronized (dirtyLock) {
+            return !dirty.isEmpty();
+        }
+    }
+
     /*
      * Override to apply syntax highlighting after the document has been updated
      */
     @Override
     public void insertString(int offset, String str, AttributeSet a) throws BadLocationException {
         super.insertString(offset, str, a);
-        processChangedLines(offset, str.length());
+        markDirty(offset, str.length());
+        if (!deferHighlighting) {
+            highlight(offset, offset + str.length());
+        }
     }
 
     /*
@@ -107,60 +154,195 @@ public class myStylizedDocument extends DefaultStyledDocument {
     @Override
     public void remove(int offset, int length) throws BadLocationException {
         super.remove(offset, length);
-        processChangedLines(offset, 0);
+        markDirty(offset, 0);
+        if (!deferHighlighting) {
+            highlight(offset, offset);
+        }
     }
 
     /*
-     * Determine how many lines have been changed,
-     * then apply highlighting to each line
+     * The attribute changes we make while highlighting get collected up into
+     * a single edit, which is sent along once we're done.  These need to stay
+     * in the undo history, since undoing text changes relies on the element
+     * structure being the same as it was when the change was made, but the
+     * edit is flagged as insignificant so that it gets undone along with the
+     * user's own edit, rather than as an undo step of its own.
      */
-    private void processChangedLines(int offset, int length) throws BadLocationException {
-        String content = doc.getText(0, doc.getLength());
-        // The lines affected by the latest document update
-        int startLine = rootElement.getElementIndex(offset);
-        int endLine = rootElement.getElementIndex(offset + length);
-        // Do the actual highlighting
-        for (int i = startLine; i <= endLine; i++) {
-            applyHighlighting(content, i);
+    @Override
+    protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+        if (highlightEdit != null) {
+            highlightEdit.addEdit(e.getEdit());
+        } else {
+            super.fireUndoableEditUpdate(e);
         }
     }
 
     /*
-     * Parse the line to determine the appropriate highlighting
+     * Remember that the given range of text needs to be highlighted.  The
+     * range is stored as a pair of Positions, so it keeps pointing at the
+     * right text as other edits happen around it.  The list is kept sorted
+     * by start offset, and the new range only gets merged with whichever
+     * neighbours it overlaps, so a big paste or load (which shows up as a
+     * series of adjacent inserts) ends up as a single range without having
+     * to go through the whole list each time.  Edits can come in from any
+     * thread, so the list is only touched while holding dirtyLock.
      */
-    private void applyHighlighting(String content, int line) throws BadLocationException {
-        int startOffset = rootElement.getElement(line).getStartOffset();
-        int endOffset = rootElement.getElement(line).getEndOffset() - 1;
-        int lineLength = endOffset - startOffset + 1;
-        int contentLength = content.length();
-        if (endOffset >= contentLength) {
-            endOffset = contentLength - 1;
+    private void markDirty(int offset, int length) {
+        DirtyRange range;
+        try {
+            int end = Math.min(offset + length, getLength());
+            range = new DirtyRange(createPosition(offset), createPosition(end));
+        } catch (BadLocationException e) {
+            return;
+        }
+        synchronized (dirtyLock) {
+            int start = range.start.getOffset();
+            int low = 0;
+            int high = dirty.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (dirty.get(mid).start.getOffset() <= start) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int index = low;
+            dirty.add(index, range);
+            if (index > 0 && dirty.get(index - 1).end.getOffset() >= start) {
+                index--;
+                dirty.set(index, merge(dirty.get(index), dirty.remove(index + 1)));
+            }
+            while (index + 1 < dirty.size()
+                    && dirty.get(index + 1).start.getOffset() <= dirty.get(index).end.getOffset()) {
+                dirty.set(index, merge(dirty.get(index), dirty.remove(index + 1)));
+            }
         }
+    }
 
-        // set normal attributes for the line
-        //System.out.println(startOffset + " " + lineLength);
+    /*
+     * Returns a range covering both of the given overlapping ranges, the
+     * first of which starts no later than the second.
+     */
+    private static DirtyRange merge(DirtyRange first, DirtyRange second) {
+        if (second.end.getOffset() > first.end.getOffset()) {
+            return new DirtyRange(first.start, second.end);
+        }
+        return first;
+    }
+
+    /**
+     * Highlights any changed lines which fall between the two given
+     * offsets.  Lines which haven't changed since they were last highlighted
+     * are left alone, and changed lines outside the range stay pending until
+     * a later call covers them.
+     *
+     * @param startOffset The offset to start highlighting at
+     * @param endOffset The offset to stop highlighting at
+     */
+    public void highlight(int startOffset, int endOffset) {
+        BitSet lines = new BitSet();
+        synchronized (dirtyLock) {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            takeDirtyLines(startOffset, endOffset, lines);
+        }
+
+        // Now do the actual highlighting.  This happens outside of dirtyLock,
+        // since setting attributes needs the document's write lock.
+        Segment segment = new Segment();
+        HighlightEdit edit = new HighlightEdit();
+        highlightEdit = edit;
+        try {
+            for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)) {
+                applyHighlighting(segment, line);
+            }
+        } catch (BadLocationException e) {
+            GlobalLogger.log("Error while highlighting text: " + e.toString());
+        } finally {
+            highlightEdit = null;
+            edit.end();
+            if (!edit.isEmpty()) {
+                fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+            }
+        }
+    }
+
+    /*
+     * Sets the given BitSet to the changed lines which fall between the two
+     * given offsets, and takes those lines out of our dirty ranges.  Must be
+     * called while holding dirtyLock.
+     */
+    private void takeDirtyLines(int startOffset, int endOffset, BitSet lines) {
+        int length = getLength();
+        startOffset = Math.max(0, Math.min(startOffset, length));
+        endOffset = Math.max(startOffset, Math.min(endOffset, length));
+        int from = rootElement.getElement(rootElement.getElementIndex(startOffset)).getStartOffset();
+        int to = rootElement.getElement(rootElement.getElementIndex(endOffset)).getEndOffset() - 1;
+
+        // Figure out which lines need doing, and what's left over afterwards
+        List<DirtyRange> remaining = new ArrayList<>();
+        try {
+            for (DirtyRange range : dirty) {
+                int rangeStart = range.start.getOffset();
+                int rangeEnd = range.end.getOffset();
+                if (rangeEnd < from || rangeStart > to) {
+                    remaining.add(range);
+                    continue;
+                }
+                lines.set(rootElement.getElementIndex(Math.max(rangeStart, from)),
+                        rootElement.getElementIndex(Math.min(rangeEnd, to)) + 1);
+                if (rangeStart < from) {
+                    remaining.add(new DirtyRange(range.start, createPosition(from - 1)));
+                }
+                if (rangeEnd > to) {
+                    remaining.add(new DirtyRange(createPosition(to + 1), range.end));
+                }
+            }
+        } catch (BadLocationException e) {
+            // Shouldn't happen, since all our offsets come from the document
+            // itself.  Just highlight everything we were asked to.
+            lines.set(rootElement.getElementIndex(from), rootElement.getElementIndex(to) + 1);
+        }
+        dirty.clear();
+        dirty.addAll(remaining);
+    }
+
+    /*
+     * Parse the line to determine the appropriate highlighting.  The line's
+     * text is fetched into the given Segment, which avoids copying anything
+     * when it's contiguous in the document's buffer.
+     */
+    private void applyHighlighting(Segment segment, int line) throws BadLocationException {
+        Element element = rootElement.getElement(line);
+        int startOffset = element.getStartOffset();
+        int lineLength = element.getEndOffset() - startOffset;
         if (lineLength < 1) {
             return;//this line breaks undo+newlins TODO
         }
+
+        // The final line's trailing newline isn't part of the document proper,
+        // so don't parse that.
+        int textLength = Math.min(lineLength, getLength() - startOffset);
+
+        // set normal attributes for the line
         doc.setCharacterAttributes(startOffset, lineLength, normal, true);
 
-        // check for single line comment
-        /*int index = content.indexOf(getSingleLineDelimiter(), startOffset);
-        if ((index > -1) && (index < endOffset)) {
-            doc.setCharacterAttributes(index, endOffset - index + 1, comment, false);
-            endOffset = index - 1;
-        }*/
         // check for tokens
-        checkForTokens(content, startOffset, endOffset);
+        getText(startOffset, textLength, segment);
+        checkForTokens(segment, startOffset, 0, textLength - 1);
     }
 
     /*
-     * Parse the line for tokens to highlight
+     * Parse the line for tokens to highlight.  Positions within the line are
+     * relative to the start of the line, which is found at lineOffset in the
+     * document.
      */
-    private void checkForTokens(String content, int startOffset, int endOffset) {
+    private void checkForTokens(CharSequence content, int lineOffset, int startOffset, int endOffset) {
         while (startOffset <= endOffset) {
             // skip the delimiters to find the start of a new token
-            while (isDelimiter(content.substring(startOffset, startOffset + 1))) {
+            while (isDelimiter(content.charAt(startOffset))) {
                 if (startOffset < endOffset) {
                     startOffset++;
                 } else {
@@ -168,60 +350,80 @@ public class myStylizedDocument extends DefaultStyledDocument {
                 }
             }
             // Extract and process the entire token
-            if (isDoubleQuoteDelimiter(content.substring(startOffset, startOffset + 1))) {
-                startOffset = getQuoteToken(content, startOffset, endOffset);
-            } else if (startsWithCustomColorAndContainsEnd(content.substring(startOffset, endOffset))) {
-                startOffset = getEndOfColorToken(content, startOffset, endOffset);
+            if (isDoubleQuoteDelimiter(content.charAt(startOffset))) {
+                startOffset = getQuoteToken(content, lineOffset, startOffset, endOffset);
+            } else if (startsWithCustomColorAndContainsEnd(content.subSequence(startOffset, endOffset))) {
+                startOffset = getEndOfColorToken(content, lineOffset, startOffset);
             } else {
-                startOffset = getOtherToken(content, startOffset, endOffset);
+                startOffset = getOtherToken(content, lineOffset, startOffset, endOffset);
             }
         }
     }
 
+    /*
+     * Returns the index of the given string within content, starting the
+     * search at fromIndex, or -1 if it's not found.
+     */
+    private static int indexOf(CharSequence content, String str, int fromIndex) {
+        int last = content.length() - str.length();
+        for (int i = Math.max(fromIndex, 0); i <= last; i++) {
+            int j = 0;
+            while (j < str.length() && content.charAt(i + j) == str.charAt(j)) {
+                j++;
+            }
+            if (j == str.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /*
      * Parse the line to get the quotes and highlight it
      */
-    private int getQuoteToken(String content, int startOffset, int endOffset) {
-        String quoteDelimiter = content.substring(startOffset, startOffset + 1);
+    private int getQuoteToken(CharSequence content, int lineOffset, int startOffset, int endOffset) {
+        String quoteDelimiter = String.valueOf(content.charAt(startOffset));
         String escapeString = getEscapeString(quoteDelimiter);
         int index;
         int endOfQuote = startOffset;
         // skip over the escape quotes in this quote
-        index = content.indexOf(escapeString, endOfQuote + 1);
+        index = indexOf(content, escapeString, endOfQuote + 1);
         while ((index > -1) && (index < endOffset)) {
             endOfQuote = index + 1;
-            index = content.indexOf(escapeString, endOfQuote);
+            index = indexOf(content, escapeString, endOfQuote);
         }
         // now find the matching delimiter
-        index = content.indexOf(quoteDelimiter, endOfQuote + 1);
+        index = indexOf(content, quoteDelimiter, endOfQuote + 1);
         if ((index < 0) || (index > endOffset)) {
             endOfQuote = endOffset;
         } else {
             endOfQuote = index;
         }
-        doc.setCharacterAttributes(startOffset, endOfQuote - startOffset + 1, quotedouble, false);
+        doc.setCharacterAttributes(lineOffset + startOffset, endOfQuote - startOffset + 1, quotedouble, false);
         return endOfQuote + 1;
     }
 
-    private int getOtherToken(String content, int startOffset, int endOffset) {
+    private int getOtherToken(CharSequence content, int lineOffset, int startOffset, int endOffset) {
         int endOfToken = startOffset + 1;
         while (endOfToken <= endOffset) {
-            if (isDelimiter(content.substring(endOfToken, endOfToken + 1))) {
+            if (isDelimiter(content.charAt(endOfToken))) {
                 break;
             }
             endOfToken++;
         }
-        String token = content.substring(startOffset, endOfToken);
+        String token = content.subSequence(startOffset, endOfToken).toString();
+        int tokenStart = lineOffset + startOffset;
+        int tokenLength = endOfToken - startOffset;
         if (isKeyword(token)) {
-            doc.setCharacterAttributes(startOffset, endOfToken - startOffset, keyword, false);
+            doc.setCharacterAttributes(tokenStart, tokenLength, keyword, false);
         } else if (token.toLowerCase().startsWith("gd_") || startsWithCapitalsAndUnderscores(token)) {
-            doc.setCharacterAttributes(startOffset, endOfToken - startOffset, GDword, false);
+            doc.setCharacterAttributes(tokenStart, tokenLength, GDword, false);
         } else if (isSpecialValue(token)) {
-            doc.setCharacterAttributes(startOffset, endOfToken - startOffset, MTword, false);
+            doc.setCharacterAttributes(tokenStart, tokenLength, MTword, false);
         } else {
             try {
                 Double.parseDouble(token);
-                doc.setCharacterAttributes(startOffset, endOfToken - startOffset, number, false);
+                doc.setCharacterAttributes(tokenStart, tokenLength, number, false);
             } catch (NumberFormatException e) {
             }
         }
@@ -231,16 +433,13 @@ public class myStylizedDocument extends DefaultStyledDocument {
 
             if (endindex != -1) {
                 String clazz = token.substring(0, index);
-                String rest = token.substring(index + 1, endindex);
-                doc.setCharacterAttributes(startOffset + index, endindex - index + 1, quote, false);
+                doc.setCharacterAttributes(tokenStart + index, endindex - index + 1, quote, false);
                 if (!clazz.equals("Class") && !clazz.equals("Package") && clazz.length() > 0) {
                     MutableAttributeSet link2 = new SimpleAttributeSet();
                     link2.addAttribute("URL", token);
                     StyleConstants.setUnderline(link2, true);
-                    doc.setCharacterAttributes(startOffset + index + 1, endindex - index - 1, link2, false);
+                    doc.setCharacterAttributes(tokenStart + index + 1, endindex - index - 1, link2, false);
                 }
-            } else {
-                //System.out.println(token  + " "+ endOfToken + " " + endOffset + " " + content.substring(endOfToken, endOfToken + 1) + isDelimiter(content.substring(endOfToken, endOfToken + 1)));
             }
 
         }
@@ -250,16 +449,16 @@ public class myStylizedDocument extends DefaultStyledDocument {
     /*
      * Override for other languages
      */
-    protected boolean isDelimiter(String character) {
+    protected boolean isDelimiter(char character) {
         String operands = ";{}()[]+/%=!&|^~*,";
-        return Character.isWhitespace(character.charAt(0)) || operands.contains(character);
+        return Character.isWhitespace(character) || operands.indexOf(character) != -1;
     }
 
     /*
      * Override for other languages
      */
-    protected boolean isDoubleQuoteDelimiter(String character) {
-        return character.equals("\"");
+    protected boolean isDoubleQuoteDelimiter(char character) {
+        return character == '"';
     }
 
     /*
@@ -276,28 +475,27 @@ public class myStylizedDocument extends DefaultStyledDocument {
         return "\\" + quoteDelimiter;
     }
 
-    private static boolean startsWithCustomColorAndContainsEnd(String substring) {
-        if (substring == null) {
+    private static boolean startsWithCustomColorAndContainsEnd(CharSequence substring) {
+        if (substring == null || substring.length() == 0 || substring.charAt(0) != '<') {
             return false;
         }
-        final String regex = "<font[ ]+color[ ]*=[ ]*\"#[0-9a-fA-F]{6}[ ]*\">.*</font>.*";//for simplicity we won't allow trailing spaces in the </font> tag.
-        return substring.matches(regex);
+        return CUSTOM_COLOR_PATTERN.matcher(substring).matches();
     }
 
-    private int getEndOfColorToken(String content, int startOffset, int endOffset) {
-        int idxHashtag = content.indexOf("#", startOffset), idxFirstCloseBrace = content.indexOf(">", startOffset);
-        String color = content.substring(idxHashtag, idxFirstCloseBrace - 1);
+    private int getEndOfColorToken(CharSequence content, int lineOffset, int startOffset) {
+        int idxHashtag = indexOf(content, "#", startOffset), idxFirstCloseBrace = indexOf(content, ">", startOffset);
+        String color = content.subSequence(idxHashtag, idxFirstCloseBrace - 1).toString();
 
-        int endOfContent = content.indexOf("</font>", startOffset + 1);
+        int endOfContent = indexOf(content, "</font>", startOffset + 1);
         SimpleAttributeSet atts = new SimpleAttributeSet();
         StyleConstants.setForeground(atts, Color.decode(color));
         StyleConstants.setBold(atts, true);
-        doc.setCharacterAttributes(idxFirstCloseBrace + 1, endOfContent - (idxFirstCloseBrace + 1),
+        doc.setCharacterAttributes(lineOffset + idxFirstCloseBrace + 1, endOfContent - (idxFirstCloseBrace + 1),
                 atts, false);
         //Explicitly color the quotes in the font tag, since we color the entire font tag in this method, it won't get caught by the rest of the parser.
-        int q1 = content.indexOf("\"", startOffset);
-        int q2 = content.indexOf("\"", q1 + 1);
-        doc.setCharacterAttributes(q1, q2 - q1 + 1, quotedouble, false);
+        int q1 = indexOf(content, "\"", startOffset);
+        int q2 = indexOf(content, "\"", q1 + 1);
+        doc.setCharacterAttributes(lineOffset + q1, q2 - q1 + 1, quotedouble, false);
 
         return endOfContent + "</font>".length();//Continue parsing *after* the end of the </font> tag
 
@@ -336,4 +534,34 @@ public class myStylizedDocument extends DefaultStyledDocument {
         return !token.startsWith(".");
     }
 
+    /**
+     * All the attribute changes from a single call to highlight().
+     */
+    private static class HighlightEdit extends CompoundEdit {
+
+        boolean isEmpty() {
+            return edits.isEmpty();
+        }
+
+        @Override
+        public boolean isSignificant() {
+            return false;
+        }
+    }
+
+    /**
+     * A range of text which has changed since it was last highlighted.  Both
+     * ends are inclusive.
+     */
+    private static class DirtyRange {
+
+        private final Position start;
+        private final Position end;
+
+        DirtyRange(Position start, Position end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
 }
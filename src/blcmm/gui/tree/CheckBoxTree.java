@@ -40,6 +40,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.EventListener;
@@ -107,6 +108,8 @@ public final class CheckBoxTree extends JTree {
 
     private HashMap<TreePath, CheckedNode> nodesCheckingState;
     private HashSet<TreePath> checkedPaths = new HashSet<>();
+    private TreeSearchIndex searchIndex;
+    private boolean searchIndexStale;
     private final CheckboxTreeMouseAdapter adapter;
 
     private final FontInfo fontInfo;
@@ -273,6 +276,7 @@ public final class CheckBoxTree extends JTree {
     public void setModel(TreeModel newModel) {
         super.setModel(newModel);
         resetCheckingState();
+        searchIndex = null;
         change = false;
     }
 
@@ -286,11 +290,30 @@ public final class CheckBoxTree extends JTree {
     }
 
     public void setChanged(boolean flag) {
+        setChanged(flag, null);
+    }
+
+    /**
+     * Marks the tree as changed (or not).  If we know which elements were
+     * changed, overwrite highlighting only needs to be updated for those,
+     * rather than re-checked across the whole tree.  Removed elements should
+     * be passed in along with the container they were removed from.
+     *
+     * @param flag Whether the tree has been changed
+     * @param changedElements The elements which were changed, or null to
+     * re-check everything
+     */
+    public void setChanged(boolean flag, Collection<? extends ModelElement> changedElements) {
         change = flag;
         if (flag) {
+            searchIndexStale = true;
             isEverythingAllright();
             resetCheckingState();
-            ColorGiver.reset(patch.getRoot());
+            if (changedElements == null) {
+                ColorGiver.reset(patch.getRoot());
+            } else {
+                ColorGiver.update(patch.getRoot(), changedElements);
+            }
         }
     }
 
@@ -558,57 +581,66 @@ public final class CheckBoxTree extends JTree {
     }
 
     public int[] search(String st, boolean includeCode) {
-        TreePath tp = new TreePath(getModel().getRoot());
-        int[] rows = getSelectionRows();
-        int row = rows.length > 0 ? rows[0] : -1;
-        int[] rescount = {0, 0};
-        TreePath fr = search(st.toLowerCase(), includeCode, tp, null, new int[]{row}, rescount);
-        int[] rows2 = getSelectionRows();
-        int row2 = rows2.length > 0 ? rows2[0] : -1;
-        if (row2 == row && fr != null) {
-            rescount[0] = 1;
-            setSelectionPath(fr);
-            scrollPathToVisible(fr);
-        }
-        return rescount;
-    }
-
-    private TreePath search(final String st, boolean includeCode, TreePath tp, TreePath firstResult, int[] currentRow, int[] rescount) {
-        DefaultMutableTreeNode node = (DefaultMutableTreeNode) tp.getLastPathComponent();
-        if (node.isLeaf() && !includeCode) {
-            return firstResult;
+        return search(st, includeCode, false);
+    }
+
+    /**
+     * Searches the tree for the given string, ignoring case, and selects the
+     * next match after the currently-selected node (or the previous match,
+     * if searching backwards), wrapping around at the ends.  Leaf nodes are
+     * only searched if includeCode is set.
+     *
+     * @param st The string to search for
+     * @param includeCode Whether to search leaf nodes (mostly code)
+     * @param backwards Whether to select the previous match rather than the
+     * next one
+     * @return A two-element array: the index of the selected match (starting
+     * at 1), and the total number of matches.  Both will be zero if there
+     * were no matches.
+     */
+    public int[] search(String st, boolean includeCode, boolean backwards) {
+        TreeSearchIndex index = getSearchIndex();
+        int[] hits = index.find(st, includeCode);
+        if (hits.length == 0) {
+            return new int[]{0, 0};
         }
-        String s;
-        if (node.getUserObject() instanceof SetCommand) {
-            s = ((SetCommand) node.getUserObject()).getCode();
+        TreePath selected = getSelectionPath();
+        int current = selected == null ? -1 : index.getPosition((DefaultMutableTreeNode) selected.getLastPathComponent());
+        int idx;
+        if (current == -1) {
+            idx = backwards ? hits.length - 1 : 0;
         } else {
-            s = node.toString();
-        }
-        if (s.toLowerCase().contains(st)) {
-            rescount[1]++;
-            int[] currentRows2 = getSelectionRows();
-            int currentRow2 = currentRows2.length > 0 ? currentRows2[0] : -1;
-            expandPath(tp.getParentPath());//Expanding a path prior to our current row will increase the current row
-            int[] currentRows3 = getSelectionRows();
-            int currentRow3 = currentRows3.length > 0 ? currentRows3[0] : -1;
-            if (currentRow2 == currentRow[0]) {
-                currentRow[0] = currentRow3;
-            }
-            if (firstResult == null) {
-                firstResult = tp;
+            idx = Arrays.binarySearch(hits, current);
+            if (idx >= 0) {
+                idx = backwards ? idx - 1 : idx + 1;
+            } else {
+                idx = backwards ? -idx - 2 : -idx - 1;
             }
-            int row = getRowForPath(tp);
-            if (row > currentRow[0] && currentRow3 == currentRow[0]) {
-                rescount[0] = rescount[1];
-                setSelectionPath(tp);
-                scrollPathToVisible(tp);
+            if (idx < 0) {
+                idx = hits.length - 1;
+            } else if (idx >= hits.length) {
+                idx = 0;
             }
         }
-        for (int i = 0; i < node.getChildCount(); i++) {
-            firstResult = search(st, includeCode, tp.pathByAddingChild(node.getChildAt(i)), firstResult, currentRow, rescount);
-        }
+        TreePath tp = new TreePath(index.getNode(hits[idx]).getPath());
+        setSelectionPath(tp);
+        scrollPathToVisible(tp);
+        return new int[]{idx + 1, hits.length};
+    }
 
-        return firstResult;
+    /**
+     * Returns our search index, building a new one if the tree has changed
+     * since it was last built.
+     *
+     * @return The search index
+     */
+    TreeSearchIndex getSearchIndex() {
+        DefaultMutableTreeNode root = (DefaultMutableTreeNode) getModel().getRoot();
+        if (searchIndex == null || searchIndexStale || searchIndex.getRoot() != root) {
+            searchIndex = new TreeSearchIndex(root, searchIndex);
+            searchIndexStale = false;
+        }
+        return searchIndex;
     }
 
     /**
@@ -855,6 +887,8 @@ public final class CheckBoxTree extends JTree {
                     boolean checkMode = !tree.nodesCheckingState.get(tp).isSelected;
                     Object valid = isValidCheck(checkMode, tp);
                     ModelElement el = (ModelElement) userObject;
+                    List<ModelElement> changed = new ArrayList<>();
+                    changed.add(el);
                     if (valid instanceof Category) {
                         if (valid == el) {
                             // This will only happen if a mutually-exclusive category
@@ -884,6 +918,7 @@ public final class CheckBoxTree extends JTree {
                         //This means we're switching from one selection to another, uncheck the returned path
                         tree.checkNode((TreePath) valid, false);
                         tree.checkNode(tp, checkMode);
+                        changed.add((ModelElement) ((DefaultMutableTreeNode) ((TreePath) valid).getLastPathComponent()).getUserObject());
                     } else if (el.hasLockedAncestor()) {
                         AdHocDialog.run(MainGUI.INSTANCE,
                                 this.tree.getFontInfo(),
@@ -894,7 +929,7 @@ public final class CheckBoxTree extends JTree {
                         tree.checkNode(tp, checkMode);
                     }
                     MainGUI.INSTANCE.requestFocus();
-                    ColorGiver.reset(tree.getPatch().getRoot());
+                    ColorGiver.update(tree.getPatch().getRoot(), changed);
                 }
             }
             orig.mouseClicked(mouseEvent);
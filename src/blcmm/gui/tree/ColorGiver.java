@@ -23,6 +23,7 @@ import blcmm.model.properties.GlobalListOfProperties;
 import blcmm.model.properties.PropertyChecker;
 import blcmm.utilities.Options;
 import java.awt.Color;
+import java.util.Collection;
 import java.util.HashMap;
 
 /**
@@ -121,4 +122,8 @@ public class ColorGiver {
     public static final void reset(Category root) {
         OverwriteChecker.reset(root);
     }
+
+    public static final void update(Category root, Collection<? extends ModelElement> changed) {
+        OverwriteChecker.update(root, changed);
+    }
 }
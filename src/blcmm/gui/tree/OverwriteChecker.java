@@ -26,12 +26,14 @@ import blcmm.model.ModelElementContainer;
 import blcmm.model.SetCommand;
 import blcmm.model.TransientModelData;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 /**
@@ -48,6 +50,13 @@ import java.util.TreeSet;
  * discard all instances of it while constructing.
  * https://github.com/BLCM/OpenBLCMM/issues/20
  *
+ * Statements can only ever overwrite each other if they share the same
+ * object and top-level attribute (ie: the "hotfix-free start" of the
+ * statement), so alongside the full rescan in reset(), update() can be used
+ * after small edits to only re-evaluate the groups of statements which
+ * share a prefix with whatever was changed, plus the containers above them.
+ * If too many statements are involved, we just fall back to a full rescan.
+ *
  * @author LightChaosman
  */
 public class OverwriteChecker {
@@ -74,19 +83,14 @@ public class OverwriteChecker {
     }
 
     private static List<SetCommand> getList(SetCommand command, boolean overwritesMe, boolean partial) {
-        TreeSet<SetCommandPlus> res1 = new TreeSet<>();
         String start = Helpers.getStart(command);
-        boolean subPrefixUseful = partial != overwritesMe;
-        SortedMap<String, TreeSet<SetCommandPlus>> elementsWithPrefix
-                = Helpers.getElementsWithPrefix(
-                        INSTANCE.overwriteMap,
-                        subPrefixUseful ? Helpers.getHotfixFreeStart(command) : start);
+        TreeSet<SetCommandPlus> ownSet = INSTANCE.overwriteTrie.get(start);
         SetCommandPlus thisCommand = null;
-        if (elementsWithPrefix.containsKey(start)) {
-            // AFAIK, this should never *not* be reached in ordinary operation.  We're doing the containsKey
+        if (ownSet != null) {
+            // AFAIK, this should never be null in ordinary operation.  We're doing the null
             // check basically entirely for the benefit of our unit tests, because we'll end up calling this
             // with TPS-style +(array) additions, which won't be in our structures.
-            for (SetCommandPlus s : elementsWithPrefix.get(start)) {
+            for (SetCommandPlus s : ownSet) {
                 if (s.command == command) {
                     thisCommand = s;//This could be done with a hashmap or so, but since this loop will usually only be a very small number of elements, this is fine.
                     break;
@@ -96,42 +100,28 @@ public class OverwriteChecker {
         if (thisCommand == null) {
             // AFAIK, this should never be reached in ordinary operation, 'cause the GUI won't even give
             // the user an option to get in here.  However, our unit tests for this stuff will end up
-            // calling in here with TPS-style +(array) additions, which won't be anywhere in overwriteMap,
+            // calling in here with TPS-style +(array) additions, which won't be anywhere in overwriteTrie,
             // so just handle it regardless.
             return new ArrayList<>();
         }
-        for (String prefix : elementsWithPrefix.keySet()) {
-            if (1 == 0) { //Two ways of doing the same thing... I think, the 'false' branch is more effiecient about it.
-                if (false //below is the super verbose way of doing things, with multiple startsWith and equals evaluations
-                        || ((overwritesMe && !partial) && (start.startsWith(prefix)))
-                        || ((overwritesMe && partial) && (prefix.startsWith(start) && !start.equals(prefix)))
-                        || ((!overwritesMe && !partial) && (prefix.startsWith(start)))
-                        || ((!overwritesMe && partial) && (start.startsWith(prefix) && !start.equals(prefix)))) {
-                    if (!isValidSuperString(start, prefix)) {
-                        continue;
-                    }
-                    TreeSet<SetCommandPlus> toAdd1 = elementsWithPrefix.get(prefix);
-                    Set<SetCommandPlus> toAdd2 = overwritesMe ? toAdd1.tailSet(thisCommand, false) : toAdd1.headSet(thisCommand, false);
-                    res1.addAll(toAdd2);
-                }
-            } else {
-                if (true //This is the compact & effient way, probably effectively the same as above.
-                        && !(start.equals(prefix) && partial)//If we're looking at partial stuff, we exclude our own prefix
-                        && (subPrefixUseful ? start.startsWith(prefix) : true)//
-                        //used to be: subPrefixUseful ? start.startsWith(prefix) : prefix.startsWith(start)
-                        //But prefix.startsWith(start) is always true when subPrefixUseful is true, because of the condition at the top
-                        ) {
-                    if (!isValidSuperString(start, prefix)) {
-                        continue;
-                    }
-                    TreeSet<SetCommandPlus> toAdd1 = elementsWithPrefix.get(prefix);
-                    Set<SetCommandPlus> toAdd2 = overwritesMe ? toAdd1.tailSet(thisCommand, false) : toAdd1.headSet(thisCommand, false);
-                    res1.addAll(toAdd2);
-                }
-            }
+
+        // Complete overwriters and partial overwrittens live at our own key or
+        // at attributes which we're a sub-attribute of (ie: further up the
+        // trie), whereas partial overwriters and complete overwrittens live
+        // at our own key or at our sub-attributes (further down).  Our own
+        // key is only considered for complete overwrites.
+        List<TreeSet<SetCommandPlus>> candidates;
+        if (partial != overwritesMe) {
+            candidates = INSTANCE.overwriteTrie.getAncestors(start,
+                    Helpers.getHotfixFreeStart(command).length(), !partial, true);
+        } else {
+            candidates = INSTANCE.overwriteTrie.getDescendants(start, !partial);
+        }
+        TreeSet<SetCommandPlus> res1 = new TreeSet<>();
+        for (TreeSet<SetCommandPlus> set : candidates) {
+            res1.addAll(overwritesMe ? set.tailSet(thisCommand, false) : set.headSet(thisCommand, false));
         }
 
-        assert thisCommand != null;
         List<SetCommand> res = new ArrayList<>();
         for (SetCommandPlus s : res1) {
             res.add(s.command);
@@ -139,35 +129,6 @@ public class OverwriteChecker {
         return res;
     }
 
-    private static boolean isValidSuperString(String prefix, String superString) {
-        if (prefix.length() == superString.length()) {
-            return true;
-        }
-        if (superString.length() < prefix.length()) {
-            return isValidSuperString(superString, prefix);
-        }
-        char last = prefix.charAt(prefix.length() - 1);
-        if (superString.charAt(prefix.length()) == '.') {
-            return true;
-        } else {
-            int x = prefix.length();
-            if (superString.charAt(x) != '[') {
-                return false;
-            }
-            x++;
-            while (x < superString.length() && Character.isDigit(superString.charAt(x))) {
-                x++;
-            }
-            if (x == superString.length()) {
-                return false;
-            }
-            if (superString.charAt(x) != ']') {
-                return false;
-            }
-            return true;
-        }
-    }
-
     /**
      * Returns the ColorType of the given element
      *
@@ -186,14 +147,47 @@ public class OverwriteChecker {
      */
     public static void reset(Category root) {
         INSTANCE.colorTypeMap.clear();
-        INSTANCE.overwriteMap.clear();
+        INSTANCE.overwriteTrie.clear();
+        INSTANCE.registrations.clear();
+        INSTANCE.root = root;
         INSTANCE.scan(root, false);
         INSTANCE.scan(root, true);
     }
+
+    /**
+     * Updates our overwrite statuses after the given elements have been
+     * changed, without rescanning the whole tree.  "Changed" elements can be
+     * statements which have been inserted, removed, or (de)selected, or
+     * containers whose contents have been changed in any of those ways.
+     * Elements which have been removed from the tree should be passed in
+     * along with the container they were removed from.  (Edited statements
+     * are always new objects, so an edit is just a removal plus an insert.)
+     * Statements and hotfix wrappers which are passed in directly are always
+     * re-analyzed, so moving one around is handled by passing it in along
+     * with its old and new containers.  Categories which are passed in only
+     * have their contents re-analyzed if those have actually changed.
+     *
+     * If we've not been scanned with this root yet, or if the change affects
+     * too many statements, this will fall back to a full reset().
+     *
+     * @param root The root of the tree
+     * @param changed The elements which have changed
+     */
+    public static void update(Category root, Collection<? extends ModelElement> changed) {
+        if (root != INSTANCE.root || !INSTANCE.updateIncrementally(changed)) {
+            reset(root);
+        }
+    }
+
+    /**
+     * The maximum number of statements whose status we'll re-evaluate in an
+     * incremental update before just doing a full rescan instead.
+     */
+    private static final int MAX_INCREMENTAL_COMMANDS = 2000;
     /**
      * The structure we use to store our overwrite statuses
      */
-    private final TreeMap<String, TreeSet<SetCommandPlus>> overwriteMap = new TreeMap<>();
+    private final OverwriteTrie<SetCommandPlus> overwriteTrie = new OverwriteTrie<>();
 
     /**
      * A HashMap to keep track of what ColorType to use. This lets us change the
@@ -201,6 +195,18 @@ public class OverwriteChecker {
      */
     private final HashMap<ModelElement, ThemeManager.ColorType> colorTypeMap = new HashMap<>();
 
+    /**
+     * What we knew about each statement the last time it was scanned, so
+     * that incremental updates can tell which statements have actually
+     * changed, and which prefix group they used to belong to.
+     */
+    private final HashMap<SetCommand, Registration> registrations = new HashMap<>();
+
+    /**
+     * The root we were last fully scanned with.
+     */
+    private Category root = null;
+
     /**
      * The single, private, constructor, that is called a grand total of 1 time.
      */
@@ -289,63 +295,360 @@ public class OverwriteChecker {
     private boolean analyzeLeaf(ModelElement element, final boolean hotfixesOnly) {
         if (!hotfixesOnly) {//first scan
             element.getTransientData().setOverwriteState(TransientModelData.OverwriteState.Normal);
+            if (element instanceof SetCommand) {
+                SetCommand setCommand = (SetCommand) element;
+                registrations.put(setCommand, new Registration(setCommand,
+                        isEligible(setCommand) ? Helpers.getHotfixFreeStart(setCommand) : null));
+            }
         }
         if (element instanceof SetCommand) {
-            if (!((SetCommand) element).isSelected()) {
+            if (!isEligible((SetCommand) element)) {
                 return false;
             }
-            if (((SetCommand) element).getValue().startsWith("+(")) {
+            if ((element.getParent() instanceof HotfixWrapper) != hotfixesOnly) {//Note that we are guaranteed to have a parent, so no nullpointer can be thrown
                 return false;
             }
-            if (((SetCommand) element).getField().equalsIgnoreCase("levellist")) {
-                return false;
+            return analyzeCommand((SetCommand) element);
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the given statement takes part in overwrite checking
+     * at all.
+     *
+     * @param setCommand The statement to check
+     * @return True if the statement can overwrite, or be overwritten
+     */
+    private static boolean isEligible(SetCommand setCommand) {
+        return setCommand.isSelected()
+                && !setCommand.getValue().startsWith("+(")
+                && !setCommand.getField().equalsIgnoreCase("levellist");
+    }
+
+    /**
+     * Analyze an eligible statement against everything which has been added
+     * to our overwrite map so far, and then add it to the map.
+     *
+     * @param setCommand The statement to investigate
+     * @return True if we were set as an overwriter, False otherwise.
+     */
+    private boolean analyzeCommand(SetCommand setCommand) {
+        String start = Helpers.getStart(setCommand);
+        String noHotfixPrefix = Helpers.getHotfixFreeStart(setCommand);
+        // Anything stored at a shorter key than ours (but still at least as
+        // long as our hotfix-free prefix) is something we partially overwrite.
+        int p_overwrites = overwriteTrie.getAncestors(start, noHotfixPrefix.length(), false, false).size();
+        if (p_overwrites > 0) {
+            setPartialOverwriter(setCommand);
+        }
+        boolean overwrite = false;
+        int count = 0;
+        for (TreeSet<SetCommandPlus> set : overwriteTrie.getDescendants(start, true)) {
+            ModelElement el = set.last().command;
+            count++;
+            setOverwritten(el);
+            while ((el = el.getParent()) != null) {
+                setOverwritten(el);
             }
-            if ((element.getParent() instanceof HotfixWrapper) != hotfixesOnly) {//Note that we are guaranteed to have a parent, so no nullpointer can be thrown
+        }
+        if (count > 0) {
+            setOverwriter(setCommand);
+            overwrite = true;
+        }
+        overwriteTrie.add(start, new SetCommandPlus(setCommand, start));
+        return overwrite;
+    }
+
+    /**
+     * Does the work for update().  Figures out which statements have changed
+     * since we last saw them, re-analyzes every statement in the prefix
+     * groups which those belong (or used to belong) to, and then recomputes
+     * the status of all containers above them.
+     *
+     * @param changed The elements which have changed
+     * @return True if we updated, or False if a full reset is required
+     * instead.
+     */
+    private boolean updateIncrementally(Collection<? extends ModelElement> changed) {
+        Set<String> groups = new HashSet<>();
+        Map<SetCommand, Boolean> changedCommands = new IdentityHashMap<>();
+        Set<ModelElementContainer<?>> dirty = new HashSet<>();
+        for (ModelElement element : changed) {
+            if (element != null && !collectChanges(element, !(element instanceof Category),
+                    groups, changedCommands, dirty)) {
                 return false;
             }
-            SetCommand setCommand = (SetCommand) element;
-            String start = Helpers.getStart(setCommand);
-            String noHotfixPrefix = Helpers.getHotfixFreeStart(setCommand);
-            SortedMap<String, TreeSet<SetCommandPlus>> elementsWithPrefix = Helpers.getElementsWithPrefix(overwriteMap, noHotfixPrefix);
-            SortedMap<String, TreeSet<SetCommandPlus>> elementsWithFullPrefix = Helpers.getElementsWithPrefix(overwriteMap, start);
-            int p_overwrites = 0;
-            for (String prefix : elementsWithPrefix.keySet()) {
-                if (prefix.startsWith(start)) {//We completely overwrite these, so these are handled below
-                    continue;
-                } else if (!start.startsWith(prefix)) {//This hotfix modifies a non-overlapping part from the ones starting with the current prefix
-                    continue;
+        }
+        for (SetCommand command : changedCommands.keySet()) {
+            resetState(command);
+        }
+
+        // Find everything currently in the affected groups.  Existing members
+        // come out of overwriteTrie; new members come from the changed list.
+        Map<String, Set<SetCommand>> members = new HashMap<>();
+        for (String group : groups) {
+            members.put(group, Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+        List<SetCommandPlus> toRemove = new ArrayList<>();
+        for (String group : groups) {
+            for (TreeSet<SetCommandPlus> set : overwriteTrie.getSubtree(group)) {
+                for (SetCommandPlus plus : set) {
+                    Registration reg = registrations.get(plus.command);
+                    if (reg == null || reg.group == null) {
+                        // Removed from the tree, or no longer eligible
+                        toRemove.add(plus);
+                    } else if (groups.contains(reg.group)) {
+                        toRemove.add(plus);
+                        members.get(reg.group).add(plus.command);
+                    }
+                    // Otherwise it's in a neighbouring group we're not touching
                 }
-                p_overwrites++;
-                //ModelElement el = elementsWithPrefix.get(prefix).last().command;
-                //setPartialOverwritten(el);//We don't color partially overwritten elements, only partial overwriters
             }
-            if (p_overwrites > 0) {
-                setPartialOverwriter(element);
+        }
+        for (SetCommandPlus plus : toRemove) {
+            overwriteTrie.remove(plus.start, plus);
+        }
+        for (SetCommand command : changedCommands.keySet()) {
+            Registration reg = registrations.get(command);
+            if (reg != null && reg.group != null) {
+                members.get(reg.group).add(command);
             }
-            boolean overwrite = false;
-            if (!elementsWithFullPrefix.isEmpty()) {
-                int count = 0;
-                for (String prefix : elementsWithFullPrefix.keySet()) {
-                    if (!isValidSuperString(prefix, start)) {
-                        continue;
-                    }
-                    ModelElement el = elementsWithFullPrefix.get(prefix).last().command;
-                    count++;
-                    setOverwritten(el);
-                    while ((el = el.getParent()) != null) {
-                        setOverwritten(el);
+        }
+
+        // Now re-analyze each group in the same order that a full scan would:
+        // all non-hotfix statements first, then hotfixes, each in tree order.
+        int total = 0;
+        for (Set<SetCommand> groupMembers : members.values()) {
+            total += groupMembers.size();
+        }
+        if (total > MAX_INCREMENTAL_COMMANDS) {
+            return false;
+        }
+        Map<ModelElementContainer<?>, Map<ModelElement, Integer>> siblingIndexes = new IdentityHashMap<>();
+        for (Set<SetCommand> groupMembers : members.values()) {
+            List<SetCommand> ordered = new ArrayList<>();
+            HashMap<SetCommand, List<Integer>> positions = new HashMap<>();
+            for (SetCommand command : groupMembers) {
+                List<Integer> position = getTreePosition(command, siblingIndexes);
+                if (position == null) {
+                    registrations.remove(command);
+                } else {
+                    positions.put(command, position);
+                    ordered.add(command);
+                    resetState(command);
+                }
+            }
+            ordered.sort((a, b) -> {
+                boolean hotfixA = a.getParent() instanceof HotfixWrapper;
+                boolean hotfixB = b.getParent() instanceof HotfixWrapper;
+                if (hotfixA != hotfixB) {
+                    return hotfixA ? 1 : -1;
+                }
+                List<Integer> posA = positions.get(a);
+                List<Integer> posB = positions.get(b);
+                for (int i = 0; i < Math.min(posA.size(), posB.size()); i++) {
+                    int cmp = Integer.compare(posA.get(i), posB.get(i));
+                    if (cmp != 0) {
+                        return cmp;
                     }
                 }
-                if (count > 0) {
-                    setOverwriter(element);
-                    overwrite = true;
+                return Integer.compare(posA.size(), posB.size());
+            });
+            for (SetCommand command : ordered) {
+                analyzeCommand(command);
+                addAncestors(command.getParent(), dirty);
+            }
+        }
+
+        // Finally, containers.  A container is overwritten if anything inside
+        // it is overwritten, and otherwise an overwriter if anything inside it
+        // is an overwriter.  Process the deepest ones first so that each
+        // container can just look at its direct children.
+        List<ModelElementContainer<?>> containers = new ArrayList<>();
+        HashMap<ModelElementContainer<?>, Integer> depths = new HashMap<>();
+        for (ModelElementContainer<?> container : dirty) {
+            int depth = getTreeDepth(container);
+            if (depth >= 0) {
+                containers.add(container);
+                depths.put(container, depth);
+            }
+        }
+        containers.sort((a, b) -> Integer.compare(depths.get(b), depths.get(a)));
+        for (ModelElementContainer<?> container : containers) {
+            boolean overwritten = false;
+            boolean overwriting = false;
+            for (Object child : container.getElements()) {
+                TransientModelData.OverwriteState state = ((ModelElement) child).getTransientData().getOverwriteState();
+                if (state == TransientModelData.OverwriteState.Overwritten) {
+                    overwritten = true;
+                    break;
+                } else if (state == TransientModelData.OverwriteState.Overwriter) {
+                    overwriting = true;
                 }
             }
-            overwriteMap.putIfAbsent(start, new TreeSet<>());
-            overwriteMap.get(start).add(new SetCommandPlus(setCommand));
-            return overwrite;
+            if (overwritten) {
+                setOverwritten(container);
+            } else if (overwriting) {
+                setOverwriter(container);
+            } else {
+                resetState(container);
+            }
         }
-        return false;
+        return true;
+    }
+
+    /**
+     * Walks through a changed element (recursing into containers), and
+     * records which statements need to be re-analyzed, which prefix groups
+     * they touch, and which containers will need their status recomputed.
+     *
+     * @param element The changed element
+     * @param force Whether to re-analyze statements even if their selection
+     * and parent haven't changed (because they may have been moved)
+     * @param groups The set of affected prefix groups to add to
+     * @param changedCommands The set of changed statements to add to
+     * @param dirty The set of containers to recompute to add to
+     * @return False if too many statements have changed to bother with an
+     * incremental update
+     */
+    private boolean collectChanges(ModelElement element, boolean force, Set<String> groups,
+            Map<SetCommand, Boolean> changedCommands, Set<ModelElementContainer<?>> dirty) {
+        if (element instanceof ModelElementContainer) {
+            addAncestors((ModelElementContainer<?>) element, dirty);
+            for (Object child : ((ModelElementContainer<?>) element).getElements()) {
+                if (!collectChanges((ModelElement) child, force, groups, changedCommands, dirty)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (!(element instanceof SetCommand)) {
+            addAncestors(element.getParent(), dirty);
+            return true;
+        }
+        SetCommand command = (SetCommand) element;
+        Registration old = registrations.get(command);
+        boolean attached = isAttached(command);
+        if (old != null) {
+            if (!force && attached && old.selected == command.isSelected() && old.parent == command.getParent()) {
+                // Nothing we care about has changed
+                return true;
+            }
+            if (old.group != null) {
+                groups.add(old.group);
+            }
+            addAncestors(old.parent, dirty);
+        }
+        if (attached) {
+            Registration reg = new Registration(command,
+                    isEligible(command) ? Helpers.getHotfixFreeStart(command) : null);
+            registrations.put(command, reg);
+            if (reg.group != null) {
+                groups.add(reg.group);
+            }
+            addAncestors(command.getParent(), dirty);
+        } else {
+            registrations.remove(command);
+        }
+        changedCommands.put(command, Boolean.TRUE);
+        return changedCommands.size() <= MAX_INCREMENTAL_COMMANDS;
+    }
+
+    /**
+     * Adds the given container and all of its ancestors to a set.
+     *
+     * @param container The container to start at (may be null)
+     * @param dirty The set to add to
+     */
+    private static void addAncestors(ModelElementContainer<?> container, Set<ModelElementContainer<?>> dirty) {
+        while (container != null && dirty.add(container)) {
+            container = container.getParent();
+        }
+    }
+
+    /**
+     * Returns whether the given element is still part of our tree.  Elements
+     * which are removed from the tree get their parent cleared, so we just
+     * need to make sure that we can walk up to the root.
+     *
+     * @param element The element to check
+     * @return True if the element is in our tree
+     */
+    private boolean isAttached(ModelElement element) {
+        while (element != null && element != root) {
+            element = element.getParent();
+        }
+        return element == root;
+    }
+
+    /**
+     * Returns the position of an element in our tree, as a list of child
+     * indexes from the root downwards, or null if the element is no longer
+     * part of our tree.
+     *
+     * Looking up an element's index within its parent means going through
+     * the parent's whole list of children, which can be pretty big, so the
+     * indexes of each container's children get cached in the passed-in map
+     * the first time they're needed.  That way each container only gets
+     * scanned once per update, no matter how many of its children we're
+     * looking at.  The cache is only valid while the tree isn't changing.
+     *
+     * @param element The element to look up
+     * @param siblingIndexes Cache of child indexes for each container
+     * @return The element's position, or null
+     */
+    private List<Integer> getTreePosition(ModelElement element,
+            Map<ModelElementContainer<?>, Map<ModelElement, Integer>> siblingIndexes) {
+        List<Integer> position = new ArrayList<>();
+        while (element != root) {
+            ModelElementContainer<?> parent = element.getParent();
+            if (parent == null) {
+                return null;
+            }
+            Map<ModelElement, Integer> indexes = siblingIndexes.get(parent);
+            if (indexes == null) {
+                indexes = new IdentityHashMap<>();
+                int index = 0;
+                for (ModelElement child : parent.getElements()) {
+                    indexes.put(child, index++);
+                }
+                siblingIndexes.put(parent, indexes);
+            }
+            Integer index = indexes.get(element);
+            if (index == null) {
+                return null;
+            }
+            position.add(index);
+            element = parent;
+        }
+        Collections.reverse(position);
+        return position;
+    }
+
+    /**
+     * Returns how deep the given element is in our tree (with the root
+     * being at depth zero), or -1 if it's no longer part of our tree.
+     *
+     * @param element The element to look up
+     * @return The element's depth, or -1
+     */
+    private int getTreeDepth(ModelElement element) {
+        int depth = 0;
+        while (element != null && element != root) {
+            element = element.getParent();
+            depth++;
+        }
+        return element == root ? depth : -1;
+    }
+
+    /**
+     * Resets an element back to having no overwrite status.
+     *
+     * @param element The element to reset
+     */
+    private void resetState(ModelElement element) {
+        element.getTransientData().setOverwriteState(TransientModelData.OverwriteState.Normal);
+        colorTypeMap.remove(element);
     }
 
     /**
@@ -401,15 +704,34 @@ public class OverwriteChecker {
         }
     }
 
+    /**
+     * What we knew about a statement when we last scanned it.
+     */
+    private static final class Registration {
+
+        private final String group;
+        private final boolean selected;
+        private final ModelElementContainer<?> parent;
+
+        Registration(SetCommand command, String group) {
+            this.group = group;
+            this.selected = command.isSelected();
+            this.parent = command.getParent();
+        }
+
+    }
+
     private static final class SetCommandPlus implements Comparable<SetCommandPlus> {
 
         private static int COUNTER = 0;
 
         private final SetCommand command;
+        private final String start;
         private final int idx = COUNTER++;
 
-        SetCommandPlus(SetCommand command) {
+        SetCommandPlus(SetCommand command, String start) {
             this.command = command;
+            this.start = start;
         }
 
         @Override
@@ -431,7 +753,7 @@ public class OverwriteChecker {
          */
         private static String getStart(SetCommand setCommand) {
             String object = getStrippedObject(setCommand) + " ";
-            String field = setCommand.getField().toLowerCase();
+            String field = setCommand.getLowerCaseField();
             if (setCommand.getParent() != null && setCommand.getParent() instanceof HotfixWrapper) {
                 HotfixWrapper parent = (HotfixWrapper) setCommand.getParent();
                 if (parent.getType() != HotfixType.PATCH && !"none".equalsIgnoreCase(parent.getParameter())) {
@@ -456,7 +778,7 @@ public class OverwriteChecker {
         }
 
         private static String getHotfixFreeStart(SetCommand setCommand) {
-            String start = setCommand.getField();
+            String start = setCommand.getLowerCaseField();
             int min = start.length();
             int idx1 = start.indexOf(".");
             int idx2 = start.indexOf("[");
@@ -466,11 +788,11 @@ public class OverwriteChecker {
             if (idx2 != -1) {
                 min = Math.min(min, idx2);
             }
-            return getStrippedObject(setCommand) + " " + start.substring(0, min).toLowerCase();
+            return getStrippedObject(setCommand) + " " + start.substring(0, min);
         }
 
         private static String getStrippedObject(SetCommand setCommand) {
-            String base = setCommand.getObject().toLowerCase();
+            String base = setCommand.getLowerCaseObject();
             int idx = base.indexOf("'");
             if (idx == -1) {
                 return base;
@@ -482,51 +804,6 @@ public class OverwriteChecker {
             return base.substring(idx + 1, idx2);
         }
 
-        /**
-         * @param allElements - a SortedSet of strings. This set must use the
-         * natural string ordering; otherwise this method may not behave as
-         * intended.
-         * @param prefix
-         * @return The subset of allElements containing the strings that start
-         * with prefix.
-         */
-        private static <V> SortedMap<String, V> getElementsWithPrefix(
-                final SortedMap<String, V> allElements, final String prefix) {
-
-            final Optional<String> endpoint = incrementPrefix(prefix);
-
-            if (endpoint.isPresent()) {
-                return allElements.subMap(prefix, endpoint.get());
-            } else {
-                return allElements.tailMap(prefix);
-            }
-        }
-
-        /**
-         * @param prefix
-         * @return The least string that's greater than all strings starting
-         * with prefix, if one exists. Otherwise, returns Optional.empty().
-         * (Specifically, returns Optional.empty() if the prefix is the empty
-         * string, or is just a sequence of Character.MAX_VALUE-s.)
-         */
-        static Optional<String> incrementPrefix(final String prefix) {
-            final StringBuilder sb = new StringBuilder(prefix);
-
-            // remove any trailing occurrences of Character.MAX_VALUE:
-            while (sb.length() > 0 && sb.charAt(sb.length() - 1) == Character.MAX_VALUE) {
-                sb.setLength(sb.length() - 1);
-            }
-
-            // if the prefix is empty, then there's no upper bound:
-            if (sb.length() == 0) {
-                return Optional.empty();
-            }
-
-            // otherwise, increment the last character and return the result:
-            sb.setCharAt(sb.length() - 1, (char) (sb.charAt(sb.length() - 1) + 1));
-            return Optional.of(sb.toString());
-        }
-
     }
 
 }
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.tree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A trie of object/attribute paths, used by OverwriteChecker to find which
+ * statements overwrite each other.
+ *
+ * Keys are the "start" of a statement (stripped object name plus attribute,
+ * as generated by OverwriteChecker), and are split into segments just before
+ * each '.', ':' or '[' character.  So, "foo bar[1].baz" ends up as the path
+ * "foo bar" -&gt; "[1]" -&gt; ".baz".  Each node holds an ordered set of
+ * values (statements, in the order they were scanned) whose key ends at that
+ * node.
+ *
+ * Previously this was all done with a sorted map of keys, taking a sub-range
+ * of everything sharing a string prefix and then checking each key in that
+ * range with startsWith() and a check to make sure the key was a "valid"
+ * superstring (ie: "foo bar" and "foo bar.baz" affect each other, but "foo
+ * bar" and "foo barbaz" do not).  With the trie, everything which could
+ * affect a statement is just a walk up or down from its node, and the
+ * validity check only has to look at the first segment after the shorter
+ * key.
+ *
+ * @author apocalyptech
+ * @param <T> The type of value to store at each node
+ */
+class OverwriteTrie<T extends Comparable<T>> {
+
+    /**
+     * A single node in the trie.
+     */
+    private static class Node<T> {
+
+        private final Node<T> parent;
+        private final String segment;
+        private final int length;
+        private HashMap<String, Node<T>> children = null;
+        private TreeSet<T> values = null;
+
+        Node(Node<T> parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+            this.length = (parent == null ? 0 : parent.length) + segment.length();
+        }
+
+        boolean hasValues() {
+            return this.values != null && !this.values.isEmpty();
+        }
+
+    }
+
+    private Node<T> root = new Node<>(null, "");
+
+    /**
+     * Splits a key into its path segments.
+     *
+     * @param key The key to split
+     * @return The key's segments
+     */
+    static List<String> split(String key) {
+        List<String> segments = new ArrayList<>();
+        int segStart = 0;
+        for (int i = 1; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '.' || c == ':' || c == '[') {
+                segments.add(key.substring(segStart, i));
+                segStart = i;
+            }
+        }
+        if (segStart < key.length()) {
+            segments.add(key.substring(segStart));
+        }
+        return segments;
+    }
+
+    /**
+     * Returns whether a key ending in the given segment is a "valid"
+     * superstring of the key just above it -- that is, whether it's a
+     * sub-attribute ("foo bar.baz") or an array index ("foo bar[1]") of the
+     * shorter key, as opposed to something else which just happens to share
+     * a string prefix.  This is the same check that OverwriteChecker used to
+     * do on whole strings.
+     *
+     * @param segment The first segment after the shorter key
+     * @return True if the longer key is a valid superstring
+     */
+    private static boolean isValidSegment(String segment) {
+        if (segment.charAt(0) == '.') {
+            return true;
+        } else if (segment.charAt(0) != '[') {
+            return false;
+        }
+        int x = 1;
+        while (x < segment.length() && Character.isDigit(segment.charAt(x))) {
+            x++;
+        }
+        return x < segment.length() && segment.charAt(x) == ']';
+    }
+
+    /**
+     * Finds the node for the given key, optionally creating it.
+     *
+     * @param key The key to look up
+     * @param create Whether to create the node (and any nodes above it) if
+     * it doesn't exist
+     * @return The node, or null if it doesn't exist and create is false
+     */
+    private Node<T> getNode(String key, boolean create) {
+        Node<T> node = this.root;
+        for (String segment : split(key)) {
+            Node<T> child = node.children == null ? null : node.children.get(segment);
+            if (child == null) {
+                if (!create) {
+                    return null;
+                }
+                child = new Node<>(node, segment);
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Adds a value to the set stored at the given key.
+     *
+     * @param key The key
+     * @param value The value to add
+     */
+    public void add(String key, T value) {
+        Node<T> node = this.getNode(key, true);
+        if (node.values == null) {
+            node.values = new TreeSet<>();
+        }
+        node.values.add(value);
+    }
+
+    /**
+     * Removes a value from the set stored at the given key, cleaning up any
+     * nodes which are left empty.
+     *
+     * @param key The key
+     * @param value The value to remove
+     * @return True if the value was present
+     */
+    public boolean remove(String key, T value) {
+        Node<T> node = this.getNode(key, false);
+        if (node == null || node.values == null || !node.values.remove(value)) {
+            return false;
+        }
+        while (node.parent != null && !node.hasValues()
+                && (node.children == null || node.children.isEmpty())) {
+            node.parent.children.remove(node.segment);
+            node = node.parent;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the set of values stored at exactly the given key.
+     *
+     * @param key The key
+     * @return The values, or null if there are none
+     */
+    public TreeSet<T> get(String key) {
+        Node<T> node = this.getNode(key, false);
+        if (node == null || !node.hasValues()) {
+            return null;
+        }
+        return node.values;
+    }
+
+    /**
+     * Removes everything from the trie.
+     */
+    public void clear() {
+        this.root = new Node<>(null, "");
+    }
+
+    /**
+     * Returns the value sets of all keys which are valid superstrings of the
+     * given key (ie: sub-attributes and array indexes of it).
+     *
+     * @param key The key
+     * @param includeSelf Whether to include the values at the key itself
+     * @return A list of value sets
+     */
+    public List<TreeSet<T>> getDescendants(String key, boolean includeSelf) {
+        List<TreeSet<T>> result = new ArrayList<>();
+        Node<T> node = this.getNode(key, false);
+        if (node == null) {
+            return result;
+        }
+        if (includeSelf && node.hasValues()) {
+            result.add(node.values);
+        }
+        if (node.children != null) {
+            for (Node<T> child : node.children.values()) {
+                if (isValidSegment(child.segment)) {
+                    this.collect(child, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value sets of all keys which are prefixes of the given key,
+     * at segment boundaries.
+     *
+     * @param key The key
+     * @param minLength The minimum length of key to consider
+     * @param includeSelf Whether to include the values at the key itself
+     * @param validOnly Whether to only include keys which the given key is
+     * a valid superstring of (ie: the given key is a sub-attribute or array
+     * index of them)
+     * @return A list of value sets, from shortest key to longest
+     */
+    public List<TreeSet<T>> getAncestors(String key, int minLength, boolean includeSelf, boolean validOnly) {
+        List<TreeSet<T>> result = new ArrayList<>();
+        Node<T> node = this.root;
+        List<String> segments = split(key);
+        for (int i = 0; i < segments.size(); i++) {
+            node = node.children == null ? null : node.children.get(segments.get(i));
+            if (node == null) {
+                break;
+            }
+            boolean isSelf = (i == segments.size() - 1);
+            if (!node.hasValues() || node.length < minLength) {
+                continue;
+            }
+            if (isSelf) {
+                if (includeSelf) {
+                    result.add(node.values);
+                }
+            } else if (!validOnly || isValidSegment(segments.get(i + 1))) {
+                result.add(node.values);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value sets of every key at or below the given key, with no
+     * validity checks.
+     *
+     * @param key The key
+     * @return A list of value sets
+     */
+    public List<TreeSet<T>> getSubtree(String key) {
+        List<TreeSet<T>> result = new ArrayList<>();
+        Node<T> node = this.getNode(key, false);
+        if (node != null) {
+            this.collect(node, result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the value sets of the given node and everything below it to a
+     * list.
+     *
+     * @param node The node to start at
+     * @param result The list to add to
+     */
+    private void collect(Node<T> node, List<TreeSet<T>> result) {
+        if (node.hasValues()) {
+            result.add(node.values);
+        }
+        if (node.children != null) {
+            for (Node<T> child : node.children.values()) {
+                this.collect(child, result);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.tree;
+
+import blcmm.model.HotfixType;
+import blcmm.model.SetCommand;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A more detailed search of the mod tree than the regular search box does,
+ * for use with TreeQueryDialog.  A query is a list of terms separated by
+ * spaces, all of which have to match.  Each term can be:
+ *
+ *   1) Plain text, which matches anywhere in a statement's code, or in the
+ *      name of a category/comment.  Case-insensitive, as usual.
+ *
+ *   2) A regular expression surrounded by slashes, like /gd_\w+\.foo/.
+ *      Also case-insensitive.
+ *
+ *   3) Either of the above, prefixed with "object:", "field:" or "value:",
+ *      which only matches against that part of a statement.
+ *
+ *   4) "hotfix:" followed by "patch", "level" or "ondemand" (or several of
+ *      those, separated by commas), "any" or "none", which matches
+ *      statements by what kind of hotfix they are, if any.
+ *
+ * Terms containing spaces can be wrapped in double quotes, either around the
+ * whole term or just the bit after the colon.  Anything using object/field/
+ * value/hotfix will only ever match statements.
+ *
+ * @author apocalyptech
+ */
+public final class TreeQuery {
+
+    /**
+     * Which part of a node a term matches against.
+     */
+    private enum Scope {
+        ANY, OBJECT, FIELD, VALUE
+    }
+
+    /**
+     * A single term of the query.
+     */
+    private static class Term {
+
+        private final Scope scope;
+        private final String text;
+        private final Pattern pattern;
+
+        private Term(Scope scope, String text) {
+            this.scope = scope;
+            if (isRegex(text)) {
+                this.text = null;
+                this.pattern = Pattern.compile(text.substring(1, text.length() - 1),
+                        Pattern.CASE_INSENSITIVE);
+            } else {
+                this.text = text.toLowerCase();
+                this.pattern = null;
+            }
+        }
+
+        private boolean matches(String s, boolean lowercased) {
+            if (this.pattern != null) {
+                return this.pattern.matcher(s).find();
+            } else {
+                return (lowercased ? s : s.toLowerCase()).contains(this.text);
+            }
+        }
+    }
+
+    private final List<Term> terms = new ArrayList<>();
+    private boolean statementsOnly = false;
+    private EnumSet<HotfixType> hotfixTypes = null;
+    private boolean hotfixRequired = false;
+    private boolean hotfixForbidden = false;
+
+    /**
+     * Parses a new query.
+     *
+     * @param query The query
+     * @throws IllegalArgumentException If the query couldn't be parsed (an
+     * invalid regular expression, unknown hotfix type, etc)
+     */
+    public TreeQuery(String query) {
+        for (String token : tokenize(query)) {
+            Scope scope = Scope.ANY;
+            String prefix = getPrefix(token);
+            if (prefix != null) {
+                String rest = unquote(token.substring(prefix.length() + 1));
+                if (rest.isEmpty()) {
+                    throw new IllegalArgumentException("Nothing to search for after \"" + prefix + ":\"");
+                }
+                this.statementsOnly = true;
+                if (prefix.equals("hotfix")) {
+                    this.parseHotfix(rest);
+                    continue;
+                }
+                scope = Scope.valueOf(prefix.toUpperCase());
+                token = rest;
+            }
+            this.terms.add(new Term(scope, token));
+        }
+        if (this.terms.isEmpty() && !this.statementsOnly) {
+            throw new IllegalArgumentException("Nothing to search for");
+        }
+    }
+
+    /**
+     * Parses the argument to a hotfix: term.
+     *
+     * @param types The hotfix types
+     */
+    private void parseHotfix(String types) {
+        for (String type : types.toLowerCase().split(",")) {
+            switch (type.trim()) {
+                case "any":
+                    this.hotfixRequired = true;
+                    break;
+                case "none":
+                    this.hotfixForbidden = true;
+                    break;
+                default:
+                    HotfixType hotfixType = null;
+                    for (HotfixType t : HotfixType.values()) {
+                        if (t.name().equalsIgnoreCase(type.trim())) {
+                            hotfixType = t;
+                        }
+                    }
+                    if (hotfixType == null) {
+                        throw new IllegalArgumentException("Unknown hotfix type \"" + type.trim()
+                                + "\" (use patch, level, ondemand, any or none)");
+                    }
+                    if (this.hotfixTypes == null) {
+                        this.hotfixTypes = EnumSet.noneOf(HotfixType.class);
+                    }
+                    this.hotfixTypes.add(hotfixType);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given search string uses any of the syntax
+     * specific to these queries (a regex, or one of our prefixes), as
+     * opposed to just being something to search for as-is.
+     *
+     * @param query The search string
+     * @return True if the string should be treated as a TreeQuery
+     */
+    public static boolean isQuery(String query) {
+        for (String token : tokenize(query)) {
+            if (getPrefix(token) != null || isRegex(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the given node matches this query.
+     *
+     * @param text The lowercased text of the node, as stored in
+     * TreeSearchIndex
+     * @param command The node's statement, if it's a statement, or null
+     * @param hotfixType The node's hotfix type, if it's a hotfix, or null
+     * @return True if the node matches
+     */
+    boolean matches(String text, SetCommand command, HotfixType hotfixType) {
+        if (command == null) {
+            if (this.statementsOnly) {
+                return false;
+            }
+        } else {
+            if (this.hotfixRequired && hotfixType == null) {
+                return false;
+            }
+            if (this.hotfixForbidden && hotfixType != null) {
+                return false;
+            }
+            if (this.hotfixTypes != null && !this.hotfixTypes.contains(hotfixType)) {
+                return false;
+            }
+        }
+        for (Term term : this.terms) {
+            boolean matched;
+            switch (term.scope) {
+                case OBJECT:
+                    matched = term.matches(term.pattern == null ? command.getLowerCaseObject() : command.getObject(), true);
+                    break;
+                case FIELD:
+                    matched = term.matches(term.pattern == null ? command.getLowerCaseField() : command.getField(), true);
+                    break;
+                case VALUE:
+                    matched = term.matches(command.getValue(), false);
+                    break;
+                default:
+                    matched = term.matches(text, true);
+                    break;
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the (lowercased) prefix of the given token, if it has one we
+     * know about.
+     *
+     * @param token The token
+     * @return The prefix, or null
+     */
+    private static String getPrefix(String token) {
+        int colon = token.indexOf(':');
+        if (colon > 0) {
+            String prefix = token.substring(0, colon).toLowerCase();
+            switch (prefix) {
+                case "object":
+                case "field":
+                case "value":
+                case "hotfix":
+                    return prefix;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRegex(String token) {
+        return token.length() > 2 && token.startsWith("/") && token.endsWith("/");
+    }
+
+    private static String unquote(String token) {
+        if (token.length() > 1 && token.startsWith("\"") && token.endsWith("\"")) {
+            return token.substring(1, token.length() - 1);
+        }
+        return token;
+    }
+
+    /**
+     * Splits a query up into terms, on whitespace.  Double quotes will keep
+     * a term together; they're removed from terms which are quoted as a
+     * whole, but left in place after a prefix, since we need to know where
+     * the prefix ends.
+     *
+     * @param query The query
+     * @return The terms
+     */
+    private static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean inQuotes = false;
+        for (char c : query.toCharArray()) {
+            if (c == '"') {
+                inQuotes = !inQuotes;
+                sb.append(c);
+            } else if (Character.isWhitespace(c) && !inQuotes) {
+                if (sb.length() > 0) {
+                    tokens.add(unquote(sb.toString()));
+                    sb.setLength(0);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        if (sb.length() > 0) {
+            tokens.add(unquote(sb.toString()));
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.tree;
+
+import blcmm.model.SetCommand;
+import blcmm.utilities.GlobalLogger;
+import blcmm.utilities.Utilities;
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Frame;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.AbstractListModel;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
+import javax.swing.border.EmptyBorder;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreePath;
+
+/**
+ * A dialog showing the results of a TreeQuery run against the main mod
+ * tree.  The query runs in a background thread, against the tree's search
+ * index (which is a snapshot of the tree as it was when the search started),
+ * and results get added to the list as they're found, so even a slow regex
+ * run over a huge patch won't freeze up the main window.  Selecting a result
+ * selects it in the tree.
+ *
+ * Only one query runs at a time; starting a new one (or closing the dialog)
+ * cancels whatever was running before.
+ *
+ * @author apocalyptech
+ */
+@SuppressWarnings("serial")
+public class TreeQueryDialog extends JDialog {
+
+    /**
+     * The longest label we'll show for any single result.  Some statements
+     * are very long indeed.
+     */
+    private static final int MAX_LABEL_LENGTH = 300;
+
+    private final CheckBoxTree tree;
+    private final JLabel header;
+    private final JList<String> list;
+    private final ResultsModel model;
+    private SwingWorker<Void, Integer> worker = null;
+    private String queryString = "";
+    private int maxWidth = 0;
+
+    /**
+     * Creates a new query dialog for the given tree.  The dialog isn't shown
+     * until the first search.
+     *
+     * @param parent The window to attach to
+     * @param tree The tree to search
+     */
+    public TreeQueryDialog(Frame parent, CheckBoxTree tree) {
+        super(parent, "Search Results");
+        this.tree = tree;
+        this.model = new ResultsModel();
+        this.list = new JList<>(this.model);
+        this.list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        this.list.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting() && this.list.getSelectedIndex() >= 0) {
+                this.showResult(this.list.getSelectedIndex());
+            }
+        });
+        this.header = new JLabel();
+        this.header.setBorder(new EmptyBorder(2, 3, 2, 3));
+        JScrollPane scroll = new JScrollPane(this.list);
+        scroll.setColumnHeaderView(this.header);
+        this.add(scroll, BorderLayout.CENTER);
+        this.updateFont();
+
+        this.setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+        this.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                TreeQueryDialog.this.cancel();
+            }
+        });
+        Dimension dialogSize = Utilities.scaleAndClampDialogSize(new Dimension(700, 400), tree.getFontInfo(), parent);
+        this.setPreferredSize(dialogSize);
+        this.pack();
+        this.setLocationRelativeTo(parent);
+    }
+
+    /**
+     * Updates our fonts to match the tree's.
+     */
+    public final void updateFont() {
+        this.list.setFont(this.tree.getFont());
+        this.header.setFont(this.tree.getFont());
+        FontMetrics metrics = this.list.getFontMetrics(this.tree.getFont());
+        this.list.setFixedCellHeight(metrics.getHeight() + 2);
+        this.maxWidth = 0;
+        for (int i = 0; i < this.model.getSize(); i++) {
+            this.maxWidth = Math.max(this.maxWidth, metrics.stringWidth(this.model.getElementAt(i)));
+        }
+        this.list.setFixedCellWidth(this.maxWidth + 10);
+    }
+
+    /**
+     * Starts a new search, cancelling any which might already be running,
+     * and shows the dialog if it's not already visible.
+     *
+     * @param queryString The query, for display
+     * @param query The parsed query
+     */
+    public void search(String queryString, TreeQuery query) {
+        this.cancel();
+        this.queryString = queryString;
+        this.model.clear();
+        this.maxWidth = 0;
+        this.list.setFixedCellWidth(10);
+        this.updateHeader(false);
+        final TreeSearchIndex index = this.tree.getSearchIndex();
+        this.worker = new SwingWorker<Void, Integer>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                for (int i = 0; i < index.size(); i++) {
+                    if (this.isCancelled()) {
+                        break;
+                    }
+                    if (index.matches(i, query)) {
+                        this.publish(i);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(List<Integer> chunks) {
+                if (TreeQueryDialog.this.worker == this) {
+                    TreeQueryDialog.this.addResults(index, chunks);
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (TreeQueryDialog.this.worker != this) {
+                    return;
+                }
+                try {
+                    this.get();
+                    TreeQueryDialog.this.updateHeader(true);
+                } catch (CancellationException e) {
+                    // Nothing to do
+                } catch (InterruptedException | ExecutionException e) {
+                    GlobalLogger.log("Error running tree search:");
+                    GlobalLogger.log(e);
+                    TreeQueryDialog.this.header.setText("Error while searching for: " + queryString);
+                }
+            }
+        };
+        this.worker.execute();
+        this.setVisible(true);
+    }
+
+    /**
+     * Cancels the currently-running search, if there is one.
+     */
+    public void cancel() {
+        if (this.worker != null) {
+            this.worker.cancel(false);
+            this.worker = null;
+        }
+    }
+
+    private void updateHeader(boolean finished) {
+        int count = this.model.getSize();
+        this.header.setText((finished ? "" : "Searching... ")
+                + count + " result" + (count == 1 ? "" : "s") + " for: " + this.queryString);
+    }
+
+    /**
+     * Adds newly-found results to the list.  Called on the Swing event
+     * thread.
+     *
+     * @param index The index the results came from
+     * @param positions The positions of the new results in the index
+     */
+    private void addResults(TreeSearchIndex index, List<Integer> positions) {
+        FontMetrics metrics = this.list.getFontMetrics(this.list.getFont());
+        for (int position : positions) {
+            DefaultMutableTreeNode node = index.getNode(position);
+            Object userObject = node.getUserObject();
+            String label = userObject instanceof SetCommand ? ((SetCommand) userObject).getCode() : node.toString();
+            if (label.length() > MAX_LABEL_LENGTH) {
+                label = label.substring(0, MAX_LABEL_LENGTH) + "...";
+            }
+            this.maxWidth = Math.max(this.maxWidth, metrics.stringWidth(label));
+            this.model.add(node, label);
+        }
+        this.model.notifyAdded();
+        this.list.setFixedCellWidth(this.maxWidth + 10);
+        this.updateHeader(false);
+    }
+
+    /**
+     * Selects one of our results in the tree, assuming it's still in there.
+     *
+     * @param idx The index of the result in our list
+     */
+    private void showResult(int idx) {
+        DefaultMutableTreeNode node = this.model.getNode(idx);
+        if (node.getRoot() != this.tree.getModel().getRoot()) {
+            this.header.setText("That result is no longer in the tree");
+            return;
+        }
+        TreePath tp = new TreePath(node.getPath());
+        this.tree.setSelectionPath(tp);
+        this.tree.scrollPathToVisible(tp);
+    }
+
+    /**
+     * List model for our results.  New results are only ever added to the
+     * end, in chunks, so we just fire one event per chunk.
+     */
+    @SuppressWarnings("serial")
+    private static class ResultsModel extends AbstractListModel<String> {
+
+        private final List<DefaultMutableTreeNode> nodes = new ArrayList<>();
+        private final List<String> labels = new ArrayList<>();
+        private int notified = 0;
+
+        private void add(DefaultMutableTreeNode node, String label) {
+            this.nodes.add(node);
+            this.labels.add(label);
+        }
+
+        private void clear() {
+            int size = this.notified;
+            this.nodes.clear();
+            this.labels.clear();
+            this.notified = 0;
+            if (size > 0) {
+                this.fireIntervalRemoved(this, 0, size - 1);
+            }
+        }
+
+        private DefaultMutableTreeNode getNode(int idx) {
+            return this.nodes.get(idx);
+        }
+
+        @Override
+        public int getSize() {
+            return this.notified;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return this.labels.get(index);
+        }
+
+        private void notifyAdded() {
+            if (this.labels.size() > this.notified) {
+                int start = this.notified;
+                this.notified = this.labels.size();
+                this.fireIntervalAdded(this, start, this.notified - 1);
+            }
+        }
+    }
+
+}
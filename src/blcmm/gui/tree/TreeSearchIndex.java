@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.tree;
+
+import blcmm.model.HotfixCommand;
+import blcmm.model.HotfixType;
+import blcmm.model.HotfixWrapper;
+import blcmm.model.SetCommand;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.List;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A search index over the nodes of a CheckBoxTree, used by the search box in
+ * the main window.
+ *
+ * The index holds every node in the tree in order (the same order they'd
+ * appear in the tree if it were fully expanded), along with the lowercased
+ * text we search on for each one -- the code for statements, and the label
+ * for everything else.  Searches just run through those texts, and hand back
+ * the positions of the matches, so moving between results is a matter of
+ * looking up where the currently-selected node is and picking the next
+ * match along.  The results of the most recent search are kept around, since
+ * hitting enter repeatedly in the search box will search for the same thing
+ * over and over.
+ *
+ * Previously the search walked the whole tree every time, generating and
+ * lowercasing the code for every statement along the way, and expanding
+ * the tree as it went, which could take seconds on very large mods.
+ *
+ * The index doesn't listen for changes itself; CheckBoxTree throws it out
+ * whenever the tree is changed, and a new one gets built the next time a
+ * search is done.  Statements can't be modified once they're created, so
+ * the lowercased code for any statement which was in the previous index is
+ * carried over rather than being generated again.
+ *
+ * Since an index never changes once it's built (apart from remembering the
+ * last search), it also doubles as a snapshot of the tree which TreeQuery
+ * searches can be run against from a background thread.  For that, we also
+ * hang on to each node's statement and hotfix type, since those might be
+ * changed on the Swing event thread while the search is running.
+ *
+ * @author apocalyptech
+ */
+final class TreeSearchIndex {
+
+    private final TreeNode root;
+    private final DefaultMutableTreeNode[] nodes;
+    private final String[] texts;
+    private final boolean[] leaves;
+    private final SetCommand[] commands;
+    private final HotfixType[] hotfixTypes;
+    private final IdentityHashMap<DefaultMutableTreeNode, Integer> positions;
+    private final IdentityHashMap<SetCommand, String> codeTexts;
+    private String lastQuery = null;
+    private boolean lastIncludeCode;
+    private int[] lastHits;
+
+    /**
+     * Builds a new index of the tree under the given root.
+     *
+     * @param root The root node of the tree
+     * @param previous A previous index of the same tree, whose statement text
+     * can be reused, or null
+     */
+    TreeSearchIndex(DefaultMutableTreeNode root, TreeSearchIndex previous) {
+        this.root = root;
+        List<DefaultMutableTreeNode> nodeList = new ArrayList<>();
+        Enumeration<?> e = root.preorderEnumeration();
+        while (e.hasMoreElements()) {
+            nodeList.add((DefaultMutableTreeNode) e.nextElement());
+        }
+        this.nodes = nodeList.toArray(new DefaultMutableTreeNode[nodeList.size()]);
+        this.texts = new String[this.nodes.length];
+        this.leaves = new boolean[this.nodes.length];
+        this.commands = new SetCommand[this.nodes.length];
+        this.hotfixTypes = new HotfixType[this.nodes.length];
+        this.positions = new IdentityHashMap<>(this.nodes.length);
+        this.codeTexts = new IdentityHashMap<>();
+        for (int i = 0; i < this.nodes.length; i++) {
+            DefaultMutableTreeNode node = this.nodes[i];
+            Object userObject = node.getUserObject();
+            if (userObject instanceof SetCommand) {
+                SetCommand command = (SetCommand) userObject;
+                String text = previous == null ? null : previous.codeTexts.get(command);
+                if (text == null) {
+                    text = command.getCode().toLowerCase();
+                }
+                this.codeTexts.put(command, text);
+                this.texts[i] = text;
+                this.commands[i] = command;
+                if (command instanceof HotfixCommand) {
+                    HotfixWrapper wrapper = ((HotfixCommand) command).getParent();
+                    this.hotfixTypes[i] = wrapper == null ? null : wrapper.getType();
+                }
+            } else {
+                this.texts[i] = node.toString().toLowerCase();
+            }
+            this.leaves[i] = node.isLeaf();
+            this.positions.put(node, i);
+        }
+    }
+
+    /**
+     * Returns the root of the tree this index was built from.
+     *
+     * @return The root node
+     */
+    TreeNode getRoot() {
+        return this.root;
+    }
+
+    /**
+     * Returns the number of nodes in the index.
+     *
+     * @return The number of nodes
+     */
+    int size() {
+        return this.nodes.length;
+    }
+
+    /**
+     * Returns the node at the given position.
+     *
+     * @param position The position
+     * @return The node
+     */
+    DefaultMutableTreeNode getNode(int position) {
+        return this.nodes[position];
+    }
+
+    /**
+     * Returns the position of the given node, or -1 if it's not in the index.
+     *
+     * @param node The node to look for
+     * @return The node's position
+     */
+    int getPosition(DefaultMutableTreeNode node) {
+        Integer position = this.positions.get(node);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Returns whether the node at the given position matches a query.  This
+     * is safe to call from any thread.
+     *
+     * @param position The position
+     * @param query The query
+     * @return True if the node matches
+     */
+    boolean matches(int position, TreeQuery query) {
+        return query.matches(this.texts[position], this.commands[position], this.hotfixTypes[position]);
+    }
+
+    /**
+     * Finds all nodes whose text contains the given string, ignoring case.
+     * Leaf nodes (statements and comments, mostly) are only included if
+     * includeCode is set.
+     *
+     * @param query The string to search for
+     * @param includeCode Whether to search leaf nodes
+     * @return The positions of all matching nodes, in order
+     */
+    int[] find(String query, boolean includeCode) {
+        String lowerQuery = query.toLowerCase();
+        if (lowerQuery.equals(this.lastQuery) && includeCode == this.lastIncludeCode) {
+            return this.lastHits;
+        }
+        int[] hits = new int[16];
+        int count = 0;
+        for (int i = 0; i < this.texts.length; i++) {
+            if ((includeCode || !this.leaves[i]) && this.texts[i].contains(lowerQuery)) {
+                if (count == hits.length) {
+                    hits = Arrays.copyOf(hits, hits.length * 2);
+                }
+                hits[count++] = i;
+            }
+        }
+        int[] result = Arrays.copyOf(hits, count);
+        this.lastQuery = lowerQuery;
+        this.lastIncludeCode = includeCode;
+        this.lastHits = result;
+        return result;
+    }
+
+}
@@ -24,7 +24,9 @@ import blcmm.model.Category;
 import blcmm.model.ModelElement;
 import blcmm.model.SetCommand;
 import blcmm.utilities.Options;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JCheckBox;
@@ -117,13 +119,15 @@ public class DeleteAction extends RightMouseButtonAction {
         }
 
         tree.removeNodesFromTheirParents(paths);
+        List<ModelElement> removed = new ArrayList<>();
         for (TreePath path : paths) {
             DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
             ModelElement c = (ModelElement) node.getUserObject();
+            removed.add(c);
+            removed.add(c.getParent());
             tree.getPatch().removeElementFromParentCategory(c);
         }
 
-        tree.setChanged(
-                true);
+        tree.setChanged(true, removed);
     }
 }
@@ -92,9 +92,12 @@ public class EditAction extends RightMouseButtonAction {
     private void finishEditAction(TreePath[] paths, EditPanel panel, Category parentCategory, DefaultMutableTreeNode parentnode, int index) {
         tree.removeNodesFromTheirParents(paths);
         Boolean sel = null;
+        List<ModelElement> removed = new ArrayList<>();
         for (TreePath path : paths) {
             DefaultMutableTreeNode node2 = (DefaultMutableTreeNode) path.getLastPathComponent();
             ModelElement el = (ModelElement) node2.getUserObject();
+            removed.add(el);
+            removed.add(el.getParent());
             if (el instanceof SetCommand) {
                 if (sel == null) {
                     sel = ((SetCommand) el).isSelected();
@@ -104,7 +107,7 @@ public class EditAction extends RightMouseButtonAction {
             }
             tree.getPatch().removeElementFromParentCategory(el);
         }
-        addNewElements(panel, parentCategory, index, parentnode, sel);
+        addNewElements(panel.getElements(), parentCategory, index, parentnode, sel, removed);
     }
 
 }
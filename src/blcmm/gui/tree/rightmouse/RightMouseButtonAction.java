@@ -41,7 +41,10 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
@@ -378,6 +381,23 @@ public abstract class RightMouseButtonAction {
     }
 
     protected void addNewElements(List<ModelElement> elements, Category parentCategory, int insertIndex, DefaultMutableTreeNode parentnode, Boolean wasselected) {
+        addNewElements(elements, parentCategory, insertIndex, parentnode, wasselected, Collections.emptyList());
+    }
+
+    /**
+     * Adds new elements into the given category, and refreshes the tree.
+     *
+     * @param elements The elements to add
+     * @param parentCategory The category to add them to
+     * @param insertIndex The index to start inserting at
+     * @param parentnode The tree node for parentCategory
+     * @param wasselected Whether the elements should be selected, or null
+     * to select them
+     * @param removedElements Any elements which were removed from the tree
+     * as part of this action (such as when replacing statements after an
+     * edit), so that overwrite highlighting can be updated for those too.
+     */
+    protected void addNewElements(List<ModelElement> elements, Category parentCategory, int insertIndex, DefaultMutableTreeNode parentnode, Boolean wasselected, Collection<ModelElement> removedElements) {
         boolean selected;
         if (wasselected != null) {
             selected = wasselected;
@@ -399,7 +419,10 @@ public abstract class RightMouseButtonAction {
                 tree.getPatch().setSelected(s, selected);
             }
         }
-        MakeNodeRootOfCategory(parentnode, parentCategory);
+        List<ModelElement> changed = new ArrayList<>(elements);
+        changed.addAll(removedElements);
+        changed.add(parentCategory);
+        MakeNodeRootOfCategory(parentnode, parentCategory, changed);
     }
 
     protected void refreshNode(DefaultMutableTreeNode parentNode) {
@@ -407,6 +430,10 @@ public abstract class RightMouseButtonAction {
     }
 
     protected void MakeNodeRootOfCategory(DefaultMutableTreeNode parentnode, Category parentCategory) {
+        MakeNodeRootOfCategory(parentnode, parentCategory, null);
+    }
+
+    protected void MakeNodeRootOfCategory(DefaultMutableTreeNode parentnode, Category parentCategory, Collection<ModelElement> changedElements) {
         assert parentnode.getUserObject() == parentCategory;
         HashSet<Object> expandedElements = new HashSet<>();
         Enumeration affectedNodes = parentnode.preorderEnumeration();
@@ -432,7 +459,7 @@ public abstract class RightMouseButtonAction {
             }
         }
         tree.expandPath(new TreePath(parentnode.getPath()));
-        tree.setChanged(true);
+        tree.setChanged(true, changedElements);
     }
 
     /**
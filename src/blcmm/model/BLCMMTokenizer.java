@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * A streaming tokenizer for BLCMM-formatted files, used by PatchIO's
+ * BLCMMParser.  Callers pull tokens one at a time with next(), which will
+ * return either a tag (opening, closing, or self-closing) or a chunk of text
+ * between tags, and can then query the tag name/arguments or text of the
+ * current token.
+ *
+ * Previously, the parser would split each line up into a list of XMLTag
+ * and String objects, calling lookaheadForTag() on every '&lt;' at least
+ * twice (once while scanning text, and again when it got around to actually
+ * reading the tag), and allocating substrings for every tag, tag name, and
+ * argument along the way.  This tokenizer walks each line just once, keeps
+ * track of where the tag it found while scanning text ends so that it
+ * doesn't have to look for it again, and reuses known tag/argument name
+ * strings rather than allocating new ones.  All state lives in the
+ * tokenizer instance, so multiple files can be parsed at once on different
+ * threads.
+ *
+ * The rules for what counts as a tag versus text are exactly the same as
+ * the old parser's (which have some quirks to support things like
+ * unbalanced quotes inside commands), since there's a lot of existing mod
+ * files out there which depend on them.  Tags and text still can't span
+ * lines: BLCMM always writes each element on its own line, and a line which
+ * doesn't end in a tag is considered invalid.
+ *
+ * @author apocalyptech
+ */
+final class BLCMMTokenizer {
+
+    /**
+     * The types of token that we can return.
+     */
+    enum TokenType {
+        OPEN_TAG,
+        CLOSE_TAG,
+        SINGLE_TAG,
+        TEXT,
+        END,
+    }
+
+    /**
+     * Tag names which we know about, so we can avoid allocating new strings
+     * for them.  Anything not in here is still handled, just with a new
+     * string.
+     */
+    private static final String[] KNOWN_TAGS = new String[]{
+        "code", "comment", "category", "hotfix",
+        "BLCMM", "head", "body", "type", "profiles", "profile",};
+
+    /**
+     * Tag argument names which we know about, likewise.
+     */
+    private static final String[] KNOWN_ARGUMENTS = new String[]{
+        "profiles", "name", "level", "package", "MUT", "locked",
+        "selected", "v", "offline", "current",};
+
+    private final BufferedReader reader;
+
+    /**
+     * The line we're currently tokenizing, and the bounds of its trimmed
+     * contents.
+     */
+    private String line = null;
+    private int pos = 0;
+    private int end = 0;
+
+    /**
+     * If a text scan stopped at a tag, this is the index of the tag's
+     * closing '&gt;' as found by lookaheadForTag(), or -1 if we'll have to
+     * scan for it.
+     */
+    private int pendingTagEnd = -1;
+
+    /**
+     * Set if the last text scan stopped at a tag, so that we don't have to
+     * look ahead for it again.
+     */
+    private boolean atTag = false;
+
+    /**
+     * Set if the current token should be returned again on the next call to
+     * next().
+     */
+    private boolean replay = false;
+
+    // Info about the current token
+    private TokenType type = null;
+    private int tokenStart = 0;
+    private int tokenEnd = 0;
+    private String name = null;
+    private final HashMap<String, String> arguments = new HashMap<>();
+
+    /**
+     * Creates a new tokenizer for the given reader.
+     *
+     * @param reader The reader providing our data
+     */
+    BLCMMTokenizer(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return The type of the new token, or END if we've hit the end of the
+     * data.
+     * @throws IOException If there was a problem reading
+     * @throws IllegalArgumentException If the data is not valid BLCMM
+     */
+    TokenType next() throws IOException {
+        if (this.replay) {
+            this.replay = false;
+            return this.type;
+        }
+        while (this.line == null || this.pos >= this.end) {
+            if (!this.readLine()) {
+                this.type = TokenType.END;
+                return this.type;
+            }
+        }
+        this.readToken();
+        return this.type;
+    }
+
+    /**
+     * Causes the current token to be returned again by the next call to
+     * next().
+     */
+    void pushBack() {
+        this.replay = true;
+    }
+
+    /**
+     * Returns the name of the current tag.
+     *
+     * @return The tag name
+     */
+    String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the value of the given argument in the current tag.
+     *
+     * @param key The argument name
+     * @return The (unescaped) argument value, or null if not present
+     */
+    String getArgument(String key) {
+        return this.arguments.get(key);
+    }
+
+    /**
+     * Returns whether the current tag has the given argument.
+     *
+     * @param key The argument name
+     * @return True if the argument is present
+     */
+    boolean hasArgument(String key) {
+        return this.arguments.containsKey(key);
+    }
+
+    /**
+     * Returns the raw text of the current token.  For text tokens this is the
+     * text itself, and for tags it's the full tag, as it appears in the file
+     * (useful for error reporting).
+     *
+     * @return The token text
+     */
+    String getTokenString() {
+        return this.line.substring(this.tokenStart, this.tokenEnd);
+    }
+
+    /**
+     * Reads everything up to (but not including) the next tag with the given
+     * name, on the current line.  Used to read the contents of code and
+     * comment tags, which are allowed to contain things which look like tags
+     * (those get included in the content as-is).  The matching tag will be
+     * returned by the next call to next().
+     *
+     * @param tagName The tag name to stop at
+     * @return The contents
+     * @throws IOException If there was a problem reading
+     * @throws IllegalArgumentException If the tag wasn't found on the line
+     */
+    String readContent(String tagName) throws IOException {
+        String first = null;
+        StringBuilder sb = null;
+        while (true) {
+            if (this.pos >= this.end) {
+                throw new IllegalArgumentException("Closing " + tagName + " tag not found: " + this.line.trim());
+            }
+            this.readToken();
+            if (this.type != TokenType.TEXT && this.name.equals(tagName)) {
+                this.pushBack();
+                return first == null ? "" : (sb == null ? first : sb.toString());
+            }
+            if (first == null) {
+                first = this.getTokenString();
+            } else {
+                if (sb == null) {
+                    sb = new StringBuilder(first);
+                }
+                sb.append(this.line, this.tokenStart, this.tokenEnd);
+            }
+        }
+    }
+
+    /**
+     * Reads the next non-empty line from our reader.
+     *
+     * @return False if we've hit the end of the data
+     * @throws IOException If there was a problem reading
+     */
+    private boolean readLine() throws IOException {
+        String newLine = this.reader.readLine();
+        if (newLine == null) {
+            this.line = null;
+            return false;
+        }
+        newLine = removeGarbageCharacters(newLine);
+        if (newLine.equals(PatchIO.FT_UPDATE_STRING)) {
+            newLine = "";
+        }
+        // Trim without allocating a new string
+        int newPos = 0;
+        int newEnd = newLine.length();
+        while (newPos < newEnd && newLine.charAt(newPos) <= ' ') {
+            newPos++;
+        }
+        while (newEnd > newPos && newLine.charAt(newEnd - 1) <= ' ') {
+            newEnd--;
+        }
+        this.line = newLine;
+        this.pos = newPos;
+        this.end = newEnd;
+        this.pendingTagEnd = -1;
+        this.atTag = false;
+        return true;
+    }
+
+    /**
+     * Strips out NUL and Unicode replacement characters, which sometimes
+     * show up in files which have been mangled by other editors.  Only
+     * allocates a new string if there's something to strip.
+     *
+     * @param s The string to clean
+     * @return The cleaned string
+     */
+    private static String removeGarbageCharacters(String s) {
+        if (s.indexOf((char) 0) == -1 && s.indexOf((char) 65533) == -1) {
+            return s;
+        }
+        return s.replace(new String(new char[]{(char) 0}), "").replace(new String(new char[]{(char) 65533}), "");
+    }
+
+    /**
+     * Reads a token starting at our current position in the line.
+     */
+    private void readToken() {
+        if (this.atTag || (this.line.charAt(this.pos) == '<' && this.lookaheadForTag(this.pos) != -1)) {
+            this.atTag = false;
+            this.readTag();
+        } else {
+            this.readText();
+        }
+    }
+
+    /**
+     * Reads text up until the start of the next tag.  Tags found inside
+     * double quotes are skipped over, unless we hit the end of the line, in
+     * which case we stop at the last one we saw.
+     */
+    private void readText() {
+        int idx = this.pos;
+        boolean inquotes = false;
+        int lastStart = -1;
+        while (true) {
+            if (idx == this.end) {
+                if (lastStart != -1) {
+                    idx = lastStart;
+                    break;
+                } else {
+                    throw new IllegalArgumentException(this.line.trim());
+                }
+            }
+            char c = this.line.charAt(idx);
+            if (c == '<') {
+                this.pendingTagEnd = this.lookaheadForTag(idx);
+                if (this.pendingTagEnd != -1) {
+                    if (!inquotes) {
+                        break;
+                    } else {
+                        lastStart = idx;
+                    }
+                }
+            } else if (c == '"') {
+                inquotes = !inquotes;
+            }
+            idx++;
+        }
+        this.type = TokenType.TEXT;
+        this.name = null;
+        this.tokenStart = this.pos;
+        this.tokenEnd = idx;
+        this.pos = idx;
+        this.atTag = true;
+    }
+
+    /**
+     * Reads the tag starting at our current position, and parses out its
+     * name and arguments.
+     */
+    private void readTag() {
+        int tagStart = this.pos;
+        int tagEnd;
+        if (this.pendingTagEnd != -1) {
+            tagEnd = this.pendingTagEnd + 1;
+            this.pendingTagEnd = -1;
+        } else {
+            tagEnd = tagStart + 1;
+            boolean inquotes = false;
+            while (true) {
+                if (tagEnd >= this.end) {
+                    throw new IllegalArgumentException(this.line.trim());
+                }
+                char c = this.line.charAt(tagEnd);
+                tagEnd++;
+                if (c == '>' && !inquotes) {
+                    break;
+                } else if (c == '"') {
+                    if (!inquotes) {
+                        inquotes = true;
+                    } else if (this.line.charAt(tagEnd - 2) != '\\') {
+                        inquotes = false;
+                    }
+                }
+            }
+        }
+        this.tokenStart = tagStart;
+        this.tokenEnd = tagEnd;
+        this.pos = tagEnd;
+
+        boolean isEnd = this.line.startsWith("</", tagStart);
+        boolean isSingle = this.line.charAt(tagEnd - 2) == '/';
+        if (isSingle) {
+            this.type = TokenType.SINGLE_TAG;
+        } else if (isEnd) {
+            this.type = TokenType.CLOSE_TAG;
+        } else {
+            this.type = TokenType.OPEN_TAG;
+        }
+
+        int spaceIdx = this.indexOf(' ', tagStart, tagEnd);
+        int nameStart = tagStart + (isEnd ? 2 : 1);
+        int nameEnd = spaceIdx == -1 ? tagEnd - (isSingle ? 2 : 1) : spaceIdx;
+        this.name = this.intern(nameStart, nameEnd, KNOWN_TAGS);
+
+        this.arguments.clear();
+        while (spaceIdx != -1) {
+            int eqIdx = this.indexOf('=', spaceIdx, tagEnd);
+            if (eqIdx == -1) {
+                break;
+            }
+            int begQIdx = this.indexOf('"', eqIdx, tagEnd);
+            int endQIdx = begQIdx == -1 ? -1 : this.indexOf('"', begQIdx + 1, tagEnd);
+            while (endQIdx != -1 && this.line.charAt(endQIdx - 1) == '\\') {
+                endQIdx = this.indexOf('"', endQIdx + 1, tagEnd);
+            }
+            if (endQIdx == -1) {
+                throw new IllegalArgumentException(this.getTokenString());
+            }
+            int argStart = spaceIdx + 1;
+            int argEnd = eqIdx;
+            while (argStart < argEnd && this.line.charAt(argStart) <= ' ') {
+                argStart++;
+            }
+            while (argEnd > argStart && this.line.charAt(argEnd - 1) <= ' ') {
+                argEnd--;
+            }
+            String value = this.line.substring(begQIdx + 1, endQIdx);
+            if (value.indexOf('\\') != -1) {
+                value = PatchIO.unescape(value);
+            }
+            this.arguments.put(this.intern(argStart, argEnd, KNOWN_ARGUMENTS), value);
+            spaceIdx = this.indexOf(' ', endQIdx, tagEnd);
+        }
+    }
+
+    /**
+     * Finds the given character in our current line, within the given range.
+     *
+     * @param c The character to look for
+     * @param from The index to start at
+     * @param to The index to stop at (exclusive)
+     * @return The index of the character, or -1
+     */
+    private int indexOf(char c, int from, int to) {
+        int idx = this.line.indexOf(c, from);
+        return idx >= to ? -1 : idx;
+    }
+
+    /**
+     * Returns the given range of our current line as a string, using one of
+     * the given known strings if it matches, rather than allocating a new
+     * one.
+     *
+     * @param start The start of the range
+     * @param stop The end of the range (exclusive)
+     * @param known The known strings to check
+     * @return The string
+     */
+    private String intern(int start, int stop, String[] known) {
+        int len = stop - start;
+        for (String k : known) {
+            if (k.length() == len && this.line.regionMatches(start, k, 0, len)) {
+                return k;
+            }
+        }
+        return this.line.substring(start, stop);
+    }
+
+    /**
+     * Checks to see if there's a valid tag starting at the given index.
+     *
+     * @param start The index of the '&lt;' which might start a tag
+     * @return The index of the tag's closing '&gt;', or -1 if this isn't a
+     * tag
+     */
+    private int lookaheadForTag(int start) {
+        int idx = start + 1;
+        boolean lookingForArguments = false;
+        boolean lookingForValue = false;
+        boolean hasletter = false;
+        while (idx < this.end) {
+            char c = this.line.charAt(idx);
+            if (!lookingForArguments) {
+                if (c == '>' && idx - start > 1) {
+                    return idx;
+                }
+                if (c == ' ') {
+                    lookingForArguments = true;
+                } else if (!Character.isAlphabetic(c) && !(idx - start == 1 && c == '/')) {
+                    return -1;
+                }
+            } else {
+                if (lookingForValue) {
+                    if (c == '"' && this.line.charAt(idx - 1) != '\\') {
+                        lookingForValue = false;
+                        hasletter = false;
+                    }
+                } else {
+                    if (c == '=') {
+                        if (idx + 1 < this.end && this.line.charAt(idx + 1) == '"') {
+                            idx++;
+                            lookingForValue = true;
+                        } else {
+                            return -1;
+                        }
+                    } else if (c == '>' && !hasletter) {
+                        return idx;
+                    } else if (c == '/' && idx + 1 < this.end && this.line.charAt(idx + 1) == '>' && !hasletter) {
+                        idx++;
+                        return idx;
+                    } else if (c == ' ' && !hasletter) {//skip
+                    } else if (!Character.isAlphabetic(c)) {
+                        return -1;
+                    } else {
+                        hasletter = true;
+                    }
+                }
+            }
+            idx++;
+        }
+        return -1;
+    }
+
+}
@@ -21,9 +21,11 @@ import blcmm.model.properties.GlobalListOfProperties;
 import blcmm.utilities.GlobalLogger;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -48,6 +50,12 @@ public class CompletePatch {
     }
     private PatchSource patchSource;
 
+    /**
+     * Set on snapshots, whose model properties don't get evaluated until
+     * they're actually written out.
+     */
+    private boolean propertiesPending = false;
+
     public CompletePatch() {
         profiles = new LinkedHashMap<>();
         type = PatchType.BL2;
@@ -55,6 +63,62 @@ public class CompletePatch {
         patchSource = PatchSource.UNSPECIFIED;
     }
 
+    /**
+     * Returns a snapshot of this patch, which can then be written out in the
+     * background while the user carries on editing the original.  The
+     * snapshot is a full copy of the tree and profiles, so nothing done to
+     * the original afterwards will affect it (or vice versa).
+     *
+     * This is meant to be called on the thread which owns the patch (ie: the
+     * Swing event thread, for the patch being edited), and only does the
+     * bare minimum of work there.  The relatively expensive evaluation of
+     * all the model properties is put off until the snapshot gets written
+     * out by PatchIO, on whatever thread is doing that.
+     *
+     * @return A snapshot of this patch
+     */
+    public CompletePatch snapshot() {
+        CompletePatch copy = new CompletePatch();
+        copy.type = type;
+        copy.offline = offline;
+        copy.patchSource = patchSource;
+        Map<Profile, Profile> profileMap = new HashMap<>();
+        for (Profile prof : profiles.values()) {
+            Profile newProf = new Profile(prof.getName());
+            profileMap.put(prof, newProf);
+            copy.profiles.put(newProf.getName(), newProf);
+        }
+        if (currentProfile != null) {
+            copy.currentProfile = profileMap.getOrDefault(currentProfile, currentProfile);
+        }
+        if (root != null) {
+            TransientModelData.setDeferred(true);
+            try {
+                copy.root = root.copy();
+            } finally {
+                TransientModelData.setDeferred(false);
+            }
+            for (ModelElement c : copy.root.listRecursiveContentMinusCategories()) {
+                if (c instanceof EnableableModelElement) {
+                    ((EnableableModelElement) c).remapProfiles(profileMap);
+                }
+            }
+            copy.propertiesPending = true;
+        }
+        return copy;
+    }
+
+    /**
+     * Evaluates the model properties of a snapshot, if that hasn't been done
+     * yet.  Does nothing for regular patches.
+     */
+    void evaluatePendingProperties() {
+        if (propertiesPending) {
+            TransientModelData.evaluateProperties(root);
+            propertiesPending = false;
+        }
+    }
+
     public Profile getCurrentProfile() {
         return currentProfile;
     }
@@ -20,6 +20,7 @@ package blcmm.model;
 import blcmm.model.properties.GlobalListOfProperties;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 
 /**
  *
@@ -83,6 +84,32 @@ abstract class EnableableModelElement extends ModelElement {
         return sb.toString();
     }
 
+    /**
+     * Swaps out the profiles this element is enabled in for their
+     * counterparts in the given map.  Used when snapshotting a patch, so that
+     * the snapshot doesn't share any Profile objects with the original.
+     *
+     * @param profileMap A map of old profiles to new ones
+     */
+    final void remapProfiles(Map<Profile, Profile> profileMap) {
+        HashSet<Profile> oldProfiles = new HashSet<>(onInProfiles);
+        onInProfiles.clear();
+        for (Profile prof : oldProfiles) {
+            onInProfiles.add(profileMap.getOrDefault(prof, prof));
+        }
+    }
+
+    /**
+     * Sets our selected state directly, regardless of which profiles we're
+     * enabled in.  Only used when loading elements from the patch cache,
+     * which needs to reproduce exactly the state the parser left things in.
+     *
+     * @param selected Whether we're selected
+     */
+    final void restoreSelected(boolean selected) {
+        this.selected = selected;
+    }
+
     final Collection<Profile> getProfiles() {
         return onInProfiles;
     }
@@ -46,13 +46,17 @@ public class HotfixCommand extends SetCommand {
         super(object, field, value, initTransient);
     }
 
+    protected HotfixCommand(SetCommand source, boolean initTransient) {
+        super(source, initTransient);
+    }
+
     public HotfixCommand(SetCommand command) {
         super(command.getCode());
     }
 
     @Override
     protected HotfixCommand getBaseCopy() {
-        return new HotfixCommand(object, field, value);
+        return new HotfixCommand(this, true);
     }
 
     @Override
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model;
+
+import blcmm.model.attrparser.LevelDepArray;
+import blcmm.model.attrparser.LevelDepParser;
+import blcmm.model.attrparser.LevelDepString;
+import blcmm.model.attrparser.LevelDepStruct;
+import blcmm.model.attrparser.LevelDepVisitor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges any number of user-supplied LevelList values into the vanilla
+ * LevelList for a single object, so that multiple mods which each add their
+ * own maps to a level don't clobber each other.  Any secondary map from a
+ * user entry gets added to each vanilla entry with a matching persistent
+ * map, unless it's already in there.  All matching is case-insensitive.
+ *
+ * This used to be done with a set of nested loops in PatchIO, comparing
+ * every user entry against every vanilla entry and every user secondary map
+ * against every vanilla one, which could get pretty slow with a lot of
+ * merge mods stacked up.  Instead we index the vanilla list by persistent
+ * map, and keep a set of secondary maps for each vanilla entry, so each
+ * user-supplied map only has to be looked up once.
+ *
+ * User values can be merged straight from their attribute text, in which
+ * case we just walk through the text picking out the persistent and
+ * secondary maps, rather than parsing the whole thing into LevelDepData
+ * objects first.
+ *
+ * The vanilla array passed in will get modified as we go, so pass in a
+ * copy if you need the original afterwards.
+ *
+ * @author apocalyptech
+ */
+final class LevelListMerger {
+
+    private final LevelDepArray<LevelDepStruct> vanillaArray;
+    private final Map<String, List<LevelDepStruct>> byPersistent = new HashMap<>();
+    private final Map<LevelDepStruct, HashSet<String>> secondaries = new HashMap<>();
+    private final List<String> merged = new ArrayList<>();
+
+    /**
+     * Creates a new merger, based on the given vanilla LevelList.
+     *
+     * @param vanillaArray The vanilla LevelList, which will be modified by
+     * our merges
+     */
+    LevelListMerger(LevelDepArray<LevelDepStruct> vanillaArray) {
+        this.vanillaArray = vanillaArray;
+        for (int i = 0; i < vanillaArray.size(); i++) {
+            LevelDepStruct entry = vanillaArray.get(i);
+            String persistent = entry.getString("PersistentMap").toLowerCase();
+            this.byPersistent.computeIfAbsent(persistent, k -> new ArrayList<>()).add(entry);
+        }
+    }
+
+    /**
+     * Returns the SecondaryMaps array of the given LevelList entry.
+     *
+     * @param entry The LevelList entry
+     * @return The entry's secondary maps
+     * @throws ClassCastException If SecondaryMaps contains anything other
+     * than strings
+     */
+    private static LevelDepArray<LevelDepString> getSecondaryMaps(LevelDepStruct entry) {
+        LevelDepArray<?> array = entry.getArray("SecondaryMaps");
+        return array.asArrayOf(LevelDepString.class);
+    }
+
+    /**
+     * Returns the set of (lowercased) secondary maps in the given vanilla
+     * entry, building it the first time it's asked for.
+     *
+     * @param entry The vanilla entry
+     * @return The secondary maps we know about for that entry
+     */
+    private HashSet<String> getSecondaries(LevelDepStruct entry) {
+        HashSet<String> set = this.secondaries.get(entry);
+        if (set == null) {
+            set = new HashSet<>();
+            LevelDepArray<LevelDepString> vanillaSecondaries = getSecondaryMaps(entry);
+            for (int i = 0; i < vanillaSecondaries.size(); i++) {
+                LevelDepString sec = vanillaSecondaries.get(i);
+                if (sec != null) {
+                    set.add(sec.getValue().toLowerCase());
+                }
+            }
+            this.secondaries.put(entry, set);
+        }
+        return set;
+    }
+
+    /**
+     * Merges a user-supplied LevelList into our vanilla one.  Will throw an
+     * exception (usually a NullPointerException or ClassCastException) if
+     * the user's value isn't in the format we expect.
+     *
+     * @param userArray The user's LevelList
+     */
+    void merge(LevelDepArray<LevelDepStruct> userArray) {
+        for (int i = 0; i < userArray.size(); i++) {
+            this.mergeEntry(userArray.get(i).getString("PersistentMap"),
+                    getSecondaryMaps(userArray.get(i)));
+        }
+    }
+
+    /**
+     * Merges a user-supplied LevelList into our vanilla one, straight from
+     * its attribute value.  Will throw an exception if the user's value
+     * isn't in the format we expect, like the other merge() does.
+     *
+     * @param userValue The user's LevelList attribute value
+     */
+    void merge(CharSequence userValue) {
+        new LevelDepParser(userValue).walk(new UserListVisitor());
+    }
+
+    /**
+     * Merges a single user LevelList entry into our vanilla list.
+     *
+     * @param userPersistent The entry's persistent map, as it appears in the
+     * attribute (quotes and all)
+     * @param userSecondaries The entry's secondary maps
+     */
+    private void mergeEntry(String userPersistent, LevelDepArray<LevelDepString> userSecondaries) {
+        List<LevelDepStruct> matches = this.byPersistent.get(userPersistent.toLowerCase());
+        if (matches == null) {
+            return;
+        }
+        for (LevelDepStruct vanillaEntry : matches) {
+            HashSet<String> present = this.getSecondaries(vanillaEntry);
+            LevelDepArray<LevelDepString> vanillaSecondaries = getSecondaryMaps(vanillaEntry);
+            for (int k = 0; k < userSecondaries.size(); k++) {
+                LevelDepString newsec = userSecondaries.get(k);
+                // A null value can happen if the user has an extra comma in there
+                if (newsec != null && present.add(newsec.getValue().toLowerCase())) {
+                    vanillaSecondaries.add(newsec);
+                    this.merged.add(userPersistent + ": " + newsec.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the persistent and secondary maps out of each entry of a user's
+     * LevelList as it's walked through, merging each entry once we reach its
+     * end.  Everything else in the entries (ConnectedPersistents, etc) is
+     * skipped over.
+     */
+    private class UserListVisitor implements LevelDepVisitor {
+
+        private int depth = 0;
+        private String key = null;
+        private boolean inSecondaries = false;
+        private String persistent = null;
+        private LevelDepArray<LevelDepString> secondaries = null;
+
+        private void checkEntry() {
+            if (this.depth < 2) {
+                throw new IllegalArgumentException("LevelList entries must be structs");
+            }
+        }
+
+        private void checkNested() {
+            this.checkEntry();
+            if (this.inSecondaries) {
+                throw new IllegalArgumentException("SecondaryMaps must only contain strings");
+            }
+        }
+
+        @Override
+        public void startArray() {
+            if (this.depth > 0) {
+                this.checkNested();
+            }
+            this.depth++;
+            if (this.depth == 3 && "SecondaryMaps".equalsIgnoreCase(this.key)) {
+                this.inSecondaries = true;
+                this.secondaries = new LevelDepArray<>();
+            }
+        }
+
+        @Override
+        public void endArray() {
+            this.depth--;
+            this.inSecondaries = false;
+        }
+
+        @Override
+        public void startStruct() {
+            this.depth++;
+            this.checkNested();
+            if (this.depth == 2) {
+                this.persistent = null;
+                this.secondaries = null;
+            }
+        }
+
+        @Override
+        public void endStruct() {
+            if (this.depth == 2) {
+                mergeEntry(this.persistent, this.secondaries);
+            }
+            this.depth--;
+        }
+
+        @Override
+        public void key(String key) {
+            if (this.depth == 2) {
+                this.key = key;
+            }
+        }
+
+        @Override
+        public void value(LevelDepString value) {
+            this.checkEntry();
+            if (this.inSecondaries) {
+                this.secondaries.add(value);
+            } else if (this.depth == 2) {
+                if ("PersistentMap".equalsIgnoreCase(this.key)) {
+                    this.persistent = value.toString();
+                } else if ("SecondaryMaps".equalsIgnoreCase(this.key)) {
+                    this.secondaries = null;
+                }
+            }
+        }
+
+        @Override
+        public void empty() {
+            if (this.inSecondaries) {
+                this.secondaries.add(null);
+            } else {
+                this.checkEntry();
+            }
+        }
+
+    }
+
+    /**
+     * Returns the merged LevelList.
+     *
+     * @return The merged LevelList
+     */
+    LevelDepArray<LevelDepStruct> getResult() {
+        return this.vanillaArray;
+    }
+
+    /**
+     * Returns a description of each secondary map which was added by our
+     * merges, in the order they were added, in the form
+     * "PersistentMap: SecondaryMap".
+     *
+     * @return The list of merged maps
+     */
+    List<String> getMerged() {
+        return this.merged;
+    }
+
+}
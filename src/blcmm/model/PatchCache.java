@@ -0,0 +1,528 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model;
+
+import blcmm.Meta;
+import blcmm.model.properties.GlobalListOfProperties;
+import blcmm.model.properties.PropertyChecker;
+import blcmm.utilities.GlobalLogger;
+import blcmm.utilities.ImportAnomalyLog;
+import blcmm.utilities.Utilities;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An on-disk cache of parsed patch files, so that reopening a big mod file
+ * which hasn't changed since the last time we saw it doesn't have to go
+ * through the whole parsing process again.  Each cached patch is stored in
+ * a compact binary format alongside the path, size, modification time, and
+ * SHA-256 hash of the file it came from, and is only ever used if all of
+ * those still match.  The element tree, profiles, and the results of all
+ * the model property checks get stored, so loading one is basically just a
+ * single sequential read plus rebuilding the objects.
+ *
+ * Property checks which depend on the game data which happens to be loaded
+ * (see PropertyChecker.isDependantOnGameData()) aren't stored, and are just
+ * re-run whenever a cached patch gets loaded.  Likewise, the cache file
+ * format includes the list of property checkers we know about, so adding or
+ * removing a checker will invalidate everything.
+ *
+ * Files which produce any import anomalies while being parsed are never
+ * cached, so that the user keeps getting told about those problems each
+ * time the file is opened.
+ *
+ * @author apocalyptech
+ */
+public class PatchCache {
+
+    /**
+     * Magic number at the start of each cache file.
+     */
+    private static final int MAGIC = 0x424C5043;
+
+    /**
+     * Version of the cache file format.  Bump this if the format ever
+     * changes, and existing cache files will be ignored (and eventually
+     * cleaned up).
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * How many cache files to keep around.  The least-recently-used ones
+     * get removed once we go over this.
+     */
+    private static final int MAX_CACHE_FILES = 10;
+
+    private static final String CACHE_SUFFIX = ".patchcache";
+
+    private static final byte TAG_CATEGORY = 1;
+    private static final byte TAG_HOTFIX_WRAPPER = 2;
+    private static final byte TAG_SET_COMMAND = 3;
+    private static final byte TAG_HOTFIX_COMMAND = 4;
+    private static final byte TAG_SET_CMP_COMMAND = 5;
+    private static final byte TAG_COMMENT = 6;
+
+    private final File cacheDir;
+
+    /**
+     * Creates a new PatchCache which keeps its files in the given directory.
+     * The directory will be created when needed.
+     *
+     * @param cacheDir The directory to store cache files in
+     */
+    public PatchCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Parses the given file, using our cached copy of it if we have a valid
+     * one.  Otherwise the file is parsed with PatchIO.parse() as usual, and
+     * the result stored in the cache for next time.
+     *
+     * @param f The file to parse
+     * @return The parsed patch
+     * @throws IOException If the file could not be parsed
+     */
+    public CompletePatch parse(File f) throws IOException {
+        FileKey key;
+        try {
+            key = new FileKey(f);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            GlobalLogger.log("Unable to compute patch cache key for " + Utilities.hideUserName(f.toString()) + ": " + e.toString());
+            return PatchIO.parse(f);
+        }
+        File cacheFile = this.getCacheFile(key);
+        if (cacheFile.exists()) {
+            CompletePatch patch = this.load(cacheFile, key);
+            if (patch != null) {
+                // Bump the mtime so that pruning keeps recently-used files
+                cacheFile.setLastModified(System.currentTimeMillis());
+                GlobalLogger.log("Loaded " + Utilities.hideUserName(f.toString()) + " from patch cache");
+                return patch;
+            }
+            cacheFile.delete();
+        }
+        int anomalies = ImportAnomalyLog.INSTANCE.size();
+        CompletePatch patch = PatchIO.parse(f);
+        if (ImportAnomalyLog.INSTANCE.size() == anomalies
+                && f.length() == key.size
+                && f.lastModified() == key.lastModified) {
+            this.store(cacheFile, key, patch);
+        }
+        return patch;
+    }
+
+    /**
+     * Returns the cache file we'd use for the given file.  This is based
+     * solely on the path, so a changed file will end up overwriting the
+     * cache for its previous contents.
+     *
+     * @param key The key of the file
+     * @return The cache file
+     */
+    File getCacheFile(FileKey key) {
+        return new File(this.cacheDir, key.pathHash + CACHE_SUFFIX);
+    }
+
+    /**
+     * Returns a string which identifies the set of property checkers we're
+     * using, since the stored properties are indexes into that list.
+     *
+     * @return A string identifying our property checkers
+     */
+    private static String getCheckerFingerprint() {
+        StringBuilder sb = new StringBuilder();
+        for (PropertyChecker checker : GlobalListOfProperties.LIST) {
+            sb.append(checker.getClass().getName()).append(checker.isDependantOnGameData() ? "*" : "").append(",");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Loads a patch from the given cache file, if it matches the given key.
+     *
+     * @param cacheFile The cache file to load
+     * @param key The key of the file we're after
+     * @return The patch, or null if the cache file was out of date or
+     * unreadable
+     */
+    CompletePatch load(File cacheFile, FileKey key) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(cacheFile.toPath())));
+            if (in.readInt() != MAGIC
+                    || in.readInt() != FORMAT_VERSION
+                    || !Meta.VERSION.equals(readString(in))
+                    || !getCheckerFingerprint().equals(readString(in))
+                    || !key.path.equals(readString(in))
+                    || in.readLong() != key.size
+                    || in.readLong() != key.lastModified
+                    || !key.contentHash.equals(readString(in))) {
+                return null;
+            }
+            return new PatchReader(in).readPatch();
+        } catch (Exception e) {
+            GlobalLogger.log("Error reading patch cache " + cacheFile.getName() + ": " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the given patch in the given cache file.  The patch is
+     * serialized in memory first, then written out to a temporary file which
+     * is moved into place, so a partially-written cache file will never be
+     * picked up.  Any problems are logged and otherwise ignored, since the
+     * cache is purely an optimization.
+     *
+     * @param cacheFile The cache file to write
+     * @param key The key of the file the patch came from
+     * @param patch The patch to store
+     */
+    void store(File cacheFile, FileKey key, CompletePatch patch) {
+        if (!this.cacheDir.isDirectory() && !this.cacheDir.mkdirs()) {
+            GlobalLogger.log("Unable to create patch cache directory: " + Utilities.hideUserName(this.cacheDir.toString()));
+            return;
+        }
+        File temp = new File(this.cacheDir, cacheFile.getName() + ".tmp");
+        try {
+            byte[] data = new PatchWriter(patch).write(key);
+            try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                out.write(data);
+            }
+            Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            GlobalLogger.log("Error writing patch cache " + cacheFile.getName() + ": " + e.toString());
+            temp.delete();
+            return;
+        }
+        this.prune();
+    }
+
+    /**
+     * Removes the least-recently-used cache files, if we've got more than
+     * MAX_CACHE_FILES of them.
+     */
+    private void prune() {
+        File[] files = this.cacheDir.listFiles((dir, name) -> name.endsWith(CACHE_SUFFIX));
+        if (files == null || files.length <= MAX_CACHE_FILES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = MAX_CACHE_FILES; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Writes a string which may be null, and may be longer than
+     * DataOutputStream.writeUTF() allows (long hotfix values can easily
+     * go past 64k).
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The information we use to tell whether a cache file is still valid
+     * for a given patch file.
+     */
+    static class FileKey {
+
+        final String path;
+        final String pathHash;
+        final long size;
+        final long lastModified;
+        final String contentHash;
+
+        FileKey(File f) throws IOException, NoSuchAlgorithmException {
+            this.path = f.getCanonicalPath();
+            this.pathHash = Utilities.sha256(this.path);
+            this.size = f.length();
+            this.lastModified = f.lastModified();
+            this.contentHash = Utilities.sha256(f);
+        }
+    }
+
+    /**
+     * Serializes a patch into our cache format.
+     */
+    private static class PatchWriter {
+
+        private final CompletePatch patch;
+        private final Map<Profile, Integer> profileIndexes = new IdentityHashMap<>();
+        private final Map<PropertyChecker, Integer> checkerIndexes = new HashMap<>();
+        private DataOutputStream out;
+
+        PatchWriter(CompletePatch patch) {
+            this.patch = patch;
+            for (int i = 0; i < GlobalListOfProperties.LIST.size(); i++) {
+                this.checkerIndexes.put(GlobalListOfProperties.LIST.get(i), i);
+            }
+        }
+
+        byte[] write(FileKey key) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            this.out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, Meta.VERSION);
+            writeString(out, getCheckerFingerprint());
+            writeString(out, key.path);
+            out.writeLong(key.size);
+            out.writeLong(key.lastModified);
+            writeString(out, key.contentHash);
+
+            writeString(out, patch.getType().name());
+            out.writeBoolean(patch.isOffline());
+            writeString(out, patch.getPatchSource().name());
+            out.writeInt(patch.profiles.size());
+            int current = -1;
+            for (Profile prof : patch.profiles.values()) {
+                if (prof == patch.getCurrentProfile()) {
+                    current = this.profileIndexes.size();
+                }
+                this.profileIndexes.put(prof, this.profileIndexes.size());
+                writeString(out, prof.getName());
+            }
+            out.writeInt(current);
+            out.writeBoolean(patch.getRoot() != null);
+            if (patch.getRoot() != null) {
+                this.writeElement(patch.getRoot());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private void writeElement(ModelElement element) throws IOException {
+            if (element instanceof Category) {
+                Category cat = (Category) element;
+                out.writeByte(TAG_CATEGORY);
+                writeString(out, cat.getName());
+                out.writeBoolean(cat.isMutuallyExclusive());
+                out.writeBoolean(cat.isLocked());
+            } else if (element instanceof HotfixWrapper) {
+                HotfixWrapper wrapper = (HotfixWrapper) element;
+                out.writeByte(TAG_HOTFIX_WRAPPER);
+                writeString(out, wrapper.getName());
+                writeString(out, wrapper.getType().name());
+                writeString(out, wrapper.getParameter());
+            } else if (element instanceof SetCMPCommand) {
+                out.writeByte(TAG_SET_CMP_COMMAND);
+                writeString(out, ((SetCMPCommand) element).getCmpValue());
+            } else if (element instanceof HotfixCommand) {
+                out.writeByte(TAG_HOTFIX_COMMAND);
+            } else if (element instanceof SetCommand) {
+                out.writeByte(TAG_SET_COMMAND);
+            } else if (element instanceof Comment) {
+                out.writeByte(TAG_COMMENT);
+                writeString(out, ((Comment) element).getComment());
+            } else {
+                throw new IOException("Unknown element type: " + element.getClass().getName());
+            }
+            if (element instanceof SetCommand) {
+                SetCommand command = (SetCommand) element;
+                writeString(out, command.getObject());
+                writeString(out, command.getField());
+                writeString(out, command.getValue());
+                out.writeBoolean(command.isSelected());
+                out.writeInt(command.getProfiles().size());
+                for (Profile prof : command.getProfiles()) {
+                    Integer index = this.profileIndexes.get(prof);
+                    if (index == null) {
+                        throw new IOException("Element enabled in unknown profile: " + prof.getName());
+                    }
+                    out.writeInt(index);
+                }
+            }
+
+            BitSet properties = new BitSet(GlobalListOfProperties.LIST.size());
+            for (PropertyChecker checker : element.getTransientData().getOwnProperties()) {
+                if (!checker.isDependantOnGameData()) {
+                    properties.set(this.checkerIndexes.get(checker));
+                }
+            }
+            long[] words = properties.toLongArray();
+            out.writeByte(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+
+            if (element instanceof ModelElementContainer) {
+                List<? extends ModelElement> children = ((ModelElementContainer<?>) element).getElements();
+                out.writeInt(children.size());
+                for (ModelElement child : children) {
+                    this.writeElement(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a patch from our cache format.
+     */
+    private static class PatchReader {
+
+        private final DataInputStream in;
+        private final List<Profile> profiles = new ArrayList<>();
+        private final Map<ModelElement, List<PropertyChecker>> own = new IdentityHashMap<>();
+        private final Map<SetCommand, Boolean> selected = new IdentityHashMap<>();
+
+        PatchReader(DataInputStream in) {
+            this.in = in;
+        }
+
+        CompletePatch readPatch() throws IOException {
+            CompletePatch patch = new CompletePatch();
+            patch.setType(PatchType.valueOf(readString(in)));
+            patch.setOffline(in.readBoolean());
+            patch.setPatchSource(CompletePatch.PatchSource.valueOf(readString(in)));
+            int numProfiles = in.readInt();
+            for (int i = 0; i < numProfiles; i++) {
+                Profile prof = new Profile(readString(in));
+                this.profiles.add(prof);
+                patch.profiles.put(prof.getName(), prof);
+            }
+            int current = in.readInt();
+            // This is set before there's a tree, so that nothing gets walked.
+            // Selection state normally follows from the current profile, but
+            // the parser doesn't always leave things that way (see
+            // CompletePatch.fixInvalidMUT()), so we restore it exactly
+            // further down.
+            if (current >= 0) {
+                patch.setCurrentProfile(this.profiles.get(current));
+            }
+            boolean hasRoot = in.readBoolean();
+
+            // Same deal as in PatchIO.parse(): build the whole tree first,
+            // and then sort out properties in one go.
+            TransientModelData.setDeferred(true);
+            SymbolTable.setCurrent(new SymbolTable());
+            try {
+                if (hasRoot) {
+                    patch.setRoot((Category) this.readElement());
+                }
+                for (Map.Entry<SetCommand, Boolean> entry : this.selected.entrySet()) {
+                    entry.getKey().restoreSelected(entry.getValue());
+                }
+            } finally {
+                TransientModelData.setDeferred(false);
+                SymbolTable.setCurrent(null);
+            }
+            if (hasRoot) {
+                TransientModelData.evaluateProperties(patch.getRoot(), this.own);
+            }
+            return patch;
+        }
+
+        @SuppressWarnings("unchecked")
+        private ModelElement readElement() throws IOException {
+            byte tag = in.readByte();
+            ModelElement element;
+            switch (tag) {
+                case TAG_CATEGORY:
+                    element = new Category(readString(in), in.readBoolean(), in.readBoolean());
+                    break;
+                case TAG_HOTFIX_WRAPPER:
+                    element = new HotfixWrapper(readString(in), HotfixType.valueOf(readString(in)), readString(in));
+                    break;
+                case TAG_SET_CMP_COMMAND: {
+                    String cmpValue = readString(in);
+                    element = new SetCMPCommand(readString(in), readString(in), cmpValue, readString(in));
+                    break;
+                }
+                case TAG_HOTFIX_COMMAND:
+                    element = new HotfixCommand(readString(in), readString(in), readString(in));
+                    break;
+                case TAG_SET_COMMAND:
+                    element = new SetCommand(readString(in), readString(in), readString(in));
+                    break;
+                case TAG_COMMENT:
+                    element = new Comment(readString(in));
+                    break;
+                default:
+                    throw new IOException("Unknown element tag: " + tag);
+            }
+            if (element instanceof SetCommand) {
+                SetCommand command = (SetCommand) element;
+                this.selected.put(command, in.readBoolean());
+                int numProfiles = in.readInt();
+                for (int i = 0; i < numProfiles; i++) {
+                    command.turnOnInProfile(this.profiles.get(in.readInt()));
+                }
+            }
+
+            long[] words = new long[in.readByte()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            BitSet properties = BitSet.valueOf(words);
+            List<PropertyChecker> checkers = new ArrayList<>(properties.cardinality());
+            for (int i = properties.nextSetBit(0); i >= 0; i = properties.nextSetBit(i + 1)) {
+                checkers.add(GlobalListOfProperties.LIST.get(i));
+            }
+            this.own.put(element, checkers);
+
+            if (element instanceof ModelElementContainer) {
+                ModelElementContainer<ModelElement> container = (ModelElementContainer<ModelElement>) element;
+                int numChildren = in.readInt();
+                for (int i = 0; i < numChildren; i++) {
+                    ModelElement child = this.readElement();
+                    child.setParent(container);
+                    container.addElement(child);
+                }
+            }
+            return element;
+        }
+    }
+
+}
@@ -20,16 +20,15 @@ package blcmm.model;
 
 import blcmm.Meta;
 import blcmm.model.attrparser.LevelDepArray;
+import blcmm.model.attrparser.LevelDepData;
 import blcmm.model.attrparser.LevelDepParser;
-import blcmm.model.attrparser.LevelDepString;
 import blcmm.model.attrparser.LevelDepStruct;
 import blcmm.model.properties.GlobalListOfProperties;
 import blcmm.utilities.CodeFormatter;
-import blcmm.utilities.GameDetection;
 import blcmm.utilities.GlobalLogger;
 import blcmm.utilities.ImportAnomalyLog;
-import blcmm.utilities.OSInfo;
 import blcmm.utilities.Options;
+import blcmm.utilities.SpillingWriter;
 import blcmm.utilities.Utilities;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -43,7 +42,10 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -54,6 +56,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -92,6 +95,10 @@ public class PatchIO {
     private static final int SAVE_VERSION = 1;
     public static final String LINEBREAK = System.getProperty("line.separator");
 
+    // Stored resources which get used on every save, parsed once per game.
+    private static final Map<PatchType, Category> GBX_FIXES = new ConcurrentHashMap<>();
+    private static final Map<PatchType, Map<String, LevelDepArray<LevelDepStruct>>> VANILLA_LEVEL_LISTS = new ConcurrentHashMap<>();
+
     /**
      * Parses the provided string and returns the encoded Category and all it's
      * children.
@@ -117,14 +124,25 @@ public class PatchIO {
             return res;
         }
         BufferedReader br = new BufferedReader(p.createNewReader(o));
-        if (line[0].trim().startsWith("<BLCMM") || line[0].trim().startsWith("<category") || line[0].trim().startsWith("<code")) {
-            res = new BLCMMParser().parse(br, filename);
-        } else if (line[0].toLowerCase().startsWith("start") && filename.endsWith(".hotfix")) {
-            res = new HotfixParser().parse(br, filename);
-        } else {
-            res = new FTParser().parse(br, filename);//FT parser will handle "anything"
+        // Property checks get run in bulk once the whole tree's been built,
+        // rather than for every element as it's added.  Object and field
+        // names get shared between all the statements in the patch.
+        TransientModelData.setDeferred(true);
+        SymbolTable.setCurrent(new SymbolTable());
+        try {
+            if (line[0].trim().startsWith("<BLCMM") || line[0].trim().startsWith("<category") || line[0].trim().startsWith("<code")) {
+                res = new BLCMMParser().parse(br, filename);
+            } else if (line[0].toLowerCase().startsWith("start") && filename.endsWith(".hotfix")) {
+                res = new HotfixParser().parse(br, filename);
+            } else {
+                res = new FTParser().parse(br, filename);//FT parser will handle "anything"
+            }
+        } finally {
+            TransientModelData.setDeferred(false);
+            SymbolTable.setCurrent(null);
         }
         br.close();
+        TransientModelData.evaluateProperties(res.getRoot());
         res.fixInvalidMUT();
         return res;
     }
@@ -396,9 +414,11 @@ public class PatchIO {
 
     private final static class FTParser extends Parser {
 
-        private static String[] fixes = new String[2];
-        private static SetCommand[] fixes2 = new SetCommand[2];
-        private static boolean OLD_PARSE;
+        // Parse state.  These used to be static, but are per-instance so that
+        // multiple files can be parsed at once.
+        private String[] fixes = new String[2];
+        private SetCommand[] fixes2 = new SetCommand[2];
+        private boolean oldParse;
 
         private static void handleInvalidHotfix(CompletePatch patch, String s) {
             Category root = patch.getRoot();
@@ -442,7 +462,7 @@ public class PatchIO {
                     line = removeGarbageCharacters(br.readLine());
                 } while (line != null && line.trim().isEmpty());
             }
-            OLD_PARSE = !containsProfileData;
+            oldParse = !containsProfileData;
             if (!containsProfileData) {
                 res.createNewProfile("default");
             }
@@ -523,7 +543,7 @@ public class PatchIO {
          * @param patch
          * @return
          */
-        private static Category addLine(Category parent, String s, CompletePatch patch) {
+        private Category addLine(Category parent, String s, CompletePatch patch) {
             if (s.trim().isEmpty()) {
                 return parent;
             }
@@ -589,7 +609,7 @@ public class PatchIO {
          * @param patch
          * @return
          */
-        private static Category postProcessParse(Category c, CompletePatch patch) {
+        private Category postProcessParse(Category c, CompletePatch patch) {
             if (fixes[0] != null && fixes[1] != null) {
                 if (c.getNumberOfHotfixDescendants() == 0) {
                     introduceMeta(c, patch);
@@ -659,7 +679,7 @@ public class PatchIO {
          * @param parent
          * @param patch
          */
-        private static void introduceMeta(Category parent, CompletePatch patch) {
+        private void introduceMeta(Category parent, CompletePatch patch) {
             Category group = new Category("Hotfixes");
             String[] split1 = splitFixes(fixes[0]);
             String[] split2 = splitFixes(fixes[1]);
@@ -687,8 +707,8 @@ public class PatchIO {
             return split1;
         }
 
-        private static ModelElement parseNormalCode(String input, Category parent, CompletePatch patch) {
-            if (OLD_PARSE) {
+        private ModelElement parseNormalCode(String input, Category parent, CompletePatch patch) {
+            if (oldParse) {
                 String code;
                 if (input.contains("<off>") && input.startsWith("#")) {
                     code = input.substring(1, input.indexOf("<off>"));
@@ -788,7 +808,7 @@ public class PatchIO {
             for (ModelElement element : root.listRecursiveContentMinusCategories()) {
                 if (element instanceof SetCommand) {
                     SetCommand command = (SetCommand) element;
-                    String object = command.getObject().toLowerCase();
+                    String object = command.getLowerCaseObject();
                     int idx = object.indexOf(".");
                     String firstPackage = idx > 0 ? object.substring(0, idx) : object;
                     for (String s : DLCForTPS) {
@@ -812,8 +832,8 @@ public class PatchIO {
 
     private final static class BLCMMParser extends Parser {
 
-        private static int readingVersion = 0;
-        private static boolean foundHeader = false;
+        private int readingVersion = 0;
+        private boolean foundHeader = false;
 
         /**
          * Importer for BLCMM-style files. Note that "filename" is ignored,
@@ -826,13 +846,12 @@ public class PatchIO {
          * @throws IOException
          */
         @Override
-        @SuppressWarnings("empty-statement")
         protected CompletePatch parse(BufferedReader br, String filename) throws IOException {
             ModelElementContainer current = null;
             CompletePatch res = new CompletePatch();
             res.setPatchSource(CompletePatch.PatchSource.BLCMM);
-            String line;
-            Stack<XMLTag> stack = new Stack<>();
+            BLCMMTokenizer tokenizer = new BLCMMTokenizer(br);
+            Stack<String> stack = new Stack<>();
 
             // We'll want to make sure that we found a proper BLCMM header tag
             // with a version number attached.  (The parsing itself will throw
@@ -841,14 +860,12 @@ public class PatchIO {
             foundHeader = false;
 
             do {
-                while ((line = removeGarbageCharacters(br.readLine())).isEmpty());//concise code ftw
-
-                if (line.equals(FT_UPDATE_STRING)) {
-                    continue;
+                BLCMMTokenizer.TokenType type = tokenizer.next();
+                if (type == BLCMMTokenizer.TokenType.END) {
+                    throw new IllegalArgumentException("Unexpected end of file, still inside: " + String.join(", ", stack));
                 }
-                Line split = new Line(line);
-                current = addLine(split, res, current, stack);
-            } while (line != null && !stack.isEmpty());
+                current = handleToken(type, tokenizer, res, current, stack);
+            } while (!stack.isEmpty());
 
             // Make sure that we've found a valid BLCMM header (I think that we'd end up
             // having an Exception long before we get here, actually.)
@@ -859,328 +876,149 @@ public class PatchIO {
             return res;
         }
 
-        private static ModelElementContainer addLine(Line split, CompletePatch res, ModelElementContainer current, Stack<XMLTag> stack) {
+        private ModelElementContainer handleToken(BLCMMTokenizer.TokenType type, BLCMMTokenizer tokenizer,
+                CompletePatch res, ModelElementContainer current, Stack<String> stack) throws IOException {
             final boolean fixMissingProfiles = true;
-            int idx = 0;
-            while (split.elements.size() > idx) {
-                Object element = split.elements.get(idx);
-                if (element instanceof XMLTag) {
-                    XMLTag tag = (XMLTag) element;
-                    if (!tag.single && !tag.end) {//open something
-                        stack.push(tag);
-                        switch (tag.name) {
-                            case "category":
-                                Category category = new Category(tag.arguments.get("name"), tag.arguments.containsKey("MUT"), tag.arguments.containsKey("locked"));
-                                category.setParent(current);
-                                if (current == null) {//This will be the root
-                                    res.setRoot(category);
-                                } else {
-                                    current.addElement(category);
-                                }
-                                current = category;
-                                break;
-                            case "hotfix":
-                                HotfixType type = HotfixType.PATCH;
-                                String param = null;
-                                if (tag.arguments.containsKey("level")) {
-                                    type = HotfixType.LEVEL;
-                                    param = tag.arguments.get("level");
-                                } else if (tag.arguments.containsKey("package")) {
-                                    type = HotfixType.ONDEMAND;
-                                    param = tag.arguments.get("package");
-                                }
-                                HotfixWrapper wrapper = new HotfixWrapper(tag.arguments.get("name"), type, param);
-                                wrapper.setParent(current);
-                                current.addElement(wrapper);
-                                current = wrapper;
-                                break;
-                            case "code":
-                                idx++;
-                                StringBuilder combuilder = new StringBuilder();
-                                Object o = split.elements.get(idx);
-                                while (!(o instanceof XMLTag && ((XMLTag) o).name.equals("code"))) {
-                                    combuilder.append(o.toString());
-                                    o = split.elements.get(++idx);
-                                }
-                                String com = combuilder.toString();
-                                SetCommand command = com.startsWith("set ") ? (current instanceof HotfixWrapper ? new HotfixCommand(com) : new SetCommand(com)) : new SetCMPCommand(com);
-                                command.setParent(current);
-                                current.addElement(command);
-                                if (tag.arguments.containsKey("profiles")) {
-                                    String profiles = tag.arguments.get("profiles");
-                                    String[] profs = profiles.split(",");
-                                    for (String prof : profs) {
-                                        Profile p = res.getProfile(prof);
-                                        if (p != null) {
-                                            command.turnOnInProfile(p);
-                                        } else if (fixMissingProfiles && !(prof.isEmpty() && profs.length == 1)) {
-                                            p = res.createNewProfile(prof);
-                                            command.turnOnInProfile(p);
-                                        }
-                                    }
-                                } else {//legacy
-                                    boolean sel = !tag.arguments.containsKey("selected");
-                                    if (sel) {
-                                        command.turnOnInProfile(res.getCurrentProfile());
-                                    }
-                                }
-                                command.profileChanged(res.getCurrentProfile());
-                                idx--;
-                                break;
-                            case "comment":
-                                idx++;
-                                combuilder = new StringBuilder();
-                                o = split.elements.get(idx);
-                                while (!(o instanceof XMLTag && ((XMLTag) o).name.equals("comment"))) {
-                                    combuilder.append(o.toString());
-                                    o = split.elements.get(++idx);
-                                }
-                                Comment comment = new Comment(combuilder.toString());
-                                comment.setParent(current);
-                                current.addElement(comment);
-                                idx--;
-                                break;
-                            case "BLCMM":
-                                if (tag.arguments.containsKey("v")) {
-                                    try {
-                                        readingVersion = Integer.parseInt(tag.arguments.get("v"));
-                                        if (readingVersion > SAVE_VERSION) {
-                                            throw new IllegalArgumentException(String.format(
-                                                    "File is BLCMMv%d, we can only open up to v%d",
-                                                    readingVersion, SAVE_VERSION));
-                                        } else if (readingVersion < 1) {
-                                            throw new IllegalArgumentException(String.format(
-                                                    "Invalid BLCMM file version number specified: %d",
-                                                    readingVersion));
-                                        } else {
-                                            foundHeader = true;
-                                        }
-                                    } catch (NumberFormatException e) {
-                                        throw new IllegalArgumentException("Unable to parse BLCMM file version: " + tag.toString());
-                                    }
-                                } else {
-                                    throw new IllegalArgumentException("Improperly-formed BLCMM file.  Version not found: " + tag.toString());
-                                }
-                                break;
-                            case "profiles":
-                            case "head":
-                            case "body":
-                                //do nothing
-                                break;
-                            default:
-                                throw new IllegalArgumentException(tag.toString());
-                        }
-                    } else if (!tag.single && tag.end) { //close something
-                        XMLTag pop = stack.pop();
-                        if (!pop.name.equalsIgnoreCase(tag.name)) {
-                            throw new IllegalStateException("Unexpected XML tag: " + tag + " was expecting the closing tag of " + pop + "\nCurrent stack:\n" + Arrays.toString(stack.toArray()).replace(",", "\n").replaceAll("[\\[\\]]", ""));
-                        }
-                        switch (tag.name) {
-                            case "category":
-                            case "hotfix":
-                                current = current.getParent();
-                                break;
-                            case "head"://do nothing
-                                if (res.getProfiles().isEmpty()) {
-                                    res.createNewProfile("default");
-                                }
-                                break;
-                            case "body"://do nothing
-                            case "profiles"://do nothing
-                            case "BLCMM":
-                            case "code":
-                            case "comment":
-                                break;
-                            default:
-                                throw new IllegalArgumentException(tag.toString());
-                        }
-                    } else {
-                        assert tag.single;
-                        switch (tag.name) {
-                            case "type":
-                                res.setType(PatchType.valueOf(tag.arguments.get("name").toUpperCase()));
-                                res.setOffline(Boolean.parseBoolean(tag.arguments.get("offline")));
-                                break;
-                            case "profile":
-                                String name = tag.arguments.get("name");
-                                res.profiles.put(name, new Profile(name));
-                                if (tag.arguments.containsKey("current")) {
-                                    res.setCurrentProfile(name);
-                                }
-                                break;
-                            default:
-                                throw new IllegalArgumentException(tag.toString());
-                        }
-                    }
-                } else if (element instanceof String) {
-                    throw new IllegalArgumentException();//should be handled by the wrapping XML case
-                } else {
-                    throw new IllegalArgumentException();
-                }
-                idx++;
-            }
-            return current;
-        }
-
-        private static class XMLTag {
-
-            String name;
-            HashMap<String, String> arguments = new HashMap<>();
-            boolean single;
-            boolean end;
-
-            XMLTag(String tag) {
-                if (!tag.startsWith("<")) {
-                    throw new IllegalArgumentException(tag);
-                }
-                if (!tag.endsWith(">")) {
-                    throw new IllegalArgumentException(tag);
-                }
-                end = tag.startsWith("</");
-                single = tag.endsWith("/>");
-                int spaceidx = tag.indexOf(" ");
-                name = spaceidx == -1 ? tag.substring(end ? 2 : 1, tag.length() - (single ? 2 : 1)) : tag.substring(end ? 2 : 1, spaceidx);
-                while (spaceidx > 0) {
-                    int eqidx = tag.indexOf("=", spaceidx);
-                    int begqidx = tag.indexOf("\"", eqidx);
-                    int endqidx = tag.indexOf("\"", begqidx + 1);
-                    while (tag.charAt(endqidx - 1) == '\\') {
-                        endqidx = tag.indexOf("\"", endqidx + 1);
-                    }
-                    String arg = tag.substring(spaceidx + 1, eqidx).trim();
-                    String val = unescape(tag.substring(begqidx + 1, endqidx));
-
-                    arguments.put(arg, val);
-                    spaceidx = tag.indexOf(" ", endqidx);
-                }
-            }
-
-            @Override
-            public String toString() {
-                StringBuilder args = new StringBuilder();
-                for (String arg : arguments.keySet()) {
-                    args.append(" ").append(arg).append("=\"").append(arguments.get(arg)).append("\"");
-                }
-                return String.format("<%s%s%s%s>", end ? "/" : "", name, args.toString(), single ? "/" : "");
-            }
-
-        }
-
-        private static class Line {
-
-            private final List<Object> elements = new ArrayList<>();
-
-            private Line(String line) {
-                line = line.trim();
-                int idx = 0;
-                int tag = -1;
-                while (idx < line.length()) {
-                    if (line.charAt(idx) == '<' && lookaheadForTag(line, idx) != -1) {//An xml tag
-                        if (tag == -1) {
-                            int idx2 = idx + 1;
-                            boolean inquotes = false;
-                            while (true) {
-                                char c = line.charAt(idx2);
-                                idx2++;
-                                if (c == '>' && !inquotes) {
-                                    break;
-                                } else if (c == '"') {
-                                    if (!inquotes) {
-                                        inquotes = true;
-                                    } else if (idx2 > 1 && line.charAt(idx2 - 2) != '\\') {//>1 and -2 because idx2 has been incremented at this point
-                                        inquotes = false;
+            String name = tokenizer.getName();
+            switch (type) {
+                case OPEN_TAG:
+                    stack.push(name);
+                    switch (name) {
+                        case "category":
+                            Category category = new Category(tokenizer.getArgument("name"), tokenizer.hasArgument("MUT"), tokenizer.hasArgument("locked"));
+                            category.setParent(current);
+                            if (current == null) {//This will be the root
+                                res.setRoot(category);
+                            } else {
+                                current.addElement(category);
+                            }
+                            current = category;
+                            break;
+                        case "hotfix":
+                            HotfixType hotfixType = HotfixType.PATCH;
+                            String param = null;
+                            if (tokenizer.hasArgument("level")) {
+                                hotfixType = HotfixType.LEVEL;
+                                param = tokenizer.getArgument("level");
+                            } else if (tokenizer.hasArgument("package")) {
+                                hotfixType = HotfixType.ONDEMAND;
+                                param = tokenizer.getArgument("package");
+                            }
+                            HotfixWrapper wrapper = new HotfixWrapper(tokenizer.getArgument("name"), hotfixType, param);
+                            wrapper.setParent(current);
+                            current.addElement(wrapper);
+                            current = wrapper;
+                            break;
+                        case "code":
+                            // Grab our arguments before reading the contents, since
+                            // that'll move the tokenizer along
+                            String profiles = tokenizer.getArgument("profiles");
+                            boolean legacySelected = !tokenizer.hasArgument("selected");
+                            String com = tokenizer.readContent("code");
+                            SetCommand command = com.startsWith("set ") ? (current instanceof HotfixWrapper ? new HotfixCommand(com) : new SetCommand(com)) : new SetCMPCommand(com);
+                            command.setParent(current);
+                            current.addElement(command);
+                            if (profiles != null) {
+                                String[] profs = profiles.split(",");
+                                for (String prof : profs) {
+                                    Profile p = res.getProfile(prof);
+                                    if (p != null) {
+                                        command.turnOnInProfile(p);
+                                    } else if (fixMissingProfiles && !(prof.isEmpty() && profs.length == 1)) {
+                                        p = res.createNewProfile(prof);
+                                        command.turnOnInProfile(p);
                                     }
                                 }
-                            }
-                            elements.add(new XMLTag(line.substring(idx, idx2)));
-                            idx = idx2;
-                        } else {
-                            elements.add(new XMLTag(line.substring(idx, tag + 1)));
-                            idx = tag + 1;
-                            tag = -1;
-                        }
-                    } else {//inside an xml tag
-                        int idx2 = idx;
-                        boolean inquotes = false;
-                        int lastStart = -1;
-                        while (true) {//sanning until we hit the start of the next xml tag
-                            if (idx2 == line.length()) {
-                                if (lastStart != -1) {
-                                    idx2 = lastStart;
-                                    break;
-                                } else {
-                                    throw new IllegalArgumentException(line);
+                            } else {//legacy
+                                if (legacySelected) {
+                                    command.turnOnInProfile(res.getCurrentProfile());
                                 }
                             }
-                            char c = line.charAt(idx2);
-                            if (c == '<') {
-                                tag = lookaheadForTag(line, idx2);
-                                if (tag != -1) {
-                                    if (!inquotes) {
-                                        break;
+                            command.profileChanged(res.getCurrentProfile());
+                            break;
+                        case "comment":
+                            Comment comment = new Comment(tokenizer.readContent("comment"));
+                            comment.setParent(current);
+                            current.addElement(comment);
+                            break;
+                        case "BLCMM":
+                            if (tokenizer.hasArgument("v")) {
+                                try {
+                                    readingVersion = Integer.parseInt(tokenizer.getArgument("v"));
+                                    if (readingVersion > SAVE_VERSION) {
+                                        throw new IllegalArgumentException(String.format(
+                                                "File is BLCMMv%d, we can only open up to v%d",
+                                                readingVersion, SAVE_VERSION));
+                                    } else if (readingVersion < 1) {
+                                        throw new IllegalArgumentException(String.format(
+                                                "Invalid BLCMM file version number specified: %d",
+                                                readingVersion));
                                     } else {
-                                        lastStart = idx2;
+                                        foundHeader = true;
                                     }
+                                } catch (NumberFormatException e) {
+                                    throw new IllegalArgumentException("Unable to parse BLCMM file version: " + tokenizer.getTokenString());
                                 }
-                            } else if (c == '"') {
-                                inquotes = !inquotes;
+                            } else {
+                                throw new IllegalArgumentException("Improperly-formed BLCMM file.  Version not found: " + tokenizer.getTokenString());
                             }
-                            idx2++;
-                        }
-                        elements.add(line.substring(idx, idx2));
-                        idx = idx2;
+                            break;
+                        case "profiles":
+                        case "head":
+                        case "body":
+                            //do nothing
+                            break;
+                        default:
+                            throw new IllegalArgumentException(tokenizer.getTokenString());
                     }
-                }
-            }
-
-            private static int lookaheadForTag(String line, int idx2) {
-                assert line.charAt(idx2) == '<';
-                int idx3 = idx2 + 1;
-                boolean lookingForArguments = false;
-                boolean lookingForValue = false;
-                boolean hasletter = false;
-                while (idx3 < line.length()) {
-                    char c = line.charAt(idx3);
-                    if (!lookingForArguments) {
-                        if (c == '>' && idx3 - idx2 > 1) {
-                            return idx3;
-                        }
-                        if (c == ' ') {
-                            lookingForArguments = true;
-                        } else if (!Character.isAlphabetic(c) && !(idx3 - idx2 == 1 && c == '/')) {
-                            return -1;
-                        }
-                    } else {
-                        if (lookingForValue) {
-                            if (c == '"' && line.charAt(idx3 - 1) != '\\') {
-                                lookingForValue = false;
-                                hasletter = false;
+                    break;
+                case CLOSE_TAG:
+                    String pop = stack.pop();
+                    if (!pop.equalsIgnoreCase(name)) {
+                        throw new IllegalStateException("Unexpected XML tag: " + tokenizer.getTokenString() + " was expecting the closing tag of <" + pop + ">\nCurrent stack:\n" + String.join("\n", stack));
+                    }
+                    switch (name) {
+                        case "category":
+                        case "hotfix":
+                            current = current.getParent();
+                            break;
+                        case "head"://do nothing
+                            if (res.getProfiles().isEmpty()) {
+                                res.createNewProfile("default");
                             }
-                        } else {
-                            if (c == '=') {
-                                if (line.charAt(idx3 + 1) == '"') {
-                                    idx3++;
-                                    lookingForValue = true;
-                                } else {
-                                    return -1;
-                                }
-                            } else if (c == '>' && !hasletter) {
-                                return idx3;
-                            } else if (c == '/' && line.charAt(idx3 + 1) == '>' && !hasletter) {
-                                idx3++;
-                                return idx3;
-                            } else if (c == ' ' && !hasletter) {//skip
-                            } else if (!Character.isAlphabetic(c)) {
-                                return -1;
-                            } else {
-                                hasletter = true;
+                            break;
+                        case "body"://do nothing
+                        case "profiles"://do nothing
+                        case "BLCMM":
+                        case "code":
+                        case "comment":
+                            break;
+                        default:
+                            throw new IllegalArgumentException(tokenizer.getTokenString());
+                    }
+                    break;
+                case SINGLE_TAG:
+                    switch (name) {
+                        case "type":
+                            res.setType(PatchType.valueOf(tokenizer.getArgument("name").toUpperCase()));
+                            res.setOffline(Boolean.parseBoolean(tokenizer.getArgument("offline")));
+                            break;
+                        case "profile":
+                            String profileName = tokenizer.getArgument("name");
+                            res.profiles.put(profileName, new Profile(profileName));
+                            if (tokenizer.hasArgument("current")) {
+                                res.setCurrentProfile(profileName);
                             }
-                        }
+                            break;
+                        default:
+                            throw new IllegalArgumentException(tokenizer.getTokenString());
                     }
-                    idx3++;
-                }
-                return -1;
+                    break;
+                default:
+                    // Text outside of a code or comment tag
+                    throw new IllegalArgumentException(tokenizer.getTokenString());
             }
+            return current;
         }
     }
 
@@ -1218,6 +1056,48 @@ public class PatchIO {
     public static List<String> writeToFile(CompletePatch patch, Writer writer, boolean exporting) throws IOException {
         return writeToFile(patch, SaveFormat.BLCMM, writer, exporting);
     }
+
+    /**
+     * Writes out a complete patch/mod to a file.  The mod is written to a
+     * temporary file in the same directory first, which is then renamed over
+     * the top of the real one, so that an error (or a crash) partway through
+     * a save can't leave a truncated mod behind.  The rename will be atomic
+     * if the filesystem supports it.
+     *
+     * @param patch The patchset to save
+     * @param file The file to save to
+     * @param exporting Whether or not we're exporting
+     * @return A list of Strings to be shown to the user, if possible
+     * @throws IOException
+     */
+    public static List<String> writeToFile(CompletePatch patch, File file, boolean exporting) throws IOException {
+        if (file.exists() && !file.canWrite()) {
+            throw new IOException(file.getName() + " is read-only");
+        }
+        // If we've been given a symlink, replace the file it points to rather
+        // than the link itself.
+        Path target = file.exists() ? file.toPath().toRealPath() : file.getAbsoluteFile().toPath();
+        File temp = new File(target.getParent().toFile(), "." + target.getFileName() + ".saving");
+        boolean moved = false;
+        try {
+            List<String> res;
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(temp))) {
+                res = writeToFile(patch, bw, exporting);
+            }
+            try {
+                Files.move(temp.toPath(), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            return res;
+        } finally {
+            if (!moved && temp.exists() && !temp.delete()) {
+                GlobalLogger.log("Unable to delete temp file: " + temp.getAbsolutePath());
+            }
+        }
+    }
+
     /**
      * Writes out a complete patch/mod to a Writer.  The mod will be saved slightly
      * differently if the `exporting` boolean is set -- namely, some messages about
@@ -1239,6 +1119,9 @@ public class PatchIO {
             throw new IllegalArgumentException("Only BLCMM saving is supported currently");
         }
 
+        // Snapshots don't evaluate their model properties until they're needed
+        patch.evaluatePendingProperties();
+
         // Enforce offline status from settings
         patch.setOffline(Options.INSTANCE.getSaveAsOffline());
         Category root = patch.getRoot();
@@ -1309,52 +1192,42 @@ public class PatchIO {
     }
 
     private static void writeFunctionalHotfix(Category gbx, Category root, PatchType type, Writer writer, boolean offline) throws IOException {
-        File f = File.createTempFile("temp_hotfixes", "temp");
-        BufferedWriter valuewriter = new BufferedWriter(new FileWriter(f));
-        OSInfo.OS OS = GameDetection.getVirtualOS(type);
-
-        List<HotfixWrapper> hotfixes = gbx.listHotfixMeta();
-        hotfixes.addAll(root.listHotfixMeta());
-        writer.append(type.getFunctionalHotfixPrefix(offline, LINEBREAK));
-        HotfixConverter conv = new HotfixConverter();
-        int i = 0;
-        HashSet<String> illegalValues = new HashSet<>();
-        final int numberOfGBXHotfixes = gbx.getNumberOfHotfixDescendants();
-        for (HotfixWrapper wrapper : hotfixes) {
-            for (SetCommand command : wrapper.getElements()) {
-                boolean gbxFix = i++ < numberOfGBXHotfixes;//notice the increment here
-                if (command.isSelected()) {
-                    HotfixConverter.HotfixKeyValuePair kvp = conv.getKeyValuePair((HotfixCommand)command);
-                    if (!illegalValues.contains(kvp.value)) {
-                        if (i > 1) {
-                            writer.append(",");
-                            valuewriter.append(",");
+        // Hotfix values get written out after all the keys, so we hold on to
+        // them in the meantime.  They stay in memory unless they get really
+        // big, at which point they get spilled out to a temp file.  The
+        // option's in megabytes, and each char can take up two bytes.
+        long maxBufferedChars = Options.INSTANCE.getHotfixSaveBufferSize() * 1024L * 1024L / 2;
+        try (SpillingWriter valuewriter = new SpillingWriter(maxBufferedChars, "temp_hotfixes")) {
+            List<HotfixWrapper> hotfixes = gbx.listHotfixMeta();
+            hotfixes.addAll(root.listHotfixMeta());
+            writer.append(type.getFunctionalHotfixPrefix(offline, LINEBREAK));
+            HotfixConverter conv = new HotfixConverter();
+            int i = 0;
+            HashSet<String> illegalValues = new HashSet<>();
+            final int numberOfGBXHotfixes = gbx.getNumberOfHotfixDescendants();
+            for (HotfixWrapper wrapper : hotfixes) {
+                for (SetCommand command : wrapper.getElements()) {
+                    boolean gbxFix = i++ < numberOfGBXHotfixes;//notice the increment here
+                    if (command.isSelected()) {
+                        HotfixConverter.HotfixKeyValuePair kvp = conv.getKeyValuePair((HotfixCommand)command);
+                        if (!illegalValues.contains(kvp.value)) {
+                            if (i > 1) {
+                                writer.append(",");
+                                valuewriter.append(",");
+                            }
+                            writer.append("\"" + kvp.key + "\"");
+                            valuewriter.append("\"").append(escape(kvp.value)).append("\"");
+                        }
+                        if (gbxFix) {
+                            illegalValues.add(kvp.value);
                         }
-                        writer.append("\"" + kvp.key + "\"");
-                        valuewriter.append("\"" + escape(kvp.value) + "\"");
-                    }
-                    if (gbxFix) {
-                        illegalValues.add(kvp.value);
                     }
                 }
             }
+            writer.append(type.getFunctionalHotfixCenter(offline, LINEBREAK).replace("\n\n", LINEBREAK));
+            valuewriter.writeTo(writer);
+            writer.append(type.getFunctionalHotfixPostfix(offline, LINEBREAK));
         }
-        valuewriter.close();
-        writer.append(type.getFunctionalHotfixCenter(offline, LINEBREAK).replace("\n\n", LINEBREAK));
-        FileReader fis = new FileReader(f);
-        char[] buffer = new char[8 * 1024];
-        int bytesRead;
-        while ((bytesRead = fis.read(buffer)) != -1) {
-            writer.write(buffer, 0, bytesRead);
-        }
-        fis.close();
-        f.delete();
-        writer.append(type.getFunctionalHotfixPostfix(offline, LINEBREAK));
-        //Now we're doing 3x as much IO as needed compared to storing the values in memory
-        //We could do the main loop twice, so we have 1x IO but 2x CPU usage
-        //Or actually store it in memory and risk RAM issues
-        //Or store it in RAM if small, and stream to file if it gets too big
-        //TODO revise maybe?
         //Can also enhance the HotfixConverter API to allow for some ease of use
         //If we shift blcmm.model to the utilities JAR, the converter has access to the
         //HotfixContainer and other elements, which it could then provide custom-tailored calls for,
@@ -1384,86 +1257,122 @@ public class PatchIO {
         }
     }
 
+    /**
+     * Returns the GBX hotfixes which get written out alongside any mod which
+     * contains hotfixes.  These are parsed out of our resources the first
+     * time they're needed for each game, and then kept around for every
+     * subsequent save.  The returned Category is shared, so callers must not
+     * modify it.
+     *
+     * @param type The game to get hotfixes for
+     * @return The GBX hotfixes
+     */
     static Category getGBXFixes(PatchType type) {
-        return getStoredCommands(type, "GBXFIXES", "GBX_hotfixes.blcm");
+        Category res = GBX_FIXES.computeIfAbsent(type,
+                t -> getStoredCommands(t, "GBXFIXES", "GBX_hotfixes.blcm"));
+        if (res == null) {
+            res = new Category("GBXFIXES");
+        }
+        return res;
     }
 
-    private static Category getVanillaLevelList(PatchType type) {
-        return getStoredCommands(type, "Level lists", "vanillaLevelLists.blcm");
+    /**
+     * Returns the vanilla level lists for the given game, already parsed,
+     * keyed by object name.  These are built the first time they're needed
+     * for each game and kept around afterwards.  The arrays are shared, so
+     * callers who want to modify one should copy() it first.
+     *
+     * @param type The game to get level lists for
+     * @return The parsed vanilla level lists
+     */
+    private static Map<String, LevelDepArray<LevelDepStruct>> getVanillaLevelLists(PatchType type) {
+        Map<String, LevelDepArray<LevelDepStruct>> res = VANILLA_LEVEL_LISTS.computeIfAbsent(type, t -> {
+            Category vmerges = getStoredCommands(t, "Level lists", "vanillaLevelLists.blcm");
+            if (vmerges == null) {
+                return null;
+            }
+            Map<String, LevelDepArray<LevelDepStruct>> lists = new HashMap<>();
+            for (ModelElement el : vmerges.getElements()) {
+                SetCommand vcom = (SetCommand) el;
+                LevelDepData data = LevelDepParser.parse(vcom.getValue());
+                LevelDepArray<LevelDepStruct> list = null;
+                if (data instanceof LevelDepArray) {
+                    try {
+                        list = ((LevelDepArray<?>) data).asArrayOf(LevelDepStruct.class);
+                    } catch (ClassCastException e) {
+                        // Not an array of structs; reported just below
+                    }
+                }
+                if (list == null) {
+                    GlobalLogger.log("Unexpected vanilla level list format for " + vcom.getObject());
+                } else {
+                    lists.put(vcom.getObject(), list);
+                }
+            }
+            return Collections.unmodifiableMap(lists);
+        });
+        if (res == null) {
+            res = Collections.emptyMap();
+        }
+        return res;
     }
 
+    /**
+     * Reads in one of the mod files stored in our resources.  Will return
+     * null if there was a problem reading it, so that we'll try again the
+     * next time around rather than caching the failure.
+     *
+     * @param type The game to read the file for
+     * @param categoryName What we're reading, for logging purposes
+     * @param filename The filename inside our resources directory
+     * @return The root category of the stored file, or null
+     */
     private static Category getStoredCommands(PatchType type, String categoryName, String filename) {
         InputStream hotfixStream = ClassLoader.getSystemClassLoader().getResourceAsStream("resources/" + type.name() + "/" + filename);
-        Category res = new Category(categoryName);
         try (BufferedReader br = new BufferedReader(new InputStreamReader(hotfixStream));) {
             CompletePatch p = new BLCMMParser().parse(br, "");
-            res = p.getRoot();
+            return p.getRoot();
         } catch (Exception ex) {//TODO report to user? :thinking: What would user do with this information... if resources.jar is present, this never fails.
+            GlobalLogger.log("Unable to read stored " + categoryName + " for " + type.name());
             GlobalLogger.log(ex);
         }
-        return res;
+        return null;
     }
 
     static List<String> analyzeLevelMerges(PatchType type, Category toBeChecked, HashSet<ModelElement> excludes, Category newCommands) {
         List<String> res = new ArrayList<>();
         HashSet<SetCommand> newExcludes = new HashSet<>();
         Map<String, Collection<SetCommand>> levelMerges = new LinkedHashMap<>();
-        Map<String, SetCommand> vanillamerges = null;
+        Map<String, LevelDepArray<LevelDepStruct>> vanillamerges = null;
         Profile p = new Profile("");
         SetCommand currentCommand = null;
         try {
             analyzeCategoryForLevelMerges(toBeChecked, levelMerges);
             for (String object : levelMerges.keySet()) {
                 Collection<SetCommand> coms = levelMerges.get(object);
-                LevelDepArray<LevelDepStruct> vanillaArray = null;
+                LevelListMerger merger = null;
                 for (SetCommand com : coms) {
                     currentCommand = com;
                     if (!com.isSelected()) {
                         continue;
-                    } else if (vanillaArray == null) {
+                    } else if (merger == null) {
                         if (vanillamerges == null) {
-                            Category vmerges = getVanillaLevelList(type);
-                            vanillamerges = new HashMap<>();
-                            for (ModelElement el : vmerges.getElements()) {
-                                SetCommand vcom = (SetCommand) el;
-                                vanillamerges.put(vcom.getObject(), vcom);
-                            }
-                        }
-                        // The cast here could throw an exception, but just let it get handled below
-                        vanillaArray = (LevelDepArray) LevelDepParser.parse(vanillamerges.get(object).getValue());
-                    }
-                    String val2 = com.getValue();
-                    // This cast too could throw an exception.  Also let it get handled below.
-                    LevelDepArray<LevelDepStruct> userArray = (LevelDepArray) LevelDepParser.parse(val2);
-                    for (int i = 0; i < userArray.size(); i++) {
-                        String userPersistent = userArray.get(i).getString("PersistentMap");
-                        LevelDepArray<LevelDepString> userSecondaries = userArray.get(i).getArray("SecondaryMaps");
-                        for (int j = 0; j < vanillaArray.size(); j++) {
-                            String vanillaPersistent = vanillaArray.get(j).getString("PersistentMap");
-                            LevelDepArray<LevelDepString> vanillaSecondaries = vanillaArray.get(j).getArray("SecondaryMaps");
-                            if (userPersistent.equalsIgnoreCase(vanillaPersistent)) {
-                                for (int k = 0; k < userSecondaries.size(); k++) {
-                                    LevelDepString newsec = userSecondaries.get(k);
-                                    // A null value can happen if the user has an extra comma in there
-                                    if (newsec != null) {
-                                        boolean present = false;
-                                        for (int l = 0; l < vanillaSecondaries.size(); l++) {
-                                            LevelDepString oldsec = vanillaSecondaries.get(l);
-                                            if (oldsec.equalsIgnoreCase(newsec)) {
-                                                present = true;
-                                            }
-                                        }
-                                        if (!present) {
-                                            vanillaSecondaries.add(newsec);
-                                        }
-                                    }
-                                }
-                            }
+                            vanillamerges = getVanillaLevelLists(type);
                         }
+                        // This will throw an exception if we don't know about
+                        // the object, but just let it get handled below.  We
+                        // copy the array since the merger will be adding to it.
+                        merger = new LevelListMerger(vanillamerges.get(object).copy());
                     }
+                    // This will throw an exception if the value isn't in the
+                    // format we expect.  Also let it get handled below.
+                    merger.merge(com.getValue());
                 }
-                if (vanillaArray != null) {
-                    SetCommand newcom = new SetCommand(object, "LevelList", vanillaArray.toString());
+                if (merger != null) {
+                    if (!merger.getMerged().isEmpty()) {
+                        GlobalLogger.log("Merged levels into " + object + ": " + String.join(", ", merger.getMerged()));
+                    }
+                    SetCommand newcom = new SetCommand(object, "LevelList", merger.getResult().toString());
                     newcom.setParent(newCommands);
                     newcom.turnOnInProfile(p);
                     newcom.profileChanged(p);
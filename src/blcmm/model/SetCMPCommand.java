@@ -48,6 +48,12 @@ public class SetCMPCommand extends HotfixCommand {
         this.transientData = new TransientModelData(this);
     }
 
+    private SetCMPCommand(SetCMPCommand source) {
+        super(source, false);
+        this.cmpValue = source.cmpValue;
+        this.transientData = new TransientModelData(this);
+    }
+
     @Override
     public String getCode() {
         return String.format("set_cmp %s %s %s %s", object, field, cmpValue, value);
@@ -69,7 +75,7 @@ public class SetCMPCommand extends HotfixCommand {
 
     @Override
     protected SetCMPCommand getBaseCopy() {
-        return new SetCMPCommand(object, field, cmpValue, value);
+        return new SetCMPCommand(this);
     }
 
     @Override
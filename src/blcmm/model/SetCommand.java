@@ -29,6 +29,7 @@ import java.util.Arrays;
 public class SetCommand extends EnableableModelElement {
 
     protected final String object, field, value;
+    private final String lowerCaseObject, lowerCaseField;
 
     public SetCommand(String object, String field, String value) {
         this(new String[]{object, field, value}, true);
@@ -45,9 +46,38 @@ public class SetCommand extends EnableableModelElement {
         }
     }
 
+    /**
+     * Creates a copy of the given command, reusing its (possibly shared)
+     * object and field name strings, including the lower-case versions, so
+     * that copies don't allocate any new name strings of their own.
+     *
+     * @param source The command to copy
+     * @param initTransient Whether to initialize our transient data
+     */
+    protected SetCommand(SetCommand source, boolean initTransient) {
+        this.object = source.object;
+        this.field = source.field;
+        this.lowerCaseObject = source.lowerCaseObject;
+        this.lowerCaseField = source.lowerCaseField;
+        this.value = source.value;
+        if (initTransient) {
+            this.transientData = new TransientModelData(this);
+        }
+    }
+
     private SetCommand(String[] args, boolean initTransient) {
-        this.object = args[0];
-        this.field = args[1];
+        SymbolTable symbols = SymbolTable.getCurrent();
+        if (symbols == null) {
+            this.object = args[0];
+            this.field = args[1];
+            this.lowerCaseObject = this.object.toLowerCase();
+            this.lowerCaseField = this.field.toLowerCase();
+        } else {
+            this.object = symbols.intern(args[0]);
+            this.field = symbols.intern(args[1]);
+            this.lowerCaseObject = symbols.toLowerCase(this.object);
+            this.lowerCaseField = symbols.toLowerCase(this.field);
+        }
         this.value = args[2];
         if (initTransient) {
             this.transientData = new TransientModelData(this);
@@ -83,6 +113,28 @@ public class SetCommand extends EnableableModelElement {
         return field;
     }
 
+    /**
+     * The object that this command modifies, in lower case.  This is shared
+     * with other commands where possible, so prefer it over calling
+     * toLowerCase() on getObject().
+     *
+     * @return The object that this command modifies, in lower case
+     */
+    public String getLowerCaseObject() {
+        return lowerCaseObject;
+    }
+
+    /**
+     * The field that this command modifies, in lower case.  This is shared
+     * with other commands where possible, so prefer it over calling
+     * toLowerCase() on getField().
+     *
+     * @return The field that this command modifies, in lower case
+     */
+    public String getLowerCaseField() {
+        return lowerCaseField;
+    }
+
     /**
      * The new value. Guaranteed to be non-null.
      *
@@ -179,7 +231,7 @@ public class SetCommand extends EnableableModelElement {
     }
 
     protected SetCommand getBaseCopy() {
-        return new SetCommand(object, field, value);
+        return new SetCommand(this, true);
     }
 
     protected static String[] split(String command, int striveForLengthOf) {
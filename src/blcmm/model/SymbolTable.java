@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model;
+
+import java.util.HashMap;
+
+/**
+ * A table of canonical strings for the object and field names used by
+ * SetCommands, along with their lower-case forms.  Big mod files tend to
+ * contain tens of thousands of statements which only touch a relatively
+ * small number of objects and attributes, so without this we'd end up with
+ * a separate copy of "GD_Weap_SniperRifles.A_Weapons.SR_Jakobs_2_Buffalo"
+ * (and a lower-cased copy for the property checks, and another one for the
+ * overwrite checker...) for every single statement which references it.
+ * With it, every statement in a patch shares the same instances.
+ *
+ * A table is only active while a single patch is being built (see
+ * setCurrent()), so that's effectively one table per CompletePatch.  The
+ * table itself isn't kept around afterwards -- the strings it handed out
+ * stay shared, but we don't need to hang on to the lookup maps.  This isn't
+ * synchronized, since it's only ever used by the thread doing the parsing.
+ *
+ * @author apocalyptech
+ */
+final class SymbolTable {
+
+    /**
+     * The table used for SetCommands created on the current thread, if any.
+     * Like TransientModelData's deferred property checks, this is a
+     * ThreadLocal so that elements being created elsewhere (like the GUI)
+     * aren't affected.
+     */
+    private static final ThreadLocal<SymbolTable> CURRENT = new ThreadLocal<>();
+
+    private final HashMap<String, String> strings = new HashMap<>();
+    private final HashMap<String, String> lowerCase = new HashMap<>();
+
+    /**
+     * Returns the symbol table for the current thread.
+     *
+     * @return The current symbol table, or null if there isn't one
+     */
+    static SymbolTable getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the symbol table to use for SetCommands created on the current
+     * thread.  Be sure to set it back to null once the patch is built.
+     *
+     * @param table The table to use, or null to stop using one
+     */
+    static void setCurrent(SymbolTable table) {
+        if (table == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(table);
+        }
+    }
+
+    /**
+     * Returns the canonical instance of the given string.
+     *
+     * @param s The string
+     * @return A string equal to the one passed in, shared by everything else
+     * which has asked for it
+     */
+    String intern(String s) {
+        String canonical = this.strings.putIfAbsent(s, s);
+        return canonical == null ? s : canonical;
+    }
+
+    /**
+     * Returns the canonical lower-case version of the given string.
+     *
+     * @param s The string
+     * @return The canonical lower-case version of the string
+     */
+    String toLowerCase(String s) {
+        String lower = this.lowerCase.get(s);
+        if (lower == null) {
+            lower = this.intern(s.toLowerCase());
+            this.lowerCase.put(s, lower);
+        }
+        return lower;
+    }
+
+    /**
+     * Returns how many distinct strings we're holding on to.
+     *
+     * @return The number of distinct strings in the table
+     */
+    int size() {
+        return this.strings.size();
+    }
+
+}
@@ -26,6 +26,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -61,24 +64,170 @@ public class TransientModelData {
      */
     private boolean acceptStatuses;
 
+    /**
+     * Whether property checks are currently being deferred on this thread.
+     * While parsing a file, we don't want to run every checker on every
+     * element as it gets created, and then walk all the way up to the root
+     * to propagate counts every time an element gets added to a container --
+     * for huge mod files that ends up dominating parse time.  Instead, the
+     * parser turns this on, builds the whole tree with empty properties,
+     * and then calls evaluateProperties() on the finished tree, which checks
+     * everything in parallel and propagates counts in a single pass.  This
+     * is a ThreadLocal so that anything building elements on other threads
+     * (such as the GUI) is unaffected.
+     */
+    private static final ThreadLocal<Boolean> DEFERRED = ThreadLocal.withInitial(() -> false);
+
     TransientModelData(ModelElement element) {
+        if (!DEFERRED.get()) {
+            for (PropertyChecker checker : checkOwnProperties(element)) {
+                properties.put(checker, 1);
+                myProperties.add(checker);
+            }
+        }
+        this.overwriteState = OverwriteState.Normal;
+        this.element = element;
+        this.acceptStatuses = true;
+        this.lostParent = false;
+    }
+
+    /**
+     * Runs all of our checkers against the given element, ignoring any
+     * of its descendants.
+     *
+     * @param element The element to check
+     * @return The checkers which matched
+     */
+    private static List<PropertyChecker> checkOwnProperties(ModelElement element) {
         PropertyChecker.Hints hints = null;
         if (element instanceof SetCommand) {
-            hints = new PropertyChecker.Hints(((SetCommand) element).getObject().toLowerCase(),
-                    ((SetCommand) element).getField().toLowerCase(),
+            hints = new PropertyChecker.Hints(((SetCommand) element).getLowerCaseObject(),
+                    ((SetCommand) element).getLowerCaseField(),
                     ((SetCommand) element).getValue().toLowerCase());
         }
+        List<PropertyChecker> matches = new ArrayList<>();
         for (PropertyChecker checker : GlobalListOfProperties.LIST) {
             boolean check = hints == null ? checker.checkProperty(element) : checker.checkProperty(element, hints);
             if (check) {
-                properties.put(checker, 1);
-                myProperties.add(checker);
+                matches.add(checker);
             }
         }
-        this.overwriteState = OverwriteState.Normal;
-        this.element = element;
-        this.acceptStatuses = true;
-        this.lostParent = false;
+        return matches;
+    }
+
+    /**
+     * Sets whether property checks should be deferred for elements created
+     * (or modified) on the current thread.  Anything built while this is
+     * turned on will have no properties until evaluateProperties() is
+     * called on the tree containing it.
+     *
+     * @param deferred True to defer property checks, false to resume
+     * checking immediately
+     */
+    static void setDeferred(boolean deferred) {
+        DEFERRED.set(deferred);
+    }
+
+    /**
+     * Evaluates the properties of an entire tree in one go, for use after
+     * building a tree with property checks deferred.  The checkers for every
+     * element are run in parallel (the checkers themselves don't touch
+     * anything but the element they're given), and then counts are
+     * propagated up the tree in a single bottom-up pass.  The end result is
+     * the same as if the tree had been built up element-by-element with
+     * checks enabled.
+     *
+     * @param root The root of the tree to evaluate
+     */
+    static void evaluateProperties(ModelElement root) {
+        List<ModelElement> elements = new ArrayList<>();
+        collectElements(root, elements);
+        ConcurrentMap<ModelElement, List<PropertyChecker>> own = elements.parallelStream()
+                .collect(Collectors.toConcurrentMap(Function.identity(), TransientModelData::checkOwnProperties));
+        applyProperties(root, own);
+    }
+
+    /**
+     * Evaluates the properties of an entire tree using previously-stored
+     * results for each element, as read in from the patch cache.  Checkers
+     * which depend on the currently-loaded game data aren't stored in the
+     * cache, so those are run fresh here.  Everything else works just like
+     * evaluateProperties(ModelElement).
+     *
+     * @param root The root of the tree to evaluate
+     * @param own The stored properties of each element, ignoring descendants.
+     * The lists in here may get added to.
+     */
+    static void evaluateProperties(ModelElement root, Map<ModelElement, List<PropertyChecker>> own) {
+        List<PropertyChecker> dataCheckers = new ArrayList<>();
+        for (PropertyChecker checker : GlobalListOfProperties.LIST) {
+            if (checker.isDependantOnGameData()) {
+                dataCheckers.add(checker);
+            }
+        }
+        if (!dataCheckers.isEmpty()) {
+            own.entrySet().parallelStream().forEach(entry -> {
+                for (PropertyChecker checker : dataCheckers) {
+                    if (checker.checkProperty(entry.getKey())) {
+                        entry.getValue().add(checker);
+                    }
+                }
+            });
+        }
+        applyProperties(root, own);
+    }
+
+    private static void collectElements(ModelElement element, List<ModelElement> elements) {
+        elements.add(element);
+        if (element instanceof ModelElementContainer) {
+            for (ModelElement child : ((ModelElementContainer<?>) element).getElements()) {
+                collectElements(child, elements);
+            }
+        }
+    }
+
+    /**
+     * Stores the previously-computed properties of the given element and all
+     * its descendants, adding in the counts of any propagating properties
+     * from its children.
+     *
+     * @param element The element to process
+     * @param own The properties of each element, ignoring descendants
+     * @return The property counts for this element, including descendants
+     */
+    private static Map<PropertyChecker, Integer> applyProperties(ModelElement element,
+            Map<ModelElement, List<PropertyChecker>> own) {
+        Map<PropertyChecker, Integer> counts = new TreeMap<>(GlobalListOfProperties.PROPERTY_COMPARATOR);
+        for (PropertyChecker property : own.get(element)) {
+            counts.put(property, 1);
+        }
+        if (element instanceof ModelElementContainer) {
+            for (ModelElement child : ((ModelElementContainer<?>) element).getElements()) {
+                for (Map.Entry<PropertyChecker, Integer> entry : applyProperties(child, own).entrySet()) {
+                    if (entry.getKey().isPropagatingToAncestors()) {
+                        counts.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                    }
+                }
+            }
+        }
+        TransientModelData data = element.transientData;
+        data.myProperties.clear();
+        data.properties.clear();
+        if (data.acceptStatuses) {
+            data.myProperties.addAll(own.get(element));
+            data.properties.putAll(counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the properties of this element itself, ignoring any which only
+     * come from its descendants.
+     *
+     * @return The element's own properties
+     */
+    Set<PropertyChecker> getOwnProperties() {
+        return Collections.unmodifiableSet(myProperties);
     }
 
     public Set<PropertyChecker> getProperties() {
@@ -177,6 +326,9 @@ public class TransientModelData {
     }
 
     void updateByChangingOwnProperty(PropertyChecker... checkers) {
+        if (DEFERRED.get()) {
+            return;
+        }
         for (PropertyChecker property : checkers) {
             updateSelfProperty(property);
         }
@@ -184,6 +336,9 @@ public class TransientModelData {
 
     private void updateByChangingChildArray(ModelElement newChild, boolean add) {
         assert element instanceof ModelElementContainer;
+        if (DEFERRED.get()) {
+            return;
+        }
 
         // First check all our PropertyCheckers against ourselves and set all
         // relevant info
@@ -51,6 +51,47 @@ public class LevelDepArray<T extends LevelDepData> extends LevelDepData {
         return this.list.get(index);
     }
 
+    /**
+     * Returns this array as an array of the given type, after checking that
+     * everything in it (aside from empty values) really is of that type.
+     * The parser doesn't know what any particular array is supposed to
+     * contain, so this lets callers who *do* know get at the contents
+     * without unchecked casts.
+     *
+     * @param <U> The type of data this array should hold
+     * @param elementClass The class of data this array should hold
+     * @return This same array
+     * @throws ClassCastException If anything in the array is of a different
+     * type
+     */
+    public <U extends LevelDepData> LevelDepArray<U> asArrayOf(Class<U> elementClass) {
+        for (T element : this.list) {
+            if (element != null) {
+                elementClass.cast(element);
+            }
+        }
+        // Safe, since we've just checked every element
+        @SuppressWarnings("unchecked")
+        LevelDepArray<U> result = (LevelDepArray<U>) (LevelDepArray<?>) this;
+        return result;
+    }
+
+    @Override
+    public LevelDepArray<T> copy() {
+        LevelDepArray<T> newArray = new LevelDepArray<>();
+        for (T element : this.list) {
+            if (element == null) {
+                newArray.add(null);
+            } else {
+                // Safe, since every LevelDepData's copy() returns its own type
+                @SuppressWarnings("unchecked")
+                T elementCopy = (T) element.copy();
+                newArray.add(elementCopy);
+            }
+        }
+        return newArray;
+    }
+
     @Override
     public String toString() {
         ArrayList<String> newList = new ArrayList<>();
@@ -23,10 +23,24 @@ package blcmm.model.attrparser;
 /**
  * Ridiculous little base class just used so I don't have to specify "Object"
  * for the various generic methods in the rest of the level dependency
- * attribute parsing.  Provides no actual functionality of its own.
+ * attribute parsing.  Provides no real functionality of its own, apart from
+ * a copy() method so that PatchIO can hang on to a parsed version of the
+ * vanilla level lists.
  * 
  * @author apocalyptech
  */
 public class LevelDepData {
 
+    /**
+     * Returns a copy of this data which can be modified without affecting
+     * the original.  Data which can't be modified after creation (such as
+     * LevelDepString) can just return itself, which is what this default
+     * implementation does.
+     *
+     * @return A copy of this data
+     */
+    public LevelDepData copy() {
+        return this;
+    }
+
 }
@@ -20,6 +20,8 @@
 
 package blcmm.model.attrparser;
 
+import java.util.ArrayDeque;
+
 /**
  * Attribute parser for LevelList attrs (as part of LevelDependencyList
  * objects), for use in level/map merging.  Implemented as part of the rewrite
@@ -40,13 +42,31 @@ package blcmm.model.attrparser;
  * LevelDependencyList "LevelList" attributes, though.  This has not been
  * tested at all on structures other than that.
  *
+ * Parsers are created for a single attribute value, and keep all their state
+ * to themselves, so any number of them can be used at once from different
+ * threads.  Strings in the parsed data just remember where they are in the
+ * original attribute and aren't copied out until they're needed, so the
+ * attribute passed in shouldn't be modified while its parsed data is still
+ * in use.  For really large values, walk() can be used to step through the
+ * attribute with a LevelDepVisitor instead of building up the whole tree.
+ *
  * @author apocalyptech
  */
 public class LevelDepParser {
 
-    private static int pos;
-    private static String data;
-    private static char[] chars;
+    private final CharSequence data;
+    private final int length;
+    private int pos;
+
+    /**
+     * Creates a new parser for the given attribute value.
+     *
+     * @param data The full attribute value to be parsed
+     */
+    public LevelDepParser(CharSequence data) {
+        this.data = data;
+        this.length = data.length();
+    }
 
     /**
      * Parse the given attribute.
@@ -55,61 +75,91 @@ public class LevelDepParser {
      * @return The top-level object describing the data
      */
     public static LevelDepData parse(String dataString) {
-        //GlobalLogger.log("Attempting to parse: " + dataString);
-        data = dataString;
-        pos = 0;
-        chars = data.toCharArray();
-        return nextBit();
+        return new LevelDepParser(dataString).parse();
+    }
+
+    /**
+     * Parse our attribute.
+     *
+     * @return The top-level object describing the data
+     */
+    public LevelDepData parse() {
+        //GlobalLogger.log("Attempting to parse: " + this.data);
+        TreeBuilder builder = new TreeBuilder();
+        this.walk(builder);
+        return builder.result;
+    }
+
+    /**
+     * Steps through our attribute, passing everything we find along to the
+     * given visitor, without building up any LevelDepData objects apart from
+     * the strings.
+     *
+     * @param visitor The visitor to report to
+     */
+    public void walk(LevelDepVisitor visitor) {
+        this.pos = 0;
+        this.nextBit(visitor);
     }
 
     /**
      * Parse the next "bit" of the attribute, from the current position in the
      * string.
      *
-     * @return The LevelDepData describing the next bit of the attribute
+     * @param visitor The visitor to report to
      */
-    private static LevelDepData nextBit() {
-        if (pos >= chars.length) {
-            return null;
+    private void nextBit(LevelDepVisitor visitor) {
+        if (this.pos >= this.length) {
+            visitor.empty();
+            return;
         }
-        switch (chars[pos]) {
+        switch (this.data.charAt(this.pos)) {
             case '(':
-                if (pos+1 < chars.length) {
-                    pos++;
-                    switch (chars[pos]) {
+                this.pos++;
+                if (this.pos < this.length) {
+                    switch (this.data.charAt(this.pos)) {
                         case '(':
                         case '"':
-                            return parseArray();
+                            this.parseArray(visitor);
+                            return;
                         case ')':
-                            pos++;
-                            return new LevelDepArray();
+                            this.pos++;
+                            visitor.startArray();
+                            visitor.endArray();
+                            return;
                         default:
                             // At this point, we annoyingly have to do a lookahead to figure
                             // out what the next datatype is.  (Well, that or we could be
                             // processing this differently and just not settle on a datatype
                             // until we're sure, which would probably be a better solution
                             // anyway if this ever gets expanded to be more generally useful.)
-                            for (int i=pos; i<chars.length; i++) {
-                                switch (chars[i]) {
+                            for (int i = this.pos; i < this.length; i++) {
+                                switch (this.data.charAt(i)) {
                                     case '=':
                                         // We found an equals sign first; it's a struct
-                                        return parseStruct();
+                                        this.parseStruct(visitor);
+                                        return;
                                     case ',':
                                     case ')':
                                         // Looks like an array, instead.
-                                        return parseArray();
+                                        this.parseArray(visitor);
+                                        return;
                                 }
                             }
                             // What to do here?  I guess just assume it's an array.
-                            return parseArray();
+                            this.parseArray(visitor);
+                            return;
                     }
                 } else {
-                    return new LevelDepArray();
+                    visitor.startArray();
+                    visitor.endArray();
+                    return;
                 }
             case '"':
-                return parseQuotedString();
+                this.parseQuotedString(visitor);
+                return;
             default:
-                return parseString();
+                this.parseString(visitor);
         }
     }
 
@@ -117,29 +167,29 @@ public class LevelDepParser {
      * Parse the next bit of the attribute as an array/list.  This assumes that
      * the current position in the attribute is already past the opening paren.
      *
-     * @return The parsed array
+     * @param visitor The visitor to report to
      */
-    private static LevelDepArray parseArray() {
-        LevelDepArray<LevelDepData> arr = new LevelDepArray();
+    private void parseArray(LevelDepVisitor visitor) {
+        visitor.startArray();
         outer:
-        while (pos < chars.length) {
-            switch (chars[pos]) {
+        while (this.pos < this.length) {
+            switch (this.data.charAt(this.pos)) {
                 case ',':
-                    pos++;
-                    arr.add(null);
+                    this.pos++;
+                    visitor.empty();
                     break;
                 case ')':
-                    pos++;
+                    this.pos++;
                     break outer;
                 default:
-                    arr.add(nextBit());
-                    if (chars[pos] == ',') {
-                        pos++;
+                    this.nextBit(visitor);
+                    if (this.pos < this.length && this.data.charAt(this.pos) == ',') {
+                        this.pos++;
                     }
                     break;
             }
         }
-        return arr;
+        visitor.endArray();
     }
 
     /**
@@ -147,37 +197,34 @@ public class LevelDepParser {
      * This assumes that the current position in the attribute is already
      * past the opening paren.
      *
-     * @return The parsed struct
+     * @param visitor The visitor to report to
      */
-    private static LevelDepStruct parseStruct() {
-        LevelDepStruct struct = new LevelDepStruct();
-        StringBuilder keyBuilder;
+    private void parseStruct(LevelDepVisitor visitor) {
+        visitor.startStruct();
         outer:
-        while (pos < chars.length) {
-            keyBuilder = new StringBuilder();
-            switch (chars[pos]) {
+        while (this.pos < this.length) {
+            switch (this.data.charAt(this.pos)) {
                 case ')':
-                    pos++;
+                    this.pos++;
                     break outer;
                 case ',':
-                    pos++;
+                    this.pos++;
                     break;
                 default:
-                    keySearch:
-                    while (pos < chars.length) {
-                        if (chars[pos] == '=') {
-                            pos++;
-                            break;
-                        } else {
-                            keyBuilder.append(chars[pos]);
-                        }
-                        pos++;
+                    int start = this.pos;
+                    while (this.pos < this.length && this.data.charAt(this.pos) != '=') {
+                        this.pos++;
+                    }
+                    visitor.key(this.data.subSequence(start, this.pos).toString());
+                    if (this.pos < this.length) {
+                        // Skip past the equals sign
+                        this.pos++;
                     }
-                    struct.put(keyBuilder.toString(), nextBit());
+                    this.nextBit(visitor);
                     break;
             }
         }
-        return struct;
+        visitor.endStruct();
     }
 
     /**
@@ -185,18 +232,26 @@ public class LevelDepParser {
      * current setup, this could be an object reference, enum, or some other
      * unquoted string.
      *
-     * @return The parsed string
+     * @param visitor The visitor to report to
      */
-    private static LevelDepString parseString() {
-        StringBuilder sb = new StringBuilder();
-        while (pos < chars.length) {
-            if (chars[pos] == ',' || chars[pos] == ')') {
+    private void parseString(LevelDepVisitor visitor) {
+        int start = this.pos;
+        this.skipString();
+        visitor.value(new LevelDepString(this.data, start, this.pos, false));
+    }
+
+    /**
+     * Moves our position past an unquoted string, up to the next comma or
+     * end-paren.
+     */
+    private void skipString() {
+        while (this.pos < this.length) {
+            char c = this.data.charAt(this.pos);
+            if (c == ',' || c == ')') {
                 break;
             }
-            sb.append(chars[pos]);
-            pos++;
+            this.pos++;
         }
-        return new LevelDepString(sb.toString());
     }
 
     /**
@@ -205,32 +260,12 @@ public class LevelDepParser {
      * before the next comma or end-paren, that data will end up getting
      * discarded.
      *
-     * @return The parsed string
+     * @param visitor The visitor to report to
      */
-    private static LevelDepString parseQuotedString() {
-        StringBuilder sb = new StringBuilder();
+    private void parseQuotedString(LevelDepVisitor visitor) {
         // It's assumed that this.pos is at the starting quote
-        pos++;
-        boolean nextIsEscaped = false;
-        outer:
-        while (pos < chars.length) {
-            if (nextIsEscaped) {
-                sb.append(chars[pos]);
-                nextIsEscaped = false;
-            } else {
-                switch (chars[pos]) {
-                    case '"':
-                        pos++;
-                        break outer;
-                    case '\\':
-                        nextIsEscaped = true;
-                    default:
-                        sb.append(chars[pos]);
-                        break;
-                }
-            }
-            pos++;
-        }
+        int start = this.pos + 1;
+        int end = this.skipQuotedString();
 
         // Check to see if we've *actually* reached the end of the field, or
         // if there's more data (due, for instance, to a missing comma, or
@@ -246,14 +281,127 @@ public class LevelDepParser {
         //
         //   3) Just discard everything after what should be the close-quote.
         //      That's what I'm opting to do here.
-        if (pos < chars.length && chars[pos] != ',' && chars[pos] != ')') {
-            if (chars[pos] == '"') {
-                parseQuotedString();
+        while (this.pos < this.length) {
+            char c = this.data.charAt(this.pos);
+            if (c == ',' || c == ')') {
+                break;
+            } else if (c == '"') {
+                this.skipQuotedString();
             } else {
-                parseString();
+                this.skipString();
             }
         }
 
-        return new LevelDepString(sb.toString(), true);
+        visitor.value(new LevelDepString(this.data, start, end, true));
+    }
+
+    /**
+     * Moves our position past a quoted string, starting at its opening
+     * quote.  Escaped characters are kept as-is (backslash included) in the
+     * string's value.
+     *
+     * @return The position just after the last character inside the quotes
+     */
+    private int skipQuotedString() {
+        this.pos++;
+        boolean nextIsEscaped = false;
+        while (this.pos < this.length) {
+            char c = this.data.charAt(this.pos);
+            if (nextIsEscaped) {
+                nextIsEscaped = false;
+            } else if (c == '"') {
+                this.pos++;
+                return this.pos - 1;
+            } else if (c == '\\') {
+                nextIsEscaped = true;
+            }
+            this.pos++;
+        }
+        return this.pos;
+    }
+
+    /**
+     * Visitor which builds up the full tree of LevelDepData objects, for
+     * parse().
+     */
+    private static class TreeBuilder implements LevelDepVisitor {
+
+        /**
+         * An array or struct we're in the middle of, along with the key
+         * it'll be stored under in its parent (if its parent is a struct).
+         */
+        private static class Frame {
+
+            private final LevelDepArray<LevelDepData> array;
+            private final LevelDepStruct struct;
+            private final String key;
+
+            private Frame(LevelDepArray<LevelDepData> array, LevelDepStruct struct, String key) {
+                this.array = array;
+                this.struct = struct;
+                this.key = key;
+            }
+
+            private LevelDepData getContainer() {
+                return this.array != null ? this.array : this.struct;
+            }
+        }
+
+        private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+        private String key = null;
+        private LevelDepData result = null;
+
+        private void add(LevelDepData value) {
+            Frame parent = this.frames.peek();
+            if (parent == null) {
+                this.result = value;
+            } else if (parent.array != null) {
+                parent.array.add(value);
+            } else {
+                parent.struct.put(this.key, value);
+            }
+        }
+
+        @Override
+        public void startArray() {
+            this.frames.push(new Frame(new LevelDepArray<>(), null, this.key));
+        }
+
+        @Override
+        public void startStruct() {
+            this.frames.push(new Frame(null, new LevelDepStruct(), this.key));
+        }
+
+        @Override
+        public void endArray() {
+            this.end();
+        }
+
+        @Override
+        public void endStruct() {
+            this.end();
+        }
+
+        private void end() {
+            Frame frame = this.frames.pop();
+            this.key = frame.key;
+            this.add(frame.getContainer());
+        }
+
+        @Override
+        public void key(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void value(LevelDepString value) {
+            this.add(value);
+        }
+
+        @Override
+        public void empty() {
+            this.add(null);
+        }
+
     }
 }
@@ -27,12 +27,19 @@ package blcmm.model.attrparser;
  * the original implementation did anything like this.  Judging from the
  * code in PatchIO, I think it just used regular Strings.
  *
+ * Strings which come out of LevelDepParser just point back into the original
+ * attribute, and only get copied out into a real String the first time
+ * their value is asked for.
+ *
  * @author apocalyptech
  */
 public class LevelDepString extends LevelDepData {
 
     private String value;
-    private boolean quoted;
+    private final CharSequence source;
+    private final int start;
+    private final int end;
+    private final boolean quoted;
 
     /**
      * Create a new, unquoted String object
@@ -52,11 +59,40 @@ public class LevelDepString extends LevelDepData {
      */
     public LevelDepString(String value, boolean quoted) {
         this.value = value;
+        this.source = null;
+        this.start = 0;
+        this.end = 0;
+        this.quoted = quoted;
+    }
+
+    /**
+     * Create a new String object which refers to a section of a larger
+     * attribute.  The value isn't copied out until it's needed.
+     *
+     * @param source The attribute the string is in
+     * @param start The start of the string's value inside the attribute
+     * @param end The end of the string's value inside the attribute
+     * (exclusive)
+     * @param quoted Whether or not the string should be quoted
+     */
+    LevelDepString(CharSequence source, int start, int end, boolean quoted) {
+        this.value = null;
+        this.source = source;
+        this.start = start;
+        this.end = end;
         this.quoted = quoted;
     }
 
     public String getValue() {
-        return value;
+        // Parsed data may be shared between threads (PatchIO keeps the
+        // vanilla level lists around), but the worst that can happen here
+        // is that we copy the value out more than once.
+        String v = this.value;
+        if (v == null) {
+            v = this.source.subSequence(this.start, this.end).toString();
+            this.value = v;
+        }
+        return v;
     }
 
     public boolean isQuoted() {
@@ -64,22 +100,22 @@ public class LevelDepString extends LevelDepData {
     }
 
     public boolean equals(LevelDepString other) {
-        return this.value.equals(other.value);
+        return this.getValue().equals(other.getValue());
     }
 
     public boolean equalsIgnoreCase(LevelDepString other) {
         if (other == null) {
             return false;
         }
-        return this.value.equalsIgnoreCase(other.value);
+        return this.getValue().equalsIgnoreCase(other.getValue());
     }
 
     @Override
     public String toString() {
         if (this.quoted) {
-            return '"' + value.replace("\"", "\\\"") + '"';
+            return '"' + this.getValue().replace("\"", "\\\"") + '"';
         } else {
-            return value;
+            return this.getValue();
         }
     }
 
@@ -123,6 +123,20 @@ public class LevelDepStruct extends LevelDepData {
         return null;
     }
 
+    @Override
+    public LevelDepStruct copy() {
+        LevelDepStruct newStruct = new LevelDepStruct();
+        newStruct.normalizedKeys.putAll(this.normalizedKeys);
+        for (Entry<String, LevelDepData> e : this.data.entrySet()) {
+            if (e.getValue() == null) {
+                newStruct.data.put(e.getKey(), null);
+            } else {
+                newStruct.data.put(e.getKey(), e.getValue().copy());
+            }
+        }
+        return newStruct;
+    }
+
     @Override
     public String toString() {
         ArrayList<String> items = new ArrayList<>();
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model.attrparser;
+
+/**
+ * Receives the contents of an attribute from LevelDepParser.walk() as it's
+ * parsed, rather than having the parser build up a whole tree of
+ * LevelDepData objects first.  Useful for huge array or struct values where
+ * we only care about a few bits of them.  The parser's regular parse()
+ * method is itself just a visitor which builds the tree.
+ *
+ * Events come in document order.  Arrays and structs are bracketed by their
+ * start/end calls, and inside a struct, each value is preceded by a call to
+ * key().  Empty array entries (from doubled-up commas, for instance) and
+ * struct values which are missing entirely come through as empty().
+ *
+ * All methods default to doing nothing, so implementations only need to
+ * override the ones they're interested in.
+ *
+ * @author apocalyptech
+ */
+public interface LevelDepVisitor {
+
+    /**
+     * Called at the start of an array.
+     */
+    default void startArray() {
+    }
+
+    /**
+     * Called at the end of an array.
+     */
+    default void endArray() {
+    }
+
+    /**
+     * Called at the start of a struct.
+     */
+    default void startStruct() {
+    }
+
+    /**
+     * Called with the name of each struct attribute, right before its value.
+     *
+     * @param key The attribute name
+     */
+    default void key(String key) {
+    }
+
+    /**
+     * Called at the end of a struct.
+     */
+    default void endStruct() {
+    }
+
+    /**
+     * Called for each string value.  The string's contents aren't actually
+     * copied out of the attribute until something asks for them, so it's
+     * cheap to ignore the ones you don't need.
+     *
+     * @param value The string
+     */
+    default void value(LevelDepString value) {
+    }
+
+    /**
+     * Called for empty array entries, and missing struct values.
+     */
+    default void empty() {
+    }
+
+}
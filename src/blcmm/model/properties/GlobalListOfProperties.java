@@ -608,6 +608,11 @@ public class GlobalListOfProperties {
             super(true, false);
         }
 
+        @Override
+        public boolean isDependantOnGameData() {
+            return true;
+        }
+
         @Override
         public boolean checkProperty(ModelElement el) {
             if (!(el instanceof HotfixCommand)) {
@@ -863,6 +868,11 @@ public class GlobalListOfProperties {
             super(false, false);
         }
 
+        @Override
+        public boolean isDependantOnGameData() {
+            return true;
+        }
+
         @Override
         public boolean checkProperty(ModelElement element) {
             if (!(element instanceof SetCommand) || element instanceof HotfixCommand) {
@@ -72,6 +72,19 @@ public abstract class PropertyChecker {
         return propagatingToAncestors;
     }
 
+    /**
+     * Whether the result of this checker depends on the game data which is
+     * currently loaded, rather than purely on the element being checked.
+     * Results from checkers like that can't be stored in the patch cache,
+     * since the data could be different (or missing) the next time the file
+     * gets opened, so they're always re-run instead.
+     *
+     * @return True if this checker looks at game data
+     */
+    public boolean isDependantOnGameData() {
+        return false;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName();
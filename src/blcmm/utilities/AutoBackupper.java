@@ -24,15 +24,18 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A system to automatically create backups of the currently-open file.
@@ -59,6 +62,16 @@ import java.util.TreeMap;
  *
  *   [session timestamp in millis] - [yyyy.mm.dd] - [counter] - [patchname]
  *
+ * The backups themselves are handled by BackupStore, which writes compressed
+ * full copies of the patch every so often and just the changed lines in
+ * between, so each of those filenames will also have either a ".gz" or
+ * ".delta.gz" suffix.  Backups are skipped if nothing's changed since the
+ * last one.  Since those can't be opened directly, restore() will write the
+ * contents of a backup out into a "restored" subdirectory, from where it
+ * can be opened like any other patch.  Backups are written from a single
+ * background thread, so that the work of getting the patch into text form
+ * and compressing it never happens on the Swing event thread.
+ *
  * @author LightChaosman
  */
 public class AutoBackupper {
@@ -68,8 +81,14 @@ public class AutoBackupper {
     private static int NUMBER_OF_SESSIONS_TO_KEEP = 5;
     private static int NUMBER_OF_BACKUPS_PER_SESSION = 10;
     private static final File DESTINATION = Paths.get(Utilities.getBLCMMDataDir(), "backups").toFile();
+    private static final File RESTORED = new File(DESTINATION, "restored");
     private static final long CURRENT_SESSION = System.currentTimeMillis();
-    private static final LinkedList<File> CURRENT_BACKUPS = new LinkedList<>();
+    private static final BackupStore STORE = new BackupStore(DESTINATION);
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "AutoBackupper");
+        t.setDaemon(true);
+        return t;
+    });
     private static int COUNTER = 0;
 
     /**
@@ -92,8 +111,13 @@ public class AutoBackupper {
         // in a TreeMap with the key being the filename-encoded creation time
         // in milliseconds, so they'll be automatically sorted.  When we loop
         // through below, the oldest ones will be first.  Note that each session
-        // can have a number of files associated with it.
-        for (File f : DESTINATION.listFiles()) {
+        // can have a number of files associated with it.  Backups which have
+        // been restored get cleaned up alongside the session they came from.
+        ArrayList<File> files = new ArrayList<>(Arrays.asList(DESTINATION.listFiles()));
+        if (RESTORED.isDirectory()) {
+            files.addAll(Arrays.asList(RESTORED.listFiles()));
+        }
+        for (File f : files) {
             if (f.isFile()) {
                 name = f.getName();
                 if (name.contains("-")) {
@@ -133,26 +157,71 @@ public class AutoBackupper {
 
     }
 
-    public static void backup(File f, Backupable instance) throws IOException {
-        backup(f.getName(), instance);
+    public static Future<File> backup(File f, Backupable instance) {
+        return backup(f.getName(), instance);
     }
 
-    public static void backup(String filename, Backupable instance) throws IOException {
-        if (!instance.inNeedOfBackup()) {
-            return;
-        }
-        while (CURRENT_BACKUPS.size() >= NUMBER_OF_BACKUPS_PER_SESSION) {
-            CURRENT_BACKUPS.pop().delete();
-        }
-        String date = new SimpleDateFormat("YYYY.MM.dd").format(new Date(CURRENT_SESSION));
-        String backupFileName = CURRENT_SESSION + " - " + date + " - " + (++COUNTER) + " - " + filename;
-        DESTINATION.mkdir();
-        File f = Paths.get(DESTINATION.toString(), backupFileName).toFile();
-        CURRENT_BACKUPS.add(f);
+    /**
+     * Queues up a backup of the given Backupable, to be written from our
+     * background thread.  The Future will return the file which was written,
+     * or null if no backup was needed (either because the Backupable reports
+     * that it doesn't need one, or because nothing's changed since our last
+     * backup).
+     *
+     * @param filename The name of the patch being backed up
+     * @param instance The Backupable to back up
+     * @return A Future for the backup
+     */
+    public static Future<File> backup(String filename, Backupable instance) {
+        return EXECUTOR.submit(() -> {
+            if (!instance.inNeedOfBackup()) {
+                return null;
+            }
+            StringWriter sw = new StringWriter();
+            try (BufferedWriter bw = new BufferedWriter(sw)) {
+                instance.write(bw);
+            }
+            String date = new SimpleDateFormat("YYYY.MM.dd").format(new Date(CURRENT_SESSION));
+            String backupFileName = CURRENT_SESSION + " - " + date + " - " + (COUNTER + 1) + " - " + filename;
+            File written = STORE.store(backupFileName, filename, sw.toString());
+            if (written != null) {
+                COUNTER++;
+                STORE.prune(NUMBER_OF_BACKUPS_PER_SESSION);
+            }
+            updateSettings();
+            return written;
+        });
+    }
+
+    /**
+     * Returns whether the given file is one of our backups, which will need
+     * to be passed through restore() before it can be opened.
+     *
+     * @param f The file to check
+     * @return True if the file is a backup
+     */
+    public static boolean isBackup(File f) {
+        return BackupStore.isBackup(f)
+                && f.getAbsoluteFile().getParentFile().equals(DESTINATION.getAbsoluteFile());
+    }
+
+    /**
+     * Restores the given backup into our "restored" directory, so that it can
+     * be opened as a regular patch file.  The restored file has the same name
+     * as the backup, minus the compression suffix.
+     *
+     * @param backup The backup to restore
+     * @return The restored file
+     * @throws IOException If the backup could not be restored
+     */
+    public static File restore(File backup) throws IOException {
+        String contents = BackupStore.restore(backup);
+        RESTORED.mkdirs();
+        File f = new File(RESTORED, BackupStore.getBaseName(backup));
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(f))) {
-            instance.write(bw);
+            bw.write(contents);
         }
-        updateSettings();
+        return f;
     }
 
     private static void updateSettings() {
@@ -167,7 +236,7 @@ public class AutoBackupper {
 
     public static File getMostRecentBackupFile() {
         DESTINATION.mkdirs();
-        File[] options = DESTINATION.listFiles();
+        File[] options = DESTINATION.listFiles(f -> f.isFile() && !f.getName().endsWith(".tmp"));
         Optional<File> findFirst = Arrays.stream(options).max((o1, o2) -> Long.compare(o1.lastModified(), o2.lastModified()));
         return findFirst.isPresent() ? findFirst.get() : null;
     }
@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Storage for the backups made by AutoBackupper.  Rather than writing out a
+ * complete copy of the mod file for every backup, which adds up very
+ * quickly for the larger mod files out there, we write a gzip-compressed
+ * full snapshot every so often, and in between just store the lines which
+ * changed since that snapshot (also compressed).  Backups whose contents
+ * are identical to the previous one get skipped entirely.
+ *
+ * Full snapshots are just the gzipped mod file, so they can be unpacked by
+ * hand if need be.  Deltas are a small binary format which refers back to
+ * the snapshot they're based on, by filename.  Each delta only ever depends
+ * on a single snapshot (never on another delta), so restoring any backup
+ * is at most one snapshot plus one delta.  Use restore() to get the
+ * contents of any backup back.
+ *
+ * An instance of this keeps track of the backups it's written itself, so
+ * that pruning can avoid removing any snapshot which a remaining delta
+ * still needs.  This isn't synchronized; AutoBackupper only ever uses it
+ * from a single thread.
+ *
+ * @author apocalyptech
+ */
+public class BackupStore {
+
+    /**
+     * Suffix for full snapshots.
+     */
+    public static final String SNAPSHOT_SUFFIX = ".gz";
+
+    /**
+     * Suffix for deltas.
+     */
+    public static final String DELTA_SUFFIX = ".delta.gz";
+
+    /**
+     * Magic number at the start of each (uncompressed) delta.
+     */
+    private static final int MAGIC = 0x424C4244;
+
+    /**
+     * Version of the delta format.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The maximum number of deltas to write against a single snapshot before
+     * taking a new one.
+     */
+    private static final int MAX_DELTAS_PER_SNAPSHOT = 9;
+
+    private static final byte OP_END = 0;
+    private static final byte OP_COPY = 1;
+    private static final byte OP_ADD = 2;
+
+    private final File dir;
+    private final LinkedList<Backup> backups = new LinkedList<>();
+    private Backup snapshot = null;
+    private List<String> snapshotLines = null;
+    private String snapshotHash = null;
+    private String snapshotKey = null;
+    private int deltasSinceSnapshot = 0;
+    private String lastHash = null;
+
+    /**
+     * Creates a new BackupStore which writes into the given directory.
+     *
+     * @param dir The directory to write backups into
+     */
+    public BackupStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * A backup which we've written.
+     */
+    private static class Backup {
+
+        private final File file;
+        private final Backup base;
+
+        private Backup(File file, Backup base) {
+            this.file = file;
+            this.base = base;
+        }
+    }
+
+    /**
+     * Stores a backup of the given contents.  The actual filename will have
+     * either SNAPSHOT_SUFFIX or DELTA_SUFFIX appended to it.
+     *
+     * @param filename The base filename to use for this backup
+     * @param key An identifier for the file being backed up.  Deltas are
+     * only ever written against a snapshot with the same key.
+     * @param contents The contents to back up
+     * @return The file written, or null if the contents were identical to
+     * the previous backup and nothing was written
+     * @throws IOException If the backup could not be written
+     */
+    public File store(String filename, String key, String contents) throws IOException {
+        byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        String hash = hash(bytes);
+        if (hash.equals(this.lastHash) && key.equals(this.snapshotKey)) {
+            return null;
+        }
+        if (!this.dir.isDirectory() && !this.dir.mkdirs()) {
+            throw new IOException("Unable to create backup directory: " + Utilities.hideUserName(this.dir.toString()));
+        }
+
+        List<String> lines = splitLines(contents);
+        byte[] delta = null;
+        if (this.snapshot != null
+                && key.equals(this.snapshotKey)
+                && this.deltasSinceSnapshot < MAX_DELTAS_PER_SNAPSHOT
+                && this.snapshot.file.exists()) {
+            // Only bother with a delta if it's a fair bit smaller than just
+            // taking a new snapshot.
+            delta = encodeDelta(this.snapshot.file.getName(), this.snapshotHash,
+                    hash, this.snapshotLines, lines, bytes.length / 2);
+        }
+
+        Backup backup;
+        if (delta == null) {
+            backup = new Backup(new File(this.dir, filename + SNAPSHOT_SUFFIX), null);
+            writeCompressed(backup.file, bytes);
+            this.snapshot = backup;
+            this.snapshotLines = lines;
+            this.snapshotHash = hash;
+            this.snapshotKey = key;
+            this.deltasSinceSnapshot = 0;
+        } else {
+            backup = new Backup(new File(this.dir, filename + DELTA_SUFFIX), this.snapshot);
+            writeCompressed(backup.file, delta);
+            this.deltasSinceSnapshot++;
+        }
+        this.backups.add(backup);
+        this.lastHash = hash;
+        return backup.file;
+    }
+
+    /**
+     * Removes our oldest backups until there are no more than the given
+     * number left.  Snapshots which are still needed by a remaining delta
+     * are skipped over, so occasionally a newer delta will get removed
+     * before an older snapshot.
+     *
+     * @param keep The number of backups to keep
+     */
+    public void prune(int keep) {
+        while (this.backups.size() > keep) {
+            Backup toRemove = null;
+            for (Backup candidate : this.backups) {
+                boolean needed = false;
+                for (Backup other : this.backups) {
+                    if (other.base == candidate) {
+                        needed = true;
+                        break;
+                    }
+                }
+                if (!needed) {
+                    toRemove = candidate;
+                    break;
+                }
+            }
+            this.backups.remove(toRemove);
+            toRemove.file.delete();
+            if (toRemove == this.snapshot) {
+                this.snapshot = null;
+                this.snapshotLines = null;
+                this.snapshotHash = null;
+                this.snapshotKey = null;
+                this.lastHash = null;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given file looks like a backup written by this
+     * class.
+     *
+     * @param f The file to check
+     * @return True if it's a snapshot or delta
+     */
+    public static boolean isBackup(File f) {
+        String name = f.getName();
+        return name.endsWith(SNAPSHOT_SUFFIX) || name.endsWith(DELTA_SUFFIX);
+    }
+
+    /**
+     * Returns the name of a backup with our suffixes removed, which will be
+     * the filename originally passed in to store().
+     *
+     * @param f The backup file
+     * @return The name of the backup without our suffix
+     */
+    public static String getBaseName(File f) {
+        String name = f.getName();
+        if (name.endsWith(DELTA_SUFFIX)) {
+            return name.substring(0, name.length() - DELTA_SUFFIX.length());
+        } else if (name.endsWith(SNAPSHOT_SUFFIX)) {
+            return name.substring(0, name.length() - SNAPSHOT_SUFFIX.length());
+        } else {
+            return name;
+        }
+    }
+
+    /**
+     * Restores the contents of the given backup.  For deltas, the snapshot
+     * it's based on must still be present in the same directory.
+     *
+     * @param f The backup to restore
+     * @return The contents of the backup
+     * @throws IOException If the backup (or the snapshot it depends on) could
+     * not be read, or doesn't match what was originally stored
+     */
+    public static String restore(File f) throws IOException {
+        if (!f.getName().endsWith(DELTA_SUFFIX)) {
+            return new String(readCompressed(f), StandardCharsets.UTF_8);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(readCompressed(f)));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown backup delta format: " + f.getName());
+        }
+        File baseFile = new File(f.getParentFile(), in.readUTF());
+        String baseHash = in.readUTF();
+        String targetHash = in.readUTF();
+        byte[] baseBytes = readCompressed(baseFile);
+        if (!hash(baseBytes).equals(baseHash)) {
+            throw new IOException("Backup snapshot " + baseFile.getName() + " doesn't match delta " + f.getName());
+        }
+        List<String> base = splitLines(new String(baseBytes, StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        byte op;
+        while ((op = in.readByte()) != OP_END) {
+            if (op == OP_COPY) {
+                int start = in.readInt();
+                int count = in.readInt();
+                for (int i = start; i < start + count; i++) {
+                    sb.append(base.get(i));
+                }
+            } else if (op == OP_ADD) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    byte[] line = new byte[in.readInt()];
+                    in.readFully(line);
+                    sb.append(new String(line, StandardCharsets.UTF_8));
+                }
+            } else {
+                throw new IOException("Unknown backup delta operation " + op + " in " + f.getName());
+            }
+        }
+        String contents = sb.toString();
+        if (!hash(contents.getBytes(StandardCharsets.UTF_8)).equals(targetHash)) {
+            throw new IOException("Restored backup " + f.getName() + " doesn't match what was stored");
+        }
+        return contents;
+    }
+
+    /**
+     * Splits the given string into lines, keeping the line endings attached,
+     * so that joining them back together gives exactly the same string.
+     *
+     * @param s The string to split
+     * @return The lines
+     */
+    static List<String> splitLines(String s) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int idx;
+        while ((idx = s.indexOf('\n', start)) != -1) {
+            lines.add(s.substring(start, idx + 1));
+            start = idx + 1;
+        }
+        if (start < s.length()) {
+            lines.add(s.substring(start));
+        }
+        return lines;
+    }
+
+    /**
+     * Encodes the changes needed to turn one list of lines into another.
+     * Target lines are matched against the base wherever they occur in it,
+     * preferring to carry on from where the last match left off, and copied
+     * from there for as long as the two keep matching.  Anything without a
+     * match gets stored as-is.  This isn't a minimal diff, but it's simple,
+     * fast even for huge files, and always produces a correct result.
+     *
+     * @param baseName The filename of the snapshot we're based on
+     * @param baseHash The hash of the snapshot's contents
+     * @param targetHash The hash of the contents we're encoding
+     * @param base The lines of the snapshot
+     * @param target The lines we want to end up with
+     * @param maxAdded If more than this many bytes of lines would need to be
+     * stored as-is, give up
+     * @return The encoded delta, or null if it'd be too large
+     * @throws IOException If the delta could not be encoded
+     */
+    static byte[] encodeDelta(String baseName, String baseHash, String targetHash,
+            List<String> base, List<String> target, int maxAdded) throws IOException {
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < base.size(); i++) {
+            positions.computeIfAbsent(base.get(i), k -> new ArrayList<>()).add(i);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(baseName);
+        out.writeUTF(baseHash);
+        out.writeUTF(targetHash);
+
+        List<byte[]> pending = new ArrayList<>();
+        int added = 0;
+        int pos = 0;
+        int i = 0;
+        while (i < target.size()) {
+            String line = target.get(i);
+            int start = -1;
+            if (pos < base.size() && base.get(pos).equals(line)) {
+                start = pos;
+            } else {
+                List<Integer> candidates = positions.get(line);
+                if (candidates != null) {
+                    int idx = Collections.binarySearch(candidates, pos);
+                    if (idx < 0) {
+                        idx = -idx - 1;
+                    }
+                    start = candidates.get(idx < candidates.size() ? idx : 0);
+                }
+            }
+            if (start < 0) {
+                byte[] lineBytes = line.getBytes(StandardCharsets.UTF_8);
+                added += lineBytes.length;
+                if (added > maxAdded) {
+                    return null;
+                }
+                pending.add(lineBytes);
+                i++;
+                continue;
+            }
+            int count = 0;
+            while (start + count < base.size() && i + count < target.size()
+                    && base.get(start + count).equals(target.get(i + count))) {
+                count++;
+            }
+            writeAdd(out, pending);
+            out.writeByte(OP_COPY);
+            out.writeInt(start);
+            out.writeInt(count);
+            pos = start + count;
+            i += count;
+        }
+        writeAdd(out, pending);
+        out.writeByte(OP_END);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeAdd(DataOutputStream out, List<byte[]> lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        out.writeByte(OP_ADD);
+        out.writeInt(lines.size());
+        for (byte[] line : lines) {
+            out.writeInt(line.length);
+            out.write(line);
+        }
+        lines.clear();
+    }
+
+    /**
+     * Writes the given data out to a gzipped file.  The data is written to a
+     * temporary file first and then moved into place, so a partially-written
+     * backup will never be picked up.
+     */
+    private static void writeCompressed(File f, byte[] data) throws IOException {
+        File temp = new File(f.getParentFile(), f.getName() + ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.write(data);
+            }
+            Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static byte[] readCompressed(File f) throws IOException {
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static String hash(byte[] data) throws IOException {
+        try {
+            return Utilities.sha256(new ByteArrayInputStream(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
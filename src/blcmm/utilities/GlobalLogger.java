@@ -203,7 +203,7 @@ public class GlobalLogger {
      *
      * @param message The message to log
      */
-    public static void log(String message) {
+    public static synchronized void log(String message) {
         singleLine(getLogPrefix() + message);
         flush();
     }
@@ -213,7 +213,7 @@ public class GlobalLogger {
      *
      * @param throwable The Throwable to log
      */
-    public static void log(Throwable throwable) {
+    public static synchronized void log(Throwable throwable) {
         singleLine(getLogPrefix() + throwable.getClass().toString() + ": " + throwable.getMessage());
         for (StackTraceElement element : throwable.getStackTrace()) {
             singleLine("    " + element.toString());
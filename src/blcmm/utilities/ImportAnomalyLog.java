@@ -81,7 +81,7 @@ public class ImportAnomalyLog implements Iterable<ImportAnomalyLog.importAnomaly
         }
     }
 
-    public void add(importAnomaly anomaly) {
+    public synchronized void add(importAnomaly anomaly) {
         int i = anomalies.size();
         while (i > 0 && anomaly.compareTo(anomalies.get(i - 1)) < 0) {
             i--;
@@ -89,11 +89,11 @@ public class ImportAnomalyLog implements Iterable<ImportAnomalyLog.importAnomaly
         anomalies.add(i, anomaly);
     }
 
-    public void clear() {
+    public synchronized void clear() {
         anomalies.clear();
     }
 
-    public int size() {
+    public synchronized int size() {
         return anomalies.size();
     }
 
@@ -443,6 +443,18 @@ public class Options extends OptionsBase {
                 "<html>When starting " + Meta.NAME + ", open the most recently"
                 + " used patch file automatically when starting the app."));
 
+        this.registerOption(new BooleanOption(this,
+                OptionNames.usePatchCache.toString(),
+                fontInfo,
+                true,
+                Option.Shown.SETTINGS,
+                "Cache Opened Files For Faster Reopening",
+                null,
+                "<html>Keep a compact copy of each opened patch file in " + Meta.NAME + "'s"
+                + " data directory, so that reopening<br/>"
+                + "an unchanged file can skip parsing it entirely.  The cache is"
+                + " ignored as soon as the file changes."));
+
         this.registerOption(new SectionHeaderOption(this,
                 Option.Shown.SETTINGS,
                 "Modding",
@@ -541,6 +553,30 @@ public class Options extends OptionsBase {
                 + "This looks good while reading the list, but might get in the"
                 + " way if you're copy+pasting into a code window."));
 
+        this.registerOption(new BooleanOption(this,
+                OptionNames.oeUseSearchIndex.toString(),
+                fontInfo,
+                true,
+                Option.Shown.SETTINGS,
+                "Use search index for OE searches",
+                null,
+                "<html>Build an on-disk index of object data as Object Explorer searches"
+                + " run, and use it to speed up later fulltext and refs searches.<br/>"
+                + "The first search through any given category will take the usual"
+                + " amount of time."));
+
+        this.registerOption(new IntOption(this,
+                OptionNames.oeDumpCacheSize.toString(),
+                fontInfo,
+                32,
+                Option.Shown.SETTINGS,
+                "OE recent-dump cache size (MB)",
+                0, 1024, "updateOEDumpCacheSize",
+                "<html>How much memory Object Explorer may use to keep recently-viewed"
+                + " dumps around, so that going back and forth between objects<br/>"
+                + "doesn't have to re-read them from the data files.  Set to zero"
+                + " to disable the cache."));
+
         // Now options in the Confirmations Settings area
 
         this.registerOption(new SectionHeaderOption(this,
@@ -822,6 +858,17 @@ public class Options extends OptionsBase {
                 null,
                 "When saving patchfiles in 'Offline' mode, which GearboxAccountData number should be used?"));
 
+        this.registerOption(new IntOption(this,
+                OptionNames.hotfixSaveBufferSize.toString(),
+                fontInfo,
+                16,
+                Option.Shown.DANGEROUS,
+                "Hotfix save buffer size (MB)",
+                1, 1024,
+                null,
+                "How much memory to use for hotfix data while saving patchfiles,"
+                + " before writing it out to a temp file instead."));
+
         // Next: options which don't show up on the settings panel.  Order
         // doesn't really matter here.
         // Has the user seen the export warning?
@@ -1016,6 +1063,14 @@ public class Options extends OptionsBase {
         this.setBooleanOptionData(OptionNames.openLatestPatchOnStart, newPref);
     }
 
+    public boolean getUsePatchCache() {
+        return this.getBooleanOptionData(OptionNames.usePatchCache);
+    }
+
+    public void setUsePatchCache(boolean newPref) {
+        this.setBooleanOptionData(OptionNames.usePatchCache, newPref);
+    }
+
     // Next up: non-user-settable options.  Doing gets/sets for these even
     // though only getters make sense for most of them.
     public boolean getHasSeenExportWarning() {
@@ -1154,6 +1209,14 @@ public class Options extends OptionsBase {
         this.setIntOptionData(Options.OptionNames.filenameTruncationLength, newLength);
     }
 
+    public int getHotfixSaveBufferSize() {
+        return this.getIntOptionData(Options.OptionNames.hotfixSaveBufferSize);
+    }
+
+    public void setHotfixSaveBufferSize(int megabytes) {
+        this.setIntOptionData(Options.OptionNames.hotfixSaveBufferSize, megabytes);
+    }
+
     public boolean getPropagateMUTNotification() {
         return this.getBooleanOptionData(Options.OptionNames.propagateMUTNotification);
     }
@@ -1194,6 +1257,22 @@ public class Options extends OptionsBase {
         this.setBooleanOptionData(OptionNames.oeColonInGetall, newPref);
     }
 
+    public boolean getOEUseSearchIndex() {
+        return this.getBooleanOptionData(OptionNames.oeUseSearchIndex);
+    }
+
+    public void setOEUseSearchIndex(boolean newPref) {
+        this.setBooleanOptionData(OptionNames.oeUseSearchIndex, newPref);
+    }
+
+    public int getOEDumpCacheSize() {
+        return this.getIntOptionData(OptionNames.oeDumpCacheSize);
+    }
+
+    public void setOEDumpCacheSize(int megabytes) {
+        this.setIntOptionData(OptionNames.oeDumpCacheSize, megabytes);
+    }
+
     /**
      * Returns our Object Explorer bookmarks for the specified PatchType
      *
@@ -114,10 +114,14 @@ public abstract class OptionsBase {
         accountDataNumber,
         checkForNewVersions,
         openLatestPatchOnStart,
+        usePatchCache,
         oeCollapseArrays,
         oeAutoFormat,
         oeDeformatLevel,
         oeColonInGetall,
+        oeUseSearchIndex,
+        oeDumpCacheSize,
+        hotfixSaveBufferSize,
         oeSearchActions,
         oeSearchAI,
         oeSearchAnimations,
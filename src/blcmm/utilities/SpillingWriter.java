@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.utilities;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Writer which buffers its contents in memory, up until a given size, at
+ * which point it "spills" everything out to a temporary file instead.  Once
+ * everything's been written, the contents can be copied out to another
+ * Writer with writeTo().
+ *
+ * This is used when saving patch files, where we need to write out all the
+ * hotfix values after all the hotfix keys, but we only want to loop through
+ * the hotfixes once.  Previously those values were *always* written out to
+ * a temp file and then read back in, which for the vast majority of mods
+ * means doing three times as much disk I/O as necessary -- quite noticeable
+ * for folks whose home (and temp) directories are on slow or network
+ * drives.  Now we only touch the disk if the values get really big.
+ *
+ * Be sure to close() this once you're done with it, so that any temp file
+ * gets cleaned up.
+ *
+ * @author apocalyptech
+ */
+public class SpillingWriter extends Writer {
+
+    private final long maxBufferedChars;
+    private final String tempPrefix;
+    private StringBuilder buffer = new StringBuilder();
+    private File spillFile = null;
+    private Writer spillWriter = null;
+
+    /**
+     * Creates a new SpillingWriter.
+     *
+     * @param maxBufferedChars The number of characters to keep in memory
+     * before spilling to disk
+     * @param tempPrefix The prefix to use for our temp file, if we end up
+     * needing one
+     */
+    public SpillingWriter(long maxBufferedChars, String tempPrefix) {
+        this.maxBufferedChars = maxBufferedChars;
+        this.tempPrefix = tempPrefix;
+    }
+
+    /**
+     * Returns whether we've spilled our contents out to disk.
+     *
+     * @return True if we're using a temp file
+     */
+    public boolean isSpilled() {
+        return this.spillFile != null;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (this.spillWriter == null && (long) this.buffer.length() + len > this.maxBufferedChars) {
+            this.spill();
+        }
+        if (this.spillWriter == null) {
+            this.buffer.append(cbuf, off, len);
+        } else {
+            this.spillWriter.write(cbuf, off, len);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (this.spillWriter == null && (long) this.buffer.length() + len > this.maxBufferedChars) {
+            this.spill();
+        }
+        if (this.spillWriter == null) {
+            this.buffer.append(str, off, off + len);
+        } else {
+            this.spillWriter.write(str, off, len);
+        }
+    }
+
+    /**
+     * Moves everything we've got in memory out to a new temp file, and
+     * switches over to writing there from now on.
+     *
+     * @throws IOException If the temp file could not be created
+     */
+    private void spill() throws IOException {
+        File file = File.createTempFile(this.tempPrefix, "temp");
+        try {
+            this.spillWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // close() won't know about the file if we couldn't open it, so
+            // clean it up here.
+            if (!file.delete()) {
+                GlobalLogger.log("Unable to delete temp file: " + file.getAbsolutePath());
+            }
+            throw e;
+        }
+        this.spillFile = file;
+        this.spillWriter.append(this.buffer);
+        this.buffer = null;
+    }
+
+    /**
+     * Copies everything which has been written to us out to the given
+     * Writer.
+     *
+     * @param out The Writer to copy our contents to
+     * @throws IOException If there was a problem reading back our temp file,
+     * or writing to the output
+     */
+    public void writeTo(Writer out) throws IOException {
+        if (this.spillWriter == null) {
+            out.append(this.buffer);
+        } else {
+            this.spillWriter.flush();
+            try (Reader reader = new InputStreamReader(new FileInputStream(this.spillFile), StandardCharsets.UTF_8)) {
+                char[] chars = new char[8 * 1024];
+                int charsRead;
+                while ((charsRead = reader.read(chars)) != -1) {
+                    out.write(chars, 0, charsRead);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.spillWriter != null) {
+            this.spillWriter.flush();
+        }
+    }
+
+    /**
+     * Closes this writer, removing our temp file if we had one.  Our contents
+     * are no longer available after this.
+     *
+     * @throws IOException If the temp file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.spillWriter != null) {
+            try {
+                this.spillWriter.close();
+            } finally {
+                this.spillWriter = null;
+                if (!this.spillFile.delete()) {
+                    GlobalLogger.log("Unable to delete temp file: " + this.spillFile.getAbsolutePath());
+                }
+            }
+        }
+        this.buffer = new StringBuilder();
+    }
+
+}
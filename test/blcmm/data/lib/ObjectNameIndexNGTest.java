@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package blcmm.data.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class ObjectNameIndexNGTest {
+
+    private static final String[] NAMES = {
+        "GD_Itempools.WeaponPools.Pool_Weapons_All",
+        "GD_Itempools.WeaponPools.Pool_Weapons_Pistols",
+        "GD_Weap_Pistol.A_Weapons.Pistol_Bandit",
+        "GD_Weap_Pistol.Barrel.P_Bandit_Barrel",
+        "GD_Weap_Pistol.Barrel:Pistol",
+        "Pistol",
+        "pistol_thing",
+        "Transient.Foo",
+    };
+
+    private static final int[] CLASSES = {1, 1, 2, 3, 3, 4, 4, 5};
+
+    private ObjectNameIndex build(String[] names, int[] classes) {
+        ObjectNameIndex.Builder builder = new ObjectNameIndex.Builder();
+        for (int i = 0; i < names.length; i++) {
+            builder.add(names[i], classes[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Test of ranking: exact, then prefix, then path component, then the
+     * rest, with shorter names first within each.
+     */
+    @Test
+    public void testRanking() {
+        ObjectNameIndex index = this.build(NAMES, CLASSES);
+        assertEquals(index.size(), NAMES.length);
+        assertEquals(index.search("pistol", null, 100), Arrays.asList(
+                "Pistol",
+                "pistol_thing",
+                "GD_Weap_Pistol.Barrel:Pistol",
+                "GD_Weap_Pistol.A_Weapons.Pistol_Bandit",
+                "GD_Weap_Pistol.Barrel.P_Bandit_Barrel",
+                "GD_Itempools.WeaponPools.Pool_Weapons_Pistols"
+        ));
+        assertEquals(index.search("PISTOL", null, 2), Arrays.asList("Pistol", "pistol_thing"));
+        assertEquals(index.search("nope", null, 100), Collections.emptyList());
+        assertEquals(index.search("weapons_p", null, 100), Arrays.asList(
+                "GD_Itempools.WeaponPools.Pool_Weapons_Pistols"));
+    }
+
+    /**
+     * Test of restricting results by class.
+     */
+    @Test
+    public void testClasses() {
+        ObjectNameIndex index = this.build(NAMES, CLASSES);
+        BitSet classes = new BitSet();
+        classes.set(2);
+        classes.set(3);
+        assertEquals(index.search("pistol", classes, 100), Arrays.asList(
+                "GD_Weap_Pistol.Barrel:Pistol",
+                "GD_Weap_Pistol.A_Weapons.Pistol_Bandit",
+                "GD_Weap_Pistol.Barrel.P_Bandit_Barrel"
+        ));
+        assertEquals(index.search("P", classes, 100).size(), 3);
+    }
+
+    /**
+     * Test of random queries against a plain substring search, including
+     * short ones which don't use the trigrams.
+     */
+    @Test
+    public void testAgainstScan() {
+        Random random = new Random(1);
+        String alphabet = "abAB_.:1é";
+        String[] names = new String[2000];
+        int[] classes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(12) + 1;
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            names[i] = sb.toString();
+        }
+        Arrays.sort(names);
+        ObjectNameIndex index = this.build(names, classes);
+        for (int q = 0; q < 300; q++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(5) + 1;
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String query = sb.toString();
+            List<String> expected = new ArrayList<>();
+            for (String name : names) {
+                if (name.toLowerCase().contains(query.toLowerCase())) {
+                    expected.add(name);
+                }
+            }
+            List<String> results = index.search(query, null, names.length);
+            Collections.sort(results);
+            assertEquals(results, expected, "Query: " + query);
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.text;
+
+import java.util.List;
+import java.util.Random;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class BracketIndexNGTest {
+
+    /**
+     * Finds the partner of the bracket at the given index by scanning through
+     * the text, the way HighlightedTextArea used to.
+     */
+    private int scanForMatch(String text, int index) {
+        int depth = 0;
+        if (text.charAt(index) == ')') {
+            for (int i = index - 1; i >= 0; i--) {
+                if (text.charAt(i) == '(') {
+                    if (--depth == -1) {
+                        return i;
+                    }
+                } else if (text.charAt(i) == ')') {
+                    depth++;
+                }
+            }
+        } else if (text.charAt(index) == '(') {
+            for (int i = index + 1; i < text.length(); i++) {
+                if (text.charAt(i) == ')') {
+                    if (--depth == -1) {
+                        return i;
+                    }
+                } else if (text.charAt(i) == '(') {
+                    depth++;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks every offset in the document against scanForMatch().
+     */
+    private void checkAll(PlainDocument doc, BracketIndex index) throws BadLocationException {
+        String text = doc.getText(0, doc.getLength());
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(index.findMatch(i), this.scanForMatch(text, i), "Offset " + i + " in: " + text);
+        }
+    }
+
+    /**
+     * Test of matching brackets in a document which is already populated.
+     */
+    @Test
+    public void testInitial() throws BadLocationException {
+        PlainDocument doc = new PlainDocument();
+        doc.insertString(0, "set foo bar (a=(1,2),b=((c)),d=) x) (", null);
+        BracketIndex index = new BracketIndex(doc);
+        assertEquals(index.size(), 10);
+        assertEquals(index.findMatch(12), 31);
+        assertEquals(index.findMatch(15), 19);
+        assertEquals(index.findMatch(34), -1);
+        assertEquals(index.findMatch(36), -1);
+        assertEquals(index.findMatch(0), -1);
+        this.checkAll(doc, index);
+    }
+
+    /**
+     * Test of keeping the index up to date through a bunch of random edits.
+     */
+    @Test
+    public void testEdits() throws BadLocationException {
+        String[] pieces = {"(", ")", "foo", "(a=1)", " ", "\n", "((", "))"};
+        Random random = new Random(1);
+        PlainDocument doc = new PlainDocument();
+        BracketIndex index = new BracketIndex(doc);
+        doc.addDocumentListener(index);
+        for (int i = 0; i < 500; i++) {
+            int length = doc.getLength();
+            if (length > 0 && random.nextInt(3) == 0) {
+                int offset = random.nextInt(length);
+                doc.remove(offset, random.nextInt(Math.min(8, length - offset)) + 1);
+            } else {
+                doc.insertString(random.nextInt(length + 1), pieces[random.nextInt(pieces.length)], null);
+            }
+            this.checkAll(doc, index);
+        }
+    }
+
+    /**
+     * Test of getting fold regions out of a formatted dump.
+     */
+    @Test
+    public void testFoldRegions() throws BadLocationException {
+        String text = "Foo=(\n"
+                + "    Bar=(1,2),\n"
+                + "    Baz=(\n"
+                + "        (A=1)\n"
+                + "    )\n"
+                + ")\n";
+        PlainDocument doc = new PlainDocument();
+        BracketIndex index = new BracketIndex(doc);
+        doc.addDocumentListener(index);
+        doc.insertString(0, text, null);
+        List<BracketIndex.Region> regions = index.getFoldRegions();
+        assertEquals(regions.size(), 2);
+        assertEquals(regions.get(0).start, text.indexOf('('));
+        assertEquals(regions.get(0).end, text.lastIndexOf(')'));
+        assertEquals(regions.get(0).depth, 0);
+        assertEquals(regions.get(1).start, text.indexOf("Baz=(") + 4);
+        assertEquals(regions.get(1).end, text.lastIndexOf("    )") + 4);
+        assertEquals(regions.get(1).depth, 1);
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.text;
+
+import blcmm.gui.theme.ThemeManager;
+import blcmm.utilities.Options;
+import java.awt.Color;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.StyleConstants;
+import javax.swing.undo.UndoManager;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class myStylizedDocumentNGTest {
+
+    private static final String TEXT = "set GD_Foo.Bar Baz 5\n"
+            + "set GD_Foo.Bar Obj WillowGame.Foo'GD_Foo.Other'\n"
+            + "set GD_Foo.Bar Str \"hello there\"\n";
+
+    public myStylizedDocumentNGTest() throws Exception {
+        Options.loadOptions(null);
+    }
+
+    /**
+     * Returns the foreground color at the given offset.
+     */
+    private Color colorAt(myStylizedDocument doc, int offset) {
+        return StyleConstants.getForeground(doc.getCharacterElement(offset).getAttributes());
+    }
+
+    /**
+     * Returns a description of the attributes of every character in the
+     * document, for comparing two documents against each other.
+     */
+    private String describe(myStylizedDocument doc) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < doc.getLength(); i++) {
+            sb.append(doc.getCharacterElement(i).getAttributes().toString()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Test of immediate highlighting, which is what we get by default.
+     */
+    @Test
+    public void testImmediate() throws BadLocationException {
+        myStylizedDocument doc = new myStylizedDocument();
+        doc.insertString(0, TEXT, null);
+        assertFalse(doc.isHighlightPending());
+        assertEquals(colorAt(doc, 0), ThemeManager.getColor(ThemeManager.ColorType.CodeKeyword));
+        assertEquals(colorAt(doc, 4), ThemeManager.getColor(ThemeManager.ColorType.CodeGDWord));
+        assertEquals(colorAt(doc, 19), ThemeManager.getColor(ThemeManager.ColorType.CodeNumber));
+        int link = TEXT.indexOf("GD_Foo.Other");
+        assertNotNull(doc.getCharacterElement(link).getAttributes().getAttribute("URL"));
+        int quote = TEXT.indexOf("\"hello");
+        assertEquals(colorAt(doc, quote + 3), ThemeManager.getColor(ThemeManager.ColorType.CodeDoubleQuote));
+    }
+
+    /**
+     * Test of deferred highlighting, where only the lines we ask for get
+     * highlighted, and the result ends up the same as immediate highlighting
+     * once everything's been done.
+     */
+    @Test
+    public void testDeferred() throws BadLocationException {
+        myStylizedDocument doc = new myStylizedDocument();
+        doc.setDeferredHighlighting(true);
+        doc.insertString(0, TEXT, null);
+        assertTrue(doc.isHighlightPending());
+        assertNull(doc.getCharacterElement(TEXT.indexOf("GD_Foo.Other")).getAttributes().getAttribute("URL"));
+
+        // Just the first line
+        doc.highlight(0, 3);
+        assertTrue(doc.isHighlightPending());
+        assertEquals(colorAt(doc, 0), ThemeManager.getColor(ThemeManager.ColorType.CodeKeyword));
+        assertNull(doc.getCharacterElement(TEXT.indexOf("GD_Foo.Other")).getAttributes().getAttribute("URL"));
+
+        // And the rest
+        doc.highlight(0, doc.getLength());
+        assertFalse(doc.isHighlightPending());
+
+        myStylizedDocument expected = new myStylizedDocument();
+        expected.insertString(0, TEXT, null);
+        assertEquals(describe(doc), describe(expected));
+
+        // Edits in the middle should only leave that line pending
+        int offset = TEXT.indexOf("Baz");
+        doc.remove(offset, 3);
+        doc.insertString(offset, "1.5", null);
+        expected.remove(offset, 3);
+        expected.insertString(offset, "1.5", null);
+        assertTrue(doc.isHighlightPending());
+        doc.highlight(offset, offset);
+        assertFalse(doc.isHighlightPending());
+        assertEquals(describe(doc), describe(expected));
+    }
+
+    /**
+     * Test that highlighting doesn't show up as its own undo step.
+     */
+    @Test
+    public void testUndo() throws BadLocationException {
+        myStylizedDocument doc = new myStylizedDocument();
+        doc.setDeferredHighlighting(true);
+        UndoManager undo = new UndoManager();
+        doc.addUndoableEditListener(undo);
+        doc.insertString(0, TEXT, null);
+        doc.highlight(0, doc.getLength());
+        doc.insertString(0, "exec foo\n", null);
+        doc.highlight(0, doc.getLength());
+        undo.undo();
+        assertEquals(doc.getText(0, doc.getLength()), TEXT);
+        assertEquals(colorAt(doc, 0), ThemeManager.getColor(ThemeManager.ColorType.CodeKeyword));
+        undo.undo();
+        assertEquals(doc.getLength(), 0);
+        assertFalse(undo.canUndo());
+    }
+
+}
@@ -24,6 +24,7 @@ import blcmm.model.CompletePatch;
 import blcmm.model.HotfixType;
 import blcmm.model.HotfixWrapper;
 import blcmm.model.ModelElement;
+import blcmm.model.ModelElementContainer;
 import blcmm.model.SetCMPCommand;
 import blcmm.model.SetCommand;
 import blcmm.utilities.Options;
@@ -45,6 +46,7 @@ import org.testng.annotations.Test;
 public class OverwriteCheckerNGTest {
 
     private SetCommand[] storedCommands;
+    private CompletePatch storedPatch;
 
     public OverwriteCheckerNGTest() throws Exception {
         Options.loadOptions(null);
@@ -120,6 +122,7 @@ public class OverwriteCheckerNGTest {
         }
         OverwriteChecker.reset(cat);
         storedCommands = toStore.toArray(new SetCommand[toStore.size()]);
+        storedPatch = patch;
         return cat;
     }
 
@@ -955,6 +958,158 @@ public class OverwriteCheckerNGTest {
         }
     }
 
+    /**
+     * Test of update method, of class OverwriteChecker.  Toggles each
+     * statement off and back on again using incremental updates, and makes
+     * sure that we end up with exactly the same results as a full reset.
+     */
+    @Test(dataProvider = "getOverwriteData")
+    public void testIncrementalUpdate(String label, String[] commands,
+            TestData[] completeOverwriterDataSet, TestData[] completeOverwrittenDataSet,
+            TestData[] partialOverwriterDataSet, TestData[] partialOverwrittenDataSet) {
+        Category cat = testCategory(commands);
+        for (SetCommand toggled : storedCommands) {
+            storedPatch.setSelected(toggled, false);
+            OverwriteChecker.update(cat, Arrays.asList(toggled));
+            storedPatch.setSelected(toggled, true);
+            OverwriteChecker.update(cat, Arrays.asList(toggled));
+        }
+        assertMatchesReset(cat, label);
+    }
+
+    /**
+     * Returns everything OverwriteChecker currently knows about the
+     * statements in the given category, so that the results of incremental
+     * updates can be compared against a full reset.
+     */
+    private List<Object> captureStates(Category cat) {
+        List<Object> states = new ArrayList<>();
+        this.captureStates(cat, states);
+        states.add(OverwriteChecker.getColor(cat));
+        return states;
+    }
+
+    private void captureStates(ModelElementContainer<?> container, List<Object> states) {
+        for (ModelElement element : container.getElements()) {
+            if (element instanceof ModelElementContainer) {
+                this.captureStates((ModelElementContainer<?>) element, states);
+                states.add(OverwriteChecker.getColor(element));
+            } else if (element instanceof SetCommand) {
+                SetCommand cmd = (SetCommand) element;
+                states.add(cmd.getCode());
+                states.add(cmd.getTransientData().getOverwriteState());
+                states.add(OverwriteChecker.getColor(cmd));
+                states.add(OverwriteChecker.getCompleteOverwriters(cmd));
+                states.add(OverwriteChecker.getCompleteOverwrittens(cmd));
+                states.add(OverwriteChecker.getPartialOverwriters(cmd));
+                states.add(OverwriteChecker.getPartialOverwrittens(cmd));
+            }
+        }
+    }
+
+    /**
+     * Makes sure that the current (incrementally-updated) state matches what
+     * a full reset gives us.
+     */
+    private void assertMatchesReset(Category cat, String label) {
+        List<Object> incrementalStates = this.captureStates(cat);
+        OverwriteChecker.reset(cat);
+        assertEquals(incrementalStates, this.captureStates(cat), label);
+    }
+
+    /**
+     * Returns the direct child of the given category which contains the
+     * given element, which is what the GUI moves around when dragging
+     * statements (hotfixes can't be inserted without their wrapper).
+     */
+    private ModelElement topLevelElement(Category cat, ModelElement element) {
+        while (element.getParent() != cat) {
+            element = element.getParent();
+        }
+        return element;
+    }
+
+    /**
+     * Test of update method, of class OverwriteChecker, when deleting
+     * statements.  Each statement is deleted in turn from a fresh category.
+     */
+    @Test(dataProvider = "getOverwriteData")
+    public void testIncrementalDelete(String label, String[] commands,
+            TestData[] completeOverwriterDataSet, TestData[] completeOverwrittenDataSet,
+            TestData[] partialOverwriterDataSet, TestData[] partialOverwrittenDataSet) {
+        for (int i = 0; i < commands.length; i++) {
+            Category cat = testCategory(commands);
+            SetCommand deleted = storedCommands[i];
+            ModelElement oldParent = deleted.getParent();
+            storedPatch.removeElementFromParentCategory(deleted);
+            OverwriteChecker.update(cat, Arrays.asList(deleted, oldParent));
+            assertMatchesReset(cat, label + " (deleting " + i + ")");
+        }
+    }
+
+    /**
+     * Test of update method, of class OverwriteChecker, when inserting
+     * statements.  Each top-level element is taken out of a fresh category and
+     * scanned without it, and then inserted back in at the top.
+     */
+    @Test(dataProvider = "getOverwriteData")
+    public void testIncrementalInsert(String label, String[] commands,
+            TestData[] completeOverwriterDataSet, TestData[] completeOverwrittenDataSet,
+            TestData[] partialOverwriterDataSet, TestData[] partialOverwrittenDataSet) {
+        for (int i = 0; i < commands.length; i++) {
+            Category cat = testCategory(commands);
+            ModelElement inserted = topLevelElement(cat, storedCommands[i]);
+            storedPatch.removeElementFromParentCategory(inserted);
+            OverwriteChecker.reset(cat);
+            storedPatch.insertElementInto(inserted, cat, 0);
+            OverwriteChecker.update(cat, Arrays.asList(inserted));
+            assertMatchesReset(cat, label + " (inserting " + i + ")");
+        }
+    }
+
+    /**
+     * Test of update method, of class OverwriteChecker, when editing
+     * statements.  Edits replace the statement with a new object, so this
+     * swaps each non-hotfix statement out for one with a different field.
+     */
+    @Test(dataProvider = "getOverwriteData")
+    public void testIncrementalEdit(String label, String[] commands,
+            TestData[] completeOverwriterDataSet, TestData[] completeOverwrittenDataSet,
+            TestData[] partialOverwriterDataSet, TestData[] partialOverwrittenDataSet) {
+        for (int i = 0; i < commands.length; i++) {
+            Category cat = testCategory(commands);
+            SetCommand original = storedCommands[i];
+            if (original.getParent() != cat) {
+                continue;
+            }
+            SetCommand edited = new SetCommand(original.getObject(), original.getField() + "X", original.getValue());
+            storedPatch.removeElementFromParentCategory(original);
+            storedPatch.insertElementInto(edited, cat, 0);
+            storedPatch.setSelected(edited, true);
+            OverwriteChecker.update(cat, Arrays.asList(original, edited, cat));
+            assertMatchesReset(cat, label + " (editing " + i + ")");
+        }
+    }
+
+    /**
+     * Test of update method, of class OverwriteChecker, when moving
+     * statements.  Each top-level element is moved to the top of a fresh
+     * category, which changes which statements end up overwriting which.
+     */
+    @Test(dataProvider = "getOverwriteData")
+    public void testIncrementalMove(String label, String[] commands,
+            TestData[] completeOverwriterDataSet, TestData[] completeOverwrittenDataSet,
+            TestData[] partialOverwriterDataSet, TestData[] partialOverwrittenDataSet) {
+        for (int i = 0; i < commands.length; i++) {
+            Category cat = testCategory(commands);
+            ModelElement moved = topLevelElement(cat, storedCommands[i]);
+            storedPatch.removeElementFromParentCategory(moved);
+            storedPatch.insertElementInto(moved, cat, 0);
+            OverwriteChecker.update(cat, Arrays.asList(moved, cat));
+            assertMatchesReset(cat, label + " (moving " + i + ")");
+        }
+    }
+
     /**
      * Test of getColor method, of class OverwriteChecker.
      */
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class OverwriteTrieNGTest {
+
+    /**
+     * Builds a trie where each key's value is just the key itself, so that
+     * results are easy to compare.
+     *
+     * @param keys The keys to add
+     * @return The trie
+     */
+    private OverwriteTrie<String> buildTrie(String... keys) {
+        OverwriteTrie<String> trie = new OverwriteTrie<>();
+        for (String key : keys) {
+            trie.add(key, key);
+        }
+        return trie;
+    }
+
+    /**
+     * Flattens a list of value sets into a sorted list, for comparisons.
+     *
+     * @param sets The sets to flatten
+     * @return A sorted list of all values
+     */
+    private List<String> flatten(List<TreeSet<String>> sets) {
+        TreeSet<String> all = new TreeSet<>();
+        for (TreeSet<String> set : sets) {
+            all.addAll(set);
+        }
+        return new ArrayList<>(all);
+    }
+
+    /**
+     * Test of split method, of class OverwriteTrie.
+     */
+    @Test
+    public void testSplit() {
+        assertEquals(OverwriteTrie.split("foo bar"), Arrays.asList("foo bar"));
+        assertEquals(OverwriteTrie.split("foo bar[1].baz"), Arrays.asList("foo bar", "[1]", ".baz"));
+        assertEquals(OverwriteTrie.split("gd_foo.bar:baz attr.sub"), Arrays.asList("gd_foo", ".bar", ":baz attr", ".sub"));
+    }
+
+    /**
+     * Test of getDescendants method, of class OverwriteTrie.
+     */
+    @Test
+    public void testGetDescendants() {
+        OverwriteTrie<String> trie = buildTrie("foo bar", "foo bar.baz", "foo bar[1]",
+                "foo bar[1].baz", "foo barbaz", "foo bar[x]", "foo bar:baz", "foo frotz");
+        assertEquals(flatten(trie.getDescendants("foo bar", true)),
+                Arrays.asList("foo bar", "foo bar.baz", "foo bar[1]", "foo bar[1].baz"));
+        assertEquals(flatten(trie.getDescendants("foo bar", false)),
+                Arrays.asList("foo bar.baz", "foo bar[1]", "foo bar[1].baz"));
+        assertEquals(flatten(trie.getDescendants("foo bar[1]", false)),
+                Arrays.asList("foo bar[1].baz"));
+        assertEquals(flatten(trie.getDescendants("foo nothing", true)),
+                Arrays.asList());
+    }
+
+    /**
+     * Test of getAncestors method, of class OverwriteTrie.
+     */
+    @Test
+    public void testGetAncestors() {
+        OverwriteTrie<String> trie = buildTrie("foo bar", "foo bar.baz", "foo bar[1]",
+                "foo bar[1].baz", "foo bar:baz", "foo bar:baz.frotz");
+        assertEquals(flatten(trie.getAncestors("foo bar[1].baz", 0, true, true)),
+                Arrays.asList("foo bar", "foo bar[1]", "foo bar[1].baz"));
+        assertEquals(flatten(trie.getAncestors("foo bar[1].baz", 0, false, true)),
+                Arrays.asList("foo bar", "foo bar[1]"));
+        assertEquals(flatten(trie.getAncestors("foo bar[1].baz", "foo bar[1]".length(), false, true)),
+                Arrays.asList("foo bar[1]"));
+        assertEquals(flatten(trie.getAncestors("foo bar:baz.frotz", 0, false, true)),
+                Arrays.asList("foo bar:baz"));
+        assertEquals(flatten(trie.getAncestors("foo bar:baz.frotz", 0, false, false)),
+                Arrays.asList("foo bar", "foo bar:baz"));
+    }
+
+    /**
+     * Test of remove method, of class OverwriteTrie.
+     */
+    @Test
+    public void testRemove() {
+        OverwriteTrie<String> trie = buildTrie("foo bar", "foo bar.baz");
+        assertTrue(trie.remove("foo bar.baz", "foo bar.baz"));
+        assertFalse(trie.remove("foo bar.baz", "foo bar.baz"));
+        assertNull(trie.get("foo bar.baz"));
+        assertEquals(flatten(trie.getSubtree("foo bar")), Arrays.asList("foo bar"));
+    }
+
+    /**
+     * Rough benchmark comparing OverwriteTrie against the sorted-map prefix
+     * scan which OverwriteChecker used to use, on a synthetic mod roughly the
+     * size of the larger ones out there.  Disabled by default since it
+     * doesn't actually test anything; enable it by hand to get numbers.
+     */
+    @Test(enabled = false)
+    public void benchmarkAgainstTreeMap() {
+        Random random = new Random(42);
+        String[] attrs = {"basevalueconstant", "attributeinitializationdefinition", "mesh", "weight"};
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            StringBuilder key = new StringBuilder();
+            key.append("gd_obj").append(random.nextInt(3000)).append(".part:sub").append(random.nextInt(5));
+            key.append(" ").append(attrs[random.nextInt(attrs.length)]);
+            if (random.nextBoolean()) {
+                key.append("[").append(random.nextInt(8)).append("]");
+            }
+            if (random.nextBoolean()) {
+                key.append(".").append(attrs[random.nextInt(attrs.length)]);
+            }
+            keys.add(key.toString());
+        }
+
+        OverwriteTrie<String> trie = new OverwriteTrie<>();
+        TreeMap<String, TreeSet<String>> map = new TreeMap<>();
+        for (String key : keys) {
+            trie.add(key, key);
+            map.computeIfAbsent(key, k -> new TreeSet<>()).add(key);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long trieCount = 0;
+            for (String key : keys) {
+                trieCount += trie.getDescendants(key, true).size();
+                trieCount += trie.getAncestors(key, key.indexOf(' '), true, true).size();
+            }
+            long trieTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long mapCount = 0;
+            for (String key : keys) {
+                for (String prefix : prefixRange(map, key).keySet()) {
+                    if (isValidSuperString(key, prefix)) {
+                        mapCount++;
+                    }
+                }
+                int space = key.indexOf(' ');
+                int head = key.length();
+                for (int i = space; i < key.length(); i++) {
+                    if (key.charAt(i) == '.' || key.charAt(i) == '[') {
+                        head = i;
+                        break;
+                    }
+                }
+                for (String prefix : prefixRange(map, key.substring(0, head)).keySet()) {
+                    if (key.startsWith(prefix) && isValidSuperString(key, prefix)) {
+                        mapCount++;
+                    }
+                }
+            }
+            long mapTime = System.nanoTime() - start;
+
+            assertEquals(trieCount, mapCount);
+            System.out.println(String.format("Round %d: trie %d ms, TreeMap %d ms (%d matches)",
+                    round + 1, trieTime / 1000000, mapTime / 1000000, trieCount));
+        }
+    }
+
+    /**
+     * The old sorted-map prefix lookup, for benchmarking.
+     */
+    private static SortedMap<String, TreeSet<String>> prefixRange(TreeMap<String, TreeSet<String>> map, String prefix) {
+        StringBuilder sb = new StringBuilder(prefix);
+        sb.setCharAt(sb.length() - 1, (char) (sb.charAt(sb.length() - 1) + 1));
+        return map.subMap(prefix, sb.toString());
+    }
+
+    /**
+     * The old whole-string validity check, for benchmarking.
+     */
+    private static boolean isValidSuperString(String prefix, String superString) {
+        if (prefix.length() == superString.length()) {
+            return true;
+        }
+        if (superString.length() < prefix.length()) {
+            return isValidSuperString(superString, prefix);
+        }
+        if (superString.charAt(prefix.length()) == '.') {
+            return true;
+        }
+        int x = prefix.length();
+        if (superString.charAt(x) != '[') {
+            return false;
+        }
+        x++;
+        while (x < superString.length() && Character.isDigit(superString.charAt(x))) {
+            x++;
+        }
+        return x < superString.length() && superString.charAt(x) == ']';
+    }
+
+}
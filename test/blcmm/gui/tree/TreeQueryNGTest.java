@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.tree;
+
+import blcmm.model.Category;
+import blcmm.model.Comment;
+import blcmm.model.HotfixType;
+import blcmm.model.HotfixWrapper;
+import blcmm.model.ModelElement;
+import blcmm.model.SetCommand;
+import blcmm.utilities.Options;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.tree.DefaultMutableTreeNode;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class TreeQueryNGTest {
+
+    private final TreeSearchIndex index;
+
+    public TreeQueryNGTest() throws Exception {
+        Options.loadOptions(null);
+        DefaultMutableTreeNode root = new DefaultMutableTreeNode(new Category("Root"));
+        DefaultMutableTreeNode cat = new DefaultMutableTreeNode(new Category("Weapon Tweaks"));
+        root.add(cat);
+        cat.add(new DefaultMutableTreeNode(new Comment("Makes the Foo better")));
+        cat.add(new DefaultMutableTreeNode(new SetCommand("GD_Weap.Foo", "Damage", "100")));
+        cat.add(new DefaultMutableTreeNode(new SetCommand("GD_Weap.Bar", "Damage", "(Value=\"Foo Bar\")")));
+        HotfixWrapper patch = new HotfixWrapper("patch", HotfixType.PATCH, "",
+                Arrays.asList("set GD_Weap.Foo Accuracy 5"));
+        HotfixWrapper level = new HotfixWrapper("level", HotfixType.LEVEL, "Foo_P",
+                Arrays.asList("set Foo_P.Thing Damage 50"));
+        for (HotfixWrapper wrapper : new HotfixWrapper[]{patch, level}) {
+            for (ModelElement command : wrapper.getElements()) {
+                cat.add(new DefaultMutableTreeNode(command));
+            }
+        }
+        this.index = new TreeSearchIndex(root, null);
+    }
+
+    /**
+     * Runs a query over our test tree, returning the labels of the nodes
+     * which matched.
+     */
+    private List<String> run(String query) {
+        TreeQuery q = new TreeQuery(query);
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < this.index.size(); i++) {
+            if (this.index.matches(i, q)) {
+                Object userObject = this.index.getNode(i).getUserObject();
+                results.add(userObject instanceof SetCommand ? ((SetCommand) userObject).getCode() : userObject.toString());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Test of isQuery method, of class TreeQuery.
+     */
+    @Test
+    public void testIsQuery() {
+        assertFalse(TreeQuery.isQuery("GD_Weap.Foo"));
+        assertFalse(TreeQuery.isQuery("foo bar"));
+        assertFalse(TreeQuery.isQuery("/"));
+        assertFalse(TreeQuery.isQuery("thing:foo"));
+        assertTrue(TreeQuery.isQuery("/foo/"));
+        assertTrue(TreeQuery.isQuery("Object:foo"));
+        assertTrue(TreeQuery.isQuery("damage hotfix:any"));
+    }
+
+    /**
+     * Test of plain and regex terms.
+     */
+    @Test
+    public void testUnscoped() {
+        assertEquals(run("/^MAKES/"), Arrays.asList("Makes the Foo better"));
+        assertEquals(run("\"/weap\\.(foo|bar) damage/\""), Arrays.asList(
+                "set GD_Weap.Foo Damage 100", "set GD_Weap.Bar Damage (Value=\"Foo Bar\")"));
+        assertEquals(run("/tweaks/"), Arrays.asList("Weapon Tweaks"));
+    }
+
+    /**
+     * Test of object/field/value scoping.
+     */
+    @Test
+    public void testScoped() {
+        assertEquals(run("object:foo"), Arrays.asList(
+                "set GD_Weap.Foo Damage 100", "set GD_Weap.Foo Accuracy 5", "set Foo_P.Thing Damage 50"));
+        assertEquals(run("object:/^gd_/ field:damage"), Arrays.asList(
+                "set GD_Weap.Foo Damage 100", "set GD_Weap.Bar Damage (Value=\"Foo Bar\")"));
+        assertEquals(run("value:\"foo bar\""), Arrays.asList("set GD_Weap.Bar Damage (Value=\"Foo Bar\")"));
+        assertEquals(run("\"value:/^\\d+$/\" field:damage foo"), Arrays.asList(
+                "set GD_Weap.Foo Damage 100", "set Foo_P.Thing Damage 50"));
+    }
+
+    /**
+     * Test of hotfix filtering.
+     */
+    @Test
+    public void testHotfix() {
+        assertEquals(run("hotfix:any"), Arrays.asList("set GD_Weap.Foo Accuracy 5", "set Foo_P.Thing Damage 50"));
+        assertEquals(run("hotfix:level"), Arrays.asList("set Foo_P.Thing Damage 50"));
+        assertEquals(run("hotfix:ondemand,patch"), Arrays.asList("set GD_Weap.Foo Accuracy 5"));
+        assertEquals(run("hotfix:none damage"), Arrays.asList(
+                "set GD_Weap.Foo Damage 100", "set GD_Weap.Bar Damage (Value=\"Foo Bar\")"));
+    }
+
+    /**
+     * Test of invalid queries.
+     */
+    @Test
+    public void testInvalid() {
+        for (String query : new String[]{"/[unclosed/", "hotfix:sometimes", "object:", ""}) {
+            try {
+                new TreeQuery(query);
+                fail("Expected an exception for: " + query);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.gui.tree;
+
+import blcmm.model.Category;
+import blcmm.model.Comment;
+import blcmm.model.SetCMPCommand;
+import blcmm.model.SetCommand;
+import blcmm.utilities.Options;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import javax.swing.tree.DefaultMutableTreeNode;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class TreeSearchIndexNGTest {
+
+    public TreeSearchIndexNGTest() throws Exception {
+        Options.loadOptions(null);
+    }
+
+    /**
+     * Builds a tree of nested categories full of statements, with a comment
+     * and an empty category thrown in here and there.
+     */
+    private DefaultMutableTreeNode buildTree(Random random, int categories, int statements) {
+        DefaultMutableTreeNode root = new DefaultMutableTreeNode(new Category("Root"));
+        List<DefaultMutableTreeNode> cats = new ArrayList<>();
+        cats.add(root);
+        for (int i = 0; i < categories; i++) {
+            DefaultMutableTreeNode parent = cats.get(random.nextInt(cats.size()));
+            DefaultMutableTreeNode cat = new DefaultMutableTreeNode(
+                    new Category("Category " + i + (i % 7 == 0 ? " GD_Foo" : "")));
+            parent.add(cat);
+            cats.add(cat);
+        }
+        for (int i = 0; i < statements; i++) {
+            DefaultMutableTreeNode parent = cats.get(random.nextInt(cats.size()));
+            if (i % 50 == 0) {
+                parent.add(new DefaultMutableTreeNode(new Comment("Comment mentioning gd_foo " + i)));
+            } else {
+                parent.add(new DefaultMutableTreeNode(new SetCommand(
+                        (random.nextBoolean() ? "GD_Foo.Obj_" : "GD_Bar.Obj_") + i,
+                        "Attr", Integer.toString(random.nextInt(1000)))));
+            }
+        }
+        return root;
+    }
+
+    /**
+     * The old way of searching, walking every node in the tree.
+     */
+    private List<DefaultMutableTreeNode> bruteForce(DefaultMutableTreeNode root, String query, boolean includeCode) {
+        List<DefaultMutableTreeNode> results = new ArrayList<>();
+        Enumeration<?> e = root.preorderEnumeration();
+        while (e.hasMoreElements()) {
+            DefaultMutableTreeNode node = (DefaultMutableTreeNode) e.nextElement();
+            if (node.isLeaf() && !includeCode) {
+                continue;
+            }
+            String s;
+            if (node.getUserObject() instanceof SetCommand) {
+                s = ((SetCommand) node.getUserObject()).getCode();
+            } else {
+                s = node.toString();
+            }
+            if (s.toLowerCase().contains(query.toLowerCase())) {
+                results.add(node);
+            }
+        }
+        return results;
+    }
+
+    private List<DefaultMutableTreeNode> toNodes(TreeSearchIndex index, int[] hits) {
+        List<DefaultMutableTreeNode> nodes = new ArrayList<>();
+        for (int hit : hits) {
+            nodes.add(index.getNode(hit));
+        }
+        return nodes;
+    }
+
+    /**
+     * Test of find method, of class TreeSearchIndex, compared against a
+     * walk through the whole tree.
+     */
+    @Test
+    public void testFind() {
+        DefaultMutableTreeNode root = this.buildTree(new Random(42), 50, 2000);
+        TreeSearchIndex index = new TreeSearchIndex(root, null);
+        for (String query : new String[]{"gd_foo", "GD_BAR.obj_1", "category 1", "attr 5", "nothing"}) {
+            for (boolean includeCode : new boolean[]{false, true}) {
+                assertEquals(this.toNodes(index, index.find(query, includeCode)),
+                        this.bruteForce(root, query, includeCode));
+            }
+        }
+        assertEquals(index.find("nothing", true).length, 0);
+        assertSame(index.find("GD_Foo", true), index.find("gd_foo", true));
+    }
+
+    /**
+     * Test of find method, of class TreeSearchIndex, on set_cmp statements,
+     * whose code includes both the keyword and the compare value.
+     */
+    @Test
+    public void testFindSetCmp() {
+        DefaultMutableTreeNode root = this.buildTree(new Random(3), 10, 100);
+        DefaultMutableTreeNode cmp = new DefaultMutableTreeNode(
+                new SetCMPCommand("GD_Cmp.Obj", "Attr", "OldValue", "NewValue"));
+        root.add(cmp);
+        TreeSearchIndex index = new TreeSearchIndex(root, null);
+        for (String query : new String[]{"set_cmp", "set_cmp gd_cmp.obj", "oldvalue", "attr oldvalue newvalue"}) {
+            int[] hits = index.find(query, true);
+            assertEquals(hits.length, 1, query);
+            assertSame(index.getNode(hits[0]), cmp);
+        }
+        assertEquals(this.toNodes(index, index.find("gd_cmp", true)), this.bruteForce(root, "gd_cmp", true));
+        // TreeQuery's unscoped terms match against the same text
+        assertTrue(index.matches(index.getPosition(cmp), new TreeQuery("/^set_cmp.*oldvalue/")));
+    }
+
+    /**
+     * Test of getPosition method, of class TreeSearchIndex.
+     */
+    @Test
+    public void testGetPosition() {
+        DefaultMutableTreeNode root = this.buildTree(new Random(1), 10, 100);
+        TreeSearchIndex index = new TreeSearchIndex(root, null);
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(index.getPosition(index.getNode(i)), i);
+        }
+        assertEquals(index.getPosition(new DefaultMutableTreeNode("Elsewhere")), -1);
+    }
+
+    /**
+     * Test that rebuilding an index reuses the statement text from the
+     * previous one.
+     */
+    @Test
+    public void testRebuild() {
+        DefaultMutableTreeNode root = this.buildTree(new Random(7), 10, 100);
+        TreeSearchIndex first = new TreeSearchIndex(root, null);
+        DefaultMutableTreeNode added = new DefaultMutableTreeNode(new SetCommand("GD_New.Obj", "Attr", "1"));
+        root.add(added);
+        TreeSearchIndex second = new TreeSearchIndex(root, first);
+        assertEquals(second.size(), first.size() + 1);
+        int[] hits = second.find("gd_new", true);
+        assertEquals(hits.length, 1);
+        assertSame(second.getNode(hits[0]), added);
+        assertEquals(this.toNodes(second, second.find("gd_foo", true)), this.bruteForce(root, "gd_foo", true));
+    }
+
+}
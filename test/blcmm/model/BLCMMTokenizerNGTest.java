@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model;
+
+import blcmm.model.BLCMMTokenizer.TokenType;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class BLCMMTokenizerNGTest {
+
+    private BLCMMTokenizer tokenize(String data) {
+        return new BLCMMTokenizer(new BufferedReader(new StringReader(data)));
+    }
+
+    /**
+     * Test of basic tag and text tokens.
+     */
+    @Test
+    public void testTags() throws IOException {
+        BLCMMTokenizer t = this.tokenize("<BLCMM v=\"1\">\n\t<type name=\"BL2\" offline=\"false\"/>\n\n   \n<code profiles=\"a,b\">set foo bar 1</code></BLCMM>");
+        assertEquals(t.next(), TokenType.OPEN_TAG);
+        assertEquals(t.getName(), "BLCMM");
+        assertEquals(t.getArgument("v"), "1");
+        assertEquals(t.next(), TokenType.SINGLE_TAG);
+        assertEquals(t.getName(), "type");
+        assertEquals(t.getArgument("name"), "BL2");
+        assertEquals(t.getArgument("offline"), "false");
+        assertFalse(t.hasArgument("v"));
+        assertEquals(t.next(), TokenType.OPEN_TAG);
+        assertEquals(t.getName(), "code");
+        assertEquals(t.getArgument("profiles"), "a,b");
+        assertEquals(t.next(), TokenType.TEXT);
+        assertEquals(t.getTokenString(), "set foo bar 1");
+        assertEquals(t.next(), TokenType.CLOSE_TAG);
+        assertEquals(t.getName(), "code");
+        assertEquals(t.next(), TokenType.CLOSE_TAG);
+        assertEquals(t.getName(), "BLCMM");
+        assertEquals(t.next(), TokenType.END);
+    }
+
+    /**
+     * Test of escaped quotes inside tag arguments.
+     */
+    @Test
+    public void testEscapedArguments() throws IOException {
+        BLCMMTokenizer t = this.tokenize("<category name=\"foo \\\"bar\\\" \\\\ baz\" MUT=\"true\">");
+        assertEquals(t.next(), TokenType.OPEN_TAG);
+        assertEquals(t.getArgument("name"), "foo \"bar\" \\ baz");
+        assertTrue(t.hasArgument("MUT"));
+    }
+
+    /**
+     * Test of readContent method, of class BLCMMTokenizer, including things
+     * which look like tags, and unbalanced quotes.
+     */
+    @Test
+    public void testReadContent() throws IOException {
+        BLCMMTokenizer t = this.tokenize(
+                "<code>set foo bar (a=<b>, c=\"x\")</code>\n"
+                + "<code>set foo bar \"unbalanced <x></code>\n"
+                + "<comment>a<b and <3</comment>\n"
+                + "<comment></comment>\n");
+        String[] expected = new String[]{
+            "set foo bar (a=<b>, c=\"x\")",
+            "set foo bar \"unbalanced <x>",
+            "a<b and <3",
+            "",};
+        for (String content : expected) {
+            assertEquals(t.next(), TokenType.OPEN_TAG);
+            String name = t.getName();
+            assertEquals(t.readContent(name), content);
+            assertEquals(t.next(), TokenType.CLOSE_TAG);
+            assertEquals(t.getName(), name);
+        }
+        assertEquals(t.next(), TokenType.END);
+    }
+
+    /**
+     * Test of garbage-character and FilterTool-warning handling.
+     */
+    @Test
+    public void testGarbage() throws IOException {
+        BLCMMTokenizer t = this.tokenize(PatchIO.FT_UPDATE_STRING + "\n<co\u0000de>set x y\uFFFD z</code>");
+        assertEquals(t.next(), TokenType.OPEN_TAG);
+        assertEquals(t.getName(), "code");
+        assertEquals(t.readContent("code"), "set x y z");
+    }
+
+    /**
+     * Lines which don't end in a tag are invalid.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnterminatedLine() throws IOException {
+        BLCMMTokenizer t = this.tokenize("<code>set foo bar baz\n</code>");
+        assertEquals(t.next(), TokenType.OPEN_TAG);
+        t.readContent("code");
+    }
+
+    /**
+     * Rough benchmark comparing the tokenizer against the old Line-based
+     * splitting which BLCMMParser used to use, on a synthetic mod roughly the
+     * size of the larger ones out there.  Reports parse time and the number
+     * of bytes allocated.  Disabled by default since it doesn't actually
+     * test anything; enable it by hand to get numbers.
+     */
+    @Test(enabled = false)
+    public void benchmarkAgainstLines() throws IOException {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        sb.append("<BLCMM v=\"1\">\n\t<body>\n\t\t<category name=\"root\">\n");
+        for (int i = 0; i < 200000; i++) {
+            switch (random.nextInt(10)) {
+                case 0:
+                    sb.append("\t\t\t<comment>Some comment text for element ").append(i).append("</comment>\n");
+                    break;
+                case 1:
+                    sb.append("\t\t\t<category name=\"Category ").append(i).append("\">\n");
+                    sb.append("\t\t\t\t<code profiles=\"default\">set gd_obj").append(i).append(".part Foo 1</code>\n");
+                    sb.append("\t\t\t</category>\n");
+                    break;
+                default:
+                    sb.append("\t\t\t<code profiles=\"default\">set gd_obj").append(i)
+                            .append(".part:sub BaseValueConstant (A=1,B=\"").append(random.nextInt()).append("\")</code>\n");
+                    break;
+            }
+        }
+        sb.append("\t\t</category>\n\t</body>\n</BLCMM>\n");
+        String data = sb.toString();
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < 5; round++) {
+            long startBytes = bean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            int tokenCount = 0;
+            BLCMMTokenizer t = this.tokenize(data);
+            TokenType type;
+            while ((type = t.next()) != TokenType.END) {
+                if (type != TokenType.TEXT) {
+                    tokenCount++;
+                }
+            }
+            long tokenizerTime = System.nanoTime() - start;
+            long tokenizerBytes = bean.getThreadAllocatedBytes(threadId) - startBytes;
+
+            startBytes = bean.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            int lineCount = 0;
+            BufferedReader br = new BufferedReader(new StringReader(data));
+            String line;
+            while ((line = br.readLine()) != null) {
+                for (Object o : new OldLine(line).elements) {
+                    if (o instanceof OldXMLTag) {
+                        lineCount++;
+                    }
+                }
+            }
+            long lineTime = System.nanoTime() - start;
+            long lineBytes = bean.getThreadAllocatedBytes(threadId) - startBytes;
+
+            assertEquals(tokenCount, lineCount);
+            System.out.println(String.format("Round %d: tokenizer %d ms / %d MB, Line %d ms / %d MB (%d tags)",
+                    round + 1,
+                    tokenizerTime / 1000000, tokenizerBytes / (1024 * 1024),
+                    lineTime / 1000000, lineBytes / (1024 * 1024),
+                    tokenCount));
+        }
+    }
+
+    /**
+     * The old XMLTag class, for benchmarking.
+     */
+    private static class OldXMLTag {
+
+        String name;
+        HashMap<String, String> arguments = new HashMap<>();
+        boolean single;
+        boolean end;
+
+        OldXMLTag(String tag) {
+            end = tag.startsWith("</");
+            single = tag.endsWith("/>");
+            int spaceidx = tag.indexOf(" ");
+            name = spaceidx == -1 ? tag.substring(end ? 2 : 1, tag.length() - (single ? 2 : 1)) : tag.substring(end ? 2 : 1, spaceidx);
+            while (spaceidx > 0) {
+                int eqidx = tag.indexOf("=", spaceidx);
+                int begqidx = tag.indexOf("\"", eqidx);
+                int endqidx = tag.indexOf("\"", begqidx + 1);
+                while (tag.charAt(endqidx - 1) == '\\') {
+                    endqidx = tag.indexOf("\"", endqidx + 1);
+                }
+                String arg = tag.substring(spaceidx + 1, eqidx).trim();
+                String val = PatchIO.unescape(tag.substring(begqidx + 1, endqidx));
+                arguments.put(arg, val);
+                spaceidx = tag.indexOf(" ", endqidx);
+            }
+        }
+    }
+
+    /**
+     * The old Line class, for benchmarking.
+     */
+    private static class OldLine {
+
+        private final List<Object> elements = new ArrayList<>();
+
+        private OldLine(String line) {
+            line = line.trim();
+            int idx = 0;
+            int tag = -1;
+            while (idx < line.length()) {
+                if (line.charAt(idx) == '<' && lookaheadForTag(line, idx) != -1) {
+                    if (tag == -1) {
+                        int idx2 = idx + 1;
+                        boolean inquotes = false;
+                        while (true) {
+                            char c = line.charAt(idx2);
+                            idx2++;
+                            if (c == '>' && !inquotes) {
+                                break;
+                            } else if (c == '"') {
+                                if (!inquotes) {
+                                    inquotes = true;
+                                } else if (idx2 > 1 && line.charAt(idx2 - 2) != '\\') {
+                                    inquotes = false;
+                                }
+                            }
+                        }
+                        elements.add(new OldXMLTag(line.substring(idx, idx2)));
+                        idx = idx2;
+                    } else {
+                        elements.add(new OldXMLTag(line.substring(idx, tag + 1)));
+                        idx = tag + 1;
+                        tag = -1;
+                    }
+                } else {
+                    int idx2 = idx;
+                    boolean inquotes = false;
+                    int lastStart = -1;
+                    while (true) {
+                        if (idx2 == line.length()) {
+                            if (lastStart != -1) {
+                                idx2 = lastStart;
+                                break;
+                            } else {
+                                throw new IllegalArgumentException(line);
+                            }
+                        }
+                        char c = line.charAt(idx2);
+                        if (c == '<') {
+                            tag = lookaheadForTag(line, idx2);
+                            if (tag != -1) {
+                                if (!inquotes) {
+                                    break;
+                                } else {
+                                    lastStart = idx2;
+                                }
+                            }
+                        } else if (c == '"') {
+                            inquotes = !inquotes;
+                        }
+                        idx2++;
+                    }
+                    elements.add(line.substring(idx, idx2));
+                    idx = idx2;
+                }
+            }
+        }
+
+        private static int lookaheadForTag(String line, int idx2) {
+            int idx3 = idx2 + 1;
+            boolean lookingForArguments = false;
+            boolean lookingForValue = false;
+            boolean hasletter = false;
+            while (idx3 < line.length()) {
+                char c = line.charAt(idx3);
+                if (!lookingForArguments) {
+                    if (c == '>' && idx3 - idx2 > 1) {
+                        return idx3;
+                    }
+                    if (c == ' ') {
+                        lookingForArguments = true;
+                    } else if (!Character.isAlphabetic(c) && !(idx3 - idx2 == 1 && c == '/')) {
+                        return -1;
+                    }
+                } else {
+                    if (lookingForValue) {
+                        if (c == '"' && line.charAt(idx3 - 1) != '\\') {
+                            lookingForValue = false;
+                            hasletter = false;
+                        }
+                    } else {
+                        if (c == '=') {
+                            if (line.charAt(idx3 + 1) == '"') {
+                                idx3++;
+                                lookingForValue = true;
+                            } else {
+                                return -1;
+                            }
+                        } else if (c == '>' && !hasletter) {
+                            return idx3;
+                        } else if (c == '/' && line.charAt(idx3 + 1) == '>' && !hasletter) {
+                            idx3++;
+                            return idx3;
+                        } else if (c == ' ' && !hasletter) {//skip
+                        } else if (!Character.isAlphabetic(c)) {
+                            return -1;
+                        } else {
+                            hasletter = true;
+                        }
+                    }
+                }
+                idx3++;
+            }
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model;
+
+import blcmm.model.attrparser.LevelDepArray;
+import blcmm.model.attrparser.LevelDepParser;
+import blcmm.model.attrparser.LevelDepString;
+import blcmm.model.attrparser.LevelDepStruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class LevelListMergerNGTest {
+
+    private static final String VANILLA = "("
+            + "(PersistentMap=\"Foo_P\",SecondaryMaps=(\"Foo_Audio\",\"Foo_FX\"),ConnectedPersistents=(\"Bar_P\")),"
+            + "(PersistentMap=\"Bar_P\",SecondaryMaps=(\"Bar_Audio\"),ConnectedPersistents=())"
+            + ")";
+
+    private LevelDepArray<LevelDepStruct> parse(String value) {
+        return ((LevelDepArray<?>) LevelDepParser.parse(value)).asArrayOf(LevelDepStruct.class);
+    }
+
+    /**
+     * Test of merge method, of class LevelListMerger.
+     */
+    @Test
+    public void testMerge() {
+        LevelListMerger merger = new LevelListMerger(parse(VANILLA));
+        merger.merge(parse("((PersistentMap=\"foo_p\",SecondaryMaps=(\"Mod_One\",\"FOO_FX\",,\"Mod_Two\")))"));
+        merger.merge(parse("((PersistentMap=\"Foo_P\",SecondaryMaps=(\"mod_one\",\"Mod_Three\")),"
+                + "(PersistentMap=\"Nowhere_P\",SecondaryMaps=(\"Mod_Four\")))"));
+        assertEquals(merger.getResult().toString(), "("
+                + "(PersistentMap=\"Foo_P\",SecondaryMaps=(\"Foo_Audio\",\"Foo_FX\",\"Mod_One\",\"Mod_Two\",\"Mod_Three\"),ConnectedPersistents=(\"Bar_P\")),"
+                + "(PersistentMap=\"Bar_P\",SecondaryMaps=(\"Bar_Audio\"),ConnectedPersistents=())"
+                + ")");
+        assertEquals(merger.getMerged(), Arrays.asList(
+                "\"foo_p\": Mod_One", "\"foo_p\": Mod_Two", "\"Foo_P\": Mod_Three"));
+    }
+
+    /**
+     * Test of merge method, of class LevelListMerger, with a value that's
+     * not in the format we expect.
+     */
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testMergeInvalid() {
+        LevelListMerger merger = new LevelListMerger(parse(VANILLA));
+        merger.merge(parse("((SecondaryMaps=(\"Mod_One\")))"));
+    }
+
+    /**
+     * Test of merge method, of class LevelListMerger, merging straight from
+     * the attribute text.
+     */
+    @Test
+    public void testMergeStreaming() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            String vanilla = randomLevelList(random, 20, 10);
+            LevelListMerger tree = new LevelListMerger(parse(vanilla));
+            LevelListMerger streaming = new LevelListMerger(parse(vanilla));
+            for (int i = 0; i < 50; i++) {
+                String mod = randomLevelList(random, 3, 5);
+                tree.merge(parse(mod));
+                streaming.merge(mod);
+            }
+            assertEquals(streaming.getResult().toString(), tree.getResult().toString());
+            assertEquals(streaming.getMerged(), tree.getMerged());
+        }
+    }
+
+    /**
+     * Test of merge method, of class LevelListMerger, merging straight from
+     * attribute text which has extra attributes and nesting we don't care
+     * about.
+     */
+    @Test
+    public void testMergeStreamingExtras() {
+        LevelListMerger merger = new LevelListMerger(parse(VANILLA));
+        merger.merge("((Extra=((A=1),(B=(2,3))),SecondaryMaps=(\"Mod_One\",,\"FOO_FX\"),"
+                + "PersistentMap=\"foo_p\",ConnectedPersistents=(\"Bar_P\")))");
+        assertEquals(merger.getResult().toString(), "("
+                + "(PersistentMap=\"Foo_P\",SecondaryMaps=(\"Foo_Audio\",\"Foo_FX\",\"Mod_One\"),ConnectedPersistents=(\"Bar_P\")),"
+                + "(PersistentMap=\"Bar_P\",SecondaryMaps=(\"Bar_Audio\"),ConnectedPersistents=())"
+                + ")");
+        assertEquals(merger.getMerged(), Arrays.asList("\"foo_p\": Mod_One"));
+    }
+
+    /**
+     * Test of merge method, of class LevelListMerger, merging straight from
+     * attribute text that's not in the format we expect.
+     */
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testMergeStreamingInvalid() {
+        LevelListMerger merger = new LevelListMerger(parse(VANILLA));
+        merger.merge("((SecondaryMaps=(\"Mod_One\")))");
+    }
+
+    /**
+     * Test of merge method, of class LevelListMerger, merging straight from
+     * attribute text with strings where the entries should be.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergeStreamingNotStructs() {
+        LevelListMerger merger = new LevelListMerger(parse(VANILLA));
+        merger.merge("(\"Foo_P\",\"Mod_One\")");
+    }
+
+    /**
+     * Compares LevelListMerger against the nested-loop merge which PatchIO
+     * used to do, on a bunch of randomly-generated stacked merge mods.
+     */
+    @Test
+    public void testMatchesOldMerge() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            String vanilla = randomLevelList(random, 20, 10);
+            List<String> mods = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                mods.add(randomLevelList(random, 3, 5));
+            }
+            LevelListMerger merger = new LevelListMerger(parse(vanilla));
+            LevelDepArray<LevelDepStruct> old = parse(vanilla);
+            for (String mod : mods) {
+                merger.merge(parse(mod));
+                oldMerge(old, parse(mod));
+            }
+            assertEquals(merger.getResult().toString(), old.toString());
+        }
+    }
+
+    /**
+     * Rough benchmark comparing LevelListMerger against the old nested-loop
+     * merge, with a lot of merge mods stacked up on a large level list.
+     * Disabled by default since it doesn't actually test anything; enable it
+     * by hand to get numbers.
+     */
+    @Test(enabled = false)
+    public void benchmarkAgainstOldMerge() {
+        Random random = new Random(42);
+        String vanilla = randomLevelList(random, 200, 30);
+        List<LevelDepArray<LevelDepStruct>> mods = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            mods.add(parse(randomLevelList(random, 20, 20)));
+        }
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            LevelListMerger merger = new LevelListMerger(parse(vanilla));
+            for (LevelDepArray<LevelDepStruct> mod : mods) {
+                merger.merge(mod);
+            }
+            long newTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            LevelDepArray<LevelDepStruct> old = parse(vanilla);
+            for (LevelDepArray<LevelDepStruct> mod : mods) {
+                oldMerge(old, mod);
+            }
+            long oldTime = System.nanoTime() - start;
+
+            assertEquals(merger.getResult().toString(), old.toString());
+            System.out.println(String.format("Round %d: LevelListMerger %d ms, old merge %d ms (%d merged)",
+                    round + 1, newTime / 1000000, oldTime / 1000000, merger.getMerged().size()));
+        }
+    }
+
+    /**
+     * Generates a random LevelList value, with persistent and secondary map
+     * names drawn from a small enough pool that there's plenty of overlap.
+     */
+    private static String randomLevelList(Random random, int entries, int secondaries) {
+        List<String> structs = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            List<String> secs = new ArrayList<>();
+            for (int j = 0; j < secondaries; j++) {
+                String name = "Map_" + random.nextInt(entries * secondaries * 2);
+                secs.add("\"" + (random.nextBoolean() ? name.toUpperCase() : name) + "\"");
+            }
+            structs.add("(PersistentMap=\"Level_" + random.nextInt(entries * 2) + "_P\",SecondaryMaps=("
+                    + String.join(",", secs) + "))");
+        }
+        return "(" + String.join(",", structs) + ")";
+    }
+
+    /**
+     * The old nested-loop merge from PatchIO.analyzeLevelMerges, for
+     * comparison.
+     */
+    private static void oldMerge(LevelDepArray<LevelDepStruct> vanillaArray, LevelDepArray<LevelDepStruct> userArray) {
+        for (int i = 0; i < userArray.size(); i++) {
+            String userPersistent = userArray.get(i).getString("PersistentMap");
+            LevelDepArray<?> userSecondaries = userArray.get(i).getArray("SecondaryMaps");
+            for (int j = 0; j < vanillaArray.size(); j++) {
+                String vanillaPersistent = vanillaArray.get(j).getString("PersistentMap");
+                LevelDepArray<LevelDepString> vanillaSecondaries = ((LevelDepArray<?>) vanillaArray.get(j).getArray("SecondaryMaps")).asArrayOf(LevelDepString.class);
+                if (userPersistent.equalsIgnoreCase(vanillaPersistent)) {
+                    for (int k = 0; k < userSecondaries.size(); k++) {
+                        LevelDepString newsec = (LevelDepString) userSecondaries.get(k);
+                        if (newsec != null) {
+                            boolean present = false;
+                            for (int l = 0; l < vanillaSecondaries.size(); l++) {
+                                LevelDepString oldsec = vanillaSecondaries.get(l);
+                                if (oldsec.equalsIgnoreCase(newsec)) {
+                                    present = true;
+                                }
+                            }
+                            if (!present) {
+                                vanillaSecondaries.add(newsec);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
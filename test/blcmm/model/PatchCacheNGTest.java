@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model;
+
+import blcmm.utilities.Options;
+import blcmm.utilities.Utilities;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class PatchCacheNGTest {
+
+    private static final String PATCH = String.join("\n",
+            "<BLCMM v=\"1\">",
+            "\t<head>",
+            "\t\t<type name=\"BL2\" offline=\"false\"/>",
+            "\t\t<profiles>",
+            "\t\t\t<profile name=\"default\" current=\"true\"/>",
+            "\t\t\t<profile name=\"other\"/>",
+            "\t\t</profiles>",
+            "\t</head>",
+            "\t<body>",
+            "\t\t<category name=\"patch\">",
+            "\t\t\t<comment>Some comment</comment>",
+            "\t\t\t<code profiles=\"default,other\">set GD_Foo.Bar BaseValueConstant 1</code>",
+            "\t\t\t<code profiles=\"other\">set GD_Foo.Bar Attr (A=1,B=\"x\")</code>",
+            "\t\t\t<category name=\"Choose one\" MUT=\"true\">",
+            "\t\t\t\t<code profiles=\"default\">set GD_Foo.Baz Value 2</code>",
+            "\t\t\t\t<code profiles=\"default\">set GD_Foo.Baz Value 3</code>",
+            "\t\t\t</category>",
+            "\t\t\t<category name=\"Hotfixes\" locked=\"true\">",
+            "\t\t\t\t<hotfix name=\"one\" level=\"None\">",
+            "\t\t\t\t\t<code profiles=\"default\">set GD_Foo.Hotfix Value 4</code>",
+            "\t\t\t\t\t<code profiles=\"default\">set_cmp GD_Foo.Hotfix Other 1 5</code>",
+            "\t\t\t\t</hotfix>",
+            "\t\t\t\t<hotfix name=\"two\" package=\"GD_Soldier_Streaming\">",
+            "\t\t\t\t\t<code profiles=\"\">set GD_Foo.Hotfix Third 6</code>",
+            "\t\t\t\t</hotfix>",
+            "\t\t\t</category>",
+            "\t\t</category>",
+            "\t</body>",
+            "</BLCMM>",
+            "");
+
+    private static final Pattern PROFILES = Pattern.compile("profiles=\"([^\"]*)\"");
+
+    private File cacheDir;
+    private File patchFile;
+
+    public PatchCacheNGTest() throws Exception {
+        Options.loadOptions(null);
+    }
+
+    @BeforeMethod
+    public void setUpMethod() throws Exception {
+        this.cacheDir = Files.createTempDirectory("patchcache_test").toFile();
+        this.patchFile = File.createTempFile("patchcache_test", ".blcm");
+        Files.write(this.patchFile.toPath(), PATCH.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterMethod
+    public void tearDownMethod() throws Exception {
+        Utilities.deepDelete(this.cacheDir);
+        this.patchFile.delete();
+    }
+
+    /**
+     * Saves the given patch to a string.  The order of profiles on each
+     * statement isn't stable between patches, so those get sorted.
+     */
+    private static String save(CompletePatch patch) throws IOException {
+        StringWriter writer = new StringWriter();
+        PatchIO.writeToFile(patch, writer, false);
+        Matcher matcher = PROFILES.matcher(writer.toString());
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String[] profiles = matcher.group(1).split(",");
+            Arrays.sort(profiles);
+            matcher.appendReplacement(sb, "profiles=\"" + String.join(",", profiles) + "\"");
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Asserts that two patches have the same tree, including selection
+     * state and the results of all our property checks.
+     */
+    private static void assertSamePatch(CompletePatch actual, CompletePatch expected) throws IOException {
+        assertEquals(save(actual), save(expected));
+        assertEquals(actual.getCurrentProfile().getName(), expected.getCurrentProfile().getName());
+        List<ModelElement> actualElements = actual.getRoot().listRecursiveContentMinusCategories();
+        List<ModelElement> expectedElements = expected.getRoot().listRecursiveContentMinusCategories();
+        assertEquals(actualElements.size(), expectedElements.size());
+        for (int i = 0; i < actualElements.size(); i++) {
+            ModelElement a = actualElements.get(i);
+            ModelElement e = expectedElements.get(i);
+            assertEquals(a.toString(), e.toString());
+            assertEquals(a.getTransientData().summaryString(), e.getTransientData().summaryString());
+            if (a instanceof SetCommand) {
+                assertEquals(((SetCommand) a).isSelected(), ((SetCommand) e).isSelected());
+            }
+        }
+        assertEquals(actual.getRoot().getTransientData().summaryString(),
+                expected.getRoot().getTransientData().summaryString());
+    }
+
+    /**
+     * Test that a patch loaded from the cache matches a freshly-parsed one.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        PatchCache cache = new PatchCache(this.cacheDir);
+        CompletePatch first = cache.parse(this.patchFile);
+        PatchCache.FileKey key = new PatchCache.FileKey(this.patchFile);
+        File cacheFile = cache.getCacheFile(key);
+        assertTrue(cacheFile.exists());
+
+        CompletePatch cached = cache.load(cacheFile, key);
+        assertNotNull(cached);
+        assertSamePatch(cached, PatchIO.parse(this.patchFile));
+        assertSamePatch(cache.parse(this.patchFile), first);
+    }
+
+    /**
+     * Test that changing the file invalidates the cache, even if the size
+     * and timestamp haven't changed.
+     */
+    @Test
+    public void testChangedFile() throws Exception {
+        PatchCache cache = new PatchCache(this.cacheDir);
+        cache.parse(this.patchFile);
+        long mtime = this.patchFile.lastModified();
+        Files.write(this.patchFile.toPath(), PATCH.replace("Value 2", "Value 9").getBytes(StandardCharsets.UTF_8));
+        this.patchFile.setLastModified(mtime);
+
+        PatchCache.FileKey key = new PatchCache.FileKey(this.patchFile);
+        assertNull(cache.load(cache.getCacheFile(key), key));
+        CompletePatch patch = cache.parse(this.patchFile);
+        assertTrue(save(patch).contains("Value 9"));
+        assertNotNull(cache.load(cache.getCacheFile(key), key));
+    }
+
+    /**
+     * Test that a corrupt cache file just falls back to parsing.
+     */
+    @Test
+    public void testCorruptCache() throws Exception {
+        PatchCache cache = new PatchCache(this.cacheDir);
+        CompletePatch expected = cache.parse(this.patchFile);
+        PatchCache.FileKey key = new PatchCache.FileKey(this.patchFile);
+        File cacheFile = cache.getCacheFile(key);
+        byte[] data = Files.readAllBytes(cacheFile.toPath());
+        Files.write(cacheFile.toPath(), Arrays.copyOf(data, data.length / 2));
+
+        assertNull(cache.load(cacheFile, key));
+        assertSamePatch(cache.parse(this.patchFile), expected);
+    }
+
+}
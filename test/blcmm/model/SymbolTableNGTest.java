@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model;
+
+import blcmm.utilities.Options;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class SymbolTableNGTest {
+
+    public SymbolTableNGTest() throws Exception {
+        Options.loadOptions(null);
+    }
+
+    /**
+     * Generates the text of a BLCMM-format patch with the given number of
+     * statements, spread out over a much smaller number of objects and
+     * attributes, like a real mod would be.
+     *
+     * @param statements The number of statements to generate
+     * @param objects The number of distinct objects to reference
+     * @return The patch text
+     */
+    private static String generatePatch(int statements, int objects) {
+        Random random = new Random(42);
+        String[] fields = {"BaseValueConstant", "AttributeInitializationDefinition",
+            "BaseValueScaleConstant", "Manufacturers[0].Grades[0].GameStageRequirement.MinGameStage",
+            "ConstraintsApplied", "PartListCollection"};
+        StringBuilder sb = new StringBuilder();
+        sb.append("<BLCMM v=\"1\">\n<head>\n<type name=\"BL2\" offline=\"false\"/>\n<profiles>\n");
+        sb.append("<profile name=\"default\" current=\"true\"/>\n</profiles>\n</head>\n<body>\n");
+        sb.append("<category name=\"root\">\n");
+        for (int i = 0; i < statements; i++) {
+            int obj = random.nextInt(objects);
+            sb.append("<code profiles=\"default\">set GD_Weap_Package").append(obj % 50)
+                    .append(".A_Weapons.WeaponType_Number_").append(obj).append(":AttributePresentation ")
+                    .append(fields[random.nextInt(fields.length)]).append(" ")
+                    .append(random.nextInt(1000)).append("</code>\n");
+        }
+        sb.append("</category>\n</body>\n</BLCMM>\n");
+        return sb.toString();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Test of intern and toLowerCase methods, of class SymbolTable.
+     */
+    @Test
+    public void testIntern() {
+        SymbolTable table = new SymbolTable();
+        String a = table.intern(new String("GD_Foo.Bar"));
+        String b = table.intern(new String("GD_Foo.Bar"));
+        assertSame(b, a);
+        String lower = table.toLowerCase(a);
+        assertEquals(lower, "gd_foo.bar");
+        assertSame(table.toLowerCase(b), lower);
+        assertSame(table.intern(new String("gd_foo.bar")), lower);
+        assertSame(table.toLowerCase(lower), lower);
+        assertEquals(table.size(), 2);
+    }
+
+    /**
+     * Test that statements in a parsed patch share their object and field
+     * names, and that commands created outside of a parse still work.
+     */
+    @Test
+    public void testParsedPatchSharesStrings() throws Exception {
+        CompletePatch patch = PatchIO.parse(generatePatch(200, 5));
+        List<SetCommand> commands = new ArrayList<>();
+        for (ModelElement element : patch.getRoot().listRecursiveContentMinusCategories()) {
+            commands.add((SetCommand) element);
+        }
+        assertEquals(commands.size(), 200);
+        for (SetCommand first : commands) {
+            for (SetCommand second : commands) {
+                if (first.getObject().equals(second.getObject())) {
+                    assertSame(second.getObject(), first.getObject());
+                    assertSame(second.getLowerCaseObject(), first.getLowerCaseObject());
+                }
+                if (first.getField().equals(second.getField())) {
+                    assertSame(second.getField(), first.getField());
+                    assertSame(second.getLowerCaseField(), first.getLowerCaseField());
+                }
+            }
+            assertEquals(first.getLowerCaseObject(), first.getObject().toLowerCase());
+            assertEquals(first.getLowerCaseField(), first.getField().toLowerCase());
+        }
+        assertNull(SymbolTable.getCurrent());
+
+        SetCommand command = new SetCommand("set GD_Foo.Bar SomeAttr 1");
+        assertEquals(command.getLowerCaseObject(), "gd_foo.bar");
+        assertEquals(command.getLowerCaseField(), "someattr");
+    }
+
+    /**
+     * Test that copies of commands share their name strings with the
+     * originals, rather than allocating new lower-case versions.
+     */
+    @Test
+    public void testCopySharesNames() {
+        SetCommand[] commands = {
+            new SetCommand("set GD_Foo.Bar SomeAttr 1"),
+            new HotfixCommand("set GD_Foo.Bar SomeAttr 1"),
+            new SetCMPCommand("set_cmp GD_Foo.Bar SomeAttr 0 1"),
+        };
+        for (SetCommand command : commands) {
+            SetCommand copy = command.copy();
+            assertEquals(copy.getClass(), command.getClass());
+            assertEquals(copy.getCode(), command.getCode());
+            assertSame(copy.getObject(), command.getObject());
+            assertSame(copy.getField(), command.getField());
+            assertSame(copy.getLowerCaseObject(), command.getLowerCaseObject());
+            assertSame(copy.getLowerCaseField(), command.getLowerCaseField());
+        }
+    }
+
+    /**
+     * Rough heap-footprint measurement for a big parsed patch, compared
+     * against the same statements built one by one outside of a parse (so
+     * without any sharing).  Disabled by default since it doesn't actually
+     * test anything; enable it by hand to get numbers.  Run it with a fixed
+     * heap size (-Xms/-Xmx) for the most stable results.
+     */
+    @Test(enabled = false)
+    public void measureHeapFootprint() throws Exception {
+        int statements = 200000;
+        String text = generatePatch(statements, 2000);
+        List<String> codes = new ArrayList<>(statements);
+        for (String line : text.split("\n")) {
+            if (line.startsWith("<code")) {
+                codes.add(line.substring(line.indexOf('>') + 1, line.lastIndexOf('<')));
+            }
+        }
+
+        long before = usedHeap();
+        CompletePatch patch = PatchIO.parse(text);
+        long parsed = usedHeap() - before;
+
+        before = usedHeap();
+        List<SetCommand> unshared = new ArrayList<>(statements);
+        for (String code : codes) {
+            unshared.add(new SetCommand(code));
+        }
+        long built = usedHeap() - before;
+
+        // Referencing both down here keeps them from being collected while
+        // we're measuring the other one.
+        assertEquals(patch.getRoot().size(), statements);
+        assertEquals(unshared.size(), statements);
+        System.out.println(String.format("%d statements: parsed patch %d MB, unshared commands alone %d MB",
+                statements, parsed / (1024 * 1024), built / (1024 * 1024)));
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model.attrparser;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class LevelDepDataNGTest {
+
+    /**
+     * Test of copy method, of class LevelDepArray.  Modifying the copy
+     * shouldn't have any effect on the original.
+     */
+    @Test
+    public void testCopy() {
+        String value = "((PersistentMap=\"Foo_P\",SecondaryMaps=(\"Foo_Audio\",,\"Foo_FX\")),(PersistentMap=\"Bar_P\",SecondaryMaps=()))";
+        LevelDepArray<LevelDepStruct> orig = ((LevelDepArray<?>) LevelDepParser.parse(value)).asArrayOf(LevelDepStruct.class);
+        LevelDepArray<LevelDepStruct> copy = orig.copy();
+        assertEquals(copy.toString(), orig.toString());
+
+        ((LevelDepArray<?>) copy.get(0).getArray("secondarymaps")).asArrayOf(LevelDepString.class).add(new LevelDepString("Foo_Mod", true));
+        copy.get(1).put("PersistentMap", new LevelDepString("Baz_P", true));
+        assertEquals(orig.toString(), LevelDepParser.parse(value).toString());
+        assertEquals(copy.get(0).getArray("SecondaryMaps").size(), 4);
+        assertEquals(copy.get(1).getString("persistentmap"), "\"Baz_P\"");
+    }
+
+}
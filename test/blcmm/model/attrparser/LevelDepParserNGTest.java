@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.model.attrparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class LevelDepParserNGTest {
+
+    /**
+     * Parses the given value and returns it back as a string.
+     */
+    private String roundTrip(String value) {
+        LevelDepData data = LevelDepParser.parse(value);
+        return data == null ? null : data.toString();
+    }
+
+    /**
+     * Test of parse method, of class LevelDepParser.
+     */
+    @Test
+    public void testParse() {
+        assertNull(LevelDepParser.parse(""));
+        assertEquals(roundTrip("()"), "()");
+        assertEquals(roundTrip("(a,,b)"), "(a,,b)");
+        assertEquals(roundTrip("(,a)"), "(,a)");
+        assertEquals(roundTrip("(a,)"), "(a)");
+        assertEquals(roundTrip("((a),(b,c))"), "((a),(b,c))");
+        assertEquals(roundTrip("(K=,L=x)"), "(K=,L=x)");
+        assertEquals(roundTrip("(K=\"v\",L=(1,2),M=(A=()))"), "(K=\"v\",L=(1,2),M=(A=()))");
+        assertEquals(roundTrip("(a b, c d)"), "(a b, c d)");
+        assertTrue(LevelDepParser.parse("(K=V)") instanceof LevelDepStruct);
+        assertTrue(LevelDepParser.parse("(K,V)") instanceof LevelDepArray);
+    }
+
+    /**
+     * Test of parse method, of class LevelDepParser, with quoted strings.
+     * Anything after a closing quote and before the next comma gets dropped.
+     */
+    @Test
+    public void testParseQuoted() {
+        LevelDepArray<LevelDepString> arr = ((LevelDepArray<?>) LevelDepParser.parse("(\"x\\\"y\",\"a,b\"\"c,d\",\"\")")).asArrayOf(LevelDepString.class);
+        assertEquals(arr.size(), 3);
+        assertEquals(arr.get(0).getValue(), "x\\\"y");
+        assertEquals(arr.get(1).getValue(), "a,b");
+        assertTrue(arr.get(1).isQuoted());
+        assertEquals(arr.get(2).getValue(), "");
+    }
+
+    /**
+     * Test of parse method, of class LevelDepParser, with truncated values.
+     * These should just be closed off rather than throwing exceptions.
+     */
+    @Test
+    public void testParseTruncated() {
+        assertEquals(roundTrip("("), "()");
+        assertEquals(roundTrip("(K"), "(K)");
+        assertEquals(roundTrip("(K="), "(K=)");
+        assertEquals(roundTrip("((K=V)"), "((K=V))");
+        assertEquals(roundTrip("(\"unterm"), "(\"unterm\")");
+    }
+
+    /**
+     * Test of walk method, of class LevelDepParser.
+     */
+    @Test
+    public void testWalk() {
+        List<String> events = new ArrayList<>();
+        new LevelDepParser("((K=\"v\",L=(a,,b)),)").walk(new LevelDepVisitor() {
+            @Override
+            public void startArray() {
+                events.add("[");
+            }
+
+            @Override
+            public void endArray() {
+                events.add("]");
+            }
+
+            @Override
+            public void startStruct() {
+                events.add("{");
+            }
+
+            @Override
+            public void endStruct() {
+                events.add("}");
+            }
+
+            @Override
+            public void key(String key) {
+                events.add(key + "=");
+            }
+
+            @Override
+            public void value(LevelDepString value) {
+                events.add(value.toString());
+            }
+
+            @Override
+            public void empty() {
+                events.add("-");
+            }
+        });
+        assertEquals(String.join(" ", events), "[ { K= \"v\" L= [ a - b ] } ]");
+    }
+
+    /**
+     * Test of parse method, of class LevelDepParser, from several threads at
+     * once.
+     */
+    @Test
+    public void testParseConcurrent() throws InterruptedException, ExecutionException {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            StringBuilder sb = new StringBuilder("(");
+            for (int j = 0; j < 50; j++) {
+                if (j > 0) {
+                    sb.append(",");
+                }
+                sb.append("(PersistentMap=\"Map_").append(i).append("_P\",SecondaryMaps=(\"Map_")
+                        .append(i).append("_").append(j).append("\"))");
+            }
+            values.add(sb.append(")").toString());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (String value : values) {
+                results.add(executor.submit(() -> LevelDepParser.parse(value).toString()));
+            }
+            for (int i = 0; i < values.size(); i++) {
+                assertEquals(results.get(i).get(), values.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
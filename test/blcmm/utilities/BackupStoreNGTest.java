@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class BackupStoreNGTest {
+
+    private File dir;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("backupstore").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        for (File f : this.dir.listFiles()) {
+            f.delete();
+        }
+        this.dir.delete();
+    }
+
+    /**
+     * Generates some patch-looking lines.
+     */
+    private List<String> makeLines(Random random, int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("\t\t\t<code profiles=\"default\">set GD_Foo.Bar_" + i
+                    + " BaseValueConstant " + random.nextInt(1000) + "</code>\r\n");
+        }
+        return lines;
+    }
+
+    /**
+     * Makes a few random edits (changes, insertions, deletions and moves) to
+     * the given lines.
+     */
+    private void edit(Random random, List<String> lines) {
+        for (int i = 0; i < 5; i++) {
+            int idx = random.nextInt(lines.size());
+            switch (random.nextInt(4)) {
+                case 0:
+                    lines.set(idx, "\t\t\t<comment>é changed " + random.nextInt() + "</comment>\r\n");
+                    break;
+                case 1:
+                    lines.add(idx, "\t\t\t<comment>inserted " + random.nextInt() + "</comment>\r\n");
+                    break;
+                case 2:
+                    lines.remove(idx);
+                    break;
+                default:
+                    lines.add(random.nextInt(lines.size()), lines.remove(idx));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Test that a series of edited backups all restore exactly, and that
+     * most of them are written as deltas.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(42);
+        List<String> lines = this.makeLines(random, 500);
+        BackupStore store = new BackupStore(this.dir);
+        List<File> files = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        int deltas = 0;
+        for (int i = 0; i < 25; i++) {
+            String contents = String.join("", lines);
+            // Leave off the final newline every so often
+            if (i % 3 == 0) {
+                contents = contents.substring(0, contents.length() - 2);
+            }
+            File f = store.store("backup " + i, "test.blcm", contents);
+            assertNotNull(f);
+            if (f.getName().endsWith(BackupStore.DELTA_SUFFIX)) {
+                deltas++;
+            }
+            files.add(f);
+            expected.add(contents);
+            this.edit(random, lines);
+        }
+        assertTrue(deltas >= 20, "Only " + deltas + " deltas written");
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(BackupStore.restore(files.get(i)), expected.get(i));
+        }
+    }
+
+    /**
+     * Test that unchanged contents aren't backed up again, but that a
+     * different patch with the same contents is.
+     */
+    @Test
+    public void testUnchanged() throws IOException {
+        BackupStore store = new BackupStore(this.dir);
+        assertNotNull(store.store("backup 1", "test.blcm", "set foo bar baz\n"));
+        assertNull(store.store("backup 2", "test.blcm", "set foo bar baz\n"));
+        assertNotNull(store.store("backup 3", "test.blcm", "set foo bar qux\n"));
+        assertNotNull(store.store("backup 4", "other.blcm", "set foo bar qux\n"));
+        assertEquals(this.dir.listFiles().length, 3);
+    }
+
+    /**
+     * Test that pruning never removes a snapshot which a remaining delta
+     * needs.
+     */
+    @Test
+    public void testPrune() throws IOException {
+        Random random = new Random(1);
+        List<String> lines = this.makeLines(random, 200);
+        BackupStore store = new BackupStore(this.dir);
+        for (int i = 0; i < 40; i++) {
+            store.store("backup " + i, "test.blcm", String.join("", lines));
+            store.prune(4);
+            assertEquals(this.dir.listFiles().length, Math.min(i + 1, 4));
+            for (File f : this.dir.listFiles()) {
+                BackupStore.restore(f);
+            }
+            this.edit(random, lines);
+        }
+    }
+
+    /**
+     * Test that changing too much of the file writes a new snapshot rather
+     * than a delta.
+     */
+    @Test
+    public void testLargeChange() throws IOException {
+        Random random = new Random(7);
+        BackupStore store = new BackupStore(this.dir);
+        store.store("backup 1", "test.blcm", String.join("", this.makeLines(random, 100)));
+        File f = store.store("backup 2", "test.blcm", String.join("", this.makeLines(random, 100)));
+        assertTrue(f.getName().endsWith(BackupStore.SNAPSHOT_SUFFIX));
+        assertFalse(f.getName().endsWith(BackupStore.DELTA_SUFFIX));
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2023 Christopher J. Kucera
+ * <cj@apocalyptech.com>
+ * <https://apocalyptech.com/contact.php>
+ *
+ * OpenBLCMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package blcmm.utilities;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author apocalyptech
+ */
+public class SpillingWriterNGTest {
+
+    /**
+     * Writes a series of numbered values to the given writer, in the same
+     * sort of format we use for hotfix values.
+     */
+    private void writeValues(java.io.Writer writer, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                writer.append(",");
+            }
+            writer.append("\"").append("GD_Foo.Bar,BaseValueConstant,,").append(Integer.toString(i)).append("\"");
+        }
+    }
+
+    /**
+     * Test of a SpillingWriter which stays under its threshold.
+     */
+    @Test
+    public void testInMemory() throws IOException {
+        StringWriter expected = new StringWriter();
+        this.writeValues(expected, 100);
+        StringWriter out = new StringWriter();
+        try (SpillingWriter writer = new SpillingWriter(1024 * 1024, "test_spill")) {
+            this.writeValues(writer, 100);
+            assertFalse(writer.isSpilled());
+            writer.writeTo(out);
+        }
+        assertEquals(out.toString(), expected.toString());
+    }
+
+    /**
+     * Test of a SpillingWriter which goes over its threshold partway
+     * through.
+     */
+    @Test
+    public void testSpilled() throws IOException {
+        StringWriter expected = new StringWriter();
+        this.writeValues(expected, 1000);
+        StringWriter out = new StringWriter();
+        try (SpillingWriter writer = new SpillingWriter(1000, "test_spill")) {
+            this.writeValues(writer, 1000);
+            assertTrue(writer.isSpilled());
+            writer.writeTo(out);
+        }
+        assertEquals(out.toString(), expected.toString());
+    }
+
+    /**
+     * Test of non-ASCII data making it through a spill intact.
+     */
+    @Test
+    public void testSpilledUnicode() throws IOException {
+        String data = "set Foo Bar \"éß中\"";
+        StringWriter out = new StringWriter();
+        try (SpillingWriter writer = new SpillingWriter(0, "test_spill")) {
+            writer.append(data);
+            assertTrue(writer.isSpilled());
+            writer.writeTo(out);
+        }
+        assertEquals(out.toString(), data);
+    }
+
+    /**
+     * Rough benchmark comparing SpillingWriter against the temp file round
+     * trip which PatchIO.writeFunctionalHotfix used to do for every save, on
+     * roughly the amount of hotfix data in a large hotfix-heavy mod.
+     * Disabled by default since it doesn't actually test anything; enable it
+     * by hand to get numbers.  Point java.io.tmpdir at a slow or network
+     * drive to see the real difference.
+     */
+    @Test(enabled = false)
+    public void benchmarkAgainstTempFile() throws IOException {
+        int count = 100000;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            StringWriter out = new StringWriter();
+            File f = File.createTempFile("temp_hotfixes", "temp");
+            try (BufferedWriter valuewriter = new BufferedWriter(new FileWriter(f))) {
+                this.writeValues(valuewriter, count);
+            }
+            try (FileReader fis = new FileReader(f)) {
+                char[] buffer = new char[8 * 1024];
+                int bytesRead;
+                while ((bytesRead = fis.read(buffer)) != -1) {
+                    out.write(buffer, 0, bytesRead);
+                }
+            }
+            f.delete();
+            long tempTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            StringWriter out2 = new StringWriter();
+            try (SpillingWriter writer = new SpillingWriter(16 * 1024 * 1024, "temp_hotfixes")) {
+                this.writeValues(writer, count);
+                writer.writeTo(out2);
+            }
+            long spillTime = System.nanoTime() - start;
+
+            assertEquals(out2.toString(), out.toString());
+            System.out.println(String.format("Round %d: temp file %d ms, SpillingWriter %d ms (%d chars)",
+                    round + 1, tempTime / 1000000, spillTime / 1000000, out.getBuffer().length()));
+        }
+    }
+
+}